@@ -41,6 +41,9 @@ COMMENT ON COLUMN sys_user.create_time IS '创建时间';
 COMMENT ON COLUMN sys_user.updater IS '更新者';
 COMMENT ON COLUMN sys_user.update_time IS '更新时间';
 
+CREATE UNIQUE INDEX uk_sys_user_username on sys_user(CASE WHEN deleted = 0 THEN username END);
+CREATE UNIQUE INDEX uk_sys_user_mobile on sys_user(CASE WHEN deleted = 0 AND mobile <> '' THEN mobile END);
+
 
 CREATE TABLE sys_user_token
 (
@@ -439,6 +442,8 @@ create table sys_attachment
     url          varchar(255) NOT NULL,
     size         bigint,
     platform     varchar(50),
+    path         varchar(255),
+    hash         char(64),
     tenant_id    bigint,
     version      int,
     deleted      int,
@@ -449,12 +454,16 @@ create table sys_attachment
     primary key (id)
 );
 
+CREATE INDEX idx_hash on sys_attachment(hash);
+
 COMMENT ON TABLE sys_attachment IS '附件管理';
 COMMENT ON COLUMN sys_attachment.id IS 'id';
 COMMENT ON COLUMN sys_attachment.name IS '附件名称';
 COMMENT ON COLUMN sys_attachment.url IS '附件地址';
 COMMENT ON COLUMN sys_attachment.size IS '附件大小';
 COMMENT ON COLUMN sys_attachment.platform IS '存储平台';
+COMMENT ON COLUMN sys_attachment.path IS '存储路径';
+COMMENT ON COLUMN sys_attachment.hash IS '文件SHA-256';
 COMMENT ON COLUMN sys_attachment.tenant_id IS '租户ID';
 COMMENT ON COLUMN sys_attachment.version IS '版本号';
 COMMENT ON COLUMN sys_attachment.deleted IS '删除标识  0：正常   1：已删除';
@@ -463,6 +472,29 @@ COMMENT ON COLUMN sys_attachment.create_time IS '创建时间';
 COMMENT ON COLUMN sys_attachment.updater IS '更新者';
 COMMENT ON COLUMN sys_attachment.update_time IS '更新时间';
 
+create table sys_file_ref
+(
+    id           bigint IDENTITY NOT NULL,
+    tenant_id    bigint NOT NULL,
+    hash         char(64) NOT NULL,
+    path         varchar(255) NOT NULL,
+    url          varchar(255) NOT NULL,
+    ref_count    int NOT NULL,
+    create_time  datetime,
+    primary key (id)
+);
+
+CREATE UNIQUE INDEX uk_sys_file_ref_hash on sys_file_ref(tenant_id, hash);
+
+COMMENT ON TABLE sys_file_ref IS '文件引用计数';
+COMMENT ON COLUMN sys_file_ref.id IS 'id';
+COMMENT ON COLUMN sys_file_ref.tenant_id IS '租户ID  0：没有租户';
+COMMENT ON COLUMN sys_file_ref.hash IS '文件SHA-256';
+COMMENT ON COLUMN sys_file_ref.path IS '存储路径';
+COMMENT ON COLUMN sys_file_ref.url IS '文件地址';
+COMMENT ON COLUMN sys_file_ref.ref_count IS '引用次数';
+COMMENT ON COLUMN sys_file_ref.create_time IS '创建时间';
+
 
 create table sys_params
 (
@@ -18,7 +18,9 @@ CREATE TABLE sys_user
     create_time datetime COMMENT '创建时间',
     updater     bigint COMMENT '更新者',
     update_time datetime COMMENT '更新时间',
-    primary key (id)
+    primary key (id),
+    unique key uk_sys_user_username ((case when deleted = 0 then username end)),
+    unique key uk_sys_user_mobile ((case when deleted = 0 and mobile <> '' then mobile end))
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT ='用户管理';
 
 CREATE TABLE sys_user_token
@@ -248,6 +250,8 @@ create table sys_attachment
     url          varchar(255) NOT NULL COMMENT '附件地址',
     size         bigint COMMENT '附件大小',
     platform     varchar(50) COMMENT '存储平台',
+    path         varchar(255) COMMENT '存储路径',
+    hash         char(64) COMMENT '文件SHA-256',
     tenant_id    bigint COMMENT '租户ID',
     version      int COMMENT '版本号',
     deleted      tinyint COMMENT '删除标识  0：正常   1：已删除',
@@ -255,9 +259,23 @@ create table sys_attachment
     create_time  datetime COMMENT '创建时间',
     updater      bigint COMMENT '更新者',
     update_time  datetime COMMENT '更新时间',
-    primary key (id)
+    primary key (id),
+    key idx_hash (hash)
 ) ENGINE = InnoDB DEFAULT CHARACTER SET utf8mb4 COMMENT ='附件管理';
 
+create table sys_file_ref
+(
+    id           bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
+    tenant_id    bigint NOT NULL COMMENT '租户ID  0：没有租户',
+    hash         char(64) NOT NULL COMMENT '文件SHA-256',
+    path         varchar(255) NOT NULL COMMENT '存储路径',
+    url          varchar(255) NOT NULL COMMENT '文件地址',
+    ref_count    int NOT NULL COMMENT '引用次数',
+    create_time  datetime COMMENT '创建时间',
+    primary key (id),
+    unique key uk_sys_file_ref_hash (tenant_id, hash)
+) ENGINE = InnoDB DEFAULT CHARACTER SET utf8mb4 COMMENT ='文件引用计数';
+
 create table sys_params
 (
     id            bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
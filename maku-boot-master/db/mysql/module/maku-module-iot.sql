@@ -57,6 +57,47 @@ CREATE TABLE iot_device_service_log (
   PRIMARY KEY (id)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT='设备服务日志';
 
+-- 设备遥测数据，按天分区，分区由程序按保留天数自动创建和删除；idx_report_time 覆盖按分钟统计的查询
+CREATE TABLE iot_device_telemetry (
+  id bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
+  device_id bigint NOT NULL COMMENT '设备id',
+  property tinyint NOT NULL COMMENT '设备属性',
+  property_value double NOT NULL COMMENT '属性值',
+  report_time datetime(3) NOT NULL COMMENT '上报时间',
+  tenant_id bigint DEFAULT NULL COMMENT '租户ID',
+  PRIMARY KEY (id, report_time),
+  KEY idx_device_property_time (device_id, property, report_time),
+  KEY idx_report_time (report_time, device_id, property, property_value, tenant_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT='设备遥测数据'
+PARTITION BY RANGE COLUMNS(report_time) (PARTITION p_max VALUES LESS THAN (MAXVALUE));
+
+CREATE TABLE iot_device_telemetry_1m (
+  device_id bigint NOT NULL COMMENT '设备id',
+  property tinyint NOT NULL COMMENT '设备属性',
+  bucket_time datetime NOT NULL COMMENT '统计时间',
+  min_value double NOT NULL COMMENT '最小值',
+  max_value double NOT NULL COMMENT '最大值',
+  sum_value double NOT NULL COMMENT '合计值',
+  count_value int NOT NULL COMMENT '数据条数',
+  tenant_id bigint DEFAULT NULL COMMENT '租户ID',
+  PRIMARY KEY (device_id, property, bucket_time),
+  KEY idx_bucket_time (bucket_time)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT='设备遥测数据按分钟统计'
+PARTITION BY RANGE COLUMNS(bucket_time) (PARTITION p_max VALUES LESS THAN (MAXVALUE));
+
+CREATE TABLE iot_device_telemetry_1h (
+  device_id bigint NOT NULL COMMENT '设备id',
+  property tinyint NOT NULL COMMENT '设备属性',
+  bucket_time datetime NOT NULL COMMENT '统计时间',
+  min_value double NOT NULL COMMENT '最小值',
+  max_value double NOT NULL COMMENT '最大值',
+  sum_value double NOT NULL COMMENT '合计值',
+  count_value int NOT NULL COMMENT '数据条数',
+  tenant_id bigint DEFAULT NULL COMMENT '租户ID',
+  PRIMARY KEY (device_id, property, bucket_time),
+  KEY idx_bucket_time (bucket_time)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT='设备遥测数据按小时统计';
+
 
 -- 菜单，权限
 INSERT INTO sys_menu (pid, name, url, authority, type, open_style, icon, sort, version, deleted, creator, create_time, updater, update_time) VALUES ( NULL, '物联网平台', NULL, NULL, 0, 0, 'icon-printer-fill', 6, 0, 0, 10000,now(), 10000, now());
@@ -23,6 +23,8 @@ INSERT INTO sys_dict_data (dict_type_id, dict_label, dict_value, label_class, re
 
 DROP TABLE IF EXISTS schedule_job;
 DROP TABLE IF EXISTS schedule_job_log;
+DROP TABLE IF EXISTS schedule_job_execution;
+DROP TABLE IF EXISTS schedule_job_shard;
 
 CREATE TABLE schedule_job (
     id              bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
@@ -34,6 +36,7 @@ CREATE TABLE schedule_job (
     cron_expression varchar(100) COMMENT 'cron表达式',
     status          tinyint unsigned COMMENT '状态  0：暂停  1：正常',
     concurrent      tinyint unsigned COMMENT '是否并发  0：禁止  1：允许',
+    shard_total     int DEFAULT 1 COMMENT '分片数量  1：不分片',
     remark          varchar(255) COMMENT '备注',
     version         int COMMENT '版本号',
     deleted         tinyint COMMENT '删除标识  0：正常   1：已删除',
@@ -57,9 +60,43 @@ CREATE TABLE schedule_job_log (
     times         bigint NOT NULL COMMENT '耗时(单位：毫秒)',
     create_time   datetime COMMENT '创建时间',
     PRIMARY KEY (id),
-    key idx_job_id (job_id)
+    key idx_job_id (job_id),
+    key idx_create_time (create_time)
 ) ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4 COMMENT='定时任务日志';
 
+CREATE TABLE schedule_job_execution (
+    id            bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
+    job_id        bigint NOT NULL COMMENT '任务id',
+    shard_total   int NOT NULL COMMENT '分片数量',
+    finished      int NOT NULL COMMENT '已结束的分片数量',
+    failed        int NOT NULL COMMENT '失败的分片数量',
+    status        tinyint unsigned NOT NULL COMMENT '状态  1：执行中  2：成功  3：失败',
+    start_time    datetime COMMENT '开始时间',
+    end_time      datetime COMMENT '结束时间',
+    PRIMARY KEY (id),
+    key idx_job_id (job_id),
+    key idx_start_time (start_time)
+) ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4 COMMENT='定时任务分片执行';
+
+CREATE TABLE schedule_job_shard (
+    id                bigint NOT NULL AUTO_INCREMENT COMMENT 'id',
+    execution_id      bigint NOT NULL COMMENT '分片执行id',
+    job_id            bigint NOT NULL COMMENT '任务id',
+    shard_index       int NOT NULL COMMENT '分片序号',
+    shard_total       int NOT NULL COMMENT '分片数量',
+    status            tinyint unsigned NOT NULL COMMENT '状态  0：等待  1：执行中  2：成功  3：失败',
+    owner             varchar(200) COMMENT '执行节点',
+    attempts          int NOT NULL COMMENT '执行次数',
+    lease_expire_time datetime COMMENT '租约到期时间',
+    error             varchar(2000) COMMENT '异常信息',
+    start_time        datetime COMMENT '开始时间',
+    end_time          datetime COMMENT '结束时间',
+    create_time       datetime COMMENT '创建时间',
+    PRIMARY KEY (id),
+    key idx_execution_id (execution_id),
+    key idx_status (status, lease_expire_time)
+) ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4 COMMENT='定时任务分片';
+
 
 INSERT INTO schedule_job (id, job_name, job_group, bean_name, method, params, cron_expression, status, concurrent, remark, version, deleted, creator, create_time, updater, update_time) VALUES (1, '测试任务', 'system', 'testTask', 'run', '123', '0 * * * * ? *', 0, 0, '', 14, 0, 10000, now(), 10000, now());
 
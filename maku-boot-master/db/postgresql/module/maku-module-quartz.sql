@@ -21,6 +21,8 @@ select setval('sys_dict_data_id_seq', (select max(id) from sys_dict_data));
 
 DROP TABLE IF EXISTS schedule_job;
 DROP TABLE IF EXISTS schedule_job_log;
+DROP TABLE IF EXISTS schedule_job_execution;
+DROP TABLE IF EXISTS schedule_job_shard;
 
 CREATE TABLE schedule_job (
     id              bigserial NOT NULL,
@@ -32,6 +34,7 @@ CREATE TABLE schedule_job (
     cron_expression varchar(100),
     status          int,
     concurrent      int,
+    shard_total     int DEFAULT 1,
     remark          varchar(255),
     version         int,
     deleted         int,
@@ -53,6 +56,7 @@ COMMENT ON COLUMN schedule_job.params IS '参数';
 COMMENT ON COLUMN schedule_job.cron_expression IS 'cron表达式';
 COMMENT ON COLUMN schedule_job.status IS '状态  0：暂停  1：正常';
 COMMENT ON COLUMN schedule_job.concurrent IS '是否并发  0：禁止  1：允许';
+COMMENT ON COLUMN schedule_job.shard_total IS '分片数量  1：不分片';
 COMMENT ON COLUMN schedule_job.remark IS '备注';
 COMMENT ON COLUMN schedule_job.version IS '版本号';
 COMMENT ON COLUMN schedule_job.deleted IS '删除标识  0：正常   1：已删除';
@@ -89,6 +93,67 @@ COMMENT ON COLUMN schedule_job_log.status IS '任务状态    0：失败    1：
 COMMENT ON COLUMN schedule_job_log.error IS '异常信息';
 COMMENT ON COLUMN schedule_job_log.times IS '耗时(单位：毫秒)';
 COMMENT ON COLUMN schedule_job_log.create_time IS '创建时间';
+CREATE INDEX idx_schedule_job_log_create_time on schedule_job_log(create_time);
+
+CREATE TABLE schedule_job_execution (
+    id            bigserial NOT NULL,
+    job_id        int8 NOT NULL,
+    shard_total   int NOT NULL,
+    finished      int NOT NULL,
+    failed        int NOT NULL,
+    status        int NOT NULL,
+    start_time    timestamp,
+    end_time      timestamp,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_schedule_job_execution_job_id on schedule_job_execution(job_id);
+CREATE INDEX idx_schedule_job_execution_start_time on schedule_job_execution(start_time);
+
+COMMENT ON TABLE schedule_job_execution IS '定时任务分片执行';
+COMMENT ON COLUMN schedule_job_execution.id IS 'id';
+COMMENT ON COLUMN schedule_job_execution.job_id IS '任务id';
+COMMENT ON COLUMN schedule_job_execution.shard_total IS '分片数量';
+COMMENT ON COLUMN schedule_job_execution.finished IS '已结束的分片数量';
+COMMENT ON COLUMN schedule_job_execution.failed IS '失败的分片数量';
+COMMENT ON COLUMN schedule_job_execution.status IS '状态  1：执行中  2：成功  3：失败';
+COMMENT ON COLUMN schedule_job_execution.start_time IS '开始时间';
+COMMENT ON COLUMN schedule_job_execution.end_time IS '结束时间';
+
+CREATE TABLE schedule_job_shard (
+    id                bigserial NOT NULL,
+    execution_id      int8 NOT NULL,
+    job_id            int8 NOT NULL,
+    shard_index       int NOT NULL,
+    shard_total       int NOT NULL,
+    status            int NOT NULL,
+    owner             varchar(200),
+    attempts          int NOT NULL,
+    lease_expire_time timestamp,
+    error             varchar(2000),
+    start_time        timestamp,
+    end_time          timestamp,
+    create_time       timestamp,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_schedule_job_shard_execution_id on schedule_job_shard(execution_id);
+CREATE INDEX idx_schedule_job_shard_status on schedule_job_shard(status, lease_expire_time);
+
+COMMENT ON TABLE schedule_job_shard IS '定时任务分片';
+COMMENT ON COLUMN schedule_job_shard.id IS 'id';
+COMMENT ON COLUMN schedule_job_shard.execution_id IS '分片执行id';
+COMMENT ON COLUMN schedule_job_shard.job_id IS '任务id';
+COMMENT ON COLUMN schedule_job_shard.shard_index IS '分片序号';
+COMMENT ON COLUMN schedule_job_shard.shard_total IS '分片数量';
+COMMENT ON COLUMN schedule_job_shard.status IS '状态  0：等待  1：执行中  2：成功  3：失败';
+COMMENT ON COLUMN schedule_job_shard.owner IS '执行节点';
+COMMENT ON COLUMN schedule_job_shard.attempts IS '执行次数';
+COMMENT ON COLUMN schedule_job_shard.lease_expire_time IS '租约到期时间';
+COMMENT ON COLUMN schedule_job_shard.error IS '异常信息';
+COMMENT ON COLUMN schedule_job_shard.start_time IS '开始时间';
+COMMENT ON COLUMN schedule_job_shard.end_time IS '结束时间';
+COMMENT ON COLUMN schedule_job_shard.create_time IS '创建时间';
 
 
 INSERT INTO schedule_job (job_name, job_group, bean_name, method, params, cron_expression, status, concurrent, remark, version, deleted, creator, create_time, updater, update_time) VALUES ('测试任务', 'system', 'testTask', 'run', '123', '0 * * * * ? *', 0, 0, '', 14, 0, 10000, now(), 10000, now());
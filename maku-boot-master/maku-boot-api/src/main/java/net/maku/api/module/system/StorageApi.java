@@ -50,4 +50,14 @@ public interface StorageApi {
      * @return 返回http地址
      */
     String upload(InputStream inputStream, String path);
+
+    /**
+     * 文件上传，流式上传，不会把整个文件读入内存
+     *
+     * @param inputStream 字节流
+     * @param size        文件大小，未知则传 -1
+     * @param path        文件路径，包含文件名
+     * @return 返回http地址
+     */
+    String upload(InputStream inputStream, long size, String path);
 }
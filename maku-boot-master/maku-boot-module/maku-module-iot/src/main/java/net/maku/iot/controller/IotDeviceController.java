@@ -10,14 +10,20 @@ import net.maku.iot.convert.IotDeviceConvert;
 import net.maku.iot.entity.IotDeviceEntity;
 import net.maku.iot.query.IotDeviceQuery;
 import net.maku.iot.service.IotDeviceService;
+import net.maku.iot.vo.DeviceBatchCommandVO;
+import net.maku.iot.vo.DeviceCommandJobVO;
 import net.maku.iot.vo.DeviceCommandVO;
 import net.maku.iot.vo.DeviceReportAttributeDataVO;
 import net.maku.iot.vo.IotDeviceVO;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 /**
  * 设备表
@@ -84,19 +90,32 @@ public class IotDeviceController {
         return Result.ok();
     }
 
+    @PostMapping("/batchSendCommand")
+    @Operation(summary = "批量下发指令，返回任务ID")
+    @PreAuthorize("hasAuthority('iot:device:send')")
+    public Result<String> batchSendCommand(@RequestBody DeviceBatchCommandVO vo) {
+        return Result.ok(iotDeviceService.batchSendCommand(vo));
+    }
+
+    @GetMapping("/batchSendCommand/{jobId}")
+    @Operation(summary = "批量下发指令任务进度")
+    @PreAuthorize("hasAuthority('iot:device:send')")
+    public Result<DeviceCommandJobVO> batchSendCommandJob(@PathVariable("jobId") String jobId) {
+        return Result.ok(iotDeviceService.getBatchCommandJob(jobId));
+    }
+
     @PostMapping("/syncSendCommand")
     @Operation(summary = "下发指令-等待设备回复")
     @PreAuthorize("hasAuthority('iot:device:send')")
-    public Result<String> syncSendCommand(@RequestBody DeviceCommandVO vo) {
-        iotDeviceService.syncSendCommand(vo);
-        return Result.ok();
+    public DeferredResult<Result<String>> syncSendCommand(@RequestBody DeviceCommandVO vo) {
+        return toDeferredResult(iotDeviceService.sendCommand(vo), response -> Result.ok());
     }
 
     @PostMapping("/syncSendCommand/debug")
     @Operation(summary = "下发指令-等待设备回复-调试")
     @PreAuthorize("hasAuthority('iot:device:send')")
-    public Result<String> syncSendCommandDebug(@RequestBody DeviceCommandVO vo) {
-        return Result.ok(iotDeviceService.syncSendCommandDebug(vo).getResponsePayload());
+    public DeferredResult<Result<String>> syncSendCommandDebug(@RequestBody DeviceCommandVO vo) {
+        return toDeferredResult(iotDeviceService.sendCommandDebug(vo), response -> Result.ok(response.getResponsePayload()));
     }
 
     @PostMapping("/simulateDeviceReportAttributeData")
@@ -107,4 +126,18 @@ public class IotDeviceController {
         return Result.ok();
     }
 
-}
\ No newline at end of file
+    /**
+     * 设备响应后再返回结果，等待期间不占用请求线程
+     */
+    private <T> DeferredResult<Result<String>> toDeferredResult(CompletableFuture<T> future, Function<T, Result<String>> mapper) {
+        DeferredResult<Result<String>> result = new DeferredResult<>();
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                result.setResult(mapper.apply(value));
+            }
+        });
+        return result;
+    }
+}
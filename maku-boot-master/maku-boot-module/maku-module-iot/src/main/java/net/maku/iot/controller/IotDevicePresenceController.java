@@ -0,0 +1,60 @@
+package net.maku.iot.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.common.utils.Result;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.presence.DevicePresenceService;
+import net.maku.iot.service.IotDeviceService;
+import net.maku.iot.utils.TenantUtils;
+import net.maku.iot.vo.DevicePresenceVO;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 设备在线状态，有租户的用户只能查询本租户的设备，没有租户的超级管理员可以指定租户
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@RestController
+@RequestMapping("iot/device_presence")
+@Tag(name = "设备在线状态")
+@AllArgsConstructor
+public class IotDevicePresenceController {
+    private final DevicePresenceService devicePresenceService;
+    private final IotDeviceService iotDeviceService;
+
+    @GetMapping("count")
+    @Operation(summary = "在线设备数量")
+    @PreAuthorize("hasAuthority('iot:device:page')")
+    public Result<Integer> count(@RequestParam(value = "tenantId", required = false) Long tenantId) {
+        return Result.ok(devicePresenceService.countOnline(TenantUtils.getTenantId(tenantId)));
+    }
+
+    @GetMapping("online")
+    @Operation(summary = "在线设备列表")
+    @PreAuthorize("hasAuthority('iot:device:page')")
+    public Result<List<DevicePresenceVO>> online(@RequestParam(value = "tenantId", required = false) Long tenantId,
+                                                 @RequestParam(value = "limit", defaultValue = "1000") Integer limit) {
+        return Result.ok(devicePresenceService.listOnline(TenantUtils.getTenantId(tenantId), limit));
+    }
+
+    @GetMapping("{id}")
+    @Operation(summary = "设备在线状态")
+    @PreAuthorize("hasAuthority('iot:device:info')")
+    public Result<DevicePresenceVO> get(@PathVariable("id") Long id) {
+        IotDeviceEntity device = iotDeviceService.getById(id);
+        if (device == null || !TenantUtils.canAccess(device.getTenantId())) {
+            throw new ServerException("设备不存在");
+        }
+        return Result.ok(devicePresenceService.get(id));
+    }
+}
@@ -0,0 +1,35 @@
+package net.maku.iot.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.utils.Result;
+import net.maku.iot.query.IotDeviceTelemetryQuery;
+import net.maku.iot.service.IotDeviceTelemetryService;
+import net.maku.iot.vo.IotDeviceTelemetryVO;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 设备遥测数据
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@RestController
+@RequestMapping("iot/device_telemetry")
+@Tag(name = "设备遥测数据")
+@AllArgsConstructor
+public class IotDeviceTelemetryController {
+    private final IotDeviceTelemetryService iotDeviceTelemetryService;
+
+    @GetMapping("query")
+    @Operation(summary = "按时间范围查询，根据时间范围和数据点数量返回原始数据、分钟统计或小时统计数据")
+    @PreAuthorize("hasAuthority('iot:device:info')")
+    public Result<IotDeviceTelemetryVO> query(@ParameterObject @Valid IotDeviceTelemetryQuery query) {
+        return Result.ok(iotDeviceTelemetryService.query(query));
+    }
+}
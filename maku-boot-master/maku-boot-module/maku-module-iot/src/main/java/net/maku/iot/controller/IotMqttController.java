@@ -0,0 +1,62 @@
+package net.maku.iot.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.utils.Result;
+import net.maku.iot.log.IotDeviceLogWriter;
+import net.maku.iot.mqtt.channel.PartitionedMqttChannel;
+import net.maku.iot.mqtt.command.DeviceCommandRegistry;
+import net.maku.iot.service.IotDeviceTelemetryService;
+import net.maku.iot.vo.IotLogWriterStatsVO;
+import net.maku.iot.vo.MqttCommandStatsVO;
+import net.maku.iot.vo.MqttPartitionStatsVO;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MQTT 消息处理监控
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@RestController
+@RequestMapping("iot/mqtt")
+@Tag(name = "MQTT 消息处理监控")
+@AllArgsConstructor
+public class IotMqttController {
+    private final PartitionedMqttChannel mqttInputChannel;
+    private final DeviceCommandRegistry deviceCommandRegistry;
+    private final IotDeviceLogWriter iotDeviceLogWriter;
+    private final IotDeviceTelemetryService iotDeviceTelemetryService;
+
+    @GetMapping("/partition/stats")
+    @Operation(summary = "分区统计，包括积压消息数和处理延迟")
+    @PreAuthorize("hasAuthority('iot:device:page')")
+    public Result<List<MqttPartitionStatsVO>> partitionStats() {
+        return Result.ok(mqttInputChannel.getStats());
+    }
+
+    @GetMapping("/command/stats")
+    @Operation(summary = "命令响应统计，包括等待中、超时、超时后到达和重复的响应数")
+    @PreAuthorize("hasAuthority('iot:device:page')")
+    public Result<MqttCommandStatsVO> commandStats() {
+        return Result.ok(deviceCommandRegistry.getStats());
+    }
+
+    @GetMapping("/log/stats")
+    @Operation(summary = "事件日志、服务日志、遥测数据批量写入统计，包括积压、写入、失败和丢弃的数量")
+    @PreAuthorize("hasAuthority('iot:device:page')")
+    public Result<List<IotLogWriterStatsVO>> logStats() {
+        List<IotLogWriterStatsVO> stats = new ArrayList<>(iotDeviceLogWriter.getStats());
+        IotLogWriterStatsVO telemetryStats = iotDeviceTelemetryService.getWriterStats();
+        if (telemetryStats != null) {
+            stats.add(telemetryStats);
+        }
+        return Result.ok(stats);
+    }
+}
@@ -0,0 +1,60 @@
+package net.maku.iot.dao;
+
+import com.baomidou.mybatisplus.annotation.InterceptorIgnore;
+import net.maku.framework.mybatis.dao.BaseDao;
+import net.maku.iot.entity.IotDeviceTelemetryEntity;
+import net.maku.iot.vo.IotDeviceTelemetryPointVO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备遥测数据
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Mapper
+public interface IotDeviceTelemetryDao extends BaseDao<IotDeviceTelemetryEntity> {
+
+    /**
+     * 原始数据按分钟统计，已存在的统计数据会被覆盖
+     */
+    int rollupMinute(@Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 分钟统计数据按小时统计，已存在的统计数据会被覆盖
+     */
+    int rollupHour(@Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+    List<IotDeviceTelemetryPointVO> getRawList(@Param("deviceId") Long deviceId, @Param("property") Integer property,
+                                               @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+    List<IotDeviceTelemetryPointVO> getRollupList(@Param("table") String table, @Param("deviceId") Long deviceId, @Param("property") Integer property,
+                                                  @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 查询时统计原始数据，用于尚未统计的最近数据
+     */
+    List<IotDeviceTelemetryPointVO> getRawMinuteList(@Param("deviceId") Long deviceId, @Param("property") Integer property,
+                                                     @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+    LocalDateTime getMaxBucketTime(@Param("table") String table);
+
+    List<String> getPartitionList(@Param("table") String table);
+
+    /**
+     * 从 p_max 分区拆分出新的按天分区
+     *
+     * @param partitions key: 分区名称，value: 分区上限
+     */
+    @InterceptorIgnore(blockAttack = "true")
+    void addPartitions(@Param("table") String table, @Param("partitions") Map<String, String> partitions);
+
+    @InterceptorIgnore(blockAttack = "true")
+    void dropPartition(@Param("table") String table, @Param("partition") String partition);
+
+    int deleteBefore(@Param("table") String table, @Param("timeColumn") String timeColumn, @Param("time") LocalDateTime time);
+}
@@ -2,13 +2,13 @@ package net.maku.iot.dto;
 
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import net.maku.iot.entity.IotDeviceEntity;
 import net.maku.iot.enums.DeviceTypeEnum;
 
-import java.util.List;
-
 /**
  * 设备客户端信息
  *
@@ -16,6 +16,8 @@ import java.util.List;
  */
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class DeviceClientDTO {
     /**
      * 格式 ： deviceType_tenantId_deviceId_uid
@@ -61,14 +63,38 @@ public class DeviceClientDTO {
      * @return
      */
     public static DeviceClientDTO parse(String clientId) {
-        List<String> clientIdParts = StrUtil.split(clientId, "_");
-        Assert.isTrue(clientIdParts.size() > 3, INVALID_CLIENT_ID, clientId);
-        return DeviceClientDTO.builder()
-                .deviceType(clientIdParts.get(0))
-                .tenantId(Long.valueOf(clientIdParts.get(1)))
-                .deviceId(Long.valueOf(clientIdParts.get(2)))
-                .uid(clientIdParts.get(3))
-                .build();
+        Assert.notNull(clientId, INVALID_CLIENT_ID, clientId);
+        return parse(clientId, 0, clientId.length(), DeviceClientDTO.builder().build());
+    }
+
+    /**
+     * 从字符串的指定区间解析设备client信息，按下标扫描，不拆分字符串
+     *
+     * @param value  包含clientId的字符串，如设备主题
+     * @param start  clientId开始下标
+     * @param end    clientId结束下标（不包含）
+     * @param target 解析结果
+     * @return 传入的 target
+     */
+    public static DeviceClientDTO parse(String value, int start, int end, DeviceClientDTO target) {
+        int typeEnd = indexOf(value, start, end);
+        int tenantEnd = typeEnd < 0 ? -1 : indexOf(value, typeEnd + 1, end);
+        int deviceEnd = tenantEnd < 0 ? -1 : indexOf(value, tenantEnd + 1, end);
+        if (deviceEnd < 0) {
+            throw new IllegalArgumentException(StrUtil.format(INVALID_CLIENT_ID, value.substring(start, end)));
+        }
+        int uidEnd = indexOf(value, deviceEnd + 1, end);
+
+        target.setDeviceType(value.substring(start, typeEnd));
+        target.setTenantId(Long.parseLong(value, typeEnd + 1, tenantEnd, 10));
+        target.setDeviceId(Long.parseLong(value, tenantEnd + 1, deviceEnd, 10));
+        target.setUid(value.substring(deviceEnd + 1, uidEnd < 0 ? end : uidEnd));
+        return target;
+    }
+
+    private static int indexOf(String value, int start, int end) {
+        int index = value.indexOf('_', start);
+        return index < end ? index : -1;
     }
 
     /**
@@ -0,0 +1,49 @@
+package net.maku.iot.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 设备遥测数据，只保存数值类型的设备属性
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@TableName("iot_device_telemetry")
+public class IotDeviceTelemetryEntity {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 设备id
+     */
+    private Long deviceId;
+
+    /**
+     * 设备属性
+     */
+    private Integer property;
+
+    /**
+     * 属性值
+     */
+    private Double propertyValue;
+
+    /**
+     * 上报时间
+     */
+    private LocalDateTime reportTime;
+
+    /**
+     * 租户ID
+     */
+    private Long tenantId;
+
+}
@@ -1,16 +1,14 @@
 package net.maku.iot.enums;
 
-import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import net.maku.iot.dto.DeviceClientDTO;
 
-import java.util.Arrays;
-import java.util.List;
-
 
 /**
  * 设备消息主题类型枚举
@@ -33,7 +31,12 @@ public enum DeviceTopicEnum {
     /**
      * 设备信息上报主题(属性相关)
      */
-    PROPERTY("property");
+    PROPERTY("property"),
+
+    /**
+     * 设备遗嘱主题，设备连接时设置为遗嘱消息主题，异常断开连接时由 MQTT 服务器发布
+     */
+    WILL("will");
 
     /**
      * 设备信息上报主题前缀
@@ -75,6 +78,22 @@ public enum DeviceTopicEnum {
         return StrUtil.format(TOPIC_TEMPLATE, TOPIC_PREFIX, deviceClient.buildClientId(), getTopic());
     }
 
+    /**
+     * 按主题后缀查找的哈希表，开放寻址，查找时不创建子字符串
+     */
+    private static final DeviceTopicEnum[] SUFFIX_TABLE = new DeviceTopicEnum[16];
+
+    static {
+        int mask = SUFFIX_TABLE.length - 1;
+        for (DeviceTopicEnum value : values()) {
+            int index = hash(value.topic, 0, value.topic.length()) & mask;
+            while (SUFFIX_TABLE[index] != null) {
+                index = (index + 1) & mask;
+            }
+            SUFFIX_TABLE[index] = value;
+        }
+    }
+
     /**
      * 解析指定的主题字符串为 DeviceTopicEnum 枚举，若无效则抛出 IllegalArgumentException 异常
      *
@@ -83,10 +102,25 @@ public enum DeviceTopicEnum {
      * @throws IllegalArgumentException 当主题字符串无效时抛出
      */
     public static DeviceTopicEnum parse(String topic) {
-        String topicSuffix = StrUtil.startWith(topic, TOPIC_PREFIX) ? StrUtil.subAfter(topic, "/", true) : topic;
-        return Arrays.stream(DeviceTopicEnum.values())
-                .filter(d -> d.name().equalsIgnoreCase(topicSuffix)).findFirst()
-                .orElseThrow(() -> new IllegalArgumentException(StrUtil.format("无效的 DeviceTopicEnum 值：{}", topic)));
+        DeviceTopicEnum deviceTopic = match(topic);
+        if (deviceTopic == null) {
+            throw new IllegalArgumentException(StrUtil.format("无效的 DeviceTopicEnum 值：{}", topic));
+        }
+        return deviceTopic;
+    }
+
+    /**
+     * 获取主题对应的 DeviceTopicEnum 枚举，按主题最后一段匹配，不区分大小写，不创建中间对象
+     *
+     * @param topic 主题字符串，或不带前缀的设备主题
+     * @return 无效时返回 null
+     */
+    public static DeviceTopicEnum match(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        int start = topic.startsWith(TOPIC_PREFIX) ? topic.lastIndexOf('/') + 1 : 0;
+        return match(topic, start, topic.length());
     }
 
     /**
@@ -97,12 +131,23 @@ public enum DeviceTopicEnum {
      * @return 若主题以给定前缀开头则返回 true，否则返回 false
      */
     public static boolean startsWith(String topic, String prefix) {
-        try {
-            DeviceTopicEnum deviceTopic = parse(topic);
-            return deviceTopic.getTopic().startsWith(prefix);
-        } catch (IllegalArgumentException e) {
-            return false;
+        DeviceTopicEnum deviceTopic = match(topic);
+        return deviceTopic != null && deviceTopic.getTopic().startsWith(prefix);
+    }
+
+    /**
+     * 获取主题中的设备 clientId，不创建中间对象，用于消息分区
+     *
+     * @param topic 主题字符串
+     * @return 设备 clientId，不是设备主题则返回 null
+     */
+    public static String getClientId(String topic) {
+        int start = TOPIC_PREFIX.length() + 1;
+        if (topic == null || topic.length() <= start || !topic.startsWith(TOPIC_PREFIX) || topic.charAt(start - 1) != '/') {
+            return null;
         }
+        int end = topic.indexOf('/', start);
+        return end < 0 ? null : topic.substring(start, end);
     }
 
     /**
@@ -112,21 +157,61 @@ public enum DeviceTopicEnum {
      * @return 包含设备信息及主题的 DeviceTopicContext 对象
      */
     public static DeviceTopicContext parseContext(String topic) {
-        String topicSuffix = StrUtil.subAfter(topic, TOPIC_PREFIX, false);
-        List<String> parts = StrUtil.split(topicSuffix, "/", true, true);
-        Assert.isTrue(parts.size() == 2, "无效的设备主题:{}", topic);
+        return parseContext(topic, new DeviceTopicContext());
+    }
+
+    /**
+     * 解析主题到已有的 DeviceTopicContext 对象，按下标扫描主题，可重复使用同一个对象
+     *
+     * @param topic   主题字符串，格式：/maku/device/{deviceType_tenantId_deviceId_uid}/{设备主题}
+     * @param context 解析结果
+     * @return 传入的 context
+     * @throws IllegalArgumentException 当主题字符串无效时抛出
+     */
+    public static DeviceTopicContext parseContext(String topic, DeviceTopicContext context) {
+        int start = TOPIC_PREFIX.length() + 1;
+        int end = topic == null || topic.length() <= start || !topic.startsWith(TOPIC_PREFIX) || topic.charAt(start - 1) != '/'
+                ? -1 : topic.indexOf('/', start);
+        if (end <= start || end == topic.length() - 1 || topic.indexOf('/', end + 1) >= 0) {
+            throw new IllegalArgumentException(StrUtil.format("无效的设备主题:{}", topic));
+        }
+
+        DeviceTopicEnum deviceTopic = match(topic, end + 1, topic.length());
+        if (deviceTopic == null) {
+            throw new IllegalArgumentException(StrUtil.format("无效的 DeviceTopicEnum 值：{}", topic));
+        }
 
-        DeviceClientDTO deviceClient = DeviceClientDTO.parse(parts.get(0));
-        DeviceTopicEnum deviceTopic = DeviceTopicEnum.parse(parts.get(1));
+        if (context.getClient() == null) {
+            context.setClient(DeviceClientDTO.builder().build());
+        }
+        DeviceClientDTO.parse(topic, start, end, context.getClient());
+        context.setTopic(deviceTopic);
+        return context;
+    }
 
-        return DeviceTopicContext.builder()
-                .client(deviceClient)
-                .topic(deviceTopic)
-                .build();
+    private static DeviceTopicEnum match(String topic, int start, int end) {
+        int mask = SUFFIX_TABLE.length - 1;
+        for (int index = hash(topic, start, end) & mask; SUFFIX_TABLE[index] != null; index = (index + 1) & mask) {
+            DeviceTopicEnum value = SUFFIX_TABLE[index];
+            if (value.topic.length() == end - start && value.topic.regionMatches(true, 0, topic, start, end - start)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static int hash(String value, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(value.charAt(i));
+        }
+        return h ^ (h >>> 16);
     }
 
     @Data
     @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class DeviceTopicContext {
         /**
          * 设备客户端信息
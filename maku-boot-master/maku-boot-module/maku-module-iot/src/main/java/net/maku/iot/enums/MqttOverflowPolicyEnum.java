@@ -0,0 +1,23 @@
+package net.maku.iot.enums;
+
+/**
+ * MQTT 消息分区队列满时的处理策略
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public enum MqttOverflowPolicyEnum {
+    /**
+     * 阻塞 MQTT 回调线程，直到队列有空位，由 Broker 端的流控限制设备上报速度
+     */
+    BLOCK,
+
+    /**
+     * 丢弃分区中最早的消息
+     */
+    DROP_OLDEST,
+
+    /**
+     * 溢出到 Redis 列表，队列处理完后再处理溢出的消息
+     */
+    SPILL
+}
@@ -0,0 +1,46 @@
+package net.maku.iot.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * 遥测数据精度，从细到粗排列
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Getter
+@RequiredArgsConstructor
+public enum TelemetryResolutionEnum {
+    /**
+     * 原始数据
+     */
+    RAW("iot_device_telemetry", "report_time", Duration.ZERO),
+
+    /**
+     * 按分钟统计
+     */
+    MINUTE("iot_device_telemetry_1m", "bucket_time", Duration.ofMinutes(1)),
+
+    /**
+     * 按小时统计
+     */
+    HOUR("iot_device_telemetry_1h", "bucket_time", Duration.ofHours(1));
+
+    /**
+     * 表名
+     */
+    private final String table;
+
+    /**
+     * 分区的时间字段
+     */
+    private final String timeColumn;
+
+    /**
+     * 统计间隔
+     */
+    private final Duration step;
+
+}
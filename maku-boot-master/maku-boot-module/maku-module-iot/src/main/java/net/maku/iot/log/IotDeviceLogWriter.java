@@ -0,0 +1,102 @@
+package net.maku.iot.log;
+
+import com.baomidou.mybatisplus.extension.toolkit.Db;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import net.maku.framework.common.utils.BatchLogWriter;
+import net.maku.framework.mybatis.handler.FieldMetaObjectHandler;
+import net.maku.iot.entity.IotDeviceEventLogEntity;
+import net.maku.iot.entity.IotDeviceServiceLogEntity;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.vo.IotLogWriterStatsVO;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 设备事件日志、设备服务日志批量写入，MQTT 消息处理线程只负责入队
+ * <p>
+ * 使用 JDBC 批量插入，MySQL 需在连接参数中开启 rewriteBatchedStatements=true，合并为多行 INSERT
+ * <p>
+ * 写入线程中没有登录用户，创建者、创建时间在入队时填充；
+ * 停止时在 SmartLifecycle 阶段写入剩余日志，此时数据源还未关闭，停止后的日志直接写入
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Component
+@RequiredArgsConstructor
+public class IotDeviceLogWriter implements SmartLifecycle {
+    private final MqttConfig mqttConfig;
+
+    private BatchLogWriter<IotDeviceEventLogEntity> eventLogWriter;
+    private BatchLogWriter<IotDeviceServiceLogEntity> serviceLogWriter;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        MqttConfig.LogWriter config = mqttConfig.getLogWriter();
+        eventLogWriter = new BatchLogWriter<>("event", config.getBatchSize(), config.getFlushInterval(),
+                config.getQueueCapacity(), config.getOverflowPolicy(), list -> FieldMetaObjectHandler.insertPrefilled(() -> Db.saveBatch(list, config.getBatchSize())));
+        serviceLogWriter = new BatchLogWriter<>("service", config.getBatchSize(), config.getFlushInterval(),
+                config.getQueueCapacity(), config.getOverflowPolicy(), list -> FieldMetaObjectHandler.insertPrefilled(() -> Db.saveBatch(list, config.getBatchSize())));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * 停止时写入队列中的所有日志
+     */
+    @Override
+    public void stop() {
+        running = false;
+        eventLogWriter.close(mqttConfig.getLogWriter().getShutdownTimeout());
+        serviceLogWriter.close(mqttConfig.getLogWriter().getShutdownTimeout());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在 MQTT 接收（默认阶段 Integer.MAX_VALUE / 2）和 Web 服务器停止之后停止
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    public void writeEventLog(IotDeviceEventLogEntity eventLog) {
+        FieldMetaObjectHandler.prefill(eventLog);
+        eventLogWriter.add(eventLog);
+    }
+
+    public void writeServiceLog(IotDeviceServiceLogEntity serviceLog) {
+        FieldMetaObjectHandler.prefill(serviceLog);
+        serviceLogWriter.add(serviceLog);
+    }
+
+    public void writeServiceLogs(List<IotDeviceServiceLogEntity> serviceLogs) {
+        serviceLogs.forEach(FieldMetaObjectHandler::prefill);
+        serviceLogWriter.addAll(serviceLogs);
+    }
+
+    public List<IotLogWriterStatsVO> getStats() {
+        return List.of(getStats(eventLogWriter), getStats(serviceLogWriter));
+    }
+
+    public static IotLogWriterStatsVO getStats(BatchLogWriter<?> writer) {
+        IotLogWriterStatsVO stats = new IotLogWriterStatsVO();
+        stats.setName(writer.getName());
+        stats.setQueued(writer.getQueued());
+        stats.setWritten(writer.getWritten());
+        stats.setBatches(writer.getBatches());
+        stats.setFailed(writer.getFailed());
+        stats.setDropped(writer.getDropped());
+        return stats;
+    }
+}
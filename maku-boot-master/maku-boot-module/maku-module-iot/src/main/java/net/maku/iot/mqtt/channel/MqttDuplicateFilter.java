@@ -0,0 +1,60 @@
+package net.maku.iot.mqtt.channel;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QoS 1 重发消息去重，只在当前节点内去重
+ * <p>
+ * 记录最近收到的消息（主题、消息ID、内容），只丢弃带有重发标记且已收到过的消息，
+ * 设备正常发送的相同内容不受影响
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+public class MqttDuplicateFilter {
+    private final LRUCache<String, Boolean> recent;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * @param capacity 记录的消息数量
+     * @param window   记录的时间，单位毫秒
+     */
+    public MqttDuplicateFilter(int capacity, long window) {
+        this.recent = CacheUtil.newLRUCache(capacity, window);
+    }
+
+    /**
+     * 是否为已处理过的重发消息
+     */
+    public boolean isDuplicate(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        Integer id = headers.get(MqttHeaders.ID, Integer.class);
+        if (id == null) {
+            return false;
+        }
+
+        String key = headers.get(MqttHeaders.RECEIVED_TOPIC) + ":" + id + ":" + message.getPayload().hashCode();
+        if (Boolean.TRUE.equals(headers.get(MqttHeaders.DUPLICATE, Boolean.class)) && recent.containsKey(key)) {
+            long count = duplicates.incrementAndGet();
+            log.debug("丢弃重发的消息，主题：{}，消息ID：{}，累计丢弃：{}", headers.get(MqttHeaders.RECEIVED_TOPIC), id, count);
+            return true;
+        }
+
+        recent.put(key, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * 已丢弃的重发消息数量
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+}
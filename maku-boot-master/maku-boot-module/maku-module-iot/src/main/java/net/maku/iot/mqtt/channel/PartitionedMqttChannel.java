@@ -0,0 +1,395 @@
+package net.maku.iot.mqtt.channel;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.iot.enums.MqttOverflowPolicyEnum;
+import net.maku.iot.mqtt.dto.MqttSpillMessageDTO;
+import net.maku.iot.vo.MqttPartitionStatsVO;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.AbstractDispatcher;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 分区 MQTT 消息通道，按分区键（设备）哈希到固定的分区，每个分区一个处理线程，
+ * 同一设备的消息按顺序处理，不同设备的消息并行处理，慢设备不会阻塞其他设备的消息
+ * <p>
+ * 溢出到 Redis 的消息按节点ID区分，共享订阅时各节点只处理自己溢出的消息；
+ * 停止时先处理完队列中已确认的消息，超时未处理完的写入 Redis，节点以相同的节点ID重启后继续处理
+ * <p>
+ * 处理线程在 SmartLifecycle 阶段启动和停止：消息处理器订阅通道（Integer.MIN_VALUE）之后启动，
+ * MQTT 接收（Integer.MAX_VALUE / 2）停止之后、日志写入（0）停止之前处理完队列
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+public class PartitionedMqttChannel extends AbstractSubscribableChannel implements SmartLifecycle {
+    /**
+     * 溢出消息的 Redis key 前缀，后接 节点ID:分区
+     */
+    private static final String SPILL_KEY = "iot:mqtt:spill:";
+
+    /**
+     * 停止时等待处理线程退出的时间，单位毫秒
+     */
+    private static final long JOIN_TIMEOUT = 1000;
+
+    private final PartitionedDispatcher dispatcher = new PartitionedDispatcher();
+    private final Partition[] partitions;
+    private final Function<Message<?>, Object> partitionKeyFunction;
+    private final MqttOverflowPolicyEnum overflowPolicy;
+    private final RedisCache redisCache;
+    private final String instanceId;
+    private final long shutdownTimeout;
+    private volatile boolean running = false;
+
+    /**
+     * 停止中或已停止，不再处理溢出的消息，队列处理完后线程退出
+     */
+    private volatile boolean stopping = false;
+
+    /**
+     * @param partitionCount       分区数量，即处理线程数量
+     * @param queueCapacity        每个分区的队列容量
+     * @param overflowPolicy       队列满时的处理策略
+     * @param partitionKeyFunction 分区键，如设备 clientId
+     * @param redisCache           溢出策略为 SPILL 及停止时未处理完的消息使用
+     * @param instanceId           节点ID，区分各节点溢出的消息
+     * @param shutdownTimeout      停止时等待队列处理完成的时间，单位毫秒
+     */
+    public PartitionedMqttChannel(int partitionCount, int queueCapacity, MqttOverflowPolicyEnum overflowPolicy,
+                                  Function<Message<?>, Object> partitionKeyFunction, RedisCache redisCache,
+                                  String instanceId, long shutdownTimeout) {
+        this.partitionKeyFunction = partitionKeyFunction;
+        this.overflowPolicy = overflowPolicy;
+        this.redisCache = redisCache;
+        this.instanceId = instanceId;
+        this.shutdownTimeout = shutdownTimeout;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+        }
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * 获取各分区的统计信息
+     */
+    public List<MqttPartitionStatsVO> getStats() {
+        List<MqttPartitionStatsVO> list = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            list.add(partition.getStats());
+        }
+        return list;
+    }
+
+    /**
+     * 消息处理器已订阅通道，启动处理线程，先处理上次停止时溢出和未处理完的消息
+     */
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        stopping = false;
+        running = true;
+        for (Partition partition : partitions) {
+            partition.start();
+        }
+    }
+
+    /**
+     * 停止时队列中的消息已向 MQTT 服务器确认，先等待处理完成，超时未处理完的写入 Redis，避免重新部署时丢失
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        stopping = true;
+        try {
+            long deadline = System.currentTimeMillis() + shutdownTimeout;
+            for (Partition partition : partitions) {
+                partition.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        running = false;
+        for (Partition partition : partitions) {
+            partition.interrupt();
+            partition.spillRemaining();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在消息处理器订阅之后启动，在 MQTT 接收停止之后、日志写入停止之前停止
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE / 4;
+    }
+
+    private Partition getPartition(Message<?> message) {
+        Object key = partitionKeyFunction.apply(message);
+        int hash = key == null ? 0 : key.hashCode();
+        // 打散哈希值的高位，避免 clientId 相近时集中在少数分区
+        hash ^= (hash >>> 16);
+        return partitions[Math.floorMod(hash, partitions.length)];
+    }
+
+    /**
+     * 按分区分发消息
+     */
+    private class PartitionedDispatcher extends AbstractDispatcher {
+        @Override
+        public boolean dispatch(Message<?> message) {
+            return getPartition(message).offer(new Entry(message, System.currentTimeMillis()));
+        }
+
+        private void handle(Message<?> message) {
+            if (tryOptimizedDispatch(message)) {
+                return;
+            }
+            for (MessageHandler handler : getHandlers()) {
+                handler.handleMessage(message);
+                return;
+            }
+            // 没有消息处理器，作为处理失败记录，不能静默丢弃
+            throw new MessageDeliveryException(message, "MQTT 通道没有订阅的消息处理器");
+        }
+    }
+
+    private record Entry(Message<?> message, long receivedTime) {
+    }
+
+    /**
+     * 分区，一个有界队列和一个处理线程，处理线程在通道启动时创建
+     */
+    private class Partition implements Runnable {
+        private final int index;
+        private final BlockingQueue<Entry> queue;
+        private final String spillKey;
+
+        /**
+         * 溢出到 Redis 的消息数，大于0时新消息也写入 Redis，保证同一分区的消息顺序
+         */
+        private final AtomicLong spilled = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long lastLatency;
+        private Thread thread;
+
+        Partition(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.spillKey = SPILL_KEY + instanceId + ":" + index;
+        }
+
+        void start() {
+            thread = new Thread(this, "mqtt-partition-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void join(long millis) throws InterruptedException {
+            thread.join(millis);
+        }
+
+        /**
+         * 超时未退出的处理线程，中断后等待退出
+         */
+        void interrupt() {
+            if (!thread.isAlive()) {
+                return;
+            }
+            thread.interrupt();
+            try {
+                thread.join(JOIN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 消息入队，由 MQTT 回调线程调用
+         */
+        boolean offer(Entry entry) {
+            if (!running && stopping) {
+                // 已停止，没有处理线程，写入 Redis 等待重启后处理；启动前的消息入队，启动后处理
+                return spill(entry);
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    while (!queue.offer(entry)) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+                case SPILL -> {
+                    if (spilled.get() > 0 || !queue.offer(entry)) {
+                        spill(entry);
+                        spilled.incrementAndGet();
+                    }
+                }
+                default -> {
+                    try {
+                        queue.put(entry);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            // 处理上次停止时溢出和未处理完的消息
+            Entry spill;
+            while (running && !stopping && (spill = popSpill()) != null) {
+                handle(spill);
+            }
+
+            while (running) {
+                try {
+                    Entry entry = queue.poll();
+                    if (entry == null && stopping) {
+                        // 停止中，队列已处理完，溢出的消息留在 Redis 中
+                        return;
+                    }
+                    long count = spilled.get();
+                    if (entry == null && count > 0) {
+                        entry = popSpill();
+                        if (entry != null) {
+                            spilled.decrementAndGet();
+                        } else {
+                            // Redis 中已没有溢出消息（如启动时已处理），重置计数
+                            spilled.compareAndSet(count, 0);
+                        }
+                    }
+                    if (entry == null) {
+                        entry = queue.poll(1, TimeUnit.SECONDS);
+                    }
+                    if (entry != null) {
+                        handle(entry);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("MQTT 分区 {} 读取消息失败", index, e);
+                }
+            }
+        }
+
+        private void handle(Entry entry) {
+            lastLatency = System.currentTimeMillis() - entry.receivedTime();
+            try {
+                dispatcher.handle(entry.message());
+                processed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("MQTT 分区 {} 处理消息失败，主题：{}", index, entry.message().getHeaders().get(MqttHeaders.RECEIVED_TOPIC), e);
+            }
+        }
+
+        /**
+         * 停止时把队列中未处理的消息写入 Redis
+         */
+        void spillRemaining() {
+            List<Entry> remaining = new ArrayList<>(queue.size());
+            queue.drainTo(remaining);
+            for (Entry entry : remaining) {
+                spill(entry);
+            }
+            if (!remaining.isEmpty()) {
+                log.warn("MQTT 分区 {} 停止时未处理完的 {} 条消息已写入 Redis：{}", index, remaining.size(), spillKey);
+            }
+        }
+
+        /**
+         * 写入 Redis，保留 MQTT 消息头，重新处理时与原消息一致
+         */
+        private boolean spill(Entry entry) {
+            if (redisCache == null) {
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            Message<?> message = entry.message();
+            MessageHeaders headers = message.getHeaders();
+            MqttSpillMessageDTO spill = new MqttSpillMessageDTO();
+            spill.setTopic(headers.get(MqttHeaders.RECEIVED_TOPIC, String.class));
+            spill.setQos(headers.get(MqttHeaders.RECEIVED_QOS, Integer.class));
+            spill.setRetained(headers.get(MqttHeaders.RECEIVED_RETAINED, Boolean.class));
+            spill.setDuplicate(headers.get(MqttHeaders.DUPLICATE, Boolean.class));
+            spill.setMessageId(headers.get(MqttHeaders.ID, Integer.class));
+            spill.setPayload(String.valueOf(message.getPayload()));
+            spill.setReceivedTime(entry.receivedTime());
+            redisCache.leftPush(spillKey, spill);
+            return true;
+        }
+
+        private Entry popSpill() {
+            if (redisCache == null) {
+                return null;
+            }
+            MqttSpillMessageDTO spill = (MqttSpillMessageDTO) redisCache.rightPop(spillKey);
+            if (spill == null) {
+                return null;
+            }
+
+            Message<String> message = MessageBuilder.withPayload(spill.getPayload())
+                    .setHeader(MqttHeaders.RECEIVED_TOPIC, spill.getTopic())
+                    .setHeader(MqttHeaders.RECEIVED_QOS, spill.getQos())
+                    .setHeader(MqttHeaders.RECEIVED_RETAINED, spill.getRetained())
+                    .setHeader(MqttHeaders.DUPLICATE, spill.getDuplicate())
+                    .setHeader(MqttHeaders.ID, spill.getMessageId())
+                    .build();
+            return new Entry(message, spill.getReceivedTime());
+        }
+
+        MqttPartitionStatsVO getStats() {
+            Entry head = queue.peek();
+            MqttPartitionStatsVO stats = new MqttPartitionStatsVO();
+            stats.setPartition(index);
+            stats.setQueued(queue.size());
+            stats.setSpilled(Math.max(0, spilled.get()));
+            stats.setLagMillis(head == null ? 0 : System.currentTimeMillis() - head.receivedTime());
+            stats.setLastLatencyMillis(lastLatency);
+            stats.setProcessed(processed.get());
+            stats.setFailed(failed.get());
+            stats.setDropped(dropped.get());
+            return stats;
+        }
+    }
+}
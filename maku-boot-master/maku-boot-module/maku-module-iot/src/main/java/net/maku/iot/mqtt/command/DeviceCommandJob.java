@@ -0,0 +1,102 @@
+package net.maku.iot.mqtt.command;
+
+import lombok.Getter;
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import net.maku.iot.vo.DeviceCommandJobVO;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量指令任务，汇总各设备的发送结果和响应结果，由发送节点定时同步到 Redis，任意节点可查询
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceCommandJob {
+    @Getter
+    private final String jobId;
+    private final DeviceCommandEnum command;
+    private final int total;
+    private final Long creator;
+    private final Long tenantId;
+    private final LocalDateTime createTime = LocalDateTime.now();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger timeout = new AtomicInteger();
+    private volatile LocalDateTime finishTime;
+
+    public DeviceCommandJob(String jobId, DeviceCommandEnum command, int total, Long creator, Long tenantId) {
+        this.jobId = jobId;
+        this.command = command;
+        this.total = total;
+        this.creator = creator;
+        this.tenantId = tenantId;
+        if (total == 0) {
+            finishTime = createTime;
+        }
+    }
+
+    /**
+     * 命令已发送到设备
+     */
+    public void sent() {
+        sent.incrementAndGet();
+    }
+
+    /**
+     * 命令发送失败
+     */
+    public void sendFailed() {
+        failed.incrementAndGet();
+        checkFinished();
+    }
+
+    /**
+     * 设备响应或超时，响应状态码非0视为执行失败
+     */
+    public void replied(DeviceCommandResponseDTO response, Throwable e) {
+        if (e == null) {
+            (Integer.valueOf(0).equals(response.getStatusCode()) ? succeeded : failed).incrementAndGet();
+        } else if (isTimeout(e)) {
+            timeout.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+        checkFinished();
+    }
+
+    public boolean isFinished() {
+        return finishTime != null;
+    }
+
+    public DeviceCommandJobVO toVO() {
+        DeviceCommandJobVO vo = new DeviceCommandJobVO();
+        vo.setJobId(jobId);
+        vo.setCommand(command.name());
+        vo.setTotal(total);
+        vo.setSent(sent.get());
+        vo.setSucceeded(succeeded.get());
+        vo.setFailed(failed.get());
+        vo.setTimeout(timeout.get());
+        vo.setFinished(finishTime != null);
+        vo.setCreator(creator);
+        vo.setTenantId(tenantId);
+        vo.setCreateTime(createTime);
+        vo.setFinishTime(finishTime);
+        return vo;
+    }
+
+    private void checkFinished() {
+        if (succeeded.get() + failed.get() + timeout.get() >= total && finishTime == null) {
+            finishTime = LocalDateTime.now();
+        }
+    }
+
+    private boolean isTimeout(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof DeviceCommandTimeoutException;
+    }
+}
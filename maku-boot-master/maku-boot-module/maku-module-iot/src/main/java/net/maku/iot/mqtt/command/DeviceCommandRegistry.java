@@ -0,0 +1,224 @@
+package net.maku.iot.mqtt.command;
+
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.enums.DeviceServiceEnum;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import net.maku.iot.vo.MqttCommandStatsVO;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 设备命令响应等待，命令发送前登记，设备响应时完成，超时由时间轮触发，都不占用等待线程
+ * <p>
+ * 等待中的命令数量有上限，超时后到达的响应和重复的响应只计数并丢弃
+ * <p>
+ * 开启共享订阅时，响应可能由其他节点收到，本节点没有等待该响应的命令时通过 relay 转发给所有节点，由发送命令的节点完成
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceCommandRegistry {
+    /**
+     * 记录最近结束的命令数量，用于区分超时后到达的响应和重复的响应
+     */
+    private static final int RECENT_CAPACITY = 4096;
+
+    private final MqttConfig mqttConfig;
+
+    /**
+     * 等待响应的命令，key: command id
+     */
+    private final Map<String, PendingCommand> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * 最近结束的命令，value: true 已响应，false 已超时
+     */
+    private final Map<String, Boolean> recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_CAPACITY;
+        }
+    });
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timeout = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong duplicate = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ExecutorService executor;
+    private HashedWheelTimer timer;
+
+    /**
+     * 转发本节点找不到等待命令的响应，未开启共享订阅时为空
+     */
+    private volatile Consumer<DeviceCommandResponseDTO> relay;
+
+    @PostConstruct
+    public void init() {
+        // 执行超时回调和后续处理，如记录命令超时事件
+        executor = ExecutorBuilder.create()
+                .setCorePoolSize(2)
+                .setMaxPoolSize(2)
+                .setWorkQueue(new LinkedBlockingQueue<>(1024))
+                .setThreadFactory(ThreadUtil.newNamedThreadFactory("iot-command-", true))
+                .setHandler(new ThreadPoolExecutor.CallerRunsPolicy())
+                .build();
+        timer = new HashedWheelTimer("iot-command-timer", 100, 512, executor);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.stop();
+        pending.keySet().forEach(commandId -> cancel(commandId, new ServerException("服务已停止")));
+        executor.shutdown();
+    }
+
+    /**
+     * 登记等待响应的命令，需要在发送命令前调用，避免响应先于登记到达
+     *
+     * @return 设备响应时完成，超时后以 DeviceCommandTimeoutException 异常完成
+     */
+    public CompletableFuture<DeviceCommandResponseDTO> register(String commandId, DeviceCommandEnum command) {
+        if (pendingCount.incrementAndGet() > mqttConfig.getCommand().getMaxPending()) {
+            pendingCount.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new ServerException("等待设备响应的命令过多，请稍后重试");
+        }
+
+        CompletableFuture<DeviceCommandResponseDTO> future = new CompletableFuture<>();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> expire(commandId, command),
+                mqttConfig.getCommand().getTimeout(), TimeUnit.MILLISECONDS);
+        pending.put(commandId, new PendingCommand(future, timeout));
+        return future;
+    }
+
+    /**
+     * 取消等待，如命令发送失败
+     */
+    public void cancel(String commandId, Throwable cause) {
+        PendingCommand command = pending.remove(commandId);
+        if (command != null) {
+            pendingCount.decrementAndGet();
+            command.timeout().cancel();
+            command.future().completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 设置响应转发，本节点找不到等待命令时转发给其他节点
+     */
+    public void setRelay(Consumer<DeviceCommandResponseDTO> relay) {
+        this.relay = relay;
+    }
+
+    /**
+     * 设备响应命令，命令未完成时继续等待
+     *
+     * @return 是否有等待该响应的命令
+     */
+    public boolean complete(DeviceCommandResponseDTO response) {
+        return complete(response, false);
+    }
+
+    /**
+     * 其他节点转发的响应，本节点没有发送过该命令时直接忽略
+     *
+     * @return 是否有等待该响应的命令
+     */
+    public boolean completeRelayed(DeviceCommandResponseDTO response) {
+        return complete(response, true);
+    }
+
+    private boolean complete(DeviceCommandResponseDTO response, boolean relayed) {
+        String commandId = response.getCommandId();
+        if (!response.isCompleted()) {
+            log.info("命令ID为'{}'的响应未完成，继续等待", commandId);
+            return pending.containsKey(commandId);
+        }
+
+        PendingCommand command = pending.remove(commandId);
+        if (command == null) {
+            Boolean replied = recent.get(commandId);
+            Consumer<DeviceCommandResponseDTO> relay = this.relay;
+            if (replied == null && relayed) {
+                // 其他节点发送的命令
+                return false;
+            } else if (replied == null && relay != null) {
+                relay.accept(response);
+            } else if (replied == null) {
+                unknown.incrementAndGet();
+                log.warn("找不到命令ID为'{}'的等待命令，丢弃响应", commandId);
+            } else if (replied) {
+                duplicate.incrementAndGet();
+                log.warn("命令ID为'{}'的重复响应，丢弃响应", commandId);
+            } else {
+                late.incrementAndGet();
+                log.warn("命令ID为'{}'的响应在超时后到达，丢弃响应", commandId);
+            }
+            return false;
+        }
+
+        pendingCount.decrementAndGet();
+        command.timeout().cancel();
+        recent.put(commandId, Boolean.TRUE);
+        completed.incrementAndGet();
+        command.future().complete(response);
+        return true;
+    }
+
+    /**
+     * 延迟执行任务，使用命令超时的时间轮
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        timer.newTimeout(task, delay, unit);
+    }
+
+    public MqttCommandStatsVO getStats() {
+        MqttCommandStatsVO stats = new MqttCommandStatsVO();
+        stats.setPending(pendingCount.get());
+        stats.setCompleted(completed.get());
+        stats.setTimeout(timeout.get());
+        stats.setLate(late.get());
+        stats.setDuplicate(duplicate.get());
+        stats.setUnknown(unknown.get());
+        stats.setRejected(rejected.get());
+        return stats;
+    }
+
+    private void expire(String commandId, DeviceCommandEnum command) {
+        PendingCommand pendingCommand = pending.remove(commandId);
+        if (pendingCommand == null) {
+            return;
+        }
+
+        pendingCount.decrementAndGet();
+        recent.put(commandId, Boolean.FALSE);
+        timeout.incrementAndGet();
+        pendingCommand.future().completeExceptionally(new DeviceCommandTimeoutException(StrUtil.format("{} <{}>,{} 命令超时",
+                DeviceServiceEnum.COMMAND_ID.getValue(), commandId, command.getTitle())));
+    }
+
+    private record PendingCommand(CompletableFuture<DeviceCommandResponseDTO> future, HashedWheelTimer.Timeout timeout) {
+    }
+}
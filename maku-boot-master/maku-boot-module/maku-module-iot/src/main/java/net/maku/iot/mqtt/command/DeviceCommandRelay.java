@@ -0,0 +1,69 @@
+package net.maku.iot.mqtt.command;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备命令响应转发，开启共享订阅时，响应由 MQTT 服务器分配给任意节点，
+ * 收到响应的节点找不到等待命令时通过 Redis 发布，发送命令的节点订阅后完成等待
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceCommandRelay {
+    private static final String CHANNEL = "iot:command:response";
+
+    private final MqttConfig mqttConfig;
+    private final DeviceCommandRegistry deviceCommandRegistry;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private RedisMessageListenerContainer container;
+
+    @PostConstruct
+    public void init() {
+        if (!mqttConfig.getSubscription().isShared()) {
+            return;
+        }
+
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+        container.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        deviceCommandRegistry.setRelay(this::publish);
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (container != null) {
+            deviceCommandRegistry.setRelay(null);
+            container.destroy();
+        }
+    }
+
+    private void publish(DeviceCommandResponseDTO response) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, response);
+        } catch (Exception e) {
+            log.error("转发命令ID为'{}'的响应失败", response.getCommandId(), e);
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        Object response = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (response instanceof DeviceCommandResponseDTO commandResponse) {
+            deviceCommandRegistry.completeRelayed(commandResponse);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.maku.iot.mqtt.command;
+
+import net.maku.framework.common.exception.ServerException;
+
+/**
+ * 设备命令响应超时
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceCommandTimeoutException extends ServerException {
+    private static final long serialVersionUID = 1L;
+
+    public DeviceCommandTimeoutException(String msg) {
+        super(msg);
+    }
+}
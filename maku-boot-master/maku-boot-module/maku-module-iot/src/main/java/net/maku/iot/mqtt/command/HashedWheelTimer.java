@@ -0,0 +1,171 @@
+package net.maku.iot.mqtt.command;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 时间轮定时器，用于大量短时超时任务，添加和取消都是 O(1)，只占用一个线程
+ * <p>
+ * 超时精度为一个刻度，到期的任务交给 executor 执行，不阻塞时间轮线程
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+public class HashedWheelTimer {
+    private final long tickNanos;
+    private final int mask;
+    private final List<Timeout>[] wheel;
+    private final Executor executor;
+    private final Thread worker;
+    private final long startTime = System.nanoTime();
+
+    /**
+     * 新添加的任务，由时间轮线程放入对应的刻度
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * 当前刻度，只在时间轮线程中访问
+     */
+    private long tick;
+
+    /**
+     * @param name          线程名称
+     * @param tickMillis    每个刻度的时长，单位毫秒
+     * @param ticksPerWheel 刻度数量，会调整为2的幂
+     * @param executor      执行到期任务
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel, Executor executor) {
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 2) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.executor = executor;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加超时任务
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = tickNanos * (tick + 1) - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * 把新添加的任务放入对应的刻度，超过一圈的记录剩余圈数
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        bucket.removeIf(timeout -> {
+            if (timeout.isCancelled()) {
+                return true;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                return false;
+            }
+
+            timeout.expire();
+            return true;
+        });
+    }
+
+    /**
+     * 超时任务
+     */
+    public class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private long remainingRounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务
+         *
+         * @return 任务已到期或已取消时返回 false
+         */
+        public boolean cancel() {
+            return state.compareAndSet(INIT, CANCELLED);
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+
+            try {
+                executor.execute(task);
+            } catch (Exception e) {
+                log.error("执行超时任务失败", e);
+            }
+        }
+    }
+}
@@ -1,27 +1,43 @@
 package net.maku.iot.mqtt.config;
 
+import cn.hutool.core.net.NetUtil;
 import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.framework.common.utils.BatchLogWriter;
 import net.maku.iot.enums.DeviceTopicEnum;
+import net.maku.iot.enums.MqttOverflowPolicyEnum;
+import net.maku.iot.mqtt.channel.MqttDuplicateFilter;
+import net.maku.iot.mqtt.channel.PartitionedMqttChannel;
 import net.maku.iot.mqtt.factory.MqttMessageHandlerFactory;
+import net.maku.iot.mqtt.handler.MqttMessageHandler;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.integration.annotation.IntegrationComponentScan;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.integration.mqtt.inbound.AbstractMqttMessageDrivenChannelAdapter;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.inbound.Mqttv5PahoMessageDrivenChannelAdapter;
 import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
+import org.springframework.integration.mqtt.outbound.Mqttv5PahoMessageHandler;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
+import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
 
 /**
  * MQTT 配置类，用于设置和管理 MQTT 连接和消息处理。
@@ -55,12 +71,49 @@ public class MqttConfig {
     // 默认主题
     private String defaultTopic;
 
+    // MQTT 协议版本：3 使用 MQTT 3.1.1 客户端，5 使用 MQTT 5 客户端
+    private int version = 3;
+
+    // 订阅配置，集群部署时使用共享订阅
+    private Subscription subscription = new Subscription();
+
+    // 接收消息的分区配置
+    private Partition partition = new Partition();
+
+    // 下发命令的响应等待配置
+    private Command command = new Command();
+
+    // 发送消息的配置
+    private Outbound outbound = new Outbound();
+
+    // 设备事件日志、服务日志的批量写入配置
+    private LogWriter logWriter = new LogWriter();
+
+    // 设备遥测数据的写入和保留配置
+    private Telemetry telemetry = new Telemetry();
+
+    // 设备在线状态配置
+    private Presence presence = new Presence();
+
+    // 设备影子配置
+    private Shadow shadow = new Shadow();
+
     // 处理 MQTT 消息的工厂
     private final MqttMessageHandlerFactory mqttMessageHandlerFactory;
 
+    // 消息溢出到 Redis 时使用
+    private final RedisCache redisCache;
+
+    // 未配置节点ID时，用主机名和端口生成
+    private final Environment environment;
+
     @PostConstruct
     public void init() {
-        log.info("MQTT 主机: {} 客户端ID: {} 默认主题：{}", this.hostUrl, this.clientId, this.defaultTopic);
+        // 节点ID在重启后保持不变，才能继续处理上次溢出和停止时未处理完的消息
+        if (!StringUtils.hasText(subscription.getInstanceId())) {
+            subscription.setInstanceId(NetUtil.getLocalHostName() + "_" + environment.getProperty("server.port", "8080"));
+        }
+        log.info("MQTT 主机: {} 客户端ID: {} 默认主题：{} 节点ID：{}", this.hostUrl, this.clientId, this.defaultTopic, subscription.getInstanceId());
     }
 
     /**
@@ -75,6 +128,7 @@ public class MqttConfig {
         options.setServerURIs(new String[]{hostUrl});
         options.setUserName(username);
         options.setPassword(password.toCharArray());
+        options.setMaxInflight(outbound.getMaxInflight());
         final DefaultMqttPahoClientFactory factory = new DefaultMqttPahoClientFactory();
         factory.setConnectionOptions(options);
         return factory;
@@ -90,6 +144,20 @@ public class MqttConfig {
         return new DirectChannel();
     }
 
+    /**
+     * MQTT 5 客户端的连接选项
+     *
+     * @return MqttConnectionOptions
+     */
+    private MqttConnectionOptions mqttv5ConnectionOptions() {
+        final MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setServerURIs(new String[]{hostUrl});
+        options.setUserName(username);
+        options.setPassword(password.getBytes(StandardCharsets.UTF_8));
+        options.setAutomaticReconnect(true);
+        return options;
+    }
+
     /**
      * 配置用于发送 MQTT 消息的 MessageHandler。
      *
@@ -98,8 +166,17 @@ public class MqttConfig {
     @Bean
     @ServiceActivator(inputChannel = OUTBOUND_CHANNEL)
     public MessageHandler mqttOutboundHandler() {
+        if (isVersion5()) {
+            final Mqttv5PahoMessageHandler handler = new Mqttv5PahoMessageHandler(mqttv5ConnectionOptions(), getInstanceClientId("_pub"));
+            handler.setDefaultQos(1);
+            handler.setDefaultRetained(false);
+            handler.setDefaultTopic(defaultTopic);
+            handler.setAsync(true);
+            return handler;
+        }
+
         // 使用 MqttPahoMessageHandler 创建一个新的 MQTT 客户端连接，用于发布消息。
-        final MqttPahoMessageHandler handler = new MqttPahoMessageHandler(clientId + "_pub", mqttClientFactory());
+        final MqttPahoMessageHandler handler = new MqttPahoMessageHandler(getInstanceClientId("_pub"), mqttClientFactory());
         handler.setDefaultQos(1);
         handler.setDefaultRetained(false);
         handler.setDefaultTopic(defaultTopic);
@@ -108,30 +185,48 @@ public class MqttConfig {
     }
 
     /**
-     * 创建用于接收 MQTT 消息的 MessageChannel。
+     * 创建用于接收 MQTT 消息的 MessageChannel，按设备 clientId 分区并行处理，
+     * 同一设备的消息保持顺序，MQTT 回调线程只负责入队。
      *
      * @return MessageChannel
      */
     @Bean
-    public MessageChannel mqttInputChannel() {
-        return new DirectChannel();
+    public PartitionedMqttChannel mqttInputChannel() {
+        return new PartitionedMqttChannel(partition.getCount(), partition.getQueueCapacity(), partition.getOverflowPolicy(),
+                message -> DeviceTopicEnum.getClientId(message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class)),
+                redisCache, subscription.getInstanceId(), partition.getShutdownTimeout());
     }
 
     /**
      * 配置  客户端，订阅的主题，
      * PROPERTY：设备属性上报主题，
-     * COMMAND_RESPONSE：下发指令执行结果主题
+     * COMMAND_RESPONSE：下发指令执行结果主题，
+     * WILL：设备遗嘱主题
+     * <p>
+     * 开启共享订阅时，订阅 $share/{group}/{topic}，同一分组的多个节点由 MQTT 服务器分配消息，每条消息只由一个节点处理
+     * 命令响应可能由未发送该命令的节点收到，由 DeviceCommandRelay 通过 Redis 转发给发送命令的节点
+     * <p>
+     * version 为 5 时使用 MQTT 5 客户端，共享订阅是 MQTT 5 的标准功能
      *
-     * @return MqttPahoMessageDrivenChannelAdapter
+     * @return AbstractMqttMessageDrivenChannelAdapter
      */
     @Bean
     @ConditionalOnProperty(name = "spring.mqtt.mqttEnabled", havingValue = "true")
-    public MqttPahoMessageDrivenChannelAdapter mqttInboundAdapter() {
+    public AbstractMqttMessageDrivenChannelAdapter mqttInboundAdapter() {
+        String[] topics = {getSubscribeTopic(DeviceTopicEnum.PROPERTY),
+                getSubscribeTopic(DeviceTopicEnum.COMMAND_RESPONSE), getSubscribeTopic(DeviceTopicEnum.WILL)};
+        if (isVersion5()) {
+            final Mqttv5PahoMessageDrivenChannelAdapter adapter = new Mqttv5PahoMessageDrivenChannelAdapter(
+                    mqttv5ConnectionOptions(), getInstanceClientId("_sub"), topics);
+            adapter.setCompletionTimeout(15000);
+            adapter.setPayloadType(String.class);
+            adapter.setQos(1);
+            adapter.setOutputChannel(mqttInputChannel());
+            return adapter;
+        }
+
         final MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
-                clientId + "_sub",
-                mqttClientFactory(), DeviceTopicEnum.PROPERTY.getWildcard(),
-                DeviceTopicEnum.COMMAND_RESPONSE.getWildcard()
-        );
+                getInstanceClientId("_sub"), mqttClientFactory(), topics);
         adapter.setCompletionTimeout(15000);
         adapter.setConverter(new DefaultPahoMessageConverter());
         adapter.setQos(1);
@@ -147,18 +242,201 @@ public class MqttConfig {
     @Bean
     @ServiceActivator(inputChannel = INPUT_CHANNEL)
     public MessageHandler mqttMessageHandler() {
+        final MqttDuplicateFilter duplicateFilter = new MqttDuplicateFilter(subscription.getDedupCapacity(), subscription.getDedupWindow());
         return message -> {
-            String topic = (String) message.getHeaders().get("mqtt_receivedTopic");
+            String topic = message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class);
+            if (duplicateFilter.isDuplicate(message)) {
+                return;
+            }
             if (topic != null) {
-                mqttMessageHandlerFactory.getHandlersForTopic(topic).forEach(handler -> {
+                for (MqttMessageHandler handler : mqttMessageHandlerFactory.getHandlers(topic)) {
                     if (log.isDebugEnabled()) {
                         log.debug("主题: {}, 消息内容: {}", topic, message.getPayload());
                     }
                     handler.handle(topic, message.getPayload().toString());
-                });
+                }
             } else {
                 log.warn("接收到主题为null的消息。");
             }
         };
     }
+
+    /**
+     * 订阅的主题，开启共享订阅时添加 $share/{group}/ 前缀，设备主题以 / 开头，前缀后保留原主题的空层级
+     */
+    private String getSubscribeTopic(DeviceTopicEnum deviceTopic) {
+        if (!subscription.isShared()) {
+            return deviceTopic.getWildcard();
+        }
+        return "$share/" + subscription.getGroup() + "/" + deviceTopic.getWildcard();
+    }
+
+    private boolean isVersion5() {
+        return version == 5;
+    }
+
+    /**
+     * 客户端 ID，开启共享订阅时多个节点同时连接，添加节点ID避免客户端 ID 冲突
+     */
+    private String getInstanceClientId(String suffix) {
+        return subscription.isShared() ? clientId + suffix + "_" + subscription.getInstanceId() : clientId + suffix;
+    }
+
+    /**
+     * 订阅配置
+     */
+    @Data
+    public static class Subscription {
+        // 是否使用共享订阅，集群部署时开启，每条消息只由分组内的一个节点处理
+        private boolean shared = false;
+
+        // 共享订阅分组名称
+        private String group = "maku";
+
+        // 节点ID，用于区分各节点的客户端 ID 和溢出到 Redis 的消息，默认为 主机名_端口，重启后保持不变；
+        // 容器部署时主机名会变化，应为每个节点配置固定值，节点重启后才能继续处理上次溢出和停止时未处理完的消息
+        private String instanceId;
+
+        // QoS 1 重发消息去重记录的消息数量
+        private int dedupCapacity = 10000;
+
+        // QoS 1 重发消息去重记录的时间，单位毫秒
+        private long dedupWindow = 60000;
+    }
+
+    /**
+     * 接收消息的分区配置
+     */
+    @Data
+    public static class Partition {
+        // 分区数量，即处理线程数量
+        private int count = Runtime.getRuntime().availableProcessors() * 2;
+
+        // 每个分区的队列容量
+        private int queueCapacity = 1024;
+
+        // 队列满时的处理策略：BLOCK、DROP_OLDEST、SPILL
+        private MqttOverflowPolicyEnum overflowPolicy = MqttOverflowPolicyEnum.BLOCK;
+
+        // 停止时等待队列处理完成的时间，超时未处理完的消息写入 Redis，单位毫秒
+        private long shutdownTimeout = 10000;
+    }
+
+    /**
+     * 下发命令的响应等待配置
+     */
+    @Data
+    public static class Command {
+        // 等待设备响应的超时时间，单位毫秒
+        private long timeout = 10000;
+
+        // 同时等待响应的命令数量上限
+        private int maxPending = 10000;
+    }
+
+    /**
+     * 发送消息的配置
+     */
+    @Data
+    public static class Outbound {
+        // 批量下发命令的发送线程数量
+        private int threads = 4;
+
+        // 每个 MQTT 连接未确认的 QoS 1 消息数量上限，达到上限时批量下发等待后重试
+        private int maxInflight = 100;
+    }
+
+    /**
+     * 设备事件日志、服务日志的批量写入配置
+     */
+    @Data
+    public static class LogWriter {
+        // 每批写入的最大数量
+        private int batchSize = 500;
+
+        // 最长写入间隔，单位毫秒
+        private long flushInterval = 1000;
+
+        // 等待写入的队列容量
+        private int queueCapacity = 10000;
+
+        // 队列满时的处理策略：BLOCK、DROP、CALLER_RUNS
+        private BatchLogWriter.OverflowPolicy overflowPolicy = BatchLogWriter.OverflowPolicy.CALLER_RUNS;
+
+        // 停止时等待写入完成的时间，单位毫秒
+        private long shutdownTimeout = 10000;
+    }
+
+    /**
+     * 设备遥测数据的写入和保留配置
+     */
+    @Data
+    public static class Telemetry {
+        // 是否保存遥测数据
+        private boolean enabled = true;
+
+        // 每批写入的最大数量
+        private int batchSize = 1000;
+
+        // 最长写入间隔，单位毫秒
+        private long flushInterval = 1000;
+
+        // 等待写入的队列容量
+        private int queueCapacity = 20000;
+
+        // 队列满时的处理策略，遥测数据默认丢弃，不阻塞消息处理
+        private BatchLogWriter.OverflowPolicy overflowPolicy = BatchLogWriter.OverflowPolicy.DROP;
+
+        // 统计时重新计算的分钟数，用于包含延迟写入的数据
+        private int rollupLateness = 2;
+
+        // 提前创建的分区天数
+        private int partitionAheadDays = 3;
+
+        // 原始数据保留天数
+        private int rawRetentionDays = 7;
+
+        // 分钟统计数据保留天数
+        private int minuteRetentionDays = 90;
+
+        // 小时统计数据保留天数
+        private int hourRetentionDays = 730;
+    }
+
+    /**
+     * 设备在线状态配置
+     */
+    @Data
+    public static class Presence {
+        // 心跳超时时间，超过该时间未上报任何消息的设备改为离线，单位毫秒
+        private long heartbeatTimeout = 90000;
+
+        // 同一设备上报消息时，最后活跃时间写入 Redis 的最短间隔，单位毫秒
+        private long touchInterval = 5000;
+
+        // 检查心跳超时的间隔，单位毫秒
+        private long sweepInterval = 1000;
+    }
+
+    /**
+     * 设备影子配置
+     */
+    @Data
+    public static class Shadow {
+        // 写入数据库的间隔，单位毫秒
+        private long flushInterval = 2000;
+
+        // 每批写入的设备数量
+        private int batchSize = 500;
+
+        // 缓存的设备数量上限，超过时淘汰最久未访问的设备
+        private long maxSize = 100000;
+
+        // 超过该时间未访问的设备影子从缓存中移除，单位毫秒
+        private long idleTimeout = 600000;
+
+        // 设备影子加载后的有效时间，过期后访问时在后台从数据库刷新，单位毫秒；
+        // 共享订阅按轮询分配消息时，各节点读取的设备属性最多延迟该时间
+        private long expire = 60000;
+    }
 }
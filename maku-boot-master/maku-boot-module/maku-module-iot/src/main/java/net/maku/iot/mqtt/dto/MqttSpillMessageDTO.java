@@ -0,0 +1,54 @@
+package net.maku.iot.mqtt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 溢出到 Redis 的 MQTT 消息
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MqttSpillMessageDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主题
+     */
+    private String topic;
+
+    /**
+     * 服务质量
+     */
+    private Integer qos;
+
+    /**
+     * 是否保留消息
+     */
+    private Boolean retained;
+
+    /**
+     * 是否为重发的消息
+     */
+    private Boolean duplicate;
+
+    /**
+     * MQTT 消息ID，用于重发消息去重
+     */
+    private Integer messageId;
+
+    /**
+     * 消息内容
+     */
+    private String payload;
+
+    /**
+     * 接收时间戳，用于统计延迟
+     */
+    private long receivedTime;
+}
@@ -1,23 +1,30 @@
 package net.maku.iot.mqtt.factory;
 
 import lombok.RequiredArgsConstructor;
+import net.maku.iot.enums.DeviceTopicEnum;
 import net.maku.iot.mqtt.handler.MqttMessageHandler;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * MQTT消息处理器工厂，自动获取所有实现的处理器实例
+ * <p>
+ * 设备主题的处理器按主题后缀预先计算好，收到消息时直接查表，不再逐个判断和创建列表
  *
  * @author LSF maku_lsf@163.com
  */
 @Component
 @RequiredArgsConstructor
 public class MqttMessageHandlerFactory {
+    private static final MqttMessageHandler[] EMPTY = new MqttMessageHandler[0];
+
     private final ApplicationContext applicationContext;
 
     /**
@@ -25,6 +32,11 @@ public class MqttMessageHandlerFactory {
      */
     private List<MqttMessageHandler> messageHandlers;
 
+    /**
+     * 设备主题对应的处理器
+     */
+    private volatile Map<DeviceTopicEnum, MqttMessageHandler[]> routes;
+
     private List<MqttMessageHandler> loadHandlers() {
         if (messageHandlers != null) {
             return messageHandlers;
@@ -44,4 +56,40 @@ public class MqttMessageHandlerFactory {
                 .filter(handler -> handler.supports(topic))
                 .collect(Collectors.toList()));
     }
+
+    /**
+     * 获取与主题对应的处理器，设备主题直接从路由表获取，返回的数组不能修改
+     *
+     * @param topic 主题
+     * @return 处理器数组
+     */
+    public MqttMessageHandler[] getHandlers(String topic) {
+        DeviceTopicEnum deviceTopic = DeviceTopicEnum.match(topic);
+        if (deviceTopic == null) {
+            List<MqttMessageHandler> handlers = getHandlersForTopic(topic);
+            return handlers.isEmpty() ? EMPTY : handlers.toArray(EMPTY);
+        }
+
+        return loadRoutes().get(deviceTopic);
+    }
+
+    /**
+     * 用各设备主题的通配符主题判断处理器是否支持，生成路由表
+     */
+    private Map<DeviceTopicEnum, MqttMessageHandler[]> loadRoutes() {
+        Map<DeviceTopicEnum, MqttMessageHandler[]> map = routes;
+        if (map != null) {
+            return map;
+        }
+
+        map = new EnumMap<>(DeviceTopicEnum.class);
+        for (DeviceTopicEnum deviceTopic : DeviceTopicEnum.values()) {
+            String wildcard = deviceTopic.getWildcard();
+            map.put(deviceTopic, loadHandlers().stream()
+                    .filter(handler -> handler.supports(wildcard))
+                    .toArray(MqttMessageHandler[]::new));
+        }
+        routes = map;
+        return map;
+    }
 }
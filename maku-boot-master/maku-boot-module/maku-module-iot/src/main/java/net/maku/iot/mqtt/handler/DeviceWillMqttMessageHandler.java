@@ -0,0 +1,37 @@
+package net.maku.iot.mqtt.handler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.iot.enums.DeviceTopicEnum;
+import net.maku.iot.presence.DevicePresenceService;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备遗嘱消息处理器，设备异常断开连接时，MQTT 服务器发布设备连接时设置的遗嘱消息，设备立即离线
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceWillMqttMessageHandler implements MqttMessageHandler {
+    private final DevicePresenceService devicePresenceService;
+
+    @Override
+    public boolean supports(String topic) {
+        return DeviceTopicEnum.startsWith(topic, DeviceTopicEnum.WILL.getTopic());
+    }
+
+    @Override
+    public void handle(String topic, String message) {
+        DeviceTopicEnum.DeviceTopicContext topicContext;
+        try {
+            topicContext = DeviceTopicEnum.parseContext(topic);
+        } catch (Exception e) {
+            log.warn("无效设备主题:{}，忽略设备遗嘱消息:{}", topic, message);
+            return;
+        }
+
+        devicePresenceService.offline(topicContext.getClient().getDeviceId(), "连接异常断开");
+    }
+}
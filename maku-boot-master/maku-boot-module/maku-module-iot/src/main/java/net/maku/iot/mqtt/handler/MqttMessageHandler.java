@@ -7,7 +7,7 @@ package net.maku.iot.mqtt.handler;
  */
 public interface MqttMessageHandler {
     /**
-     * 是否支持处理指定的topic
+     * 是否支持处理指定的topic，设备主题只按主题后缀判断，结果会缓存到路由表
      *
      * @param topic
      * @return
@@ -0,0 +1,217 @@
+package net.maku.iot.mqtt.service;
+
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.IdUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.framework.security.user.UserDetail;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.entity.IotDeviceServiceLogEntity;
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
+import net.maku.iot.mqtt.command.DeviceCommandJob;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import net.maku.iot.service.IotDeviceServiceLogService;
+import net.maku.iot.vo.DeviceCommandJobVO;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 批量下发命令，按批次交给发送线程池并行发送，服务日志交给日志批量写入，
+ * 设备响应汇总到批量指令任务，任务进度定时同步到 Redis，集群中任意节点可查询
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceBatchCommandService {
+    /**
+     * 每批设备数量
+     */
+    private static final int BATCH_SIZE = 500;
+    /**
+     * 任务进度的 Redis key 前缀，后接任务ID
+     */
+    private static final String JOB_KEY = "iot:command:job:";
+    /**
+     * 任务进度保留时间，单位秒
+     */
+    private static final long JOB_EXPIRE = 60 * 60;
+    /**
+     * 任务进度同步到 Redis 的间隔，单位毫秒
+     */
+    private static final long SYNC_INTERVAL = 1000;
+    /**
+     * 达到 MQTT 未确认消息上限时的最大重试次数
+     */
+    private static final int MAX_RETRY = 20;
+
+    private final MqttConfig mqttConfig;
+    private final DeviceMqttService deviceMqttService;
+    private final IotDeviceServiceLogService iotDeviceServiceLogService;
+    private final IotDeviceLogWriter iotDeviceLogWriter;
+    private final RedisCache redisCache;
+
+    /**
+     * 当前节点发送中的任务，结束后同步到 Redis 并移除
+     */
+    private final Map<String, DeviceCommandJob> jobs = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private ScheduledExecutorService syncService;
+
+    @PostConstruct
+    public void init() {
+        int threads = mqttConfig.getOutbound().getThreads();
+        executor = ExecutorBuilder.create()
+                .setCorePoolSize(threads)
+                .setMaxPoolSize(threads)
+                .setWorkQueue(new ArrayBlockingQueue<>(1000))
+                .setThreadFactory(ThreadUtil.newNamedThreadFactory("iot-outbound-", true))
+                .build();
+
+        syncService = ThreadUtil.createScheduledExecutor(1);
+        syncService.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                log.error("批量指令任务进度同步失败", e);
+            }
+        }, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+        syncService.shutdown();
+        sync();
+    }
+
+    /**
+     * 批量下发命令
+     *
+     * @return 任务ID
+     */
+    public String submit(List<IotDeviceEntity> devices, DeviceCommandEnum command, String payload) {
+        UserDetail user = SecurityUser.getUser();
+        DeviceCommandJob job = new DeviceCommandJob(IdUtil.fastSimpleUUID(), command, devices.size(),
+                user == null ? null : user.getId(), user == null ? null : user.getTenantId());
+        jobs.put(job.getJobId(), job);
+        save(job);
+
+        List<List<IotDeviceEntity>> batches = ListUtil.partition(devices, BATCH_SIZE);
+        for (int i = 0; i < batches.size(); i++) {
+            List<IotDeviceEntity> batch = batches.get(i);
+            try {
+                // 发送线程沿用当前登录用户，服务日志记录创建者
+                executor.execute(new DelegatingSecurityContextRunnable(() -> send(job, batch, command, payload)));
+            } catch (RejectedExecutionException e) {
+                // 未提交的设备都记为发送失败
+                batches.subList(i, batches.size()).forEach(list -> list.forEach(device -> job.sendFailed()));
+                log.error("批量指令任务 {} 提交失败，发送线程池已满", job.getJobId());
+                break;
+            }
+        }
+
+        return job.getJobId();
+    }
+
+    /**
+     * 查询任务进度，最多延迟一个同步间隔
+     *
+     * @return 任务不存在或已过期时返回 null
+     */
+    public DeviceCommandJobVO getJob(String jobId) {
+        return (DeviceCommandJobVO) redisCache.get(JOB_KEY + jobId);
+    }
+
+    /**
+     * 把当前节点任务的进度同步到 Redis，已结束和超过保留时间的任务不再同步
+     */
+    private void sync() {
+        LocalDateTime expireTime = LocalDateTime.now().minusSeconds(JOB_EXPIRE);
+        for (DeviceCommandJob job : jobs.values()) {
+            DeviceCommandJobVO vo = save(job);
+            if (job.isFinished() || vo.getCreateTime().isBefore(expireTime)) {
+                jobs.remove(job.getJobId());
+            }
+        }
+    }
+
+    private DeviceCommandJobVO save(DeviceCommandJob job) {
+        DeviceCommandJobVO vo = job.toVO();
+        redisCache.set(JOB_KEY + job.getJobId(), vo, JOB_EXPIRE);
+        return vo;
+    }
+
+    private void send(DeviceCommandJob job, List<IotDeviceEntity> devices, DeviceCommandEnum command, String payload) {
+        List<IotDeviceServiceLogEntity> logs = new ArrayList<>(devices.size());
+        for (IotDeviceEntity device : devices) {
+            String commandId = deviceMqttService.newCommandId();
+            try {
+                publish(device, command, commandId, payload).whenComplete(job::replied);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.sendFailed();
+                continue;
+            } catch (Exception e) {
+                log.error("批量指令任务 {} 发送到设备 {} 失败：{}", job.getJobId(), device.getId(), e.getMessage());
+                job.sendFailed();
+                continue;
+            }
+
+            job.sent();
+            logs.add(iotDeviceServiceLogService.createDeviceServiceLog(device.getId(), device.getTenantId(), command, commandId, payload));
+        }
+
+        iotDeviceLogWriter.writeServiceLogs(logs);
+    }
+
+    /**
+     * 发送命令，MQTT 连接未确认的消息达到上限时，等待后重试
+     */
+    private CompletableFuture<DeviceCommandResponseDTO> publish(IotDeviceEntity device, DeviceCommandEnum command,
+                                                               String commandId, String payload) throws InterruptedException {
+        for (int retry = 0; ; retry++) {
+            try {
+                return deviceMqttService.sendCommand(device, command, commandId, payload, false, false);
+            } catch (ServerException e) {
+                if (retry >= MAX_RETRY || !isMaxInflight(e)) {
+                    throw e;
+                }
+                Thread.sleep(10L * (retry + 1));
+            }
+        }
+    }
+
+    /**
+     * 异常链中是否有未确认消息数量达到上限的 MqttException
+     */
+    private boolean isMaxInflight(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof MqttException mqttException) {
+                return mqttException.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT;
+            }
+            if (cause instanceof org.eclipse.paho.mqttv5.common.MqttException mqttException) {
+                return mqttException.getReasonCode() == MqttClientException.REASON_CODE_MAX_INFLIGHT;
+            }
+        }
+        return false;
+    }
+}
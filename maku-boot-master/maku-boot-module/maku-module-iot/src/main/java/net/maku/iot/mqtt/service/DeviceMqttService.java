@@ -8,9 +8,9 @@ import net.maku.framework.common.exception.ServerException;
 import net.maku.iot.dto.DeviceClientDTO;
 import net.maku.iot.entity.IotDeviceEntity;
 import net.maku.iot.enums.DeviceCommandEnum;
-import net.maku.iot.enums.DeviceServiceEnum;
 import net.maku.iot.enums.DeviceTopicEnum;
 import net.maku.iot.mqtt.MqttGateway;
+import net.maku.iot.mqtt.command.DeviceCommandRegistry;
 import net.maku.iot.mqtt.dto.DeviceCommandDTO;
 import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
 import net.maku.iot.service.IotDeviceServiceLogService;
@@ -18,7 +18,9 @@ import net.maku.iot.utils.MqttUtils;
 import org.springframework.stereotype.Component;
 
 import java.util.UUID;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 设备命令发送服务
@@ -31,10 +33,7 @@ public class DeviceMqttService {
     private final MqttGateway mqttGateway;
     private final IotDeviceServiceLogService iotDeviceEventLogService;
 
-    /**
-     * 命令等待exchanger缓存，key: command id
-     */
-    private final ConcurrentMap<String, Exchanger<Object>> commandExchangers = new ConcurrentHashMap<>();
+    private final DeviceCommandRegistry deviceCommandRegistry;
 
     /**
      * 异步发送命令，返回命令id
@@ -59,27 +58,23 @@ public class DeviceMqttService {
      * @return
      */
     public String asyncSendCommand(IotDeviceEntity device, DeviceCommandEnum command, String payload, boolean retained) {
-        // 构建命令对象
-        String commandId = StrUtil.replaceChars(UUID.randomUUID().toString(), "-", "");
-        DeviceCommandDTO commandDTO = new DeviceCommandDTO();
-        commandDTO.setCommand(command);
-        commandDTO.setId(commandId);
-        commandDTO.setPayload(payload);
-        String commandTopic = DeviceTopicEnum.COMMAND.buildTopic(DeviceClientDTO.from(device));
-
-        // 发送命令到设备命令主题
-        try {
-            mqttGateway.sendToMqtt(commandTopic, retained, JSONUtil.toJsonStr(commandDTO));
-        } catch (Exception e) {
-            log.error(e.getMessage());
-            throw new ServerException(StrUtil.format("发送'{}'命令:{} 到设备:{}-{}, Topic:{} 失败",
-                    command.getTitle(), commandId, device.getCode(), device.getName(), commandTopic));
-        }
-        log.info("发送'{}'命令:{} 到设备:{}-{}, Topic:{} 成功", command.getTitle(), commandId, device.getCode(), device.getName(), commandTopic);
-        iotDeviceEventLogService.createAndSaveDeviceServiceLog(device.getId(), device.getTenantId(), command, commandId, payload);
+        String commandId = newCommandId();
+        publishCommand(device, command, commandId, payload, retained, true);
         return commandId;
     }
 
+    /**
+     * 发送命令，设备响应时完成，不阻塞调用线程
+     *
+     * @param device
+     * @param command
+     * @param payload
+     * @param retained
+     * @return 设备响应结果，超时后以 ServerException 异常完成
+     */
+    public CompletableFuture<DeviceCommandResponseDTO> sendCommand(IotDeviceEntity device, DeviceCommandEnum command, String payload, boolean retained) {
+        return sendCommand(device, command, newCommandId(), payload, retained, true);
+    }
 
     /**
      * 同步发送命令并返回响应结果
@@ -103,74 +98,47 @@ public class DeviceMqttService {
      * @return
      */
     public DeviceCommandResponseDTO syncSendCommand(IotDeviceEntity device, DeviceCommandEnum command, String payload, boolean retained) {
-        // 构建并发送命令
-        String commandId = asyncSendCommand(device, command, payload, retained);
-        // 等待返回结果
-        return waitCommandResponse(command, commandId);
+        return waitCommandResponse(sendCommand(device, command, payload, retained));
     }
 
-
     /**
-     * 发送命令并返回响应结果，模拟设备响应
+     * 发送命令，2秒后模拟设备响应
      *
      * @param device
      * @param command
      * @param payload
      * @return
      */
-    public DeviceCommandResponseDTO syncSendCommandDebug(IotDeviceEntity device, DeviceCommandEnum command, String payload) {
-        // 构建并发送命令
-        String commandId = asyncSendCommand(device, command, payload);
-
-        // 2秒后模拟设备响应
-        new Thread(() -> {
+    public CompletableFuture<DeviceCommandResponseDTO> sendCommandDebug(IotDeviceEntity device, DeviceCommandEnum command, String payload) {
+        String commandId = newCommandId();
+        CompletableFuture<DeviceCommandResponseDTO> future = sendCommand(device, command, commandId, payload, false, true);
+
+        // 模拟设备正常响应，延迟改为大于命令超时时间可模拟设备超时响应
+        deviceCommandRegistry.schedule(() -> {
+            DeviceCommandResponseDTO simulateResponseDto = new DeviceCommandResponseDTO();
+            simulateResponseDto.setCommandId(commandId);
+            simulateResponseDto.setResponsePayload(command.getTitle() + ",设备执行成功！");
+            simulateResponseDto.setCommand(command);
             try {
-                //模拟设备正常响应
-                Thread.sleep(2000);
-                //模拟设备超时响应
-                //Thread.sleep(15000);
-                DeviceCommandResponseDTO simulateResponseDto = new DeviceCommandResponseDTO();
-                simulateResponseDto.setCommandId(commandId);
-                simulateResponseDto.setResponsePayload(command.getTitle() + ",设备执行成功！");
-                simulateResponseDto.setCommand(command);
                 simulateDeviceCommandResponseAttributeData(device, JSONUtil.toJsonStr(simulateResponseDto));
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("模拟设备响应线程被中断", e);
+            } catch (ServerException e) {
+                log.error(e.getMessage());
             }
-        }).start();
+        }, 2, TimeUnit.SECONDS);
 
-        // 等待设备响应
-        return waitCommandResponse(command, commandId);
+        return future;
     }
 
-
     /**
-     * 订阅设备命令响应主题并等待获取返回结果
+     * 发送命令并返回响应结果，模拟设备响应
      *
+     * @param device
      * @param command
-     * @param commandId
+     * @param payload
      * @return
      */
-    private DeviceCommandResponseDTO waitCommandResponse(DeviceCommandEnum command, String commandId) {
-        // 创建命令响应等待exchanger
-        Exchanger<Object> commandExchanger = new Exchanger<>();
-        commandExchangers.put(commandId, commandExchanger);
-
-        try {
-            Object result = commandExchanger.exchange("", 10, TimeUnit.SECONDS);
-            return (DeviceCommandResponseDTO) result;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ServerException(StrUtil.format("{} <{}>,{} 命令中断",
-                    DeviceServiceEnum.COMMAND_ID.getValue(), commandId, command.getTitle()), e);
-        } catch (TimeoutException e) {
-            throw new ServerException(StrUtil.format("{} <{}>,{} 命令超时",
-                    DeviceServiceEnum.COMMAND_ID.getValue(), commandId, command.getTitle()), e);
-        } finally {
-            // 移除命令响应等待exchanger
-            commandExchangers.remove(commandId);
-        }
+    public DeviceCommandResponseDTO syncSendCommandDebug(IotDeviceEntity device, DeviceCommandEnum command, String payload) {
+        return waitCommandResponse(sendCommandDebug(device, command, payload));
     }
 
     /**
@@ -180,23 +148,76 @@ public class DeviceMqttService {
      * @param commandResponse
      */
     public void commandReplied(String topic, DeviceCommandResponseDTO commandResponse) {
-        Exchanger<Object> exchanger = commandExchangers.remove(commandResponse.getCommandId());
-        if (exchanger != null) {
-            if (commandResponse.isCompleted()) {
-                try {
-                    // 将响应交换到等待线程
-                    exchanger.exchange(commandResponse, 15, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("将主题'{}'的命令响应交换到等待线程失败，中断异常: {}", topic, e.getMessage());
-                } catch (TimeoutException e) {
-                    log.error("将主题'{}'的命令响应交换到等待线程失败，超时异常: {}", topic, e.getMessage());
-                }
-            } else {
-                log.warn("命令ID为'{}'的响应未完成，未通知等待线程", commandResponse.getCommandId());
+        deviceCommandRegistry.complete(commandResponse);
+    }
+
+    public String newCommandId() {
+        return StrUtil.replaceChars(UUID.randomUUID().toString(), "-", "");
+    }
+
+    /**
+     * 发送命令，设备响应时完成
+     *
+     * @param device
+     * @param command
+     * @param commandId
+     * @param payload
+     * @param retained
+     * @param saveLog   是否保存服务日志，批量下发时由调用方批量保存
+     * @return 设备响应结果，超时后以 ServerException 异常完成
+     */
+    public CompletableFuture<DeviceCommandResponseDTO> sendCommand(IotDeviceEntity device, DeviceCommandEnum command, String commandId,
+                                                                   String payload, boolean retained, boolean saveLog) {
+        // 先登记再发送，避免设备响应先于登记到达
+        CompletableFuture<DeviceCommandResponseDTO> future = deviceCommandRegistry.register(commandId, command);
+        try {
+            publishCommand(device, command, commandId, payload, retained, saveLog);
+        } catch (RuntimeException e) {
+            deviceCommandRegistry.cancel(commandId, e);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * 发送命令到设备命令主题
+     */
+    private void publishCommand(IotDeviceEntity device, DeviceCommandEnum command, String commandId, String payload, boolean retained, boolean saveLog) {
+        // 构建命令对象
+        DeviceCommandDTO commandDTO = new DeviceCommandDTO();
+        commandDTO.setCommand(command);
+        commandDTO.setId(commandId);
+        commandDTO.setPayload(payload);
+        String commandTopic = DeviceTopicEnum.COMMAND.buildTopic(DeviceClientDTO.from(device));
+
+        // 发送命令到设备命令主题
+        try {
+            mqttGateway.sendToMqtt(commandTopic, retained, JSONUtil.toJsonStr(commandDTO));
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new ServerException(StrUtil.format("发送'{}'命令:{} 到设备:{}-{}, Topic:{} 失败",
+                    command.getTitle(), commandId, device.getCode(), device.getName(), commandTopic), e);
+        }
+        log.info("发送'{}'命令:{} 到设备:{}-{}, Topic:{} 成功", command.getTitle(), commandId, device.getCode(), device.getName(), commandTopic);
+        if (saveLog) {
+            iotDeviceEventLogService.createAndSaveDeviceServiceLog(device.getId(), device.getTenantId(), command, commandId, payload);
+        }
+    }
+
+    /**
+     * 阻塞等待设备响应，仅用于同步接口
+     */
+    private DeviceCommandResponseDTO waitCommandResponse(CompletableFuture<DeviceCommandResponseDTO> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerException("等待设备响应被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServerException serverException) {
+                throw serverException;
             }
-        } else {
-            log.warn("找不到命令ID为'{}'的响应交换器", commandResponse.getCommandId());
+            throw new ServerException("等待设备响应失败", e.getCause());
         }
     }
 
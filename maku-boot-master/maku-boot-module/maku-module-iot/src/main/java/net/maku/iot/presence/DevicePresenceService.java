@@ -0,0 +1,344 @@
+package net.maku.iot.presence;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.LocalDateTimeUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.iot.dao.IotDeviceDao;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.enums.DeviceRunningStatusEnum;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.service.IotDeviceEventLogService;
+import net.maku.iot.shadow.DeviceShadow;
+import net.maku.iot.shadow.DeviceShadowService;
+import net.maku.iot.vo.DevicePresenceVO;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 设备在线状态，在线设备和最后活跃时间保存在 Redis 有序集合中，集群各节点共享
+ * <p>
+ * 共享订阅按轮询分配消息时，同一设备的消息由多个节点处理，各节点都更新同一个最后活跃时间，
+ * 心跳超时按共享的最后活跃时间判断，不会因为某个节点一段时间没有收到消息而误判离线。
+ * 上线、离线由写入或移出有序集合成功的节点处理，只有变化时才更新设备影子和记录设备事件
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DevicePresenceService {
+    /**
+     * 在线设备，每个租户一个有序集合，member: 设备ID，score: 最后活跃时间戳
+     */
+    private static final String ONLINE_KEY = "iot:presence:online:";
+
+    /**
+     * 有在线设备的租户
+     */
+    private static final String TENANT_KEY = "iot:presence:tenants";
+
+    /**
+     * 上线时间，field: 设备ID
+     */
+    private static final String ONLINE_TIME_KEY = "iot:presence:online_time";
+
+    /**
+     * 离线设备的最后活跃时间，field: 设备ID
+     */
+    private static final String LAST_SEEN_KEY = "iot:presence:last_seen";
+
+    /**
+     * 每次检查心跳超时的最大设备数量
+     */
+    private static final int SWEEP_BATCH = 1000;
+
+    /**
+     * 取出并移除心跳超时的设备，多个节点同时检查时，每个设备只由一个节点改为离线
+     */
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<String>> SWEEP_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+                    "if #ids > 0 then redis.call('ZREM', KEYS[1], unpack(ids)) end " +
+                    "return ids", (Class<List<String>>) (Class<?>) List.class);
+
+    private final MqttConfig mqttConfig;
+    private final IotDeviceDao iotDeviceDao;
+    private final DeviceShadowService deviceShadowService;
+    private final IotDeviceEventLogService deviceEventLogService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 当前节点最近一次写入 Redis 的最后活跃时间，key: 设备ID，用于减少写入次数
+     */
+    private final Map<Long, Long> lastTouched = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduledService;
+
+    @PostConstruct
+    public void init() {
+        // 数据库中在线的设备，Redis 中没有时从启动时间开始计算心跳超时，已有的不覆盖其他节点写入的时间
+        List<IotDeviceEntity> list = iotDeviceDao.selectList(Wrappers.<IotDeviceEntity>lambdaQuery()
+                .select(IotDeviceEntity::getId, IotDeviceEntity::getTenantId)
+                .ne(IotDeviceEntity::getRunningStatus, DeviceRunningStatusEnum.OFFLINE.getValue()));
+        double now = System.currentTimeMillis();
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> tenants = new HashMap<>();
+        for (IotDeviceEntity device : list) {
+            tenants.computeIfAbsent(getTenant(device.getTenantId()), tenant -> new HashSet<>())
+                    .add(new DefaultTypedTuple<>(device.getId().toString(), now));
+        }
+        tenants.forEach((tenant, tuples) -> {
+            stringRedisTemplate.opsForZSet().addIfAbsent(ONLINE_KEY + tenant, tuples);
+            stringRedisTemplate.opsForSet().add(TENANT_KEY, tenant);
+        });
+        log.info("加载在线设备 {} 个，心跳超时 {} 毫秒", list.size(), getTimeout());
+
+        long interval = mqttConfig.getPresence().getSweepInterval();
+        scheduledService = ThreadUtil.createScheduledExecutor(1);
+        scheduledService.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Exception e) {
+                log.error("检查设备心跳超时失败", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduledService.shutdown();
+    }
+
+    /**
+     * 设备上报消息，更新最后活跃时间，设备离线时改为在线
+     * <p>
+     * 同一设备在 touchInterval 内只写入一次 Redis
+     */
+    public void touch(Long deviceId, Long tenantId) {
+        long now = System.currentTimeMillis();
+        Long last = lastTouched.get(deviceId);
+        if (last != null && now - last < mqttConfig.getPresence().getTouchInterval()) {
+            return;
+        }
+        lastTouched.put(deviceId, now);
+
+        String tenant = getTenant(tenantId);
+        Boolean added = stringRedisTemplate.opsForZSet().add(ONLINE_KEY + tenant, deviceId.toString(), now);
+        if (!Boolean.TRUE.equals(added)) {
+            return;
+        }
+
+        stringRedisTemplate.opsForSet().add(TENANT_KEY, tenant);
+        stringRedisTemplate.opsForHash().put(ONLINE_TIME_KEY, deviceId.toString(), String.valueOf(now));
+        transition(deviceId, tenantId, DeviceRunningStatusEnum.ONLINE, "设备上报消息");
+    }
+
+    /**
+     * 设备离线，如收到遗嘱消息、设备上报离线状态
+     */
+    public void offline(Long deviceId, String reason) {
+        lastTouched.remove(deviceId);
+        DeviceShadow shadow = deviceShadowService.get(deviceId);
+        if (shadow == null) {
+            return;
+        }
+
+        Long removed = stringRedisTemplate.opsForZSet().remove(ONLINE_KEY + getTenant(shadow.getTenantId()), deviceId.toString());
+        if (removed == null || removed == 0) {
+            return;
+        }
+
+        offlined(deviceId, System.currentTimeMillis());
+        transition(deviceId, shadow.getTenantId(), DeviceRunningStatusEnum.OFFLINE, reason);
+    }
+
+    /**
+     * 删除设备的在线状态，不记录离线事件
+     */
+    public void remove(Collection<Long> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            return;
+        }
+
+        Object[] ids = deviceIds.stream().map(Object::toString).toArray();
+        for (String tenant : getTenants()) {
+            stringRedisTemplate.opsForZSet().remove(ONLINE_KEY + tenant, ids);
+        }
+        stringRedisTemplate.opsForHash().delete(ONLINE_TIME_KEY, ids);
+        stringRedisTemplate.opsForHash().delete(LAST_SEEN_KEY, ids);
+        deviceIds.forEach(lastTouched::remove);
+    }
+
+    /**
+     * 在线设备数量
+     *
+     * @param tenantId 租户ID，为空时统计所有租户
+     */
+    public int countOnline(Long tenantId) {
+        Collection<String> tenants = tenantId == null ? getTenants() : Collections.singletonList(getTenant(tenantId));
+        long count = 0;
+        for (String tenant : tenants) {
+            Long size = stringRedisTemplate.opsForZSet().zCard(ONLINE_KEY + tenant);
+            count += size == null ? 0 : size;
+        }
+        return (int) count;
+    }
+
+    /**
+     * 在线设备列表，按最后活跃时间倒序
+     *
+     * @param tenantId 租户ID，为空时查询所有租户
+     * @param limit    最大数量
+     */
+    public List<DevicePresenceVO> listOnline(Long tenantId, int limit) {
+        Collection<String> tenants = tenantId == null ? getTenants() : Collections.singletonList(getTenant(tenantId));
+        List<DevicePresenceVO> list = new ArrayList<>();
+        for (String tenant : tenants) {
+            if (list.size() >= limit) {
+                break;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeWithScores(ONLINE_KEY + tenant, 0, limit - list.size() - 1);
+            if (tuples == null || tuples.isEmpty()) {
+                continue;
+            }
+
+            List<Object> fields = tuples.stream().map(ZSetOperations.TypedTuple::getValue).collect(Collectors.toList());
+            List<Object> onlineTimes = stringRedisTemplate.opsForHash().multiGet(ONLINE_TIME_KEY, fields);
+            int i = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                list.add(toVO(Long.valueOf(tuple.getValue()), tenant, true, tuple.getScore(), onlineTimes.get(i++)));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 设备在线状态
+     *
+     * @return 没有上报过消息的离线设备返回 null
+     */
+    public DevicePresenceVO get(Long deviceId) {
+        DeviceShadow shadow = deviceShadowService.get(deviceId);
+        if (shadow == null) {
+            return null;
+        }
+
+        String tenant = getTenant(shadow.getTenantId());
+        String field = deviceId.toString();
+        Double score = stringRedisTemplate.opsForZSet().score(ONLINE_KEY + tenant, field);
+        if (score != null) {
+            return toVO(deviceId, tenant, true, score, stringRedisTemplate.opsForHash().get(ONLINE_TIME_KEY, field));
+        }
+
+        Object lastSeen = stringRedisTemplate.opsForHash().get(LAST_SEEN_KEY, field);
+        return lastSeen == null ? null : toVO(deviceId, tenant, false, Double.valueOf(lastSeen.toString()), null);
+    }
+
+    private long getTimeout() {
+        return mqttConfig.getPresence().getHeartbeatTimeout();
+    }
+
+    /**
+     * 检查心跳超时，最后活跃时间早于超时时间的设备改为离线
+     */
+    private void sweep() {
+        long timeout = getTimeout();
+        for (String tenant : getTenants()) {
+            List<String> ids;
+            do {
+                long deadline = System.currentTimeMillis() - timeout;
+                ids = stringRedisTemplate.execute(SWEEP_SCRIPT, Collections.singletonList(ONLINE_KEY + tenant),
+                        String.valueOf(deadline), String.valueOf(SWEEP_BATCH));
+                if (ids == null) {
+                    break;
+                }
+                for (String id : ids) {
+                    Long deviceId = Long.valueOf(id);
+                    lastTouched.remove(deviceId);
+                    offlined(deviceId, deadline);
+                    transition(deviceId, Convert.toLong(tenant), DeviceRunningStatusEnum.OFFLINE,
+                            StrUtil.format("心跳超时 {} 秒", timeout / 1000));
+                }
+            } while (ids.size() >= SWEEP_BATCH);
+        }
+    }
+
+    /**
+     * 记录离线设备的最后活跃时间，删除上线时间
+     */
+    private void offlined(Long deviceId, long lastSeen) {
+        String field = deviceId.toString();
+        stringRedisTemplate.opsForHash().delete(ONLINE_TIME_KEY, field);
+        stringRedisTemplate.opsForHash().put(LAST_SEEN_KEY, field, String.valueOf(lastSeen));
+    }
+
+    /**
+     * 更新设备影子的运行状态，并记录设备事件，运行状态未变化时不处理
+     */
+    private void transition(Long deviceId, Long tenantId, DeviceRunningStatusEnum status, String reason) {
+        try {
+            DeviceShadow shadow = deviceShadowService.get(deviceId);
+            if (shadow == null) {
+                return;
+            }
+
+            boolean online = DeviceRunningStatusEnum.ONLINE.equals(status);
+            // 设备上报的其他运行状态也是在线，上线时只处理离线的设备
+            if (online && !DeviceRunningStatusEnum.OFFLINE.getValue().equals(shadow.getRunningStatus())) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (!shadow.setRunningStatus(status.getValue(), online ? now : null, online ? null : now)) {
+                return;
+            }
+            deviceShadowService.markDirty(shadow);
+
+            deviceEventLogService.createAndSaveDeviceEvent(deviceId, tenantId, status.getEventType(), null,
+                    StrUtil.format("设备{}：{}", status.getTitle(), reason));
+            if (log.isInfoEnabled()) {
+                log.info("租户：{}，设备：{}，{}：{}", tenantId, deviceId, status.getTitle(), reason);
+            }
+        } catch (Exception e) {
+            log.error("设备 {} 更新运行状态 {} 失败", deviceId, status.getTitle(), e);
+        }
+    }
+
+    private Set<String> getTenants() {
+        Set<String> tenants = stringRedisTemplate.opsForSet().members(TENANT_KEY);
+        return tenants == null ? Collections.emptySet() : tenants;
+    }
+
+    /**
+     * 租户在 Redis key 中的标识，没有租户的设备为 null
+     */
+    private static String getTenant(Long tenantId) {
+        return String.valueOf(tenantId);
+    }
+
+    private static DevicePresenceVO toVO(Long deviceId, String tenant, boolean online, Double lastSeen, Object onlineTime) {
+        DevicePresenceVO vo = new DevicePresenceVO();
+        vo.setDeviceId(deviceId);
+        vo.setTenantId(Convert.toLong(tenant));
+        vo.setOnline(online);
+        vo.setLastSeenTime(lastSeen == null ? null : LocalDateTimeUtil.of(lastSeen.longValue()));
+        vo.setOnlineTime(onlineTime == null ? null : LocalDateTimeUtil.of(Long.parseLong(onlineTime.toString())));
+        return vo;
+    }
+}
@@ -0,0 +1,44 @@
+package net.maku.iot.query;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+import net.maku.iot.enums.DevicePropertyEnum;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * 设备遥测数据查询
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备遥测数据查询")
+public class IotDeviceTelemetryQuery {
+
+    @Schema(description = "设备id", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotNull(message = "设备id不能为空")
+    private Long deviceId;
+
+    @Schema(description = "设备属性", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotNull(message = "设备属性不能为空")
+    private DevicePropertyEnum propertyType;
+
+    @Schema(description = "开始时间", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotNull(message = "开始时间不能为空")
+    @DateTimeFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime startTime;
+
+    @Schema(description = "结束时间，默认当前时间")
+    @DateTimeFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime endTime;
+
+    @Schema(description = "最多返回的数据点数量，默认1000")
+    @Min(value = 1, message = "数据点数量不能小于1")
+    @Max(value = 10000, message = "数据点数量不能大于10000")
+    private Integer maxPoints = 1000;
+}
@@ -5,12 +5,15 @@ import net.maku.framework.mybatis.service.BaseService;
 import net.maku.iot.entity.IotDeviceEntity;
 import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
 import net.maku.iot.query.IotDeviceQuery;
+import net.maku.iot.vo.DeviceBatchCommandVO;
+import net.maku.iot.vo.DeviceCommandJobVO;
 import net.maku.iot.vo.DeviceCommandResponseAttributeDataVO;
 import net.maku.iot.vo.DeviceCommandVO;
 import net.maku.iot.vo.DeviceReportAttributeDataVO;
 import net.maku.iot.vo.IotDeviceVO;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 设备表
@@ -41,6 +44,35 @@ public interface IotDeviceService extends BaseService<IotDeviceEntity> {
      */
     DeviceCommandResponseDTO syncSendCommandDebug(DeviceCommandVO vo);
 
+    /**
+     * 对设备下发指令-等待响应模式，设备响应或超时后完成，不阻塞调用线程
+     *
+     * @param vo
+     */
+    CompletableFuture<DeviceCommandResponseDTO> sendCommand(DeviceCommandVO vo);
+
+    /**
+     * 对设备下发指令-等待响应模式-调试
+     *
+     * @param vo
+     */
+    CompletableFuture<DeviceCommandResponseDTO> sendCommandDebug(DeviceCommandVO vo);
+
+    /**
+     * 对多个设备批量下发指令，按设备ID列表或设备类型、租户筛选设备
+     *
+     * @param vo
+     * @return 任务ID
+     */
+    String batchSendCommand(DeviceBatchCommandVO vo);
+
+    /**
+     * 查询批量指令任务进度
+     *
+     * @param jobId 任务ID
+     */
+    DeviceCommandJobVO getBatchCommandJob(String jobId);
+
     /**
      * 对设备下发指令-异步响应模式
      *
@@ -0,0 +1,36 @@
+package net.maku.iot.service;
+
+import net.maku.framework.mybatis.service.BaseService;
+import net.maku.iot.entity.IotDeviceTelemetryEntity;
+import net.maku.iot.enums.DevicePropertyEnum;
+import net.maku.iot.query.IotDeviceTelemetryQuery;
+import net.maku.iot.vo.IotDeviceTelemetryVO;
+import net.maku.iot.vo.IotLogWriterStatsVO;
+
+/**
+ * 设备遥测数据
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public interface IotDeviceTelemetryService extends BaseService<IotDeviceTelemetryEntity> {
+
+    /**
+     * 记录设备上报的属性值，非数值的属性值忽略，批量异步写入
+     *
+     * @param deviceId 设备ID
+     * @param tenantId 租户ID
+     * @param property 设备属性
+     * @param payload  属性值
+     */
+    void record(Long deviceId, Long tenantId, DevicePropertyEnum property, String payload);
+
+    /**
+     * 查询遥测数据，按时间范围和数据点数量选择数据精度
+     */
+    IotDeviceTelemetryVO query(IotDeviceTelemetryQuery query);
+
+    /**
+     * 批量写入统计
+     */
+    IotLogWriterStatsVO getWriterStats();
+}
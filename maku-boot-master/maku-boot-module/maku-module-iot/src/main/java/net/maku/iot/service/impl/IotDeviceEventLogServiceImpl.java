@@ -12,6 +12,7 @@ import net.maku.iot.convert.IotDeviceEventLogConvert;
 import net.maku.iot.dao.IotDeviceEventLogDao;
 import net.maku.iot.entity.IotDeviceEventLogEntity;
 import net.maku.iot.enums.DeviceEventTypeEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
 import net.maku.iot.query.IotDeviceEventLogQuery;
 import net.maku.iot.service.IotDeviceEventLogService;
 import net.maku.iot.vo.IotDeviceEventLogVO;
@@ -29,6 +30,7 @@ import java.util.List;
 @Service
 @AllArgsConstructor
 public class IotDeviceEventLogServiceImpl extends BaseServiceImpl<IotDeviceEventLogDao, IotDeviceEventLogEntity> implements IotDeviceEventLogService {
+    private final IotDeviceLogWriter iotDeviceLogWriter;
 
     @Override
     public PageResult<IotDeviceEventLogVO> page(IotDeviceEventLogQuery query) {
@@ -89,7 +91,7 @@ public class IotDeviceEventLogServiceImpl extends BaseServiceImpl<IotDeviceEvent
 
     @Override
     public void createAndSaveDeviceEvent(Long deviceId, Long tenantId, DeviceEventTypeEnum eventType, String eventUid, Object payload) {
-        save(createDeviceEvent(deviceId, tenantId, eventType, eventUid, payload));
+        iotDeviceLogWriter.writeEventLog(createDeviceEvent(deviceId, tenantId, eventType, eventUid, payload));
     }
 
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package net.maku.iot.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
 import cn.hutool.core.lang.Assert;
-import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -9,9 +10,12 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.constant.Constant;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.framework.common.utils.PageResult;
 import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.framework.security.user.UserDetail;
 import net.maku.iot.convert.IotDeviceConvert;
 import net.maku.iot.dao.IotDeviceDao;
 import net.maku.iot.entity.IotDeviceEntity;
@@ -20,10 +24,17 @@ import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
 import net.maku.iot.mqtt.dto.DevicePropertyDTO;
 import net.maku.iot.mqtt.handler.DeviceCommandResponseHandler;
 import net.maku.iot.mqtt.handler.DevicePropertyChangeHandler;
+import net.maku.iot.mqtt.service.DeviceBatchCommandService;
 import net.maku.iot.mqtt.service.DeviceMqttService;
+import net.maku.iot.presence.DevicePresenceService;
 import net.maku.iot.query.IotDeviceQuery;
 import net.maku.iot.service.IotDeviceEventLogService;
 import net.maku.iot.service.IotDeviceService;
+import net.maku.iot.service.IotDeviceTelemetryService;
+import net.maku.iot.shadow.DeviceShadow;
+import net.maku.iot.shadow.DeviceShadowService;
+import net.maku.iot.vo.DeviceBatchCommandVO;
+import net.maku.iot.vo.DeviceCommandJobVO;
 import net.maku.iot.vo.DeviceCommandResponseAttributeDataVO;
 import net.maku.iot.vo.DeviceCommandVO;
 import net.maku.iot.vo.DeviceReportAttributeDataVO;
@@ -31,8 +42,12 @@ import net.maku.iot.vo.IotDeviceVO;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * 设备表
@@ -47,11 +62,17 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
 
     //todo 后续版本更改为根据物模型自动选择不同的通信层Service
     private final DeviceMqttService mqttService;
+    private final DeviceBatchCommandService batchCommandService;
     private final IotDeviceEventLogService deviceEventLogService;
+    private final DeviceShadowService deviceShadowService;
+    private final IotDeviceTelemetryService deviceTelemetryService;
+    private final DevicePresenceService devicePresenceService;
 
     @Override
     public PageResult<IotDeviceVO> page(IotDeviceQuery query) {
         IPage<IotDeviceEntity> page = baseMapper.selectPage(getPage(query), getWrapper(query));
+        // 设备属性以设备影子为准，数据库中的可能还未更新
+        deviceShadowService.merge(page.getRecords());
 
         return new PageResult<>(IotDeviceConvert.INSTANCE.convertList(page.getRecords()), page.getTotal());
     }
@@ -76,12 +97,24 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         IotDeviceEntity entity = IotDeviceConvert.INSTANCE.convert(vo);
 
         updateById(entity);
+        deviceShadowService.refresh(entity.getId());
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void delete(List<Long> idList) {
         removeByIds(idList);
+        deviceShadowService.remove(idList);
+        devicePresenceService.remove(idList);
+    }
+
+    /**
+     * 从设备影子获取设备信息，包含还未写入数据库的最新属性
+     */
+    @Override
+    public IotDeviceEntity getById(Serializable id) {
+        DeviceShadow shadow = deviceShadowService.get(Convert.toLong(id));
+        return shadow == null ? null : shadow.copy();
     }
 
     @Override
@@ -94,16 +127,9 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         DeviceCommandEnum commandEnum = DeviceCommandEnum.parse(vo.getCommand());
 
         try {
-            return mqttService.syncSendCommand(getById(vo.getDeviceId()), commandEnum, vo.getPayload());
+            return mqttService.syncSendCommand(device, commandEnum, vo.getPayload());
         } catch (ServerException e) {
-            if (DeviceCommandEnum.parse(vo.getCommand()).getEventType() != null
-                    && StrUtil.contains(e.getMessage(), DeviceServiceEnum.COMMAND_ID.getValue())) {
-                //指令异常事件记录
-                String commandId = e.getMessage().substring(e.getMessage().indexOf("<") + 1, e.getMessage().indexOf(">"));
-                deviceEventLogService.createAndSaveDeviceEvent(
-                        vo.getDeviceId(), device.getTenantId(),
-                        commandEnum.getEventType(), commandId, vo.getPayload());
-            }
+            saveCommandFailedEvent(vo, device, commandEnum, e);
             throw e;
         }
     }
@@ -115,6 +141,97 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         return mqttService.syncSendCommandDebug(device, commandEnum, vo.getPayload());
     }
 
+    @Override
+    public CompletableFuture<DeviceCommandResponseDTO> sendCommand(DeviceCommandVO vo) {
+        IotDeviceEntity device = getById(vo.getDeviceId());
+        Assert.notNull(device, "未注册的设备:{}", vo.getDeviceId());
+
+        DeviceCommandEnum commandEnum = DeviceCommandEnum.parse(vo.getCommand());
+
+        try {
+            return mqttService.sendCommand(device, commandEnum, vo.getPayload(), false)
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            saveCommandFailedEvent(vo, device, commandEnum, e);
+                        }
+                    });
+        } catch (ServerException e) {
+            saveCommandFailedEvent(vo, device, commandEnum, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<DeviceCommandResponseDTO> sendCommandDebug(DeviceCommandVO vo) {
+        IotDeviceEntity device = getById(vo.getDeviceId());
+        Assert.notNull(device, "未注册的设备:{}", vo.getDeviceId());
+
+        DeviceCommandEnum commandEnum = DeviceCommandEnum.parse(vo.getCommand());
+        return mqttService.sendCommandDebug(device, commandEnum, vo.getPayload());
+    }
+
+    /**
+     * 指令超时等异常事件记录
+     */
+    private void saveCommandFailedEvent(DeviceCommandVO vo, IotDeviceEntity device, DeviceCommandEnum commandEnum, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!(cause instanceof ServerException) || commandEnum.getEventType() == null
+                || !StrUtil.contains(cause.getMessage(), DeviceServiceEnum.COMMAND_ID.getValue())) {
+            return;
+        }
+
+        String commandId = StrUtil.subBetween(cause.getMessage(), "<", ">");
+        deviceEventLogService.createAndSaveDeviceEvent(
+                vo.getDeviceId(), device.getTenantId(),
+                commandEnum.getEventType(), commandId, vo.getPayload());
+    }
+
+    /**
+     * 批量下发指令，至少指定设备、设备类型、租户中的一个条件，避免误操作下发到全部设备；
+     * 有租户的用户只能下发到本租户的设备，超级管理员才能指定租户
+     */
+    @Override
+    public String batchSendCommand(DeviceBatchCommandVO vo) {
+        DeviceCommandEnum commandEnum = DeviceCommandEnum.parse(vo.getCommand());
+        if (CollUtil.isEmpty(vo.getDeviceIdList()) && vo.getType() == null && vo.getTenantId() == null) {
+            throw new ServerException("请指定设备、设备类型或租户");
+        }
+
+        UserDetail user = SecurityUser.getUser();
+        Long tenantId = user.getTenantId();
+        if (tenantId == null && Constant.SUPER_ADMIN.equals(user.getSuperAdmin())) {
+            tenantId = vo.getTenantId();
+        }
+
+        LambdaQueryWrapper<IotDeviceEntity> wrapper = Wrappers.lambdaQuery();
+        if (CollUtil.isNotEmpty(vo.getDeviceIdList())) {
+            wrapper.in(IotDeviceEntity::getId, vo.getDeviceIdList());
+        } else {
+            wrapper.eq(IotDeviceEntity::getStatus, 1);
+            wrapper.eq(vo.getType() != null, IotDeviceEntity::getType, vo.getType());
+        }
+        wrapper.eq(tenantId != null, IotDeviceEntity::getTenantId, tenantId);
+        List<IotDeviceEntity> devices = list(wrapper);
+
+        return batchCommandService.submit(devices, commandEnum, vo.getPayload());
+    }
+
+    @Override
+    public DeviceCommandJobVO getBatchCommandJob(String jobId) {
+        DeviceCommandJobVO job = batchCommandService.getJob(jobId);
+        if (job == null) {
+            throw new ServerException("任务不存在或已过期");
+        }
+
+        // 只能查询自己创建的任务，超级管理员可以查询全部
+        UserDetail user = SecurityUser.getUser();
+        if (!Constant.SUPER_ADMIN.equals(user.getSuperAdmin()) && !Objects.equals(job.getCreator(), user.getId())) {
+            throw new ServerException("任务不存在或已过期");
+        }
+
+        return job;
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void asyncSendCommand(DeviceCommandVO vo) {
@@ -150,11 +267,15 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
             log.warn("处理设备状态上报消息，Topic:{}, TopicContext:{}", topic, topicContext);
         }
         Long deviceId = topicContext.getClient().getDeviceId();
-        IotDeviceEntity device = super.getById(deviceId);
+        DeviceShadow device = deviceShadowService.get(deviceId);
         if (device == null) {
             log.warn("无效设备id:{}，忽略设备状态上报消息:{}", deviceId, deviceProperty);
             return;
         }
+        // 设备上报离线时不更新在线状态，由运行状态处理改为离线
+        if (!isOfflineReport(deviceProperty)) {
+            devicePresenceService.touch(deviceId, topicContext.getClient().getTenantId());
+        }
         switch (deviceProperty.getPropertyType()) {
             case RUNNING_STATUS:
                 handleRunningStatus(device, deviceProperty, topicContext);
@@ -174,20 +295,26 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         }
     }
 
-    private void handleRunningStatus(IotDeviceEntity device, DevicePropertyDTO deviceProperty, DeviceTopicEnum.DeviceTopicContext topicContext) {
+    private boolean isOfflineReport(DevicePropertyDTO deviceProperty) {
+        return DevicePropertyEnum.RUNNING_STATUS.equals(deviceProperty.getPropertyType())
+                && (DeviceRunningStatusEnum.OFFLINE.getValue().toString().equals(deviceProperty.getPayload())
+                || DeviceRunningStatusEnum.OFFLINE.name().equalsIgnoreCase(deviceProperty.getPayload()));
+    }
+
+    private void handleRunningStatus(DeviceShadow device, DevicePropertyDTO deviceProperty, DeviceTopicEnum.DeviceTopicContext topicContext) {
         DeviceRunningStatusEnum oldStatus = DeviceRunningStatusEnum.parse(device.getRunningStatus().toString());
         DeviceRunningStatusEnum newStatus = DeviceRunningStatusEnum.parse(deviceProperty.getPayload());
-        if (newStatus.equals(oldStatus)) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!device.setRunningStatus(newStatus.getValue(),
+                DeviceRunningStatusEnum.ONLINE.equals(newStatus) ? now : null,
+                DeviceRunningStatusEnum.OFFLINE.equals(newStatus) ? now : null)) {
             return;
         }
-        device.setRunningStatus(newStatus.getValue());
-        if (DeviceRunningStatusEnum.ONLINE.equals(newStatus)) {
-            device.setUpTime(LocalDateTime.now());
-        } else if (DeviceRunningStatusEnum.OFFLINE.equals(newStatus)) {
-            device.setDownTime(LocalDateTime.now());
+        deviceShadowService.markDirty(device);
+        if (DeviceRunningStatusEnum.OFFLINE.equals(newStatus)) {
+            // 设备主动离线，停止心跳超时检查，离线事件在下面记录
+            devicePresenceService.offline(device.getId(), "设备上报离线");
         }
-        device.setUpdateTime(LocalDateTime.now());
-        getBaseMapper().updateById(device);
 
         if (newStatus.getEventType() != null) {
             deviceEventLogService.createAndSaveDeviceEvent(device.getId(), topicContext.getClient().getTenantId(),
@@ -199,56 +326,55 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         }
     }
 
-    private void handleAppVersion(IotDeviceEntity device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
-        if (CharSequenceUtil.equals(device.getAppVersion(), deviceStatus.getPayload())) {
+    private void handleAppVersion(DeviceShadow device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
+        String oldAppVersion = device.getAppVersion();
+        if (!device.setAppVersion(deviceStatus.getPayload())) {
             return;
         }
-        device.setAppVersion(deviceStatus.getPayload());
-        device.setUpdateTime(LocalDateTime.now());
-        getBaseMapper().updateById(device);
+        deviceShadowService.markDirty(device);
 
         deviceEventLogService.createAndSaveDeviceEvent(device.getId(), topicContext.getClient().getTenantId(),
                 DeviceEventTypeEnum.APP_VERSION_REPORT, null,
                 StrUtil.format(" {}:{}", DeviceEventTypeEnum.APP_VERSION_REPORT.getTitle(), deviceStatus.getPayload()));
 
         if (log.isInfoEnabled()) {
-            log.info("租户：{}，设备：{}-{}，App版本：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), device.getAppVersion(), deviceStatus.getPayload());
+            log.info("租户：{}，设备：{}-{}，App版本：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), oldAppVersion, deviceStatus.getPayload());
         }
     }
 
-    private void handleBatteryPercent(IotDeviceEntity device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
+    private void handleBatteryPercent(DeviceShadow device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
+        String oldBatteryPercent = device.getBatteryPercent();
         String batteryPercent = deviceStatus.getPayload();
-        if (batteryPercent.equals(device.getBatteryPercent())) {
+        deviceTelemetryService.record(device.getId(), topicContext.getClient().getTenantId(), DevicePropertyEnum.BATTERY_PERCENT, batteryPercent);
+        if (!device.setBatteryPercent(batteryPercent)) {
             return;
         }
-        device.setBatteryPercent(batteryPercent);
-        device.setUpdateTime(LocalDateTime.now());
-        getBaseMapper().updateById(device);
+        deviceShadowService.markDirty(device);
 
         deviceEventLogService.createAndSaveDeviceEvent(device.getId(), topicContext.getClient().getTenantId(),
                 DeviceEventTypeEnum.BATTERY_PERCENT_REPORT, null,
                 StrUtil.format(" {}:{}", DeviceEventTypeEnum.BATTERY_PERCENT_REPORT.getTitle(), deviceStatus.getPayload()));
 
         if (log.isInfoEnabled()) {
-            log.info("租户：{}，设备：{}-{}，电池电量百分比：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), device.getBatteryPercent(), batteryPercent);
+            log.info("租户：{}，设备：{}-{}，电池电量百分比：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), oldBatteryPercent, batteryPercent);
         }
     }
 
-    private void handleTemperature(IotDeviceEntity device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
+    private void handleTemperature(DeviceShadow device, DevicePropertyDTO deviceStatus, DeviceTopicEnum.DeviceTopicContext topicContext) {
+        String oldTemperature = device.getTemperature();
         String temperature = deviceStatus.getPayload();
-        if (temperature.equals(device.getTemperature())) {
+        deviceTelemetryService.record(device.getId(), topicContext.getClient().getTenantId(), DevicePropertyEnum.TEMPERATURE, temperature);
+        if (!device.setTemperature(temperature)) {
             return;
         }
-        device.setTemperature(temperature);
-        device.setUpdateTime(LocalDateTime.now());
-        getBaseMapper().updateById(device);
+        deviceShadowService.markDirty(device);
 
         deviceEventLogService.createAndSaveDeviceEvent(device.getId(), topicContext.getClient().getTenantId(),
                 DeviceEventTypeEnum.TEMPERATURE_REPORT, null,
                 StrUtil.format(" {}:{}", DeviceEventTypeEnum.TEMPERATURE_REPORT.getTitle(), deviceStatus.getPayload()));
 
         if (log.isInfoEnabled()) {
-            log.info("租户：{}，设备：{}-{}，温度：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), device.getTemperature(), temperature);
+            log.info("租户：{}，设备：{}-{}，温度：{} -> {}", topicContext.getClient().getTenantId(), device.getId(), device.getName(), oldTemperature, temperature);
         }
     }
 
@@ -272,11 +398,12 @@ public class IotDeviceServiceImpl extends BaseServiceImpl<IotDeviceDao, IotDevic
         }
 
         Long deviceId = topicContext.getClient().getDeviceId();
-        IotDeviceEntity device = super.getById(deviceId);
+        DeviceShadow device = deviceShadowService.get(deviceId);
         if (device == null) {
             log.warn("无效设备id:{}，忽略设备命令响应消息:{}", deviceId, commandResponse);
             return;
         }
+        devicePresenceService.touch(deviceId, topicContext.getClient().getTenantId());
         switch (commandResponse.getCommand()) {
             case LOCK, UNLOCK, OTA_UPGRADE: {
                 //记录处理设备事件
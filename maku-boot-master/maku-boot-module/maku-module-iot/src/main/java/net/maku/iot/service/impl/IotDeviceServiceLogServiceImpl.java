@@ -12,6 +12,7 @@ import net.maku.iot.convert.IotDeviceServiceLogConvert;
 import net.maku.iot.dao.IotDeviceServiceLogDao;
 import net.maku.iot.entity.IotDeviceServiceLogEntity;
 import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
 import net.maku.iot.query.IotDeviceServiceLogQuery;
 import net.maku.iot.service.IotDeviceServiceLogService;
 import net.maku.iot.vo.IotDeviceServiceLogVO;
@@ -29,6 +30,7 @@ import java.util.List;
 @Service
 @AllArgsConstructor
 public class IotDeviceServiceLogServiceImpl extends BaseServiceImpl<IotDeviceServiceLogDao, IotDeviceServiceLogEntity> implements IotDeviceServiceLogService {
+    private final IotDeviceLogWriter iotDeviceLogWriter;
 
     @Override
     public PageResult<IotDeviceServiceLogVO> page(IotDeviceServiceLogQuery query) {
@@ -88,7 +90,7 @@ public class IotDeviceServiceLogServiceImpl extends BaseServiceImpl<IotDeviceSer
 
     @Override
     public void createAndSaveDeviceServiceLog(Long deviceId, Long tenantId, DeviceCommandEnum serviceCommand, String eventUid, Object payload) {
-        save(createDeviceServiceLog(deviceId, tenantId, serviceCommand, eventUid, payload));
+        iotDeviceLogWriter.writeServiceLog(createDeviceServiceLog(deviceId, tenantId, serviceCommand, eventUid, payload));
     }
 
 }
\ No newline at end of file
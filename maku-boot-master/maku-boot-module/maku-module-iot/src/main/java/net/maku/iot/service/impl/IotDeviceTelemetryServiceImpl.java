@@ -0,0 +1,298 @@
+package net.maku.iot.service.impl;
+
+import cn.hutool.core.date.DatePattern;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.ObjectUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.toolkit.Db;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.common.utils.BatchLogWriter;
+import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
+import net.maku.iot.dao.IotDeviceDao;
+import net.maku.iot.dao.IotDeviceTelemetryDao;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.entity.IotDeviceTelemetryEntity;
+import net.maku.iot.enums.DevicePropertyEnum;
+import net.maku.iot.enums.TelemetryResolutionEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.query.IotDeviceTelemetryQuery;
+import net.maku.iot.utils.TenantUtils;
+import net.maku.iot.service.IotDeviceTelemetryService;
+import net.maku.iot.vo.IotDeviceTelemetryPointVO;
+import net.maku.iot.vo.IotDeviceTelemetryVO;
+import net.maku.iot.vo.IotLogWriterStatsVO;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备遥测数据
+ * <p>
+ * 原始数据批量写入按天分区的表，后台每分钟统计为分钟数据和小时数据，统计可重复执行，结果覆盖写入，
+ * 多个节点同时统计也不影响结果；过期的数据按分区删除
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IotDeviceTelemetryServiceImpl extends BaseServiceImpl<IotDeviceTelemetryDao, IotDeviceTelemetryEntity> implements IotDeviceTelemetryService {
+    /**
+     * 统计间隔，单位毫秒
+     */
+    private static final long ROLLUP_INTERVAL = 60 * 1000;
+
+    /**
+     * 分区维护间隔，单位毫秒
+     */
+    private static final long PARTITION_INTERVAL = 60 * 60 * 1000;
+
+    private static final String MAX_PARTITION = "p_max";
+
+    private final MqttConfig mqttConfig;
+    private final IotDeviceDao iotDeviceDao;
+
+    private BatchLogWriter<IotDeviceTelemetryEntity> writer;
+    private ScheduledExecutorService scheduledService;
+
+    /**
+     * 已完成分钟统计的时间，之后的数据查询时从原始数据统计
+     */
+    private volatile LocalDateTime minuteWatermark;
+
+    @PostConstruct
+    public void init() {
+        MqttConfig.Telemetry config = mqttConfig.getTelemetry();
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        writer = new BatchLogWriter<>("telemetry", config.getBatchSize(), config.getFlushInterval(),
+                config.getQueueCapacity(), config.getOverflowPolicy(), list -> Db.saveBatch(list, config.getBatchSize()));
+
+        scheduledService = ThreadUtil.createScheduledExecutor(1);
+        scheduledService.scheduleWithFixedDelay(() -> {
+            try {
+                maintainPartitions();
+            } catch (Exception e) {
+                log.error("遥测数据分区维护失败", e);
+            }
+        }, 0, PARTITION_INTERVAL, TimeUnit.MILLISECONDS);
+        scheduledService.scheduleWithFixedDelay(() -> {
+            try {
+                rollup();
+            } catch (Exception e) {
+                log.error("遥测数据统计失败", e);
+            }
+        }, ROLLUP_INTERVAL, ROLLUP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止时，写入队列中的遥测数据
+     */
+    @PreDestroy
+    public void destroy() {
+        if (writer == null) {
+            return;
+        }
+        scheduledService.shutdown();
+        writer.close(mqttConfig.getLogWriter().getShutdownTimeout());
+    }
+
+    @Override
+    public void record(Long deviceId, Long tenantId, DevicePropertyEnum property, String payload) {
+        if (writer == null) {
+            return;
+        }
+        if (!NumberUtil.isNumber(payload)) {
+            log.debug("设备：{}，属性：{}，属性值不是数值，不记录遥测数据：{}", deviceId, property, payload);
+            return;
+        }
+
+        IotDeviceTelemetryEntity entity = new IotDeviceTelemetryEntity();
+        entity.setDeviceId(deviceId);
+        entity.setTenantId(tenantId);
+        entity.setProperty(property.getValue());
+        entity.setPropertyValue(Double.parseDouble(payload.trim()));
+        entity.setReportTime(LocalDateTime.now());
+        writer.add(entity);
+    }
+
+    @Override
+    public IotDeviceTelemetryVO query(IotDeviceTelemetryQuery query) {
+        LocalDateTime startTime = query.getStartTime();
+        LocalDateTime endTime = ObjectUtil.defaultIfNull(query.getEndTime(), LocalDateTime.now());
+        if (!startTime.isBefore(endTime)) {
+            throw new ServerException("开始时间必须小于结束时间");
+        }
+
+        // 只能查询本租户的设备
+        Long deviceId = query.getDeviceId();
+        IotDeviceEntity device = iotDeviceDao.selectById(deviceId);
+        if (device == null || !TenantUtils.canAccess(device.getTenantId())) {
+            throw new ServerException("设备不存在");
+        }
+
+        Integer property = query.getPropertyType().getValue();
+        TelemetryResolutionEnum resolution = getResolution(deviceId, property, startTime, endTime, query.getMaxPoints());
+
+        List<IotDeviceTelemetryPointVO> points;
+        switch (resolution) {
+            case RAW -> points = baseMapper.getRawList(deviceId, property, startTime, endTime);
+            case MINUTE -> {
+                LocalDateTime start = startTime.truncatedTo(ChronoUnit.MINUTES);
+                LocalDateTime watermark = minuteWatermark;
+                if (watermark == null || !watermark.isBefore(endTime)) {
+                    points = baseMapper.getRollupList(resolution.getTable(), deviceId, property, start, endTime);
+                } else {
+                    // 尚未统计的最近数据，查询时从原始数据统计
+                    points = new ArrayList<>(baseMapper.getRollupList(resolution.getTable(), deviceId, property, start, watermark));
+                    points.addAll(baseMapper.getRawMinuteList(deviceId, property, start.isAfter(watermark) ? start : watermark, endTime));
+                }
+            }
+            default -> points = baseMapper.getRollupList(resolution.getTable(), deviceId, property,
+                    startTime.truncatedTo(ChronoUnit.HOURS), endTime);
+        }
+
+        IotDeviceTelemetryVO vo = new IotDeviceTelemetryVO();
+        vo.setResolution(resolution);
+        vo.setPoints(points);
+        return vo;
+    }
+
+    @Override
+    public IotLogWriterStatsVO getWriterStats() {
+        return writer == null ? null : IotDeviceLogWriter.getStats(writer);
+    }
+
+    /**
+     * 选择数据点数量不超过上限的最细精度，即满足时间范围所需的最粗精度，
+     * 开始时间超出保留天数的精度不再选择
+     */
+    private TelemetryResolutionEnum getResolution(Long deviceId, Integer property, LocalDateTime startTime,
+                                                  LocalDateTime endTime, int maxPoints) {
+        MqttConfig.Telemetry config = mqttConfig.getTelemetry();
+        LocalDateTime now = LocalDateTime.now();
+        Duration range = Duration.between(startTime, endTime);
+
+        if (range.toMinutes() <= maxPoints && !startTime.isBefore(now.minusDays(config.getRawRetentionDays()))) {
+            LambdaQueryWrapper<IotDeviceTelemetryEntity> wrapper = Wrappers.lambdaQuery();
+            wrapper.eq(IotDeviceTelemetryEntity::getDeviceId, deviceId);
+            wrapper.eq(IotDeviceTelemetryEntity::getProperty, property);
+            wrapper.ge(IotDeviceTelemetryEntity::getReportTime, startTime);
+            wrapper.lt(IotDeviceTelemetryEntity::getReportTime, endTime);
+            if (baseMapper.selectCount(wrapper) <= maxPoints) {
+                return TelemetryResolutionEnum.RAW;
+            }
+        }
+
+        if (range.toMinutes() <= maxPoints && !startTime.isBefore(now.minusDays(config.getMinuteRetentionDays()))) {
+            return TelemetryResolutionEnum.MINUTE;
+        }
+
+        return TelemetryResolutionEnum.HOUR;
+    }
+
+    /**
+     * 统计上次统计之后的数据，并重新统计最近几分钟，包含延迟写入的数据；
+     * 当前小时的统计数据只包含已统计的分钟，之后会被覆盖
+     */
+    private void rollup() {
+        MqttConfig.Telemetry config = mqttConfig.getTelemetry();
+        LocalDateTime endTime = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime startTime = minuteWatermark;
+        if (startTime == null) {
+            // 启动后从已统计的最新数据开始
+            LocalDateTime maxBucketTime = baseMapper.getMaxBucketTime(TelemetryResolutionEnum.MINUTE.getTable());
+            startTime = maxBucketTime == null ? endTime : maxBucketTime.plusMinutes(1);
+        }
+        startTime = startTime.minusMinutes(config.getRollupLateness());
+
+        LocalDateTime minStartTime = endTime.minusDays(config.getRawRetentionDays());
+        if (startTime.isBefore(minStartTime)) {
+            startTime = minStartTime;
+        }
+
+        // 按小时分段统计，避免一次统计的数据过多
+        while (startTime.isBefore(endTime)) {
+            LocalDateTime hour = startTime.truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime chunkEndTime = hour.plusHours(1).isBefore(endTime) ? hour.plusHours(1) : endTime;
+            baseMapper.rollupMinute(startTime, chunkEndTime);
+            baseMapper.rollupHour(hour, chunkEndTime);
+            startTime = chunkEndTime;
+        }
+
+        minuteWatermark = endTime;
+    }
+
+    /**
+     * 创建未来几天的分区，删除超出保留天数的分区；表未分区时，按时间删除过期数据
+     */
+    private void maintainPartitions() {
+        MqttConfig.Telemetry config = mqttConfig.getTelemetry();
+        maintainPartitions(TelemetryResolutionEnum.RAW, config.getRawRetentionDays(), config.getPartitionAheadDays());
+        maintainPartitions(TelemetryResolutionEnum.MINUTE, config.getMinuteRetentionDays(), config.getPartitionAheadDays());
+
+        TelemetryResolutionEnum hour = TelemetryResolutionEnum.HOUR;
+        baseMapper.deleteBefore(hour.getTable(), hour.getTimeColumn(), LocalDate.now().minusDays(config.getHourRetentionDays()).atStartOfDay());
+    }
+
+    private void maintainPartitions(TelemetryResolutionEnum resolution, int retentionDays, int aheadDays) {
+        LocalDate today = LocalDate.now();
+        LocalDate expireDay = today.minusDays(retentionDays);
+        List<String> partitions = baseMapper.getPartitionList(resolution.getTable());
+        if (partitions.isEmpty()) {
+            baseMapper.deleteBefore(resolution.getTable(), resolution.getTimeColumn(), expireDay.atStartOfDay());
+            return;
+        }
+
+        // 按天分区名称：p + yyyyMMdd，只能在已有分区之后拆分 p_max 分区
+        LocalDate lastDay = null;
+        for (String partition : partitions) {
+            LocalDate day = parsePartitionDay(partition);
+            if (day == null) {
+                continue;
+            }
+            if (day.isBefore(expireDay)) {
+                baseMapper.dropPartition(resolution.getTable(), partition);
+                log.info("删除过期的遥测数据分区：{}.{}", resolution.getTable(), partition);
+            } else if (lastDay == null || day.isAfter(lastDay)) {
+                lastDay = day;
+            }
+        }
+
+        Map<String, String> newPartitions = new LinkedHashMap<>();
+        LocalDate day = lastDay == null || lastDay.isBefore(today) ? today : lastDay.plusDays(1);
+        for (; !day.isAfter(today.plusDays(aheadDays)); day = day.plusDays(1)) {
+            newPartitions.put("p" + day.format(DatePattern.PURE_DATE_FORMATTER),
+                    day.plusDays(1).atStartOfDay().format(DatePattern.NORM_DATETIME_FORMATTER));
+        }
+        if (!newPartitions.isEmpty() && partitions.contains(MAX_PARTITION)) {
+            baseMapper.addPartitions(resolution.getTable(), newPartitions);
+            log.info("创建遥测数据分区：{}.{}", resolution.getTable(), newPartitions.keySet());
+        }
+    }
+
+    private LocalDate parsePartitionDay(String partition) {
+        if (partition.length() != 9 || partition.charAt(0) != 'p' || !NumberUtil.isInteger(partition.substring(1))) {
+            return null;
+        }
+        return LocalDate.parse(partition.substring(1), DatePattern.PURE_DATE_FORMATTER);
+    }
+}
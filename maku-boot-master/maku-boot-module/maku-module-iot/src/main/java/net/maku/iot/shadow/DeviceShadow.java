@@ -0,0 +1,209 @@
+package net.maku.iot.shadow;
+
+import cn.hutool.core.bean.BeanUtil;
+import net.maku.iot.entity.IotDeviceEntity;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * 设备影子，缓存设备的最新属性，记录未写入数据库的属性
+ * <p>
+ * 同一设备的属性上报由同一个 MQTT 分区线程处理，写入数据库由定时线程处理，通过 synchronized 保证可见性
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceShadow {
+    public static final int RUNNING_STATUS = 1;
+    public static final int UP_TIME = 1 << 1;
+    public static final int DOWN_TIME = 1 << 2;
+    public static final int APP_VERSION = 1 << 3;
+    public static final int BATTERY_PERCENT = 1 << 4;
+    public static final int TEMPERATURE = 1 << 5;
+
+    /**
+     * 设备最新数据
+     */
+    private final IotDeviceEntity device;
+
+    /**
+     * 未写入数据库的属性
+     */
+    private int dirty;
+
+    public DeviceShadow(IotDeviceEntity device) {
+        this.device = device;
+    }
+
+    public synchronized Long getId() {
+        return device.getId();
+    }
+
+    public synchronized Long getTenantId() {
+        return device.getTenantId();
+    }
+
+    public synchronized String getName() {
+        return device.getName();
+    }
+
+    public synchronized Integer getRunningStatus() {
+        return device.getRunningStatus();
+    }
+
+    public synchronized String getAppVersion() {
+        return device.getAppVersion();
+    }
+
+    public synchronized String getBatteryPercent() {
+        return device.getBatteryPercent();
+    }
+
+    public synchronized String getTemperature() {
+        return device.getTemperature();
+    }
+
+    /**
+     * 更新运行状态，上线、下线时同时记录时间
+     *
+     * @return 是否有变化
+     */
+    public synchronized boolean setRunningStatus(Integer runningStatus, LocalDateTime upTime, LocalDateTime downTime) {
+        if (Objects.equals(device.getRunningStatus(), runningStatus)) {
+            return false;
+        }
+        device.setRunningStatus(runningStatus);
+        dirty |= RUNNING_STATUS;
+        if (upTime != null) {
+            device.setUpTime(upTime);
+            dirty |= UP_TIME;
+        }
+        if (downTime != null) {
+            device.setDownTime(downTime);
+            dirty |= DOWN_TIME;
+        }
+        device.setUpdateTime(LocalDateTime.now());
+        return true;
+    }
+
+    public synchronized boolean setAppVersion(String appVersion) {
+        if (Objects.equals(device.getAppVersion(), appVersion)) {
+            return false;
+        }
+        device.setAppVersion(appVersion);
+        device.setUpdateTime(LocalDateTime.now());
+        dirty |= APP_VERSION;
+        return true;
+    }
+
+    public synchronized boolean setBatteryPercent(String batteryPercent) {
+        if (Objects.equals(device.getBatteryPercent(), batteryPercent)) {
+            return false;
+        }
+        device.setBatteryPercent(batteryPercent);
+        device.setUpdateTime(LocalDateTime.now());
+        dirty |= BATTERY_PERCENT;
+        return true;
+    }
+
+    public synchronized boolean setTemperature(String temperature) {
+        if (Objects.equals(device.getTemperature(), temperature)) {
+            return false;
+        }
+        device.setTemperature(temperature);
+        device.setUpdateTime(LocalDateTime.now());
+        dirty |= TEMPERATURE;
+        return true;
+    }
+
+    /**
+     * 复制设备数据
+     */
+    public synchronized IotDeviceEntity copy() {
+        return BeanUtil.copyProperties(device, IotDeviceEntity.class);
+    }
+
+    /**
+     * 用设备影子中的属性，覆盖从数据库查询的设备数据
+     */
+    public synchronized void mergeTo(IotDeviceEntity target) {
+        target.setRunningStatus(device.getRunningStatus());
+        target.setUpTime(device.getUpTime());
+        target.setDownTime(device.getDownTime());
+        target.setAppVersion(device.getAppVersion());
+        target.setBatteryPercent(device.getBatteryPercent());
+        target.setTemperature(device.getTemperature());
+        target.setUpdateTime(device.getUpdateTime());
+    }
+
+    /**
+     * 重新加载数据库中的设备数据，未写入数据库的属性保留
+     */
+    public synchronized void reload(IotDeviceEntity entity) {
+        IotDeviceEntity latest = copy();
+        BeanUtil.copyProperties(entity, device);
+        if ((dirty & RUNNING_STATUS) != 0) {
+            device.setRunningStatus(latest.getRunningStatus());
+        }
+        if ((dirty & UP_TIME) != 0) {
+            device.setUpTime(latest.getUpTime());
+        }
+        if ((dirty & DOWN_TIME) != 0) {
+            device.setDownTime(latest.getDownTime());
+        }
+        if ((dirty & APP_VERSION) != 0) {
+            device.setAppVersion(latest.getAppVersion());
+        }
+        if ((dirty & BATTERY_PERCENT) != 0) {
+            device.setBatteryPercent(latest.getBatteryPercent());
+        }
+        if ((dirty & TEMPERATURE) != 0) {
+            device.setTemperature(latest.getTemperature());
+        }
+    }
+
+    /**
+     * 取出未写入数据库的属性，只包含变化的字段
+     *
+     * @return 没有变化时返回 null
+     */
+    public synchronized Change drain() {
+        if (dirty == 0) {
+            return null;
+        }
+
+        IotDeviceEntity entity = new IotDeviceEntity();
+        entity.setId(device.getId());
+        if ((dirty & RUNNING_STATUS) != 0) {
+            entity.setRunningStatus(device.getRunningStatus());
+        }
+        if ((dirty & UP_TIME) != 0) {
+            entity.setUpTime(device.getUpTime());
+        }
+        if ((dirty & DOWN_TIME) != 0) {
+            entity.setDownTime(device.getDownTime());
+        }
+        if ((dirty & APP_VERSION) != 0) {
+            entity.setAppVersion(device.getAppVersion());
+        }
+        if ((dirty & BATTERY_PERCENT) != 0) {
+            entity.setBatteryPercent(device.getBatteryPercent());
+        }
+        if ((dirty & TEMPERATURE) != 0) {
+            entity.setTemperature(device.getTemperature());
+        }
+
+        Change change = new Change(dirty, entity);
+        dirty = 0;
+        return change;
+    }
+
+    /**
+     * 未写入数据库的属性
+     *
+     * @param fields 变化的字段
+     * @param entity 只包含变化字段的设备数据
+     */
+    public record Change(int fields, IotDeviceEntity entity) {
+    }
+}
@@ -0,0 +1,266 @@
+package net.maku.iot.shadow;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.thread.ThreadUtil;
+import com.baomidou.mybatisplus.extension.toolkit.Db;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.iot.dao.IotDeviceDao;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.mqtt.config.MqttConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备影子服务，设备属性上报先更新内存中的设备影子，
+ * 同一设备在写入间隔内的多次上报合并为一次，由定时任务只写入变化的字段，并使用 JDBC 批量更新
+ * <p>
+ * 设备影子缓存在当前节点内存中，数量有上限，超过空闲时间未访问的移除，
+ * 淘汰时未写入的属性保留到下次写入或重新加载前写入；加载后超过有效时间，访问时在后台从数据库刷新，
+ * 刷新不替换设备影子实例，也不阻塞消息处理。集群部署时：
+ * <ul>
+ *     <li>同一设备的消息固定由同一节点处理（不开启共享订阅，或 MQTT 服务器按 clientId 粘性分配共享订阅消息）时，设备影子与设备实时一致</li>
+ *     <li>共享订阅按轮询分配消息时，各节点只写入自己收到的变化，读取的设备属性最多延迟 spring.mqtt.shadow.expire</li>
+ * </ul>
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceShadowService {
+    private final IotDeviceDao iotDeviceDao;
+    private final MqttConfig mqttConfig;
+
+    /**
+     * 设备影子，key: 设备ID
+     */
+    private LoadingCache<Long, DeviceShadow> shadows;
+
+    /**
+     * 不在缓存中的未写入属性，包括淘汰、过期时和写入失败的，key: 设备ID
+     */
+    private final Map<Long, DeviceShadow.Change> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 有未写入数据库属性的设备影子，保存实例而不是设备ID，设备影子被淘汰后的修改也能写入
+     */
+    private final Set<DeviceShadow> dirtyShadows = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduledService;
+
+    @PostConstruct
+    public void init() {
+        MqttConfig.Shadow config = mqttConfig.getShadow();
+        scheduledService = ThreadUtil.createScheduledExecutor(1);
+        // 持续上报的设备不会因空闲过期，按有效时间在写入线程中刷新，与写入数据库串行
+        shadows = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterAccess(Duration.ofMillis(config.getIdleTimeout()))
+                .refreshAfterWrite(Duration.ofMillis(config.getExpire()))
+                .executor(scheduledService)
+                .evictionListener((Long deviceId, DeviceShadow shadow, RemovalCause cause) -> {
+                    DeviceShadow.Change change = shadow == null ? null : shadow.drain();
+                    if (change != null) {
+                        pending.merge(deviceId, change, DeviceShadowService::merge);
+                    }
+                })
+                .build(new CacheLoader<>() {
+                    @Override
+                    public DeviceShadow load(Long deviceId) {
+                        return DeviceShadowService.this.load(deviceId);
+                    }
+
+                    @Override
+                    public DeviceShadow reload(Long deviceId, DeviceShadow shadow) {
+                        return DeviceShadowService.this.reload(deviceId, shadow);
+                    }
+                });
+
+        scheduledService.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("设备影子写入数据库失败", e);
+            }
+        }, config.getFlushInterval(), config.getFlushInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止时，把未写入的属性写入数据库
+     */
+    @PreDestroy
+    public void destroy() {
+        scheduledService.shutdown();
+        try {
+            scheduledService.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * 获取设备影子，不存在时从数据库加载，超过有效时间的在后台刷新
+     *
+     * @param deviceId 设备ID
+     * @return 设备不存在时返回 null
+     */
+    public DeviceShadow get(Long deviceId) {
+        return shadows.get(deviceId);
+    }
+
+    /**
+     * 从数据库加载设备，未写入的属性先写入，避免加载到旧数据
+     */
+    private DeviceShadow load(Long deviceId) {
+        DeviceShadow.Change change = pending.remove(deviceId);
+        if (change != null) {
+            write(new ArrayList<>(Collections.singletonList(change)));
+        }
+
+        IotDeviceEntity device = iotDeviceDao.selectById(deviceId);
+        return device == null ? null : new DeviceShadow(device);
+    }
+
+    /**
+     * 超过有效时间，先写入未写入的属性，再用数据库中的设备数据刷新，设备影子实例不变
+     */
+    private DeviceShadow reload(Long deviceId, DeviceShadow shadow) {
+        DeviceShadow.Change change = shadow.drain();
+        if (change != null) {
+            dirtyShadows.remove(shadow);
+            write(new ArrayList<>(Collections.singletonList(change)));
+        }
+
+        IotDeviceEntity device = iotDeviceDao.selectById(deviceId);
+        if (device == null) {
+            return null;
+        }
+        shadow.reload(device);
+        return shadow;
+    }
+
+    /**
+     * 属性有变化，等待写入数据库
+     */
+    public void markDirty(DeviceShadow shadow) {
+        dirtyShadows.add(shadow);
+    }
+
+    /**
+     * 用设备影子中的最新属性，覆盖从数据库查询的设备数据
+     */
+    public void merge(Collection<IotDeviceEntity> list) {
+        for (IotDeviceEntity entity : list) {
+            DeviceShadow shadow = shadows.getIfPresent(entity.getId());
+            if (shadow != null) {
+                shadow.mergeTo(entity);
+            }
+        }
+    }
+
+    /**
+     * 设备信息在数据库中修改后，先写入未写入的属性，再重新加载
+     */
+    public void refresh(Long deviceId) {
+        DeviceShadow shadow = shadows.getIfPresent(deviceId);
+        if (shadow == null) {
+            return;
+        }
+
+        dirtyShadows.remove(shadow);
+        DeviceShadow.Change change = shadow.drain();
+        if (change != null) {
+            write(new ArrayList<>(Collections.singletonList(change)));
+        }
+
+        IotDeviceEntity device = iotDeviceDao.selectById(deviceId);
+        if (device == null) {
+            shadows.invalidate(deviceId);
+        } else {
+            shadow.reload(device);
+        }
+    }
+
+    /**
+     * 删除设备影子，未写入的属性丢弃
+     */
+    public void remove(Collection<Long> deviceIds) {
+        Set<Long> ids = new HashSet<>(deviceIds);
+        shadows.invalidateAll(ids);
+        dirtyShadows.removeIf(shadow -> ids.contains(shadow.getId()));
+        ids.forEach(pending::remove);
+    }
+
+    /**
+     * 把所有变化的属性写入数据库，同一设备合并为一次更新
+     */
+    public void flush() {
+        Map<Long, DeviceShadow.Change> changes = new HashMap<>();
+        // 先取不在缓存中的，再取设备影子中较新的
+        for (Long deviceId : pending.keySet()) {
+            DeviceShadow.Change change = pending.remove(deviceId);
+            if (change != null) {
+                changes.merge(deviceId, change, DeviceShadowService::merge);
+            }
+        }
+
+        Iterator<DeviceShadow> iterator = dirtyShadows.iterator();
+        while (iterator.hasNext()) {
+            DeviceShadow shadow = iterator.next();
+            iterator.remove();
+
+            DeviceShadow.Change change = shadow.drain();
+            if (change != null) {
+                changes.merge(shadow.getId(), change, DeviceShadowService::merge);
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            write(new ArrayList<>(changes.values()));
+        }
+    }
+
+    private void write(List<DeviceShadow.Change> changes) {
+        // 变化字段相同的更新语句相同，排在一起才能合并为一个 JDBC 批次
+        changes.sort(Comparator.comparingInt(DeviceShadow.Change::fields));
+        List<IotDeviceEntity> list = changes.stream().map(DeviceShadow.Change::entity).toList();
+        try {
+            updateBatch(list);
+        } catch (Exception e) {
+            log.error("设备影子写入数据库失败，设备数量：{}，下次重试", list.size(), e);
+            // 重试期间可能已有更新的属性，失败的作为较旧的合并
+            for (DeviceShadow.Change change : changes) {
+                pending.merge(change.entity().getId(), change, (newer, older) -> merge(older, newer));
+            }
+        }
+    }
+
+    /**
+     * JDBC 批量更新设备
+     */
+    void updateBatch(List<IotDeviceEntity> list) {
+        Db.updateBatchById(list, mqttConfig.getShadow().getBatchSize());
+    }
+
+    /**
+     * 合并同一设备未写入的属性，较新的非空字段覆盖较旧的
+     */
+    private static DeviceShadow.Change merge(DeviceShadow.Change older, DeviceShadow.Change newer) {
+        BeanUtil.copyProperties(newer.entity(), older.entity(), CopyOptions.create().ignoreNullValue());
+        return new DeviceShadow.Change(older.fields() | newer.fields(), older.entity());
+    }
+}
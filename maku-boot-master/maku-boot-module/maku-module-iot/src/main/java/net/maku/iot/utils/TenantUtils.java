@@ -0,0 +1,42 @@
+package net.maku.iot.utils;
+
+import net.maku.framework.common.constant.Constant;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.framework.security.user.UserDetail;
+
+import java.util.Objects;
+
+/**
+ * 租户工具类，有租户的用户只能访问本租户的设备，没有租户的超级管理员才能指定租户
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class TenantUtils {
+
+    /**
+     * 查询使用的租户ID
+     *
+     * @param tenantId 请求中指定的租户ID，只对没有租户的超级管理员生效
+     * @return 当前用户的租户ID，没有租户时返回指定的租户ID，返回 null 表示全部租户
+     */
+    public static Long getTenantId(Long tenantId) {
+        UserDetail user = SecurityUser.getUser();
+        if (user == null) {
+            return tenantId;
+        }
+        if (user.getTenantId() != null) {
+            return user.getTenantId();
+        }
+        return Constant.SUPER_ADMIN.equals(user.getSuperAdmin()) ? tenantId : null;
+    }
+
+    /**
+     * 当前用户是否可以访问该租户的设备
+     *
+     * @param tenantId 设备的租户ID
+     */
+    public static boolean canAccess(Long tenantId) {
+        UserDetail user = SecurityUser.getUser();
+        return user == null || user.getTenantId() == null || Objects.equals(user.getTenantId(), tenantId);
+    }
+}
@@ -0,0 +1,33 @@
+package net.maku.iot.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 设备批量指令
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备批量指令VO")
+public class DeviceBatchCommandVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "设备ID列表，为空时按设备类型、租户筛选，设备ID列表、设备类型、租户至少指定一个")
+    private List<Long> deviceIdList;
+
+    @Schema(description = "设备类型，1.手持设备，2.柜体，3传感设备")
+    private Integer type;
+
+    @Schema(description = "租户ID，只有超级管理员可以指定，其他用户为所在租户")
+    private Long tenantId;
+
+    @Schema(description = "指令")
+    private String command;
+
+    @Schema(description = "指令内容")
+    private String payload;
+}
@@ -0,0 +1,58 @@
+package net.maku.iot.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 批量指令任务进度
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "批量指令任务进度")
+public class DeviceCommandJobVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "任务ID")
+    private String jobId;
+
+    @Schema(description = "指令")
+    private String command;
+
+    @Schema(description = "设备数量")
+    private Integer total;
+
+    @Schema(description = "已发送数量")
+    private Integer sent;
+
+    @Schema(description = "设备执行成功数量")
+    private Integer succeeded;
+
+    @Schema(description = "发送失败或设备执行失败数量")
+    private Integer failed;
+
+    @Schema(description = "设备响应超时数量")
+    private Integer timeout;
+
+    @Schema(description = "是否已结束")
+    private Boolean finished;
+
+    @Schema(description = "创建者")
+    private Long creator;
+
+    @Schema(description = "租户ID")
+    private Long tenantId;
+
+    @Schema(description = "创建时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime createTime;
+
+    @Schema(description = "结束时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime finishTime;
+}
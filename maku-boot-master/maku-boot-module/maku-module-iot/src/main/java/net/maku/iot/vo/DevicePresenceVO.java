@@ -0,0 +1,37 @@
+package net.maku.iot.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 设备在线状态
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备在线状态")
+public class DevicePresenceVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "设备ID")
+    private Long deviceId;
+
+    @Schema(description = "租户ID")
+    private Long tenantId;
+
+    @Schema(description = "是否在线")
+    private Boolean online;
+
+    @Schema(description = "最后活跃时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime lastSeenTime;
+
+    @Schema(description = "上线时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime onlineTime;
+}
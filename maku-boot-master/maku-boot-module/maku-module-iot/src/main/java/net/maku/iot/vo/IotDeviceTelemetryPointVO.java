@@ -0,0 +1,37 @@
+package net.maku.iot.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 设备遥测数据点，原始数据的最小值、最大值、平均值相同
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备遥测数据点")
+public class IotDeviceTelemetryPointVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "时间，统计数据为统计区间的开始时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime time;
+
+    @Schema(description = "最小值")
+    private Double minValue;
+
+    @Schema(description = "最大值")
+    private Double maxValue;
+
+    @Schema(description = "平均值")
+    private Double avgValue;
+
+    @Schema(description = "数据条数")
+    private Integer countValue;
+
+}
@@ -0,0 +1,26 @@
+package net.maku.iot.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.iot.enums.TelemetryResolutionEnum;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 设备遥测数据
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备遥测数据")
+public class IotDeviceTelemetryVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "数据精度")
+    private TelemetryResolutionEnum resolution;
+
+    @Schema(description = "数据点")
+    private List<IotDeviceTelemetryPointVO> points;
+
+}
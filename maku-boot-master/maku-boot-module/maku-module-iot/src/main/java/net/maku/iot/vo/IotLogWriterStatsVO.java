@@ -0,0 +1,35 @@
+package net.maku.iot.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 设备日志批量写入统计
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备日志批量写入统计")
+public class IotLogWriterStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "日志名称")
+    private String name;
+
+    @Schema(description = "队列中等待写入的日志数")
+    private Integer queued;
+
+    @Schema(description = "已写入的日志数")
+    private Long written;
+
+    @Schema(description = "写入的批次数")
+    private Long batches;
+
+    @Schema(description = "写入失败的日志数")
+    private Long failed;
+
+    @Schema(description = "队列满时丢弃的日志数")
+    private Long dropped;
+}
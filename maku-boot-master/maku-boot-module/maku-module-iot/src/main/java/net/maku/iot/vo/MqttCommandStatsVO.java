@@ -0,0 +1,38 @@
+package net.maku.iot.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 设备命令响应统计
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "设备命令响应统计")
+public class MqttCommandStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "等待响应的命令数")
+    private Integer pending;
+
+    @Schema(description = "已响应的命令数")
+    private Long completed;
+
+    @Schema(description = "超时的命令数")
+    private Long timeout;
+
+    @Schema(description = "超时后到达的响应数")
+    private Long late;
+
+    @Schema(description = "重复的响应数")
+    private Long duplicate;
+
+    @Schema(description = "找不到等待命令的响应数")
+    private Long unknown;
+
+    @Schema(description = "等待命令过多被拒绝的命令数")
+    private Long rejected;
+}
@@ -0,0 +1,41 @@
+package net.maku.iot.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * MQTT 消息分区统计
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Data
+@Schema(description = "MQTT 消息分区统计")
+public class MqttPartitionStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "分区序号")
+    private Integer partition;
+
+    @Schema(description = "队列中等待处理的消息数")
+    private Integer queued;
+
+    @Schema(description = "溢出到 Redis 等待处理的消息数")
+    private Long spilled;
+
+    @Schema(description = "队列中最早消息的等待时间，单位毫秒")
+    private Long lagMillis;
+
+    @Schema(description = "最近一条消息从接收到开始处理的延迟，单位毫秒")
+    private Long lastLatencyMillis;
+
+    @Schema(description = "已处理的消息数")
+    private Long processed;
+
+    @Schema(description = "处理失败的消息数")
+    private Long failed;
+
+    @Schema(description = "丢弃的消息数")
+    private Long dropped;
+}
@@ -0,0 +1,157 @@
+package net.maku.iot.mqtt;
+
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.StrUtil;
+import net.maku.iot.dto.DeviceClientDTO;
+import net.maku.iot.enums.DeviceTopicEnum;
+import net.maku.iot.mqtt.factory.MqttMessageHandlerFactory;
+import net.maku.iot.mqtt.handler.MqttMessageHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MQTT 主题解析和处理器路由基准测试，对比原来的 split、format、stream 实现和按下标扫描、查表的实现
+ * <p>
+ * 运行 main 方法，或使用 -prof gc 查看每条消息的内存分配
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqttTopicRouteBenchmark {
+    private static final String[] TOPICS = {
+            "/maku/device/handheld_1000_1812345678901234567_a1b2c3d4/property",
+            "/maku/device/cabinet_1000_1812345678901234568_e5f6a7b8/command_response",
+            "/maku/device/sensor_1001_1812345678901234569_c9d0e1f2/property"
+    };
+
+    private GenericApplicationContext applicationContext;
+    private MqttMessageHandlerFactory factory;
+    private List<MqttMessageHandler> handlers;
+    private DeviceTopicEnum.DeviceTopicContext context;
+    private int index;
+
+    @Setup
+    public void setup() {
+        applicationContext = new GenericApplicationContext();
+        applicationContext.registerBean("propertyHandler", MqttMessageHandler.class, () -> new TopicHandler(DeviceTopicEnum.PROPERTY));
+        applicationContext.registerBean("commandResponseHandler", MqttMessageHandler.class, () -> new TopicHandler(DeviceTopicEnum.COMMAND_RESPONSE));
+        applicationContext.refresh();
+
+        factory = new MqttMessageHandlerFactory(applicationContext);
+        handlers = new ArrayList<>(applicationContext.getBeansOfType(MqttMessageHandler.class).values());
+        context = new DeviceTopicEnum.DeviceTopicContext();
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    private String nextTopic() {
+        index = (index + 1) % TOPICS.length;
+        return TOPICS[index];
+    }
+
+    @Benchmark
+    public void legacyParseContext(Blackhole blackhole) {
+        blackhole.consume(LegacyTopic.parseContext(nextTopic()));
+    }
+
+    @Benchmark
+    public void parseContext(Blackhole blackhole) {
+        blackhole.consume(DeviceTopicEnum.parseContext(nextTopic(), context));
+    }
+
+    @Benchmark
+    public void legacyRoute(Blackhole blackhole) {
+        String topic = nextTopic();
+        blackhole.consume(Collections.unmodifiableList(handlers.stream()
+                .filter(handler -> LegacyTopic.startsWith(topic, ((TopicHandler) handler).deviceTopic.getTopic()))
+                .collect(Collectors.toList())));
+    }
+
+    @Benchmark
+    public void route(Blackhole blackhole) {
+        blackhole.consume(factory.getHandlers(nextTopic()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MqttTopicRouteBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * 只处理指定设备主题的处理器，与设备属性、命令响应处理器的判断方式相同
+     */
+    private static class TopicHandler implements MqttMessageHandler {
+        private final DeviceTopicEnum deviceTopic;
+
+        TopicHandler(DeviceTopicEnum deviceTopic) {
+            this.deviceTopic = deviceTopic;
+        }
+
+        @Override
+        public boolean supports(String topic) {
+            return DeviceTopicEnum.startsWith(topic, deviceTopic.getTopic());
+        }
+
+        @Override
+        public void handle(String topic, String message) {
+        }
+    }
+
+    /**
+     * 原来的主题解析实现
+     */
+    private static class LegacyTopic {
+        static DeviceTopicEnum parse(String topic) {
+            String topicSuffix = StrUtil.startWith(topic, DeviceTopicEnum.TOPIC_PREFIX) ? StrUtil.subAfter(topic, "/", true) : topic;
+            return Arrays.stream(DeviceTopicEnum.values())
+                    .filter(d -> d.name().equalsIgnoreCase(topicSuffix)).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException(StrUtil.format("无效的 DeviceTopicEnum 值：{}", topic)));
+        }
+
+        static boolean startsWith(String topic, String prefix) {
+            try {
+                return parse(topic).getTopic().startsWith(prefix);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        static DeviceTopicEnum.DeviceTopicContext parseContext(String topic) {
+            String topicSuffix = StrUtil.subAfter(topic, DeviceTopicEnum.TOPIC_PREFIX, false);
+            List<String> parts = StrUtil.split(topicSuffix, "/", true, true);
+            Assert.isTrue(parts.size() == 2, "无效的设备主题:{}", topic);
+
+            List<String> clientIdParts = StrUtil.split(parts.get(0), "_");
+            Assert.isTrue(clientIdParts.size() > 3, "无效的设备clientId:{}", parts.get(0));
+            DeviceClientDTO deviceClient = DeviceClientDTO.builder()
+                    .deviceType(clientIdParts.get(0))
+                    .tenantId(Long.valueOf(clientIdParts.get(1)))
+                    .deviceId(Long.valueOf(clientIdParts.get(2)))
+                    .uid(clientIdParts.get(3))
+                    .build();
+
+            return DeviceTopicEnum.DeviceTopicContext.builder()
+                    .client(deviceClient)
+                    .topic(parse(parts.get(1)))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.maku.iot.mqtt.channel;
+
+import net.maku.iot.enums.MqttOverflowPolicyEnum;
+import net.maku.iot.vo.MqttPartitionStatsVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分区消息通道测试，启动前收到的消息在订阅后处理，停止时处理完队列，没有订阅者时记录失败
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class PartitionedMqttChannelTest {
+
+    @Test
+    public void handleAfterStart() throws Exception {
+        PartitionedMqttChannel channel = newChannel();
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        // 启动前收到的消息入队，不丢弃
+        channel.send(message("a", 1));
+        channel.send(message("a", 2));
+        channel.subscribe(message -> {
+            received.add(message.getPayload());
+            latch.countDown();
+        });
+        channel.start();
+        channel.send(message("a", 3));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // 同一设备的消息按顺序处理
+        assertEquals(List.of("1", "2", "3"), received);
+        channel.stop();
+        assertFalse(channel.isRunning());
+    }
+
+    @Test
+    public void drainOnStop() {
+        PartitionedMqttChannel channel = newChannel();
+        List<Object> received = new CopyOnWriteArrayList<>();
+        channel.subscribe(message -> {
+            sleep(10);
+            received.add(message.getPayload());
+        });
+        channel.start();
+        for (int i = 0; i < 50; i++) {
+            channel.send(message("device" + (i % 4), i));
+        }
+
+        // 停止时已入队的消息先处理完
+        channel.stop();
+        assertEquals(50, received.size());
+    }
+
+    @Test
+    public void failWithoutSubscriber() throws Exception {
+        PartitionedMqttChannel channel = newChannel();
+        channel.start();
+        channel.send(message("a", 1));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (failed(channel) == 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        channel.stop();
+        assertEquals(1, failed(channel));
+    }
+
+    private static PartitionedMqttChannel newChannel() {
+        return new PartitionedMqttChannel(2, 100, MqttOverflowPolicyEnum.BLOCK,
+                message -> message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC), null, "test", 5000);
+    }
+
+    private static Message<String> message(String clientId, int value) {
+        return MessageBuilder.withPayload(String.valueOf(value)).setHeader(MqttHeaders.RECEIVED_TOPIC, clientId).build();
+    }
+
+    private static long failed(PartitionedMqttChannel channel) {
+        return channel.getStats().stream().mapToLong(MqttPartitionStatsVO::getFailed).sum();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.maku.iot.mqtt.command;
+
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 两个节点共享订阅时，命令响应由未发送命令的节点收到，转发后由发送命令的节点完成
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceCommandRegistryTest {
+    private DeviceCommandRegistry node1;
+    private DeviceCommandRegistry node2;
+
+    @BeforeEach
+    public void init() {
+        node1 = new DeviceCommandRegistry(new MqttConfig(null, null, null));
+        node2 = new DeviceCommandRegistry(new MqttConfig(null, null, null));
+        node1.init();
+        node2.init();
+
+        // 模拟 Redis 发布订阅，发布的消息所有节点都会收到，包括发布的节点
+        List<DeviceCommandRegistry> nodes = List.of(node1, node2);
+        node1.setRelay(response -> nodes.forEach(node -> node.completeRelayed(response)));
+        node2.setRelay(response -> nodes.forEach(node -> node.completeRelayed(response)));
+    }
+
+    @AfterEach
+    public void destroy() {
+        node1.destroy();
+        node2.destroy();
+    }
+
+    @Test
+    public void completeOnOtherNode() throws Exception {
+        CompletableFuture<DeviceCommandResponseDTO> future = node1.register("command", DeviceCommandEnum.LOCK);
+
+        // MQTT 服务器把响应分配给 node2
+        assertFalse(node2.complete(response("command")));
+
+        assertTrue(future.isDone());
+        assertEquals("command", future.get().getCommandId());
+        assertEquals(1, node1.getStats().getCompleted());
+        assertEquals(0, node1.getStats().getPending());
+        // 转发的响应不计入未知响应
+        assertEquals(0, node1.getStats().getUnknown());
+        assertEquals(0, node2.getStats().getUnknown());
+    }
+
+    @Test
+    public void completeOnSameNode() throws Exception {
+        CompletableFuture<DeviceCommandResponseDTO> future = node1.register("command", DeviceCommandEnum.LOCK);
+
+        assertTrue(node1.complete(response("command")));
+        assertTrue(future.isDone());
+
+        // 重复的响应由 node2 收到，转发后 node1 记为重复
+        assertFalse(node2.complete(response("command")));
+        assertEquals(1, node1.getStats().getDuplicate());
+    }
+
+    @Test
+    public void unknownWithoutRelay() {
+        node1.setRelay(null);
+
+        assertFalse(node1.complete(response("command")));
+        assertEquals(1, node1.getStats().getUnknown());
+    }
+
+    private static DeviceCommandResponseDTO response(String commandId) {
+        DeviceCommandResponseDTO response = new DeviceCommandResponseDTO();
+        response.setCommand(DeviceCommandEnum.LOCK);
+        response.setCommandId(commandId);
+        return response;
+    }
+}
@@ -0,0 +1,108 @@
+package net.maku.iot.mqtt.service;
+
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.framework.security.user.UserDetail;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DeviceCommandResponseDTO;
+import net.maku.iot.service.IotDeviceServiceLogService;
+import net.maku.iot.vo.DeviceCommandJobVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 批量下发命令测试，任务进度保存到 Redis，记录创建者和租户，结束后不再同步
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceBatchCommandServiceTest {
+    private final Map<String, Object> redis = new ConcurrentHashMap<>();
+    private DeviceMqttService deviceMqttService;
+    private DeviceBatchCommandService batchCommandService;
+
+    @BeforeEach
+    public void init() {
+        RedisCache redisCache = mock(RedisCache.class);
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(redisCache).set(anyString(), any(), anyLong());
+        when(redisCache.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+
+        deviceMqttService = mock(DeviceMqttService.class);
+        when(deviceMqttService.newCommandId()).thenReturn("command");
+
+        batchCommandService = new DeviceBatchCommandService(new MqttConfig(null, null, null), deviceMqttService,
+                mock(IotDeviceServiceLogService.class), mock(IotDeviceLogWriter.class), redisCache);
+        batchCommandService.init();
+
+        UserDetail user = new UserDetail();
+        user.setId(1L);
+        user.setTenantId(10000L);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+    }
+
+    @AfterEach
+    public void destroy() {
+        batchCommandService.destroy();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void saveJobToRedis() throws Exception {
+        DeviceCommandResponseDTO response = new DeviceCommandResponseDTO();
+        response.setStatusCode(0);
+        when(deviceMqttService.sendCommand(any(), any(), anyString(), any(), anyBoolean(), anyBoolean()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        String jobId = batchCommandService.submit(devices(3), DeviceCommandEnum.LOCK, "{}");
+
+        // 提交后即可从 Redis 查询，记录创建者和租户，用于校验查询权限
+        DeviceCommandJobVO job = batchCommandService.getJob(jobId);
+        assertNotNull(job);
+        assertEquals(1L, job.getCreator());
+        assertEquals(10000L, job.getTenantId());
+        assertEquals(3, job.getTotal());
+
+        // 设备响应后，定时同步到 Redis
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!batchCommandService.getJob(jobId).getFinished() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        job = batchCommandService.getJob(jobId);
+        assertTrue(job.getFinished());
+        assertEquals(3, job.getSent());
+        assertEquals(3, job.getSucceeded());
+    }
+
+    @Test
+    public void missingJob() {
+        assertNull(batchCommandService.getJob("missing"));
+    }
+
+    private static List<IotDeviceEntity> devices(int count) {
+        List<IotDeviceEntity> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            IotDeviceEntity device = new IotDeviceEntity();
+            device.setId((long) i);
+            device.setTenantId(10000L);
+            list.add(device);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,144 @@
+package net.maku.iot.shadow;
+
+import net.maku.iot.dao.IotDeviceDao;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.mqtt.config.MqttConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 设备影子服务测试，合并写入、写入失败重试、持续访问不过期、超过有效时间后台刷新
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceShadowServiceTest {
+    private IotDeviceDao iotDeviceDao;
+    private MqttConfig mqttConfig;
+    private volatile RuntimeException writeError;
+    private final List<List<IotDeviceEntity>> written = new CopyOnWriteArrayList<>();
+    private DeviceShadowService shadowService;
+
+    @BeforeEach
+    public void init() {
+        iotDeviceDao = mock(IotDeviceDao.class);
+        when(iotDeviceDao.selectById(anyLong())).thenAnswer(invocation -> DeviceShadowTest.device());
+
+        mqttConfig = new MqttConfig(null, null, null);
+        mqttConfig.getShadow().setFlushInterval(60000);
+    }
+
+    @AfterEach
+    public void destroy() {
+        if (shadowService != null) {
+            shadowService.destroy();
+        }
+    }
+
+    @Test
+    public void flushMergedChanges() {
+        start();
+        DeviceShadow shadow = shadowService.get(1L);
+        shadow.setTemperature("21");
+        shadowService.markDirty(shadow);
+        shadow.setTemperature("22");
+        shadowService.markDirty(shadow);
+
+        shadowService.flush();
+        shadowService.flush();
+
+        // 写入间隔内的多次上报合并为一次，只写入变化的字段
+        assertEquals(1, written.size());
+        IotDeviceEntity entity = written.get(0).get(0);
+        assertEquals("22", entity.getTemperature());
+        assertNull(entity.getName());
+        assertNull(entity.getBatteryPercent());
+    }
+
+    @Test
+    public void retryFailedWrite() {
+        start();
+        DeviceShadow shadow = shadowService.get(1L);
+        shadow.setTemperature("21");
+        shadowService.markDirty(shadow);
+
+        writeError = new IllegalStateException("db down");
+        shadowService.flush();
+
+        writeError = null;
+        shadowService.flush();
+
+        assertEquals(1, written.size());
+        assertEquals("21", written.get(0).get(0).getTemperature());
+    }
+
+    @Test
+    public void keepAccessedShadow() throws Exception {
+        mqttConfig.getShadow().setIdleTimeout(200);
+        start();
+
+        // 持续访问的设备影子不会过期，不重复从数据库加载
+        DeviceShadow shadow = shadowService.get(1L);
+        for (int i = 0; i < 10; i++) {
+            TimeUnit.MILLISECONDS.sleep(50);
+            assertSame(shadow, shadowService.get(1L));
+        }
+        verify(iotDeviceDao, times(1)).selectById(1L);
+
+        // 空闲超时后重新加载
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertNotSame(shadow, shadowService.get(1L));
+    }
+
+    @Test
+    public void refreshInBackground() throws Exception {
+        mqttConfig.getShadow().setExpire(100);
+        start();
+
+        DeviceShadow shadow = shadowService.get(1L);
+        shadow.setTemperature("25");
+        shadowService.markDirty(shadow);
+
+        IotDeviceEntity latest = DeviceShadowTest.device();
+        latest.setName("renamed");
+        latest.setTemperature("25");
+        when(iotDeviceDao.selectById(1L)).thenReturn(latest);
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // 超过有效时间，返回原实例，后台先写入未写入的属性，再从数据库刷新
+        assertSame(shadow, shadowService.get(1L));
+        verify(iotDeviceDao, timeout(5000).times(2)).selectById(1L);
+        assertEquals(1, written.size());
+        assertEquals("25", written.get(0).get(0).getTemperature());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"renamed".equals(shadow.getName()) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals("renamed", shadow.getName());
+        assertSame(shadow, shadowService.get(1L));
+    }
+
+    private void start() {
+        // 记录批量更新的设备，不连接数据库
+        shadowService = new DeviceShadowService(iotDeviceDao, mqttConfig) {
+            @Override
+            void updateBatch(List<IotDeviceEntity> list) {
+                if (writeError != null) {
+                    throw writeError;
+                }
+                written.add(new ArrayList<>(list));
+            }
+        };
+        shadowService.init();
+    }
+}
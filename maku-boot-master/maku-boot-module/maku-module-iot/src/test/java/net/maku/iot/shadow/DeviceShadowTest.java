@@ -0,0 +1,63 @@
+package net.maku.iot.shadow;
+
+import net.maku.iot.entity.IotDeviceEntity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 设备影子测试，只记录变化的字段，重新加载时保留未写入的属性
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class DeviceShadowTest {
+
+    @Test
+    public void drainChangedFields() {
+        DeviceShadow shadow = new DeviceShadow(device());
+
+        assertFalse(shadow.setTemperature("20"));
+        assertNull(shadow.drain());
+
+        assertTrue(shadow.setTemperature("25"));
+        assertTrue(shadow.setRunningStatus(1, LocalDateTime.now(), null));
+        DeviceShadow.Change change = shadow.drain();
+
+        assertEquals(DeviceShadow.TEMPERATURE | DeviceShadow.RUNNING_STATUS | DeviceShadow.UP_TIME, change.fields());
+        assertEquals("25", change.entity().getTemperature());
+        assertEquals(1, change.entity().getRunningStatus());
+        assertNull(change.entity().getDownTime());
+        assertNull(change.entity().getAppVersion());
+        // 取出后不再重复写入
+        assertNull(shadow.drain());
+    }
+
+    @Test
+    public void reloadKeepsDirtyFields() {
+        DeviceShadow shadow = new DeviceShadow(device());
+        shadow.setTemperature("25");
+
+        IotDeviceEntity latest = device();
+        latest.setName("renamed");
+        latest.setBatteryPercent("50");
+        shadow.reload(latest);
+
+        assertEquals("renamed", shadow.getName());
+        assertEquals("50", shadow.getBatteryPercent());
+        assertEquals("25", shadow.getTemperature());
+        assertEquals(DeviceShadow.TEMPERATURE, shadow.drain().fields());
+    }
+
+    static IotDeviceEntity device() {
+        IotDeviceEntity device = new IotDeviceEntity();
+        device.setId(1L);
+        device.setTenantId(10000L);
+        device.setName("device");
+        device.setRunningStatus(0);
+        device.setTemperature("20");
+        device.setBatteryPercent("80");
+        return device;
+    }
+}
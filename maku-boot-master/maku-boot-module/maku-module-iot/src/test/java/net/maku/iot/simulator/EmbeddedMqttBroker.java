@@ -0,0 +1,46 @@
+package net.maku.iot.simulator;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * 进程内的 MQTT 服务器（Moquette），会话只保存在内存中，负载模拟不需要外部 MQTT 服务器
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class EmbeddedMqttBroker implements AutoCloseable {
+    private final Server server = new Server();
+    private final int port;
+
+    public EmbeddedMqttBroker(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("websocket_port", "disabled");
+        properties.setProperty("allow_anonymous", "true");
+        properties.setProperty("persistence_enabled", "false");
+        // 默认 1024 的会话命令队列在高并发上报时会被写满，导致客户端等待确认超时
+        properties.setProperty("session_queue_size", "65536");
+        Path dataPath = Files.createTempDirectory("moquette-");
+        properties.setProperty("data_path", dataPath.toString());
+        server.startServer(new MemoryConfig(properties));
+    }
+
+    public String getUrl() {
+        return "tcp://127.0.0.1:" + port;
+    }
+
+    @Override
+    public void close() {
+        server.stopServer();
+    }
+}
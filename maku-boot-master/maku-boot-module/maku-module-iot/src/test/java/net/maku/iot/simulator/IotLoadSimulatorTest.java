@@ -0,0 +1,470 @@
+package net.maku.iot.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import net.maku.framework.common.utils.BatchLogWriter;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.entity.IotDeviceEventLogEntity;
+import net.maku.iot.entity.IotDeviceTelemetryEntity;
+import net.maku.iot.enums.DeviceCommandEnum;
+import net.maku.iot.enums.DeviceEventTypeEnum;
+import net.maku.iot.enums.DevicePropertyEnum;
+import net.maku.iot.enums.DeviceTopicEnum;
+import net.maku.iot.log.IotDeviceLogWriter;
+import net.maku.iot.mqtt.MqttGateway;
+import net.maku.iot.mqtt.channel.PartitionedMqttChannel;
+import net.maku.iot.mqtt.command.DeviceCommandRegistry;
+import net.maku.iot.mqtt.config.MqttConfig;
+import net.maku.iot.mqtt.dto.DevicePropertyDTO;
+import net.maku.iot.mqtt.factory.DeviceCommandResponseHandlerFactory;
+import net.maku.iot.mqtt.factory.DevicePropertyChangeHandlerFactory;
+import net.maku.iot.mqtt.factory.MqttMessageHandlerFactory;
+import net.maku.iot.mqtt.handler.DeviceCommandResponseMqttMessageHandler;
+import net.maku.iot.mqtt.handler.DevicePropertyChangeHandler;
+import net.maku.iot.mqtt.handler.DevicePropertyMqttMessageHandler;
+import net.maku.iot.mqtt.handler.MqttMessageHandler;
+import net.maku.iot.mqtt.service.DeviceMqttService;
+import net.maku.iot.vo.IotLogWriterStatsVO;
+import net.maku.iot.vo.MqttCommandStatsVO;
+import net.maku.iot.vo.MqttPartitionStatsVO;
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IoT 接入负载模拟，在进程内启动 MQTT 服务器，虚拟设备按设定速率上报属性、响应命令，
+ * 消息经过与生产相同的分区通道、主题路由、消息处理器和批量写入，数据库写入用可设置耗时的空操作代替
+ * <p>
+ * 输出端到端延迟分位数、每秒消息数和每秒数据库写入行数，运行方式：
+ * <pre>
+ * mvn test -P iot-simulator -pl maku-boot-module/maku-module-iot -am -Diot.simulator.devices=5000 -Diot.simulator.rate=20000
+ * </pre>
+ * 可设置的系统属性：iot.simulator.devices、connections、rate（属性上报条/秒）、command-rate（命令个/秒）、
+ * warmup、duration（秒）、db-latency（每批写入耗时，毫秒）
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@EnabledIfSystemProperty(named = "iot.simulator", matches = "true")
+public class IotLoadSimulatorTest {
+    private final int devices = Integer.getInteger("iot.simulator.devices", 2000);
+    private final int connections = Integer.getInteger("iot.simulator.connections", 8);
+    private final int rate = Integer.getInteger("iot.simulator.rate", 5000);
+    private final int commandRate = Integer.getInteger("iot.simulator.command-rate", 200);
+    private final int warmup = Integer.getInteger("iot.simulator.warmup", 5);
+    private final int duration = Integer.getInteger("iot.simulator.duration", 30);
+    private final long dbLatency = Long.getLong("iot.simulator.db-latency", 5L);
+
+    @Test
+    public void simulate() throws Exception {
+        if (LoggerFactory.getLogger("net.maku.iot") instanceof Logger logger) {
+            logger.setLevel(Level.WARN);
+        }
+
+        try (EmbeddedMqttBroker broker = new EmbeddedMqttBroker(NetUtil.getUsableLocalPort())) {
+            broker.start();
+            run(broker.getUrl());
+        }
+    }
+
+    private void run(String url) throws Exception {
+        GenericApplicationContext context = new GenericApplicationContext();
+        MqttConfig mqttConfig = new MqttConfig(new MqttMessageHandlerFactory(context), null, context.getEnvironment());
+        mqttConfig.setHostUrl(url);
+        mqttConfig.setUsername("maku");
+        mqttConfig.setPassword("maku");
+        mqttConfig.setClientId("maku_simulator");
+        mqttConfig.init();
+        mqttConfig.getOutbound().setMaxInflight(1000);
+        MqttConnectOptions options = mqttConfig.mqttClientFactory().getConnectionOptions();
+
+        DeviceCommandRegistry registry = new DeviceCommandRegistry(mqttConfig);
+        registry.init();
+        MqttAsyncClient publisher = connect(url, "maku_simulator_pub", options, null);
+        DeviceMqttService deviceMqttService = new DeviceMqttService(null, new SimulatorGateway(publisher), null, registry);
+
+        SimulatedDeviceStore store = new SimulatedDeviceStore(mqttConfig.getLogWriter(), dbLatency);
+        LatencyProbe probe = new LatencyProbe();
+        context.registerBean("devicePropertyMqttMessageHandler", DevicePropertyMqttMessageHandler.class,
+                () -> new DevicePropertyMqttMessageHandler(new DevicePropertyChangeHandlerFactory(context)));
+        context.registerBean("deviceCommandResponseMqttMessageHandler", DeviceCommandResponseMqttMessageHandler.class,
+                () -> new DeviceCommandResponseMqttMessageHandler(new DeviceCommandResponseHandlerFactory(context), deviceMqttService));
+        context.registerBean("simulatedDeviceStore", SimulatedDeviceStore.class, () -> store);
+        // 最后注册，在其他处理器之后执行，延迟包含消息处理时间
+        context.registerBean("latencyProbe", LatencyProbe.class, () -> probe);
+        context.refresh();
+
+        // 与 MqttConfig 的接收流程相同：消息转换、按设备分区、重发去重、主题路由
+        PartitionedMqttChannel channel = mqttConfig.mqttInputChannel();
+        channel.subscribe(mqttConfig.mqttMessageHandler());
+        channel.start();
+        DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+        MqttAsyncClient subscriber = connect(url, "maku_simulator_sub", options,
+                (topic, message) -> channel.send(converter.toMessageBuilder(topic, message).build()));
+        subscriber.subscribe(new String[]{DeviceTopicEnum.PROPERTY.getWildcard(), DeviceTopicEnum.COMMAND_RESPONSE.getWildcard()},
+                new int[]{1, 1}).waitForCompletion();
+
+        List<IotDeviceEntity> deviceList = createDevices();
+        VirtualDeviceFleet fleet = new VirtualDeviceFleet(url, options, deviceList);
+        fleet.connect(connections);
+
+        LatencyRecorder commandLatency = new LatencyRecorder();
+        AtomicLong commandSent = new AtomicLong();
+        AtomicLong commandFailed = new AtomicLong();
+        ScheduledExecutorService commandService = ThreadUtil.createScheduledExecutor(1);
+
+        try {
+            fleet.startReporting(rate);
+            commandService.scheduleAtFixedRate(() -> sendCommands(deviceMqttService, deviceList, commandSent, commandFailed, commandLatency),
+                    0, 10, TimeUnit.MILLISECONDS);
+
+            TimeUnit.SECONDS.sleep(warmup);
+            probe.start();
+            commandLatency.start();
+            Snapshot begin = new Snapshot(fleet, probe, store, commandSent.get());
+            TimeUnit.SECONDS.sleep(duration);
+            Snapshot end = new Snapshot(fleet, probe, store, commandSent.get());
+            probe.stop();
+            commandLatency.stop();
+
+            commandService.shutdown();
+            commandService.awaitTermination(5, TimeUnit.SECONDS);
+            fleet.stopReporting();
+            awaitDrained(fleet, probe, registry, mqttConfig.getCommand().getTimeout());
+
+            report(begin, end, probe, commandLatency, registry.getStats(), commandFailed.get(), channel.getStats(), store);
+
+            assertTrue(probe.propertyProcessed.get() >= fleet.getPropertySent(), "属性上报消息丢失");
+            assertEquals(0, registry.getStats().getPending(), "仍有等待响应的命令");
+        } finally {
+            commandService.shutdownNow();
+            fleet.close();
+            subscriber.disconnect().waitForCompletion(5000);
+            publisher.disconnect().waitForCompletion(5000);
+            channel.stop();
+            store.close();
+            registry.destroy();
+            context.close();
+        }
+    }
+
+    private List<IotDeviceEntity> createDevices() {
+        List<IotDeviceEntity> list = new ArrayList<>(devices);
+        for (int i = 1; i <= devices; i++) {
+            IotDeviceEntity device = new IotDeviceEntity();
+            device.setId((long) i);
+            device.setTenantId(10000L);
+            device.setType(3);
+            device.setCode("SIM" + i);
+            device.setName("模拟设备" + i);
+            device.setUid(StrUtil.padPre(String.valueOf(i), 8, '0'));
+            list.add(device);
+        }
+        return list;
+    }
+
+    /**
+     * 每 10 毫秒发送一批命令，记录从发送到收到响应的时间
+     */
+    private void sendCommands(DeviceMqttService deviceMqttService, List<IotDeviceEntity> deviceList,
+                              AtomicLong sent, AtomicLong failed, LatencyRecorder latency) {
+        int count = Math.max(commandRate / 100, 1);
+        for (int i = 0; i < count; i++) {
+            IotDeviceEntity device = deviceList.get(ThreadLocalRandom.current().nextInt(deviceList.size()));
+            long start = System.nanoTime();
+            try {
+                deviceMqttService.sendCommand(device, DeviceCommandEnum.LOCK, deviceMqttService.newCommandId(), null, false, false)
+                        .whenComplete((response, e) -> {
+                            if (e == null) {
+                                latency.record(System.nanoTime() - start);
+                            } else {
+                                failed.incrementAndGet();
+                            }
+                        });
+                sent.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 等待已发送的消息处理完成，命令等待到响应或超时
+     */
+    private void awaitDrained(VirtualDeviceFleet fleet, LatencyProbe probe, DeviceCommandRegistry registry, long commandTimeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + commandTimeout + 30000;
+        while (System.currentTimeMillis() < deadline) {
+            if (probe.propertyProcessed.get() >= fleet.getPropertySent()
+                    && probe.responseProcessed.get() >= fleet.getResponseSent()
+                    && registry.getStats().getPending() == 0) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private void report(Snapshot begin, Snapshot end, LatencyProbe probe, LatencyRecorder commandLatency, MqttCommandStatsVO commandStats,
+                        long commandFailed, List<MqttPartitionStatsVO> partitions, SimulatedDeviceStore store) {
+        double seconds = (end.time - begin.time) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(StrUtil.format("\n===== IoT 负载模拟：{} 个设备，{} 个连接，目标 {} 条/秒属性上报，{} 个/秒命令，统计 {} 秒 =====\n",
+                devices, connections, rate, commandRate, duration));
+        sb.append(StrUtil.format("属性上报  发送 {} 条/秒，处理 {} 条/秒，端到端延迟 {}\n",
+                rate(end.propertySent - begin.propertySent, seconds), rate(end.propertyProcessed - begin.propertyProcessed, seconds),
+                probe.propertyLatency.summary()));
+        sb.append(StrUtil.format("命令响应  发送 {} 个/秒，响应消息延迟 {}，命令往返延迟 {}\n",
+                rate(end.commandSent - begin.commandSent, seconds), probe.responseLatency.summary(), commandLatency.summary()));
+        sb.append(StrUtil.format("命令结果  完成 {}，超时 {}，失败 {}，超时后响应 {}，重复响应 {}\n",
+                commandStats.getCompleted(), commandStats.getTimeout(), commandFailed, commandStats.getLate(), commandStats.getDuplicate()));
+        for (int i = 0; i < end.writers.size(); i++) {
+            IotLogWriterStatsVO from = begin.writers.get(i);
+            IotLogWriterStatsVO to = end.writers.get(i);
+            sb.append(StrUtil.format("数据库写入 {}：{} 行/秒，{} 批/秒，失败 {}，丢弃 {}\n", to.getName(),
+                    rate(to.getWritten() - from.getWritten(), seconds), rate(to.getBatches() - from.getBatches(), seconds),
+                    to.getFailed(), to.getDropped()));
+        }
+        long maxLag = partitions.stream().mapToLong(MqttPartitionStatsVO::getLagMillis).max().orElse(0);
+        long dropped = partitions.stream().mapToLong(MqttPartitionStatsVO::getDropped).sum();
+        sb.append(StrUtil.format("分区通道  {} 个分区，最大积压延迟 {} ms，丢弃 {}，设备状态变化事件 {}\n",
+                partitions.size(), maxLag, dropped, store.events.get()));
+        System.out.println(sb);
+    }
+
+    private static String rate(long count, double seconds) {
+        return String.format("%.0f", count / seconds);
+    }
+
+    private static MqttAsyncClient connect(String url, String clientId, MqttConnectOptions options, IMqttMessageListener listener)
+            throws MqttException {
+        MqttAsyncClient client = new MqttAsyncClient(url, clientId, new MemoryPersistence());
+        if (listener != null) {
+            client.setCallback(new MqttCallback() {
+                @Override
+                public void connectionLost(Throwable cause) {
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message) throws Exception {
+                    listener.messageArrived(topic, message);
+                }
+
+                @Override
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+            });
+        }
+        client.connect(options).waitForCompletion();
+        return client;
+    }
+
+    /**
+     * 统计区间开始和结束时的计数
+     */
+    private static class Snapshot {
+        final long time = System.nanoTime();
+        final long propertySent;
+        final long propertyProcessed;
+        final long commandSent;
+        final List<IotLogWriterStatsVO> writers;
+
+        Snapshot(VirtualDeviceFleet fleet, LatencyProbe probe, SimulatedDeviceStore store, long commandSent) {
+            this.propertySent = fleet.getPropertySent();
+            this.propertyProcessed = probe.propertyProcessed.get();
+            this.commandSent = commandSent;
+            this.writers = store.getStats();
+        }
+    }
+
+    /**
+     * 命令下发使用模拟连接发送，代替 Spring Integration 的发送通道
+     */
+    private static class SimulatorGateway extends MqttGateway {
+        private final MqttAsyncClient client;
+
+        SimulatorGateway(MqttAsyncClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void sendToMqtt(String topic, boolean retained, String payload) {
+            try {
+                client.publish(topic, payload.getBytes(StandardCharsets.UTF_8), 1, retained);
+            } catch (MqttException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 代替设备服务处理属性上报：与设备影子相同只在属性变化时记录事件日志，数值属性写入遥测数据，
+     * 都使用批量写入，写入数据库用固定耗时代替
+     */
+    public static class SimulatedDeviceStore implements DevicePropertyChangeHandler {
+        private final Map<Long, String> shadows = new ConcurrentHashMap<>();
+        private final BatchLogWriter<IotDeviceEventLogEntity> eventWriter;
+        private final BatchLogWriter<IotDeviceTelemetryEntity> telemetryWriter;
+        final AtomicLong events = new AtomicLong();
+
+        SimulatedDeviceStore(MqttConfig.LogWriter config, long dbLatency) {
+            this.eventWriter = new BatchLogWriter<>("event", config.getBatchSize(), config.getFlushInterval(),
+                    config.getQueueCapacity(), config.getOverflowPolicy(), list -> ThreadUtil.sleep(dbLatency));
+            this.telemetryWriter = new BatchLogWriter<>("telemetry", config.getBatchSize(), config.getFlushInterval(),
+                    config.getQueueCapacity(), config.getOverflowPolicy(), list -> ThreadUtil.sleep(dbLatency));
+        }
+
+        @Override
+        public void handle(String topic, DevicePropertyDTO deviceProperty) {
+            DeviceTopicEnum.DeviceTopicContext topicContext = DeviceTopicEnum.parseContext(topic);
+            Long deviceId = topicContext.getClient().getDeviceId();
+            DevicePropertyEnum property = deviceProperty.getPropertyType();
+            LocalDateTime now = LocalDateTime.now();
+
+            IotDeviceTelemetryEntity telemetry = new IotDeviceTelemetryEntity();
+            telemetry.setDeviceId(deviceId);
+            telemetry.setTenantId(topicContext.getClient().getTenantId());
+            telemetry.setProperty(property.getValue());
+            telemetry.setPropertyValue(Double.parseDouble(deviceProperty.getPayload()));
+            telemetry.setReportTime(now);
+            telemetryWriter.add(telemetry);
+
+            String key = property.name() + ":" + deviceProperty.getPayload();
+            if (key.equals(shadows.put(deviceId, key))) {
+                return;
+            }
+            IotDeviceEventLogEntity event = new IotDeviceEventLogEntity();
+            event.setDeviceId(deviceId);
+            event.setTenantId(topicContext.getClient().getTenantId());
+            event.setEventType(property == DevicePropertyEnum.TEMPERATURE
+                    ? DeviceEventTypeEnum.TEMPERATURE_REPORT.getValue() : DeviceEventTypeEnum.BATTERY_PERCENT_REPORT.getValue());
+            event.setEventPayload(deviceProperty.getPayload());
+            event.setEventTime(now);
+            eventWriter.add(event);
+            events.incrementAndGet();
+        }
+
+        List<IotLogWriterStatsVO> getStats() {
+            return List.of(IotDeviceLogWriter.getStats(eventWriter), IotDeviceLogWriter.getStats(telemetryWriter));
+        }
+
+        void close() {
+            eventWriter.close(10000);
+            telemetryWriter.close(10000);
+        }
+    }
+
+    /**
+     * 读取消息中的发送时间，记录端到端延迟
+     */
+    public static class LatencyProbe implements MqttMessageHandler {
+        private static final String SEND_TIME = "\"sendTime\":";
+
+        final LatencyRecorder propertyLatency = new LatencyRecorder();
+        final LatencyRecorder responseLatency = new LatencyRecorder();
+        final AtomicLong propertyProcessed = new AtomicLong();
+        final AtomicLong responseProcessed = new AtomicLong();
+
+        @Override
+        public boolean supports(String topic) {
+            return DeviceTopicEnum.startsWith(topic, DeviceTopicEnum.PROPERTY.getTopic())
+                    || DeviceTopicEnum.startsWith(topic, DeviceTopicEnum.COMMAND_RESPONSE.getTopic());
+        }
+
+        @Override
+        public void handle(String topic, String message) {
+            long latency = System.nanoTime() - parseSendTime(message);
+            if (DeviceTopicEnum.match(topic) == DeviceTopicEnum.PROPERTY) {
+                propertyLatency.record(latency);
+                propertyProcessed.incrementAndGet();
+            } else {
+                responseLatency.record(latency);
+                responseProcessed.incrementAndGet();
+            }
+        }
+
+        void start() {
+            propertyLatency.start();
+            responseLatency.start();
+        }
+
+        void stop() {
+            propertyLatency.stop();
+            responseLatency.stop();
+        }
+
+        private long parseSendTime(String message) {
+            int start = message.indexOf(SEND_TIME) + SEND_TIME.length();
+            int end = start;
+            while (end < message.length() && (Character.isDigit(message.charAt(end)) || message.charAt(end) == '-')) {
+                end++;
+            }
+            return Long.parseLong(message, start, end, 10);
+        }
+    }
+
+    /**
+     * 延迟记录，保存统计区间内的全部样本，结束后排序计算分位数
+     */
+    static class LatencyRecorder {
+        private static final int CAPACITY = 4_000_000;
+
+        private final long[] samples = new long[CAPACITY];
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile boolean recording;
+
+        void start() {
+            recording = true;
+        }
+
+        void stop() {
+            recording = false;
+        }
+
+        void record(long nanos) {
+            if (!recording) {
+                return;
+            }
+            int index = count.getAndIncrement();
+            if (index < CAPACITY) {
+                samples[index] = nanos;
+            }
+        }
+
+        String summary() {
+            long[] sorted = Arrays.copyOf(samples, Math.min(count.get(), CAPACITY));
+            if (sorted.length == 0) {
+                return "无数据";
+            }
+            Arrays.sort(sorted);
+            return StrUtil.format("p50 {} ms，p95 {} ms，p99 {} ms，max {} ms", millis(sorted, 0.50), millis(sorted, 0.95),
+                    millis(sorted, 0.99), String.format("%.2f", sorted[sorted.length - 1] / 1e6));
+        }
+
+        private static String millis(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return String.format("%.2f", sorted[Math.max(index, 0)] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package net.maku.iot.simulator;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.iot.dto.DeviceClientDTO;
+import net.maku.iot.entity.IotDeviceEntity;
+import net.maku.iot.enums.DevicePropertyEnum;
+import net.maku.iot.enums.DeviceTopicEnum;
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 虚拟设备，多个设备共用少量 MQTT 连接，按设定的速率上报属性，并响应下发的命令
+ * <p>
+ * 消息中带有发送时的 System.nanoTime()，服务端处理后计算端到端延迟
+ *
+ * @author LSF maku_lsf@163.com
+ */
+@Slf4j
+public class VirtualDeviceFleet implements AutoCloseable {
+    private final String url;
+    private final MqttConnectOptions options;
+    private final List<IotDeviceEntity> devices;
+    private final String[] propertyTopics;
+    private final List<MqttAsyncClient> clients = new ArrayList<>();
+    private final List<Thread> publishers = new ArrayList<>();
+    private MqttAsyncClient responder;
+    private volatile boolean running;
+
+    private final AtomicLong propertySent = new AtomicLong();
+    private final AtomicLong responseSent = new AtomicLong();
+    private final AtomicLong publishFailed = new AtomicLong();
+
+    public VirtualDeviceFleet(String url, MqttConnectOptions options, List<IotDeviceEntity> devices) {
+        this.url = url;
+        this.options = options;
+        this.devices = devices;
+        this.propertyTopics = devices.stream()
+                .map(device -> DeviceTopicEnum.PROPERTY.buildTopic(DeviceClientDTO.from(device)))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * 建立上报属性的连接和响应命令的连接
+     *
+     * @param connections 上报属性的连接数量
+     */
+    public void connect(int connections) throws MqttException {
+        for (int i = 0; i < connections; i++) {
+            clients.add(connect("maku_simulator_device_" + i));
+        }
+
+        responder = new MqttAsyncClient(url, "maku_simulator_responder", new MemoryPersistence());
+        responder.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                log.warn("命令响应连接断开", cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                reply(topic, message);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        responder.connect(options).waitForCompletion();
+        responder.subscribe(DeviceTopicEnum.COMMAND.getWildcard(), 1).waitForCompletion();
+    }
+
+    /**
+     * 开始上报属性，每个连接一个发送线程，按固定间隔发送
+     *
+     * @param ratePerSecond 所有设备每秒上报的消息数量
+     */
+    public void startReporting(int ratePerSecond) {
+        running = true;
+        int connections = clients.size();
+        long interval = TimeUnit.SECONDS.toNanos(1) * connections / Math.max(ratePerSecond, 1);
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> report(index, connections, interval), "simulator-publisher-" + i);
+            thread.setDaemon(true);
+            publishers.add(thread);
+            thread.start();
+        }
+    }
+
+    public void stopReporting() throws InterruptedException {
+        running = false;
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        publishers.clear();
+    }
+
+    public long getPropertySent() {
+        return propertySent.get();
+    }
+
+    public long getResponseSent() {
+        return responseSent.get();
+    }
+
+    public long getPublishFailed() {
+        return publishFailed.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (MqttAsyncClient client : clients) {
+            disconnect(client);
+        }
+        if (responder != null) {
+            disconnect(responder);
+        }
+    }
+
+    private MqttAsyncClient connect(String clientId) throws MqttException {
+        MqttAsyncClient client = new MqttAsyncClient(url, clientId, new MemoryPersistence());
+        client.connect(options).waitForCompletion();
+        return client;
+    }
+
+    /**
+     * 第 index 个连接负责下标除以连接数余数为 index 的设备，轮流上报温度和电量
+     */
+    private void report(int index, int connections, long interval) {
+        MqttAsyncClient client = clients.get(index);
+        int device = index;
+        long next = System.nanoTime();
+        while (running) {
+            DevicePropertyEnum property = (device / connections) % 2 == 0 ? DevicePropertyEnum.TEMPERATURE : DevicePropertyEnum.BATTERY_PERCENT;
+            String value = property == DevicePropertyEnum.TEMPERATURE
+                    ? String.valueOf(20 + ThreadLocalRandom.current().nextInt(100) / 10.0)
+                    : String.valueOf(ThreadLocalRandom.current().nextInt(101));
+            String payload = "{\"propertyType\":\"" + property.name() + "\",\"payload\":\"" + value
+                    + "\",\"sendTime\":" + System.nanoTime() + "}";
+            if (publish(client, propertyTopics[device], payload)) {
+                propertySent.incrementAndGet();
+            }
+
+            device += connections;
+            if (device >= devices.size()) {
+                device = index;
+            }
+
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * 响应命令，响应发送到同一设备的命令响应主题
+     */
+    private void reply(String topic, MqttMessage message) {
+        JSONObject command = JSONUtil.parseObj(new String(message.getPayload(), StandardCharsets.UTF_8));
+        String responseTopic = StrUtil.subBefore(topic, "/", true) + "/" + DeviceTopicEnum.COMMAND_RESPONSE.getTopic();
+        String payload = "{\"command\":\"" + command.getStr("command") + "\",\"commandId\":\"" + command.getStr("id")
+                + "\",\"statusCode\":0,\"sendTime\":" + System.nanoTime() + "}";
+        if (publish(responder, responseTopic, payload)) {
+            responseSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * QoS 1 发送，未确认的消息达到上限时等待后重试
+     */
+    private boolean publish(MqttAsyncClient client, String topic, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        while (true) {
+            try {
+                client.publish(topic, bytes, 1, false);
+                return true;
+            } catch (MqttException e) {
+                if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT || !client.isConnected()) {
+                    publishFailed.incrementAndGet();
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void disconnect(MqttAsyncClient client) {
+        try {
+            client.disconnect().waitForCompletion(5000);
+            client.close();
+        } catch (MqttException e) {
+            log.warn("断开连接失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.maku.iot.utils;
+
+import net.maku.framework.common.constant.Constant;
+import net.maku.framework.security.user.UserDetail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 租户工具类测试，有租户的用户不能指定其他租户，也不能访问其他租户的设备
+ *
+ * @author LSF maku_lsf@163.com
+ */
+public class TenantUtilsTest {
+
+    @AfterEach
+    public void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void tenantUser() {
+        login(10000L, Constant.SUPER_ADMIN);
+
+        assertEquals(10000L, TenantUtils.getTenantId(20000L));
+        assertEquals(10000L, TenantUtils.getTenantId(null));
+        assertTrue(TenantUtils.canAccess(10000L));
+        assertFalse(TenantUtils.canAccess(20000L));
+        assertFalse(TenantUtils.canAccess(null));
+    }
+
+    @Test
+    public void superAdmin() {
+        login(null, Constant.SUPER_ADMIN);
+
+        assertEquals(20000L, TenantUtils.getTenantId(20000L));
+        assertNull(TenantUtils.getTenantId(null));
+        assertTrue(TenantUtils.canAccess(20000L));
+    }
+
+    @Test
+    public void userWithoutTenant() {
+        login(null, 0);
+
+        // 不是超级管理员，不能指定租户
+        assertNull(TenantUtils.getTenantId(20000L));
+    }
+
+    private static void login(Long tenantId, Integer superAdmin) {
+        UserDetail user = new UserDetail();
+        user.setId(1L);
+        user.setTenantId(tenantId);
+        user.setSuperAdmin(superAdmin);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+    }
+}
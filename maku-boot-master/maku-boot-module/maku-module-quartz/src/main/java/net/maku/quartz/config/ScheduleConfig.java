@@ -2,12 +2,14 @@ package net.maku.quartz.config;
 
 import net.maku.framework.common.constant.Constant;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 
 import javax.sql.DataSource;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 /**
  * 定时任务配置
@@ -35,22 +37,30 @@ import java.util.Properties;
  *
  */
 @Configuration
+@EnableConfigurationProperties({ScheduleLogProperties.class, ScheduleThreadPoolProperties.class, ScheduleShardProperties.class})
 public class ScheduleConfig {
     @Value("${spring.datasource.dynamic.datasource.master.driver-class-name}")
     private String driver;
 
     @Bean
-    public SchedulerFactoryBean schedulerFactoryBean(DataSource dataSource) {
+    public SchedulerFactoryBean schedulerFactoryBean(DataSource dataSource, ScheduleThreadPoolProperties threadPool) {
         // quartz参数
         Properties prop = new Properties();
         prop.put("org.quartz.scheduler.instanceName", "MakuScheduler");
         prop.put("org.quartz.scheduler.instanceId", "AUTO");
         // 线程池配置
-        prop.put("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
-        prop.put("org.quartz.threadPool.threadCount", "20");
-        prop.put("org.quartz.threadPool.threadPriority", "5");
+        prop.put("org.quartz.threadPool.class", ScheduleThreadPool.class.getName());
+        prop.put("org.quartz.threadPool.threadCount", String.valueOf(threadPool.getThreadCount()));
+        prop.put("org.quartz.threadPool.virtualThreads", String.valueOf(threadPool.isVirtualThreads()));
+        prop.put("org.quartz.threadPool.queueCapacity", String.valueOf(threadPool.getQueueCapacity()));
+        // 分组限制，格式：分组:数量,分组:数量
+        if (!threadPool.getGroupLimits().isEmpty()) {
+            prop.put("org.quartz.threadPool.groupLimits", threadPool.getGroupLimits().entrySet().stream()
+                    .map(entry -> entry.getKey() + ":" + entry.getValue()).collect(Collectors.joining(",")));
+        }
         // jobStore配置
-        prop.put("org.quartz.jobStore.class", "org.springframework.scheduling.quartz.LocalDataSourceJobStore");
+        // 在 LocalDataSourceJobStore 的基础上增加批量同步任务
+        prop.put("org.quartz.jobStore.class", ScheduleJobStore.class.getName());
         // 集群配置
         prop.put("org.quartz.jobStore.isClustered", "true");
         prop.put("org.quartz.jobStore.clusterCheckinInterval", "15000");
@@ -70,6 +80,8 @@ public class ScheduleConfig {
         factory.setSchedulerName("MakuScheduler");
         factory.setDataSource(dataSource);
         factory.setQuartzProperties(prop);
+        // 创建任务时记录触发信息，线程池按分组和优先级排队
+        factory.setJobFactory(new ScheduleJobFactory());
         // 延时启动
         factory.setStartupDelay(10);
         factory.setApplicationContextSchedulerContextKey("applicationContextKey");
@@ -0,0 +1,22 @@
+package net.maku.quartz.config;
+
+import org.quartz.Job;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.spi.TriggerFiredBundle;
+import org.springframework.scheduling.quartz.AdaptableJobFactory;
+
+/**
+ * 定时任务创建，创建任务时记录触发的任务和触发器，线程池按任务分组和触发器优先级排队
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ScheduleJobFactory extends AdaptableJobFactory {
+
+    @Override
+    public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler) throws SchedulerException {
+        ScheduleThreadPool.fired(bundle);
+        return super.newJob(bundle, scheduler);
+    }
+}
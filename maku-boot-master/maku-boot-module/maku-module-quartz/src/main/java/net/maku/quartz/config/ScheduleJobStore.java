@@ -0,0 +1,139 @@
+package net.maku.quartz.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.jdbcjobstore.Constants;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.springframework.scheduling.quartz.LocalDataSourceJobStore;
+
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 定时任务存储，在 LocalDataSourceJobStore 的基础上增加批量同步，
+ * 读取所有任务、触发器和触发器状态，再写入变化，都在同一个事务中完成，集群锁只获取一次
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class ScheduleJobStore extends LocalDataSourceJobStore {
+    /**
+     * 已初始化的任务存储，key: 调度器名称
+     */
+    private static final Map<String, ScheduleJobStore> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * 获取调度器使用的任务存储，未使用 ScheduleJobStore 时返回 null
+     */
+    public static ScheduleJobStore getInstance(String schedulerName) {
+        return INSTANCES.get(schedulerName);
+    }
+
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException {
+        super.initialize(loadHelper, signaler);
+        INSTANCES.put(getInstanceName(), this);
+    }
+
+    @Override
+    public void shutdown() {
+        INSTANCES.remove(getInstanceName(), this);
+        super.shutdown();
+    }
+
+    /**
+     * 同步任务，先暂停暂停任务的触发器分组，再读取所有任务交给 planner 对比，按返回的变化替换、删除
+     *
+     * @param pausedGroup 暂停任务的触发器分组
+     * @param planner     根据已有的任务生成变化
+     * @return 写入的变化
+     */
+    public Changes reconcile(String pausedGroup, Function<Map<JobKey, StoredJob>, Changes> planner) throws JobPersistenceException {
+        // 使用独立的事务，读取和写入期间一直持有集群锁，失败时全部回滚
+        return executeInNonManagedTXLock(LOCK_TRIGGER_ACCESS, conn -> {
+            if (!getPausedTriggerGroups(conn).contains(pausedGroup)) {
+                pauseTriggerGroup(conn, GroupMatcher.triggerGroupEquals(pausedGroup));
+            }
+
+            Map<JobKey, StoredJob> storedJobs = new HashMap<>();
+            for (JobKey jobKey : getJobNames(conn, GroupMatcher.anyJobGroup())) {
+                storedJobs.put(jobKey, loadJob(conn, jobKey));
+            }
+
+            Changes result = planner.apply(storedJobs);
+            // 先写入新的触发器，再删除原分组中的触发器，避免任务没有触发器时被一起删除
+            for (Map.Entry<JobDetail, OperableTrigger> entry : result.replaced().entrySet()) {
+                OperableTrigger trigger = entry.getValue();
+                trigger.setJobKey(entry.getKey().getKey());
+                try {
+                    trigger.validate();
+                } catch (SchedulerException e) {
+                    throw new JobPersistenceException("定时任务触发器无效，任务：" + entry.getKey().getKey(), e);
+                }
+                if (trigger.computeFirstFireTime(null) == null) {
+                    log.warn("定时任务不会再触发，跳过，任务：{}", entry.getKey().getKey());
+                    continue;
+                }
+                storeJob(conn, entry.getKey(), true);
+                storeTrigger(conn, trigger, entry.getKey(), true, Constants.STATE_WAITING, false, false);
+            }
+            for (TriggerKey triggerKey : result.removedTriggers()) {
+                removeTrigger(conn, triggerKey);
+            }
+            for (JobKey jobKey : result.removedJobs()) {
+                removeJob(conn, jobKey);
+            }
+            if (!result.isEmpty()) {
+                signalSchedulingChangeOnTxCompletion(0L);
+            }
+            return result;
+        }, null);
+    }
+
+    private StoredJob loadJob(Connection conn, JobKey jobKey) throws JobPersistenceException {
+        JobDetail jobDetail;
+        try {
+            jobDetail = retrieveJob(conn, jobKey);
+        } catch (JobPersistenceException e) {
+            // 如任务参数无法反序列化，返回空的任务，由同步时重建
+            log.warn("读取定时任务失败，任务：{}", jobKey, e);
+            jobDetail = null;
+        }
+
+        List<OperableTrigger> triggers = getTriggersForJob(conn, jobKey);
+        Map<TriggerKey, Trigger.TriggerState> states = new HashMap<>();
+        for (OperableTrigger trigger : triggers) {
+            states.put(trigger.getKey(), getTriggerState(conn, trigger.getKey()));
+        }
+        return new StoredJob(jobDetail, triggers, states);
+    }
+
+    /**
+     * 已有的任务
+     *
+     * @param jobDetail 任务，读取失败时为 null
+     * @param triggers  任务的触发器
+     * @param states    触发器状态
+     */
+    public record StoredJob(JobDetail jobDetail, List<? extends Trigger> triggers, Map<TriggerKey, Trigger.TriggerState> states) {
+    }
+
+    /**
+     * 同步的变化
+     *
+     * @param replaced        替换的任务和触发器
+     * @param removedTriggers 删除的触发器
+     * @param removedJobs     删除的任务
+     */
+    public record Changes(Map<JobDetail, OperableTrigger> replaced, List<TriggerKey> removedTriggers, List<JobKey> removedJobs) {
+        public boolean isEmpty() {
+            return replaced.isEmpty() && removedTriggers.isEmpty() && removedJobs.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.maku.quartz.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 定时任务日志配置项
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@ConfigurationProperties(prefix = "maku.schedule.log")
+public class ScheduleLogProperties {
+    /**
+     * 是否异步批量写入，关闭时在任务线程中直接写入
+     */
+    private boolean async = true;
+    /**
+     * 每批写入的最大数量
+     */
+    private int batchSize = 200;
+    /**
+     * 最长写入间隔，单位毫秒
+     */
+    private long flushInterval = 1000;
+    /**
+     * 等待写入的队列容量，队列满时在任务线程中直接写入
+     */
+    private int queueCapacity = 10000;
+    /**
+     * 执行成功的日志采样，每个任务每 N 次成功记录 1 次，执行失败的日志全部记录，1 表示全部记录
+     */
+    private int successSampling = 1;
+    /**
+     * 日志保留天数，0 表示不清理，默认不清理，需要时按业务要求配置
+     */
+    private int retentionDays = 0;
+    /**
+     * 清理日志时每次删除的最大数量
+     */
+    private int purgeBatchSize = 5000;
+}
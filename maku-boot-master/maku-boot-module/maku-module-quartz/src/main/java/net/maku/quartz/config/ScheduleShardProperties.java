@@ -0,0 +1,35 @@
+package net.maku.quartz.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 定时任务分片执行配置项
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@ConfigurationProperties(prefix = "maku.schedule.shard")
+public class ScheduleShardProperties {
+    /**
+     * 当前节点同时执行的分片数量
+     */
+    private int threads = 4;
+    /**
+     * 查询待执行分片的间隔，单位毫秒
+     */
+    private long pollInterval = 2000;
+    /**
+     * 分片租约时间，执行节点超过该时间未续期时，分片由其他节点重新执行，单位毫秒
+     */
+    private long leaseTime = 30000;
+    /**
+     * 分片最多执行次数，执行节点宕机后重新执行也计入次数
+     */
+    private int maxAttempts = 3;
+    /**
+     * 任务最大分片数量，每次触发都会按分片数量写入分片记录
+     */
+    private int maxShardTotal = 100;
+}
@@ -0,0 +1,436 @@
+package net.maku.quartz.config;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.quartz.vo.ScheduleGroupStatsVO;
+import net.maku.quartz.vo.ScheduleJobStatsVO;
+import net.maku.quartz.vo.ScheduleThreadPoolStatsVO;
+import org.quartz.SchedulerConfigException;
+import org.quartz.Trigger;
+import org.quartz.core.JobRunShell;
+import org.quartz.spi.ThreadPool;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Quartz 线程池，替换 SimpleThreadPool
+ * <p>
+ * 1. JDK 21 及以上使用虚拟线程执行任务，JDK 17 使用固定数量的平台线程
+ * 2. 可按任务分组限制同时执行的数量，超过限制的任务在分组内排队，按触发器优先级、触发顺序执行，不占用其他分组的线程，
+ * 分组排队数量达到上限时，调度线程等待分组内有任务完成后再继续触发，停止时排队的任务全部执行
+ * 3. 统计每个任务的排队时间和执行时间，用于查看任务是否等待过久
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class ScheduleThreadPool implements ThreadPool {
+    /**
+     * 线程池实例，key: 调度器名称，用于查询统计数据
+     */
+    private static final Map<String, ScheduleThreadPool> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * 调度线程创建任务时记录的触发信息，JobRunShell 没有公开任务信息，
+     * 调度线程先由 ScheduleJobFactory 创建任务，再调用 runInThread，同一线程内取出即为当前任务的触发信息
+     */
+    private static final ThreadLocal<TriggerFiredBundle> FIRED_BUNDLE = new ThreadLocal<>();
+
+    /**
+     * 同时执行的任务数量
+     */
+    @Setter
+    private int threadCount = 10;
+
+    /**
+     * 是否使用虚拟线程，JDK 21 以下不支持时使用平台线程
+     */
+    @Setter
+    private boolean virtualThreads = true;
+
+    /**
+     * 分组同时执行的任务数量，格式：分组:数量,分组:数量
+     */
+    @Setter
+    private String groupLimits;
+
+    /**
+     * 每个分组排队的任务数量上限
+     */
+    @Setter
+    private int queueCapacity = 1000;
+
+    @Setter
+    private String instanceId;
+
+    @Setter
+    private String instanceName;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Map<String, JobStats> jobStats = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private Map<String, Integer> limits = Collections.emptyMap();
+    private ExecutorService executor;
+    private int available;
+    private volatile boolean shutdown;
+    @Getter
+    private boolean virtual;
+
+    /**
+     * 查询调度器的线程池统计数据
+     *
+     * @return 调度器未使用该线程池时返回 null
+     */
+    public static ScheduleThreadPool getInstance(String schedulerName) {
+        return INSTANCES.get(schedulerName);
+    }
+
+    @Override
+    public void initialize() throws SchedulerConfigException {
+        if (threadCount <= 0) {
+            throw new SchedulerConfigException("threadCount 必须大于 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new SchedulerConfigException("queueCapacity 必须大于 0");
+        }
+
+        limits = parseGroupLimits(groupLimits);
+        available = threadCount;
+        executor = virtualThreads ? newVirtualThreadExecutor() : null;
+        virtual = executor != null;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threadCount, ThreadUtil.newNamedThreadFactory(instanceName + "_Worker-", false));
+        }
+
+        if (instanceName != null) {
+            INSTANCES.put(instanceName, this);
+        }
+        log.info("定时任务线程池，线程数：{}，虚拟线程：{}，分组限制：{}，分组排队上限：{}", threadCount, virtual, limits, queueCapacity);
+    }
+
+    @Override
+    public int blockForAvailableThreads() {
+        synchronized (lock) {
+            while (available < 1 && !shutdown) {
+                try {
+                    lock.wait(500);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return available;
+        }
+    }
+
+    @Override
+    public boolean runInThread(Runnable runnable) {
+        TriggerFiredBundle bundle = FIRED_BUNDLE.get();
+        FIRED_BUNDLE.remove();
+        if (runnable == null) {
+            return false;
+        }
+
+        Task task = newTask(runnable, runnable instanceof JobRunShell ? bundle : null);
+        Lane lane = task.group == null ? null : lanes.computeIfAbsent(task.group, this::newLane);
+        if (lane != null) {
+            // 分组已达到限制时排队，不占用线程，排队已满时等待，停止后不再接收
+            Boolean started = lane.offer(task);
+            if (started == null) {
+                return false;
+            }
+            if (!started) {
+                return true;
+            }
+        }
+
+        synchronized (lock) {
+            while (available < 1 && !shutdown) {
+                try {
+                    lock.wait(500);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            if (shutdown) {
+                if (lane != null) {
+                    lane.finish();
+                }
+                return false;
+            }
+            available--;
+        }
+
+        try {
+            executor.execute(() -> work(task, lane));
+        } catch (RejectedExecutionException e) {
+            if (lane != null) {
+                lane.finish();
+            }
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown(boolean waitForJobsToComplete) {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+        if (executor == null) {
+            return;
+        }
+
+        // 分组内排队的任务已由 Quartz 触发，不执行会留下触发记录，不允许并发的任务也会一直阻塞，停止时不再限制分组数量，全部执行
+        List<Task> pending = new ArrayList<>();
+        lanes.values().forEach(lane -> lane.close(pending));
+        for (Task task : pending) {
+            try {
+                executor.execute(() -> execute(task));
+            } catch (RejectedExecutionException e) {
+                execute(task);
+            }
+        }
+
+        executor.shutdown();
+        if (waitForJobsToComplete) {
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    log.debug("等待定时任务执行完毕");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (instanceName != null) {
+            INSTANCES.remove(instanceName, this);
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return threadCount;
+    }
+
+    public ScheduleThreadPoolStatsVO getStats() {
+        ScheduleThreadPoolStatsVO stats = new ScheduleThreadPoolStatsVO();
+        stats.setPoolSize(threadCount);
+        synchronized (lock) {
+            stats.setAvailable(available);
+        }
+        stats.setVirtualThreads(virtual);
+
+        List<ScheduleGroupStatsVO> groups = new ArrayList<>();
+        lanes.forEach((group, lane) -> groups.add(lane.toVO(group)));
+        stats.setGroups(groups);
+
+        List<ScheduleJobStatsVO> jobs = new ArrayList<>();
+        jobStats.forEach((jobKey, jobStat) -> jobs.add(jobStat.toVO(jobKey)));
+        jobs.sort(Comparator.comparing(ScheduleJobStatsVO::getMaxWaitTime).reversed());
+        stats.setJobs(jobs);
+        return stats;
+    }
+
+    /**
+     * 执行任务，完成后同一分组有排队的任务时，继续在当前线程执行，不需要重新获取线程
+     */
+    private void work(Task task, Lane lane) {
+        try {
+            while (task != null) {
+                try {
+                    execute(task);
+                } finally {
+                    // 任务抛出异常时也要取出下一个任务或减少执行数量，否则分组会一直占满
+                    task = lane == null ? null : lane.next();
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    private void execute(Task task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.runnable.run();
+        } catch (Throwable e) {
+            log.error("定时任务执行异常：{}", task.jobKey, e);
+        } finally {
+            if (task.jobKey != null) {
+                jobStats.computeIfAbsent(task.jobKey, key -> new JobStats())
+                        .record(start - task.fireTime, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private void release() {
+        synchronized (lock) {
+            available++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 记录调度线程即将执行的任务的触发信息，由 ScheduleJobFactory 在创建任务时调用
+     */
+    static void fired(TriggerFiredBundle bundle) {
+        FIRED_BUNDLE.set(bundle);
+    }
+
+    private Task newTask(Runnable runnable, TriggerFiredBundle bundle) {
+        long now = System.currentTimeMillis();
+        if (bundle == null) {
+            return new Task(runnable, null, null, Trigger.DEFAULT_PRIORITY, now, sequence.incrementAndGet());
+        }
+
+        // 排队时间从计划触发时间开始计算，包含等待空闲线程的时间
+        Date scheduledFireTime = bundle.getScheduledFireTime();
+        long fireTime = scheduledFireTime == null ? now : Math.min(scheduledFireTime.getTime(), now);
+        String group = bundle.getJobDetail().getKey().getGroup();
+        return new Task(runnable, limits.containsKey(group) ? group : null, bundle.getJobDetail().getKey().toString(),
+                bundle.getTrigger().getPriority(), fireTime, sequence.incrementAndGet());
+    }
+
+    private Lane newLane(String group) {
+        return new Lane(limits.get(group), queueCapacity);
+    }
+
+    /**
+     * 创建虚拟线程执行器，JDK 21 以下返回 null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Integer> parseGroupLimits(String groupLimits) {
+        Map<String, Integer> limits = new HashMap<>();
+        for (String item : StrUtil.split(groupLimits, ',', true, true)) {
+            List<String> parts = StrUtil.split(item, ':', true, true);
+            if (parts.size() == 2 && Integer.parseInt(parts.get(1)) > 0) {
+                limits.put(parts.get(0), Integer.parseInt(parts.get(1)));
+            }
+        }
+        return limits;
+    }
+
+    private record Task(Runnable runnable, String group, String jobKey, int priority, long fireTime, long sequence) {
+    }
+
+    /**
+     * 分组执行通道，限制分组同时执行的数量，排队的任务按优先级从高到低、触发顺序执行，排队数量有上限
+     */
+    private static class Lane {
+        private final int limit;
+        private final int capacity;
+        private final PriorityQueue<Task> pending = new PriorityQueue<>(
+                Comparator.comparingInt(Task::priority).reversed().thenComparingLong(Task::sequence));
+        private int running;
+        private boolean closed;
+
+        Lane(int limit, int capacity) {
+            this.limit = limit;
+            this.capacity = capacity;
+        }
+
+        /**
+         * 未达到限制时开始执行，否则排队，排队已满时等待分组内的任务完成
+         *
+         * @return true 开始执行，false 已排队，null 已停止
+         */
+        synchronized Boolean offer(Task task) {
+            while (running >= limit && pending.size() >= capacity && !closed) {
+                try {
+                    wait(500);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            if (closed) {
+                return null;
+            }
+            if (running < limit) {
+                running++;
+                return true;
+            }
+            pending.add(task);
+            return false;
+        }
+
+        /**
+         * 当前任务执行完毕，返回下一个排队的任务，没有时减少执行数量
+         */
+        synchronized Task next() {
+            Task task = pending.poll();
+            if (task == null) {
+                running--;
+            }
+            notifyAll();
+            return task;
+        }
+
+        synchronized void finish() {
+            running--;
+            notifyAll();
+        }
+
+        /**
+         * 停止接收任务，按执行顺序取出所有排队的任务
+         */
+        synchronized void close(List<Task> tasks) {
+            closed = true;
+            Task task;
+            while ((task = pending.poll()) != null) {
+                tasks.add(task);
+            }
+            notifyAll();
+        }
+
+        synchronized ScheduleGroupStatsVO toVO(String group) {
+            ScheduleGroupStatsVO vo = new ScheduleGroupStatsVO();
+            vo.setJobGroup(group);
+            vo.setLimit(limit);
+            vo.setRunning(running);
+            vo.setPending(pending.size());
+            return vo;
+        }
+    }
+
+    private static class JobStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder waitTime = new LongAdder();
+        private final LongAdder runTime = new LongAdder();
+        private final LongAccumulator maxWaitTime = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxRunTime = new LongAccumulator(Math::max, 0);
+
+        void record(long wait, long run) {
+            count.increment();
+            waitTime.add(wait);
+            runTime.add(run);
+            maxWaitTime.accumulate(wait);
+            maxRunTime.accumulate(run);
+        }
+
+        ScheduleJobStatsVO toVO(String jobKey) {
+            long total = count.sum();
+            ScheduleJobStatsVO vo = new ScheduleJobStatsVO();
+            vo.setJobKey(jobKey);
+            vo.setCount(total);
+            vo.setAvgWaitTime(total == 0 ? 0 : waitTime.sum() / total);
+            vo.setMaxWaitTime(maxWaitTime.get());
+            vo.setAvgRunTime(total == 0 ? 0 : runTime.sum() / total);
+            vo.setMaxRunTime(maxRunTime.get());
+            return vo;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.maku.quartz.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 定时任务线程池配置项
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@ConfigurationProperties(prefix = "maku.schedule.thread-pool")
+public class ScheduleThreadPoolProperties {
+    /**
+     * 同时执行的任务数量
+     */
+    private int threadCount = 20;
+    /**
+     * 是否使用虚拟线程，JDK 21 以下自动使用平台线程
+     */
+    private boolean virtualThreads = true;
+    /**
+     * 分组同时执行的任务数量，key: 任务组名，未配置的分组不限制
+     */
+    private Map<String, Integer> groupLimits = Collections.emptyMap();
+    /**
+     * 每个分组排队的任务数量上限，排队已满时调度线程等待分组内有任务完成
+     */
+    private int queueCapacity = 1000;
+}
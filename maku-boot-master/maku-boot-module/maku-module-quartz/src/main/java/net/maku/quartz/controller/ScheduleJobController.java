@@ -16,7 +16,9 @@ import net.maku.quartz.entity.ScheduleJobEntity;
 import net.maku.quartz.query.ScheduleJobQuery;
 import net.maku.quartz.service.ScheduleJobService;
 import net.maku.quartz.utils.CronUtils;
+import net.maku.quartz.vo.ScheduleJobExecutionVO;
 import net.maku.quartz.vo.ScheduleJobVO;
+import net.maku.quartz.vo.ScheduleThreadPoolStatsVO;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -119,6 +121,20 @@ public class ScheduleJobController {
         return Result.ok();
     }
 
+    @GetMapping("stats")
+    @Operation(summary = "线程池统计")
+    @PreAuthorize("hasAuthority('schedule:page')")
+    public Result<ScheduleThreadPoolStatsVO> stats() {
+        return Result.ok(scheduleJobService.getThreadPoolStats());
+    }
+
+    @GetMapping("execution")
+    @Operation(summary = "分片执行记录")
+    @PreAuthorize("hasAuthority('schedule:page')")
+    public Result<List<ScheduleJobExecutionVO>> execution(@RequestParam("jobId") Long jobId) {
+        return Result.ok(scheduleJobService.listExecutions(jobId));
+    }
+
     private void checkBean(String beanName) {
         // 为避免执行jdbcTemplate等类，只允许添加有@Service注解的Bean
         String[] serviceBeans = SpringUtil.getApplicationContext().getBeanNamesForAnnotation(Service.class);
@@ -0,0 +1,22 @@
+package net.maku.quartz.convert;
+
+import net.maku.quartz.entity.ScheduleJobExecutionEntity;
+import net.maku.quartz.vo.ScheduleJobExecutionVO;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+import java.util.List;
+
+/**
+ * 定时任务分片执行
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Mapper
+public interface ScheduleJobExecutionConvert {
+    ScheduleJobExecutionConvert INSTANCE = Mappers.getMapper(ScheduleJobExecutionConvert.class);
+
+    List<ScheduleJobExecutionVO> convertList(List<ScheduleJobExecutionEntity> list);
+
+}
@@ -0,0 +1,15 @@
+package net.maku.quartz.dao;
+
+import net.maku.framework.mybatis.dao.BaseDao;
+import net.maku.quartz.entity.ScheduleJobExecutionEntity;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+* 定时任务分片执行
+*
+* @author 阿沐 babamu@126.com
+*/
+@Mapper
+public interface ScheduleJobExecutionDao extends BaseDao<ScheduleJobExecutionEntity> {
+
+}
@@ -63,6 +63,11 @@ public class ScheduleJobEntity implements Serializable {
      */
     private Integer concurrent;
 
+    /**
+     * 分片数量  1：不分片
+     */
+    private Integer shardTotal;
+
     /**
      * 备注
      */
@@ -0,0 +1,59 @@
+package net.maku.quartz.entity;
+
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务分片执行，汇总一次触发的所有分片的执行结果
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@TableName("schedule_job_execution")
+public class ScheduleJobExecutionEntity {
+    /**
+     * id
+     */
+    @TableId
+    private Long id;
+
+    /**
+     * 任务id
+     */
+    private Long jobId;
+
+    /**
+     * 分片数量
+     */
+    private Integer shardTotal;
+
+    /**
+     * 已结束的分片数量
+     */
+    private Integer finished;
+
+    /**
+     * 失败的分片数量
+     */
+    private Integer failed;
+
+    /**
+     * 状态  1：执行中  2：成功  3：失败
+     */
+    private Integer status;
+
+    /**
+     * 开始时间
+     */
+    private LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime endTime;
+
+}
@@ -0,0 +1,84 @@
+package net.maku.quartz.entity;
+
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务分片
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@TableName("schedule_job_shard")
+public class ScheduleJobShardEntity {
+    /**
+     * id
+     */
+    @TableId
+    private Long id;
+
+    /**
+     * 分片执行id
+     */
+    private Long executionId;
+
+    /**
+     * 任务id
+     */
+    private Long jobId;
+
+    /**
+     * 分片序号，从0开始
+     */
+    private Integer shardIndex;
+
+    /**
+     * 分片数量
+     */
+    private Integer shardTotal;
+
+    /**
+     * 状态  0：等待  1：执行中  2：成功  3：失败
+     */
+    private Integer status;
+
+    /**
+     * 执行节点
+     */
+    private String owner;
+
+    /**
+     * 执行次数
+     */
+    private Integer attempts;
+
+    /**
+     * 租约到期时间，执行节点定时续期，到期未续期的分片由其他节点重新执行
+     */
+    private LocalDateTime leaseExpireTime;
+
+    /**
+     * 异常信息
+     */
+    private String error;
+
+    /**
+     * 开始时间
+     */
+    private LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime endTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+}
@@ -0,0 +1,33 @@
+package net.maku.quartz.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 定时任务分片状态枚举
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Getter
+@AllArgsConstructor
+public enum ScheduleShardStatusEnum {
+    /**
+     * 等待执行
+     */
+    PENDING(0),
+    /**
+     * 执行中
+     */
+    RUNNING(1),
+    /**
+     * 成功
+     */
+    SUCCESS(2),
+    /**
+     * 失败
+     */
+    FAIL(3);
+
+    private final int value;
+}
@@ -4,7 +4,9 @@ import net.maku.framework.common.utils.PageResult;
 import net.maku.framework.mybatis.service.BaseService;
 import net.maku.quartz.entity.ScheduleJobEntity;
 import net.maku.quartz.query.ScheduleJobQuery;
+import net.maku.quartz.vo.ScheduleJobExecutionVO;
 import net.maku.quartz.vo.ScheduleJobVO;
+import net.maku.quartz.vo.ScheduleThreadPoolStatsVO;
 
 import java.util.List;
 
@@ -27,4 +29,14 @@ public interface ScheduleJobService extends BaseService<ScheduleJobEntity> {
     void run(ScheduleJobVO vo);
 
     void changeStatus(ScheduleJobVO vo);
+
+    /**
+     * 线程池统计，包括分组排队情况和每个任务的排队时间、执行时间
+     */
+    ScheduleThreadPoolStatsVO getThreadPoolStats();
+
+    /**
+     * 分片任务最近的执行记录
+     */
+    List<ScheduleJobExecutionVO> listExecutions(Long jobId);
 }
\ No newline at end of file
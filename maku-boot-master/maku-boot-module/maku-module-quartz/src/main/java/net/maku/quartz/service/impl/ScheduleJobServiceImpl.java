@@ -6,16 +6,24 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
+import net.maku.framework.common.exception.ServerException;
 import net.maku.framework.common.utils.PageResult;
 import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
+import net.maku.quartz.config.ScheduleThreadPool;
 import net.maku.quartz.convert.ScheduleJobConvert;
+import net.maku.quartz.convert.ScheduleJobExecutionConvert;
 import net.maku.quartz.dao.ScheduleJobDao;
 import net.maku.quartz.entity.ScheduleJobEntity;
 import net.maku.quartz.enums.ScheduleStatusEnum;
 import net.maku.quartz.query.ScheduleJobQuery;
 import net.maku.quartz.service.ScheduleJobService;
+import net.maku.quartz.utils.ScheduleJobInvokerRegistry;
+import net.maku.quartz.utils.ScheduleJobReconciler;
+import net.maku.quartz.utils.ScheduleShardExecutor;
 import net.maku.quartz.utils.ScheduleUtils;
+import net.maku.quartz.vo.ScheduleJobExecutionVO;
 import net.maku.quartz.vo.ScheduleJobVO;
+import net.maku.quartz.vo.ScheduleThreadPoolStatsVO;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.springframework.stereotype.Service;
@@ -33,17 +41,16 @@ import java.util.List;
 @AllArgsConstructor
 public class ScheduleJobServiceImpl extends BaseServiceImpl<ScheduleJobDao, ScheduleJobEntity> implements ScheduleJobService {
     private final Scheduler scheduler;
+    private final ScheduleJobInvokerRegistry scheduleJobInvokerRegistry;
+    private final ScheduleShardExecutor scheduleShardExecutor;
 
     /**
-     * 启动项目时，初始化定时器
+     * 启动项目时，同步定时器，只重建有变化的任务，集群中其他节点的任务触发状态不受影响
      */
     @PostConstruct
-    public void init() throws SchedulerException {
-        scheduler.clear();
+    public void init() {
         List<ScheduleJobEntity> scheduleJobList = baseMapper.selectList(null);
-        for (ScheduleJobEntity scheduleJob : scheduleJobList) {
-            ScheduleUtils.createScheduleJob(scheduler, scheduleJob);
-        }
+        ScheduleJobReconciler.reconcile(scheduler, scheduleJobList);
     }
 
     @Override
@@ -65,6 +72,9 @@ public class ScheduleJobServiceImpl extends BaseServiceImpl<ScheduleJobDao, Sche
     @Override
     public void save(ScheduleJobVO vo) {
         ScheduleJobEntity entity = ScheduleJobConvert.INSTANCE.convert(vo);
+        // 保存前校验 bean 和方法，避免执行时才失败
+        scheduleJobInvokerRegistry.validate(entity);
+        scheduleShardExecutor.validate(entity);
 
         entity.setStatus(ScheduleStatusEnum.PAUSE.getValue());
         if (baseMapper.insert(entity) > 0) {
@@ -75,9 +85,12 @@ public class ScheduleJobServiceImpl extends BaseServiceImpl<ScheduleJobDao, Sche
     @Override
     public void update(ScheduleJobVO vo) {
         ScheduleJobEntity entity = ScheduleJobConvert.INSTANCE.convert(vo);
+        scheduleJobInvokerRegistry.validate(entity);
+        scheduleShardExecutor.validate(entity);
 
         // 更新定时任务
         if (updateById(entity)) {
+            scheduleJobInvokerRegistry.remove(entity.getId());
             ScheduleJobEntity scheduleJob = getById(entity.getId());
             ScheduleUtils.updateSchedulerJob(scheduler, scheduleJob);
         }
@@ -91,6 +104,7 @@ public class ScheduleJobServiceImpl extends BaseServiceImpl<ScheduleJobDao, Sche
 
             // 删除定时任务
             if (removeById(id)) {
+                scheduleJobInvokerRegistry.remove(id);
                 ScheduleUtils.deleteScheduleJob(scheduler, scheduleJob);
             }
         }
@@ -124,4 +138,19 @@ public class ScheduleJobServiceImpl extends BaseServiceImpl<ScheduleJobDao, Sche
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public ScheduleThreadPoolStatsVO getThreadPoolStats() {
+        try {
+            ScheduleThreadPool threadPool = ScheduleThreadPool.getInstance(scheduler.getSchedulerName());
+            return threadPool == null ? null : threadPool.getStats();
+        } catch (SchedulerException e) {
+            throw new ServerException("查询定时任务线程池失败", e);
+        }
+    }
+
+    @Override
+    public List<ScheduleJobExecutionVO> listExecutions(Long jobId) {
+        return ScheduleJobExecutionConvert.INSTANCE.convertList(scheduleShardExecutor.listExecutions(jobId, 50));
+    }
+
+}
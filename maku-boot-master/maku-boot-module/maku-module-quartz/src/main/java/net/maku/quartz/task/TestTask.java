@@ -17,4 +17,12 @@ public class TestTask {
         log.info("我是testTask.run()，参数：{}，正在被执行。", params);
         Thread.sleep(1000);
     }
+
+    /**
+     * 分片任务示例，分片数量大于1时，每个分片只处理 id % shardTotal == shardIndex 的数据
+     */
+    public void shard(String params, int shardIndex, int shardTotal) throws InterruptedException {
+        log.info("我是testTask.shard()，参数：{}，分片：{}/{}，正在被执行。", params, shardIndex, shardTotal);
+        Thread.sleep(1000);
+    }
 }
@@ -6,13 +6,11 @@ import net.maku.framework.common.utils.ExceptionUtils;
 import net.maku.quartz.entity.ScheduleJobEntity;
 import net.maku.quartz.entity.ScheduleJobLogEntity;
 import net.maku.quartz.enums.ScheduleStatusEnum;
-import net.maku.quartz.service.ScheduleJobLogService;
 import org.apache.commons.lang3.StringUtils;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.springframework.beans.BeanUtils;
 
-import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.util.Date;
 
@@ -25,6 +23,18 @@ public abstract class AbstractScheduleJob implements Job {
         ScheduleJobEntity scheduleJob = new ScheduleJobEntity();
         BeanUtils.copyProperties(context.getMergedJobDataMap().get(ScheduleUtils.JOB_PARAM_KEY), scheduleJob);
 
+        // 分片任务只分发分片，由集群中的节点执行，所有分片结束后写入日志
+        if (ScheduleJobInvokerRegistry.isSharded(scheduleJob)) {
+            try {
+                SpringUtil.getBean(ScheduleShardExecutor.class).dispatch(scheduleJob);
+            } catch (Exception e) {
+                log.error("分片任务分发失败，任务ID：{}", scheduleJob.getId(), e);
+                threadLocal.set(new Date());
+                saveLog(scheduleJob, e);
+            }
+            return;
+        }
+
         try {
             threadLocal.set(new Date());
             doExecute(scheduleJob);
@@ -41,9 +51,7 @@ public abstract class AbstractScheduleJob implements Job {
     protected void doExecute(ScheduleJobEntity scheduleJob) throws Exception {
         log.info("准备执行任务，任务ID：{}", scheduleJob.getId());
 
-        Object bean = SpringUtil.getBean(scheduleJob.getBeanName());
-        Method method = bean.getClass().getDeclaredMethod(scheduleJob.getMethod(), String.class);
-        method.invoke(bean, scheduleJob.getParams());
+        SpringUtil.getBean(ScheduleJobInvokerRegistry.class).invoke(scheduleJob);
 
         log.info("任务执行完毕，任务ID：{}", scheduleJob.getId());
     }
@@ -77,8 +85,8 @@ public abstract class AbstractScheduleJob implements Job {
             log.setStatus(ScheduleStatusEnum.NORMAL.getValue());
         }
 
-        // 保存日志
-        SpringUtil.getBean(ScheduleJobLogService.class).save(log);
+        // 保存日志，由日志写入线程批量写入
+        SpringUtil.getBean(ScheduleJobLogWriter.class).write(log);
     }
 
 }
@@ -0,0 +1,143 @@
+package net.maku.quartz.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.spring.SpringUtil;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.quartz.entity.ScheduleJobEntity;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 定时任务调用缓存，保存、修改任务时解析 bean 和方法，生成 MethodHandle 缓存，执行任务时不再查找 bean 和反射方法
+ * <p>
+ * 任务修改、删除时清除缓存，集群中其他节点修改了任务时，执行前按 bean 名称和方法名称判断缓存是否有效
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Component
+public class ScheduleJobInvokerRegistry {
+    /**
+     * 任务方法的调用类型：(bean, params) -> void
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, String.class);
+
+    /**
+     * 分片任务方法的调用类型：(bean, params, shardIndex, shardTotal) -> void
+     */
+    private static final MethodType SHARD_INVOKER_TYPE = MethodType.methodType(void.class, Object.class, String.class, int.class, int.class);
+
+    /**
+     * key: 任务ID
+     */
+    private final Map<Long, Invoker> invokers = new ConcurrentHashMap<>();
+
+    /**
+     * 校验任务的 bean 和方法，不存在时抛出异常，用于保存任务前校验
+     */
+    public void validate(ScheduleJobEntity scheduleJob) {
+        compile(scheduleJob);
+    }
+
+    /**
+     * 执行任务方法
+     */
+    public void invoke(ScheduleJobEntity scheduleJob) throws Exception {
+        Invoker invoker = getInvoker(scheduleJob);
+        try {
+            invoker.handle().invokeExact(invoker.getBean(), scheduleJob.getParams());
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * 执行分片任务方法
+     */
+    public void invoke(ScheduleJobEntity scheduleJob, int shardIndex, int shardTotal) throws Exception {
+        Invoker invoker = getInvoker(scheduleJob);
+        try {
+            invoker.handle().invokeExact(invoker.getBean(), scheduleJob.getParams(), shardIndex, shardTotal);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * 清除任务的调用缓存，任务修改、删除时调用
+     */
+    public void remove(Long jobId) {
+        invokers.remove(jobId);
+    }
+
+    /**
+     * 是否分片任务
+     */
+    public static boolean isSharded(ScheduleJobEntity scheduleJob) {
+        return scheduleJob.getShardTotal() != null && scheduleJob.getShardTotal() > 1;
+    }
+
+    private Invoker getInvoker(ScheduleJobEntity scheduleJob) {
+        Invoker invoker = invokers.get(scheduleJob.getId());
+        if (invoker == null || !invoker.matches(scheduleJob)) {
+            invoker = compile(scheduleJob);
+            invokers.put(scheduleJob.getId(), invoker);
+        }
+        return invoker;
+    }
+
+    private Invoker compile(ScheduleJobEntity scheduleJob) {
+        String beanName = scheduleJob.getBeanName();
+        ApplicationContext context = SpringUtil.getApplicationContext();
+        if (StrUtil.isBlank(beanName) || !context.containsBean(beanName)) {
+            throw new ServerException(StrUtil.format("定时任务的 bean 不存在：{}", beanName));
+        }
+
+        // 与原来的执行方式相同，在 bean 的实际类型上查找 public void xxx(String params) 方法，
+        // 分片任务查找 public void xxx(String params, int shardIndex, int shardTotal) 方法
+        boolean sharded = isSharded(scheduleJob);
+        Class<?>[] parameterTypes = sharded ? new Class<?>[]{String.class, int.class, int.class} : new Class<?>[]{String.class};
+        String signature = sharded ? "(String, int, int)" : "(String)";
+        Object bean = context.getBean(beanName);
+        Method method;
+        try {
+            method = bean.getClass().getDeclaredMethod(scheduleJob.getMethod(), parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new ServerException(StrUtil.format("定时任务的方法不存在：{}.{}{}", beanName, scheduleJob.getMethod(), signature));
+        }
+
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method).asType(sharded ? SHARD_INVOKER_TYPE : INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new ServerException(StrUtil.format("定时任务的方法不是 public 方法：{}.{}{}", beanName, scheduleJob.getMethod(), signature));
+        }
+
+        // 非单例 bean 每次执行时重新获取
+        return new Invoker(beanName, scheduleJob.getMethod(), sharded, context.isSingleton(beanName) ? bean : null, handle);
+    }
+
+    private record Invoker(String beanName, String method, boolean sharded, Object bean, MethodHandle handle) {
+        boolean matches(ScheduleJobEntity scheduleJob) {
+            return Objects.equals(beanName, scheduleJob.getBeanName()) && Objects.equals(method, scheduleJob.getMethod())
+                    && sharded == isSharded(scheduleJob);
+        }
+
+        Object getBean() {
+            return bean != null ? bean : SpringUtil.getBean(beanName);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package net.maku.quartz.utils;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.utils.BatchLogWriter;
+import net.maku.quartz.config.ScheduleLogProperties;
+import net.maku.quartz.dao.ScheduleJobLogDao;
+import net.maku.quartz.entity.ScheduleJobLogEntity;
+import net.maku.quartz.enums.ScheduleStatusEnum;
+import net.maku.quartz.service.ScheduleJobLogService;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时任务日志写入，日志放入队列后由写入线程批量写入，任务线程不等待数据库
+ * <p>
+ * 执行成功的日志按配置采样，执行失败的日志全部记录，过期日志按主键范围分批删除
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScheduleJobLogWriter {
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    private final ScheduleLogProperties properties;
+    private final ScheduleJobLogService scheduleJobLogService;
+    private final ScheduleJobLogDao scheduleJobLogDao;
+
+    /**
+     * 每个任务的成功次数，用于采样，key: 任务ID
+     */
+    private final Map<Long, AtomicLong> successCounts = new ConcurrentHashMap<>();
+
+    private BatchLogWriter<ScheduleJobLogEntity> writer;
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (properties.isAsync()) {
+            // 队列满时在任务线程中直接写入
+            writer = new BatchLogWriter<>("schedule", properties.getBatchSize(), properties.getFlushInterval(),
+                    properties.getQueueCapacity(), BatchLogWriter.OverflowPolicy.CALLER_RUNS, this::save);
+        }
+
+        if (properties.getRetentionDays() > 0) {
+            purgeExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("schedule-log-purge-", true));
+            purgeExecutor.scheduleWithFixedDelay(this::purge, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+        if (writer != null) {
+            writer.close(SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    /**
+     * 写入任务日志，成功的日志未被采样时不记录
+     */
+    public void write(ScheduleJobLogEntity jobLog) {
+        if (!sampled(jobLog)) {
+            return;
+        }
+        if (writer == null) {
+            // 未开启异步时直接写入
+            save(List.of(jobLog));
+            return;
+        }
+        writer.add(jobLog);
+    }
+
+    /**
+     * 删除过期日志，先查出过期日志的最大ID，再按主键范围分批删除，每次删除只锁定少量数据
+     */
+    public void purge() {
+        try {
+            LocalDateTime expireTime = LocalDateTime.now().minusDays(properties.getRetentionDays());
+            Long maxId = selectId("max(id)", expireTime);
+            if (maxId == null) {
+                return;
+            }
+
+            long deleted = 0;
+            for (Long fromId = selectId("min(id)", expireTime); fromId != null && fromId <= maxId; fromId += properties.getPurgeBatchSize()) {
+                deleted += scheduleJobLogDao.delete(Wrappers.<ScheduleJobLogEntity>lambdaQuery()
+                        .lt(ScheduleJobLogEntity::getId, fromId + properties.getPurgeBatchSize())
+                        .le(ScheduleJobLogEntity::getId, maxId));
+            }
+            log.info("清理 {} 天前的定时任务日志 {} 条", properties.getRetentionDays(), deleted);
+        } catch (Exception e) {
+            log.error("清理定时任务日志失败", e);
+        }
+    }
+
+    private Long selectId(String column, LocalDateTime expireTime) {
+        List<Object> list = scheduleJobLogDao.selectObjs(Wrappers.<ScheduleJobLogEntity>query()
+                .select(column).lt("create_time", expireTime));
+        return list.isEmpty() || list.get(0) == null ? null : ((Number) list.get(0)).longValue();
+    }
+
+    private boolean sampled(ScheduleJobLogEntity jobLog) {
+        int sampling = properties.getSuccessSampling();
+        if (sampling <= 1 || jobLog.getStatus() != ScheduleStatusEnum.NORMAL.getValue()) {
+            return true;
+        }
+        long count = successCounts.computeIfAbsent(jobLog.getJobId(), id -> new AtomicLong()).getAndIncrement();
+        return count % sampling == 0;
+    }
+
+    private void save(List<ScheduleJobLogEntity> batch) {
+        try {
+            scheduleJobLogService.saveBatch(batch, properties.getBatchSize());
+        } catch (Exception e) {
+            log.error("定时任务日志写入失败，日志数量：{}", batch.size(), e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.maku.quartz.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.quartz.config.ScheduleJobStore;
+import net.maku.quartz.entity.ScheduleJobEntity;
+import org.quartz.*;
+import org.quartz.spi.OperableTrigger;
+
+import java.util.*;
+
+/**
+ * 定时任务同步，对比 schedule_job 表和 Quartz 中已有的任务，只重建有变化的任务，删除多余的任务
+ * <p>
+ * 未变化的任务保留原有的触发时间和错过触发的状态；已有任务、触发器和触发器状态一次读取，
+ * 有变化的任务在同一个事务中写入，集群锁只获取一次；
+ * 暂停的任务触发器放在暂停分组中，创建时即为暂停状态，暂停、恢复的任务也随有变化的任务一起重建
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class ScheduleJobReconciler {
+
+    /**
+     * 同步定时任务
+     *
+     * @param scheduler    调度器
+     * @param scheduleJobs 数据库中的所有定时任务
+     */
+    public static void reconcile(Scheduler scheduler, List<ScheduleJobEntity> scheduleJobs) {
+        try {
+            ScheduleJobStore jobStore = ScheduleJobStore.getInstance(scheduler.getSchedulerName());
+            if (jobStore == null) {
+                throw new ServerException("同步定时任务失败，未使用 ScheduleJobStore");
+            }
+
+            ScheduleJobStore.Changes changes = jobStore.reconcile(ScheduleUtils.PAUSED_TRIGGER_GROUP,
+                    storedJobs -> plan(scheduleJobs, storedJobs));
+
+            long paused = changes.replaced().values().stream()
+                    .filter(trigger -> ScheduleUtils.PAUSED_TRIGGER_GROUP.equals(trigger.getKey().getGroup())).count();
+            log.info("同步定时任务，任务总数：{}，重建：{}（其中暂停：{}），删除：{}", scheduleJobs.size(),
+                    changes.replaced().size(), paused, changes.removedJobs().size());
+        } catch (SchedulerException e) {
+            throw new ServerException("同步定时任务失败", e);
+        }
+    }
+
+    /**
+     * 对比数据库中的任务和 Quartz 中已有的任务，生成需要替换、删除的任务和触发器
+     *
+     * @param scheduleJobs 数据库中的所有定时任务
+     * @param storedJobs   Quartz 中已有的任务
+     */
+    static ScheduleJobStore.Changes plan(List<ScheduleJobEntity> scheduleJobs, Map<JobKey, ScheduleJobStore.StoredJob> storedJobs) {
+        Map<JobKey, ScheduleJobStore.StoredJob> staleJobs = new HashMap<>(storedJobs);
+        Map<JobDetail, OperableTrigger> replaced = new LinkedHashMap<>();
+        List<TriggerKey> removedTriggers = new ArrayList<>();
+
+        for (ScheduleJobEntity scheduleJob : scheduleJobs) {
+            // cron表达式指定的时间已经过期，不需要调度，Quartz 中已有的任务删除
+            if (CronUtils.getNextExecution(scheduleJob.getCronExpression()) == null) {
+                continue;
+            }
+            ScheduleJobStore.StoredJob storedJob = staleJobs.remove(ScheduleUtils.getJobKey(scheduleJob));
+
+            // 暂停、恢复后触发器所在分组不同，删除原分组中的触发器
+            TriggerKey triggerKey = ScheduleUtils.getTriggerKey(scheduleJob);
+            if (storedJob != null) {
+                for (Trigger trigger : storedJob.triggers()) {
+                    if (!trigger.getKey().equals(triggerKey)) {
+                        removedTriggers.add(trigger.getKey());
+                    }
+                }
+            }
+
+            if (!isUnchanged(storedJob, triggerKey, scheduleJob)) {
+                replaced.put(ScheduleUtils.buildJobDetail(scheduleJob), (OperableTrigger) ScheduleUtils.buildTrigger(scheduleJob));
+            }
+        }
+
+        return new ScheduleJobStore.Changes(replaced, removedTriggers, new ArrayList<>(staleJobs.keySet()));
+    }
+
+    /**
+     * 任务和触发器是否未变化，不存在或有变化时需要重建
+     */
+    private static boolean isUnchanged(ScheduleJobStore.StoredJob storedJob, TriggerKey triggerKey, ScheduleJobEntity scheduleJob) {
+        // 任务不存在，或任务参数无法反序列化时重建
+        if (storedJob == null || storedJob.jobDetail() == null) {
+            return false;
+        }
+        JobDetail jobDetail = storedJob.jobDetail();
+        CronTrigger cronTrigger = storedJob.triggers().stream()
+                .filter(trigger -> trigger.getKey().equals(triggerKey) && trigger instanceof CronTrigger)
+                .map(CronTrigger.class::cast).findFirst().orElse(null);
+        if (cronTrigger == null) {
+            return false;
+        }
+
+        // 是否并发、cron表达式、执行的方法、参数和分片数量有变化时重建
+        if (!jobDetail.getJobClass().equals(ScheduleUtils.getJobClass(scheduleJob))
+                || !Objects.equals(cronTrigger.getCronExpression(), scheduleJob.getCronExpression())
+                || !(jobDetail.getJobDataMap().get(ScheduleUtils.JOB_PARAM_KEY) instanceof ScheduleJobEntity job)
+                || !Objects.equals(job.getJobName(), scheduleJob.getJobName())
+                || !Objects.equals(job.getBeanName(), scheduleJob.getBeanName())
+                || !Objects.equals(job.getMethod(), scheduleJob.getMethod())
+                || !Objects.equals(job.getParams(), scheduleJob.getParams())
+                || !Objects.equals(job.getShardTotal(), scheduleJob.getShardTotal())) {
+            return false;
+        }
+
+        // 触发器出错、已完成，或暂停状态与任务状态不一致时重建，如旧版本在任务分组中暂停的触发器
+        Trigger.TriggerState state = storedJob.states().getOrDefault(triggerKey, Trigger.TriggerState.NONE);
+        return state != Trigger.TriggerState.ERROR && state != Trigger.TriggerState.COMPLETE && state != Trigger.TriggerState.NONE
+                && (state == Trigger.TriggerState.PAUSED) == ScheduleUtils.isPaused(scheduleJob);
+    }
+}
@@ -0,0 +1,398 @@
+package net.maku.quartz.utils;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.common.utils.ExceptionUtils;
+import net.maku.quartz.config.ScheduleLogProperties;
+import net.maku.quartz.config.ScheduleShardProperties;
+import net.maku.quartz.dao.ScheduleJobDao;
+import net.maku.quartz.dao.ScheduleJobExecutionDao;
+import net.maku.quartz.dao.ScheduleJobShardDao;
+import net.maku.quartz.entity.ScheduleJobEntity;
+import net.maku.quartz.entity.ScheduleJobExecutionEntity;
+import net.maku.quartz.entity.ScheduleJobLogEntity;
+import net.maku.quartz.entity.ScheduleJobShardEntity;
+import net.maku.quartz.enums.ScheduleConcurrentEnum;
+import net.maku.quartz.enums.ScheduleShardStatusEnum;
+import net.maku.quartz.enums.ScheduleStatusEnum;
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 定时任务分片执行
+ * <p>
+ * 分片任务触发时只创建分片执行记录和分片记录，集群中的每个节点定时查询待执行的分片，通过条件更新获取租约后执行，
+ * 执行期间定时续期。节点宕机后租约到期，分片由其他节点重新执行。所有分片结束后按分片记录汇总结果，写入一条任务日志，
+ * 分片结束后未能汇总的执行记录，如汇总前节点宕机，定时补充汇总
+ * <p>
+ * 租约到期时间使用数据库时间计算和比较，不受节点之间时钟偏差的影响
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScheduleShardExecutor {
+    private final ScheduleShardProperties properties;
+    private final ScheduleLogProperties logProperties;
+    private final Scheduler scheduler;
+    private final ScheduleJobDao scheduleJobDao;
+    private final ScheduleJobExecutionDao scheduleJobExecutionDao;
+    private final ScheduleJobShardDao scheduleJobShardDao;
+    private final ScheduleJobInvokerRegistry scheduleJobInvokerRegistry;
+    private final ScheduleJobLogWriter scheduleJobLogWriter;
+
+    /**
+     * 当前节点执行中的分片，key: 分片ID
+     */
+    private final Map<Long, ScheduleJobShardEntity> running = new ConcurrentHashMap<>();
+
+    private String owner;
+    private ScheduledExecutorService pollExecutor;
+    private ThreadPoolExecutor shardExecutor;
+
+    @PostConstruct
+    public void init() throws SchedulerException {
+        owner = scheduler.getSchedulerInstanceId();
+        shardExecutor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), ThreadUtil.newNamedThreadFactory("schedule-shard-", false));
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("schedule-shard-poll-", true));
+        pollExecutor.scheduleWithFixedDelay(this::poll, properties.getPollInterval(), properties.getPollInterval(), TimeUnit.MILLISECONDS);
+        // 租约时间的三分之一续期一次
+        long renewInterval = properties.getLeaseTime() / 3;
+        pollExecutor.scheduleWithFixedDelay(this::renew, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        pollExecutor.scheduleWithFixedDelay(this::sweep, properties.getLeaseTime(), properties.getLeaseTime(), TimeUnit.MILLISECONDS);
+        // 分片执行记录与任务日志保留相同的天数
+        if (logProperties.getRetentionDays() > 0) {
+            pollExecutor.scheduleWithFixedDelay(this::purge, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pollExecutor.shutdownNow();
+        shardExecutor.shutdown();
+    }
+
+    /**
+     * 校验分片数量，避免一次触发创建过多的分片
+     */
+    public void validate(ScheduleJobEntity scheduleJob) {
+        if (scheduleJob.getShardTotal() != null && scheduleJob.getShardTotal() > properties.getMaxShardTotal()) {
+            throw new ServerException(StrUtil.format("分片数量不能超过 {}", properties.getMaxShardTotal()));
+        }
+    }
+
+    /**
+     * 分片任务触发，创建分片执行记录和所有分片，由集群中的节点领取执行；
+     * 分片执行记录和分片在同一事务中写入，避免只有执行记录而没有分片，执行记录一直处于执行中
+     * <p>
+     * 禁止并发的任务，上次分片执行未结束时跳过本次触发。Quartz 不会同时触发同一个禁止并发的任务，查询后再写入不会重复
+     *
+     * @return 分片执行ID，跳过时返回 null
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public Long dispatch(ScheduleJobEntity scheduleJob) {
+        validate(scheduleJob);
+        if (scheduleJob.getConcurrent().equals(ScheduleConcurrentEnum.NO.getValue()) && scheduleJobExecutionDao.exists(
+                Wrappers.<ScheduleJobExecutionEntity>lambdaQuery()
+                        .eq(ScheduleJobExecutionEntity::getJobId, scheduleJob.getId())
+                        .eq(ScheduleJobExecutionEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue()))) {
+            log.warn("分片任务上次执行未结束，跳过本次触发，任务ID：{}", scheduleJob.getId());
+            return null;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        ScheduleJobExecutionEntity execution = new ScheduleJobExecutionEntity();
+        execution.setJobId(scheduleJob.getId());
+        execution.setShardTotal(scheduleJob.getShardTotal());
+        execution.setFinished(0);
+        execution.setFailed(0);
+        execution.setStatus(ScheduleShardStatusEnum.RUNNING.getValue());
+        execution.setStartTime(now);
+        scheduleJobExecutionDao.insert(execution);
+
+        List<ScheduleJobShardEntity> shards = new ArrayList<>(scheduleJob.getShardTotal());
+        for (int i = 0; i < scheduleJob.getShardTotal(); i++) {
+            ScheduleJobShardEntity shard = new ScheduleJobShardEntity();
+            shard.setExecutionId(execution.getId());
+            shard.setJobId(scheduleJob.getId());
+            shard.setShardIndex(i);
+            shard.setShardTotal(scheduleJob.getShardTotal());
+            shard.setStatus(ScheduleShardStatusEnum.PENDING.getValue());
+            shard.setAttempts(0);
+            shard.setCreateTime(now);
+            shards.add(shard);
+        }
+        scheduleJobShardDao.insert(shards);
+
+        log.info("分片任务已分发，任务ID：{}，分片执行ID：{}，分片数量：{}", scheduleJob.getId(), execution.getId(), shards.size());
+        return execution.getId();
+    }
+
+    /**
+     * 查询最近的分片执行记录
+     */
+    public List<ScheduleJobExecutionEntity> listExecutions(Long jobId, int limit) {
+        return scheduleJobExecutionDao.selectList(Wrappers.<ScheduleJobExecutionEntity>lambdaQuery()
+                .eq(ScheduleJobExecutionEntity::getJobId, jobId)
+                .orderByDesc(ScheduleJobExecutionEntity::getId)
+                .last("limit " + limit));
+    }
+
+    /**
+     * 查询待执行的分片和租约到期的分片，领取成功后执行
+     */
+    private void poll() {
+        try {
+            int idle = properties.getThreads() - shardExecutor.getActiveCount();
+            if (idle <= 0) {
+                return;
+            }
+
+            List<ScheduleJobShardEntity> shards = scheduleJobShardDao.selectList(Wrappers.<ScheduleJobShardEntity>lambdaQuery()
+                    .eq(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.PENDING.getValue())
+                    .or(wrapper -> wrapper.eq(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue())
+                            .apply("lease_expire_time < CURRENT_TIMESTAMP"))
+                    .orderByAsc(ScheduleJobShardEntity::getId)
+                    .last("limit " + idle));
+
+            for (ScheduleJobShardEntity shard : shards) {
+                if (claim(shard)) {
+                    submit(shard);
+                }
+            }
+        } catch (Exception e) {
+            log.error("查询待执行的定时任务分片失败", e);
+        }
+    }
+
+    /**
+     * 按查询时的状态和执行次数条件更新，只有一个节点能领取成功；
+     * 执行中的分片只有租约到期时才能领取，查询后执行节点可能已经续期
+     */
+    boolean claim(ScheduleJobShardEntity shard) {
+        boolean running = shard.getStatus().equals(ScheduleShardStatusEnum.RUNNING.getValue());
+        // 执行节点宕机的分片，超过最多执行次数时不再执行
+        if (shard.getAttempts() >= properties.getMaxAttempts()) {
+            if (finish(shard, ScheduleShardStatusEnum.FAIL, "执行节点 " + shard.getOwner() + " 未续期，超过最多执行次数", running)) {
+                complete(shard.getExecutionId());
+            }
+            return false;
+        }
+
+        ScheduleJobShardEntity update = new ScheduleJobShardEntity();
+        update.setStatus(ScheduleShardStatusEnum.RUNNING.getValue());
+        update.setOwner(owner);
+        update.setAttempts(shard.getAttempts() + 1);
+        update.setStartTime(LocalDateTime.now());
+        boolean claimed = scheduleJobShardDao.update(update, Wrappers.<ScheduleJobShardEntity>lambdaUpdate()
+                .setSql(leaseExpireSql())
+                .eq(ScheduleJobShardEntity::getId, shard.getId())
+                .eq(ScheduleJobShardEntity::getStatus, shard.getStatus())
+                .eq(ScheduleJobShardEntity::getAttempts, shard.getAttempts())
+                .apply(running, "lease_expire_time < CURRENT_TIMESTAMP")) > 0;
+        if (claimed) {
+            shard.setOwner(owner);
+            shard.setAttempts(update.getAttempts());
+            shard.setStatus(update.getStatus());
+        }
+        return claimed;
+    }
+
+    private void submit(ScheduleJobShardEntity shard) {
+        running.put(shard.getId(), shard);
+        try {
+            shardExecutor.execute(() -> execute(shard));
+        } catch (RejectedExecutionException e) {
+            // 没有空闲线程，等待租约到期后由其他节点或当前节点重新领取
+            running.remove(shard.getId());
+        }
+    }
+
+    void execute(ScheduleJobShardEntity shard) {
+        Exception error = null;
+        try {
+            ScheduleJobEntity scheduleJob = scheduleJobDao.selectById(shard.getJobId());
+            if (scheduleJob == null) {
+                throw new IllegalStateException("定时任务不存在，任务ID：" + shard.getJobId());
+            }
+            scheduleJobInvokerRegistry.invoke(scheduleJob, shard.getShardIndex(), shard.getShardTotal());
+        } catch (Exception e) {
+            log.error("定时任务分片执行失败，任务ID：{}，分片：{}/{}", shard.getJobId(), shard.getShardIndex(), shard.getShardTotal(), e);
+            error = e;
+        } finally {
+            running.remove(shard.getId());
+        }
+
+        String message = error == null ? null : StringUtils.substring(ExceptionUtils.getExceptionMessage(error), 0, 2000);
+        if (finish(shard, error == null ? ScheduleShardStatusEnum.SUCCESS : ScheduleShardStatusEnum.FAIL, message, false)) {
+            complete(shard.getExecutionId());
+        }
+    }
+
+    /**
+     * 结束分片，租约已被其他节点领取时不更新
+     *
+     * @param leaseExpired 是否只在租约到期时结束，用于结束宕机节点的分片
+     */
+    private boolean finish(ScheduleJobShardEntity shard, ScheduleShardStatusEnum status, String error, boolean leaseExpired) {
+        ScheduleJobShardEntity update = new ScheduleJobShardEntity();
+        update.setStatus(status.getValue());
+        update.setError(error);
+        update.setEndTime(LocalDateTime.now());
+        return scheduleJobShardDao.update(update, Wrappers.<ScheduleJobShardEntity>lambdaUpdate()
+                .eq(ScheduleJobShardEntity::getId, shard.getId())
+                .eq(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue())
+                .eq(ScheduleJobShardEntity::getAttempts, shard.getAttempts())
+                .apply(leaseExpired, "lease_expire_time < CURRENT_TIMESTAMP")) > 0;
+    }
+
+    /**
+     * 按分片记录汇总分片执行结果，所有分片结束时更新分片执行状态，并写入任务日志
+     * <p>
+     * 结果只从分片记录计算，可以重复执行，多个节点同时汇总时，按执行中状态条件更新，只有一个节点写入任务日志
+     */
+    void complete(Long executionId) {
+        ScheduleJobExecutionEntity execution = scheduleJobExecutionDao.selectById(executionId);
+        if (execution == null || !execution.getStatus().equals(ScheduleShardStatusEnum.RUNNING.getValue())) {
+            return;
+        }
+
+        int finished = scheduleJobShardDao.selectCount(Wrappers.<ScheduleJobShardEntity>lambdaQuery()
+                .eq(ScheduleJobShardEntity::getExecutionId, executionId)
+                .in(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.SUCCESS.getValue(), ScheduleShardStatusEnum.FAIL.getValue())).intValue();
+        int failed = scheduleJobShardDao.selectCount(Wrappers.<ScheduleJobShardEntity>lambdaQuery()
+                .eq(ScheduleJobShardEntity::getExecutionId, executionId)
+                .eq(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.FAIL.getValue())).intValue();
+        boolean done = finished >= execution.getShardTotal();
+
+        ScheduleShardStatusEnum status = failed > 0 ? ScheduleShardStatusEnum.FAIL : ScheduleShardStatusEnum.SUCCESS;
+        LocalDateTime endTime = LocalDateTime.now();
+        boolean updated = scheduleJobExecutionDao.update(null, Wrappers.<ScheduleJobExecutionEntity>lambdaUpdate()
+                .set(ScheduleJobExecutionEntity::getFinished, finished)
+                .set(ScheduleJobExecutionEntity::getFailed, failed)
+                .set(done, ScheduleJobExecutionEntity::getStatus, status.getValue())
+                .set(done, ScheduleJobExecutionEntity::getEndTime, endTime)
+                .eq(ScheduleJobExecutionEntity::getId, executionId)
+                .eq(ScheduleJobExecutionEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue())) > 0;
+        if (done && updated) {
+            execution.setFinished(finished);
+            execution.setFailed(failed);
+            saveLog(execution, status, endTime);
+        }
+    }
+
+    /**
+     * 汇总分片已全部结束，但仍处于执行中的分片执行，如分片结束后节点宕机未能汇总，避免禁止并发的任务一直跳过触发
+     */
+    void sweep() {
+        try {
+            List<ScheduleJobExecutionEntity> executions = scheduleJobExecutionDao.selectList(Wrappers.<ScheduleJobExecutionEntity>lambdaQuery()
+                    .select(ScheduleJobExecutionEntity::getId)
+                    .eq(ScheduleJobExecutionEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue())
+                    .notExists(StrUtil.format("select 1 from schedule_job_shard s where s.execution_id = schedule_job_execution.id and s.status in ({}, {})",
+                            ScheduleShardStatusEnum.PENDING.getValue(), ScheduleShardStatusEnum.RUNNING.getValue()))
+                    .last("limit 100"));
+            for (ScheduleJobExecutionEntity execution : executions) {
+                complete(execution.getId());
+            }
+        } catch (Exception e) {
+            log.error("汇总定时任务分片执行结果失败", e);
+        }
+    }
+
+    private void saveLog(ScheduleJobExecutionEntity execution, ScheduleShardStatusEnum status, LocalDateTime endTime) {
+        ScheduleJobEntity scheduleJob = scheduleJobDao.selectById(execution.getJobId());
+        if (scheduleJob == null) {
+            return;
+        }
+
+        ScheduleJobLogEntity jobLog = new ScheduleJobLogEntity();
+        jobLog.setJobId(scheduleJob.getId());
+        jobLog.setJobName(scheduleJob.getJobName());
+        jobLog.setJobGroup(scheduleJob.getJobGroup());
+        jobLog.setBeanName(scheduleJob.getBeanName());
+        jobLog.setMethod(scheduleJob.getMethod());
+        jobLog.setParams(scheduleJob.getParams());
+        jobLog.setTimes(Duration.between(execution.getStartTime(), endTime).toMillis());
+        jobLog.setCreateTime(endTime);
+        if (status == ScheduleShardStatusEnum.SUCCESS) {
+            jobLog.setStatus(ScheduleStatusEnum.NORMAL.getValue());
+        } else {
+            jobLog.setStatus(ScheduleStatusEnum.PAUSE.getValue());
+            jobLog.setError("分片执行ID：" + execution.getId() + "，失败分片数量：" + execution.getFailed() + "/" + execution.getShardTotal());
+        }
+        scheduleJobLogWriter.write(jobLog);
+    }
+
+    /**
+     * 续期当前节点执行中的分片
+     */
+    private void renew() {
+        if (running.isEmpty()) {
+            return;
+        }
+
+        try {
+            scheduleJobShardDao.update(null, Wrappers.<ScheduleJobShardEntity>lambdaUpdate()
+                    .setSql(leaseExpireSql())
+                    .in(ScheduleJobShardEntity::getId, running.keySet())
+                    .eq(ScheduleJobShardEntity::getOwner, owner)
+                    .eq(ScheduleJobShardEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue()));
+        } catch (Exception e) {
+            log.error("定时任务分片续期失败", e);
+        }
+    }
+
+    /**
+     * 租约到期时间 = 数据库当前时间 + 租约时间，MySQL、PostgreSQL、达梦都支持 INTERVAL 'n' SECOND 的写法
+     */
+    private String leaseExpireSql() {
+        long seconds = Math.max(1, properties.getLeaseTime() / 1000);
+        return "lease_expire_time = CURRENT_TIMESTAMP + INTERVAL '" + seconds + "' SECOND";
+    }
+
+    /**
+     * 删除过期的分片执行记录和分片，按分片执行ID分批删除
+     */
+    private void purge() {
+        try {
+            LocalDateTime expireTime = LocalDateTime.now().minusDays(logProperties.getRetentionDays());
+            long deleted = 0;
+            while (true) {
+                List<Object> ids = scheduleJobExecutionDao.selectObjs(Wrappers.<ScheduleJobExecutionEntity>lambdaQuery()
+                        .select(ScheduleJobExecutionEntity::getId)
+                        .lt(ScheduleJobExecutionEntity::getStartTime, expireTime)
+                        .ne(ScheduleJobExecutionEntity::getStatus, ScheduleShardStatusEnum.RUNNING.getValue())
+                        .last("limit " + logProperties.getPurgeBatchSize()));
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                scheduleJobShardDao.delete(Wrappers.<ScheduleJobShardEntity>lambdaQuery().in(ScheduleJobShardEntity::getExecutionId, ids));
+                deleted += scheduleJobExecutionDao.deleteByIds(ids);
+            }
+            log.info("清理 {} 天前的定时任务分片执行记录 {} 条", logProperties.getRetentionDays(), deleted);
+        } catch (Exception e) {
+            log.error("清理定时任务分片执行记录失败", e);
+        }
+    }
+}
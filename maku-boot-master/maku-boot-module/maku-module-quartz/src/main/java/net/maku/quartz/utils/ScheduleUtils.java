@@ -5,6 +5,7 @@ import net.maku.quartz.entity.ScheduleJobEntity;
 import net.maku.quartz.enums.ScheduleConcurrentEnum;
 import net.maku.quartz.enums.ScheduleStatusEnum;
 import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
 
 /**
  * 定时任务工具类
@@ -18,6 +19,10 @@ public class ScheduleUtils {
      * 任务调度参数key
      */
     public static final String JOB_PARAM_KEY = "JOB_PARAM_KEY";
+    /**
+     * 暂停任务的触发器分组，分组本身是暂停的，触发器加入时即为暂停状态，不需要再逐个暂停
+     */
+    public static final String PAUSED_TRIGGER_GROUP = "MAKU_PAUSED";
 
     /**
      * 获取quartz任务类
@@ -38,10 +43,27 @@ public class ScheduleUtils {
     }
 
     /**
-     * 获取触发器key
+     * 获取触发器key，暂停的任务放在暂停分组中
      */
     public static TriggerKey getTriggerKey(ScheduleJobEntity scheduleJob) {
-        return TriggerKey.triggerKey(JOB_NAME + scheduleJob.getId(), scheduleJob.getJobGroup());
+        String group = isPaused(scheduleJob) ? PAUSED_TRIGGER_GROUP : scheduleJob.getJobGroup();
+        return TriggerKey.triggerKey(JOB_NAME + scheduleJob.getId(), group);
+    }
+
+    /**
+     * 任务是否暂停
+     */
+    public static boolean isPaused(ScheduleJobEntity scheduleJob) {
+        return scheduleJob.getStatus().equals(ScheduleStatusEnum.PAUSE.getValue());
+    }
+
+    /**
+     * 暂停触发器分组，暂停后分组保存在 QRTZ_PAUSED_TRIGGER_GRPS 中，之后加入分组的触发器都是暂停状态
+     */
+    public static void pauseTriggerGroup(Scheduler scheduler) throws SchedulerException {
+        if (!scheduler.getPausedTriggerGroups().contains(PAUSED_TRIGGER_GROUP)) {
+            scheduler.pauseTriggers(GroupMatcher.triggerGroupEquals(PAUSED_TRIGGER_GROUP));
+        }
     }
 
     /**
@@ -51,26 +73,41 @@ public class ScheduleUtils {
         return JobKey.jobKey(JOB_NAME + scheduleJob.getId(), scheduleJob.getJobGroup());
     }
 
+    /**
+     * 构建job信息，放入任务参数，运行时的方法可以获取
+     */
+    public static JobDetail buildJobDetail(ScheduleJobEntity scheduleJob) {
+        JobDetail jobDetail = JobBuilder.newJob(getJobClass(scheduleJob)).withIdentity(getJobKey(scheduleJob)).build();
+        jobDetail.getJobDataMap().put(JOB_PARAM_KEY, scheduleJob);
+        return jobDetail;
+    }
+
+    /**
+     * 按cronExpression表达式构建trigger
+     */
+    public static CronTrigger buildTrigger(ScheduleJobEntity scheduleJob) {
+        // 表达式调度构建器
+        CronScheduleBuilder scheduleBuilder = CronScheduleBuilder.cronSchedule(scheduleJob.getCronExpression())
+                .withMisfireHandlingInstructionDoNothing();
+
+        return TriggerBuilder.newTrigger().withIdentity(getTriggerKey(scheduleJob))
+                .withSchedule(scheduleBuilder).build();
+    }
+
     /**
      * 创建定时任务
      */
     public static void createScheduleJob(Scheduler scheduler, ScheduleJobEntity scheduleJob) {
         try {
+            // 暂停的任务触发器放在暂停分组中，创建时即为暂停状态
+            pauseTriggerGroup(scheduler);
+
             // job key
             JobKey jobKey = getJobKey(scheduleJob);
             // 构建job信息
-            JobDetail jobDetail = JobBuilder.newJob(getJobClass(scheduleJob)).withIdentity(jobKey).build();
-
-            // 表达式调度构建器
-            CronScheduleBuilder scheduleBuilder = CronScheduleBuilder.cronSchedule(scheduleJob.getCronExpression())
-                    .withMisfireHandlingInstructionDoNothing();
+            JobDetail jobDetail = buildJobDetail(scheduleJob);
+            CronTrigger trigger = buildTrigger(scheduleJob);
 
-            // 按新的cronExpression表达式构建一个新的trigger
-            CronTrigger trigger = TriggerBuilder.newTrigger().withIdentity(getTriggerKey(scheduleJob))
-                    .withSchedule(scheduleBuilder).build();
-
-            // 放入参数，运行时的方法可以获取
-            jobDetail.getJobDataMap().put(JOB_PARAM_KEY, scheduleJob);
             // 把任务添加到Quartz中
             scheduler.scheduleJob(jobDetail, trigger);
 
@@ -85,11 +122,6 @@ public class ScheduleUtils {
                 // 执行调度任务
                 scheduler.scheduleJob(jobDetail, trigger);
             }
-
-            // 暂停任务
-            if (scheduleJob.getStatus().equals(ScheduleStatusEnum.PAUSE.getValue())) {
-                scheduler.pauseJob(jobKey);
-            }
         } catch (SchedulerException e) {
             throw new ServerException("创建定时任务失败", e);
         }
@@ -115,27 +147,41 @@ public class ScheduleUtils {
     }
 
     /**
-     * 暂停任务
+     * 暂停任务，把触发器移到暂停分组中
      */
     public static void pauseJob(Scheduler scheduler, ScheduleJobEntity scheduleJob) {
         try {
-            scheduler.pauseJob(getJobKey(scheduleJob));
+            pauseTriggerGroup(scheduler);
+            rescheduleTrigger(scheduler, scheduleJob);
         } catch (SchedulerException e) {
             throw new ServerException("暂停定时任务失败", e);
         }
     }
 
     /**
-     * 恢复任务
+     * 恢复任务，把触发器移回任务分组中，从当前时间开始计算下次执行时间
      */
     public static void resumeJob(Scheduler scheduler, ScheduleJobEntity scheduleJob) {
         try {
-            scheduler.resumeJob(getJobKey(scheduleJob));
+            rescheduleTrigger(scheduler, scheduleJob);
         } catch (SchedulerException e) {
             throw new ServerException("恢复定时任务失败", e);
         }
     }
 
+    /**
+     * 按任务状态替换触发器，新触发器的状态由所在分组决定，替换只获取一次集群锁
+     */
+    private static void rescheduleTrigger(Scheduler scheduler, ScheduleJobEntity scheduleJob) throws SchedulerException {
+        String triggerName = getTriggerKey(scheduleJob).getName();
+        for (Trigger trigger : scheduler.getTriggersOfJob(getJobKey(scheduleJob))) {
+            if (trigger.getKey().getName().equals(triggerName)) {
+                scheduler.rescheduleJob(trigger.getKey(), buildTrigger(scheduleJob));
+                return;
+            }
+        }
+    }
+
     /**
      * 更新定时任务
      */
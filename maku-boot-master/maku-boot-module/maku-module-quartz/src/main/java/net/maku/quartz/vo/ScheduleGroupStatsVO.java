@@ -0,0 +1,30 @@
+package net.maku.quartz.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 定时任务分组统计
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "定时任务分组统计")
+public class ScheduleGroupStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "任务组名")
+    private String jobGroup;
+
+    @Schema(description = "同时执行的数量限制")
+    private Integer limit;
+
+    @Schema(description = "执行中的数量")
+    private Integer running;
+
+    @Schema(description = "排队的数量")
+    private Integer pending;
+}
@@ -0,0 +1,48 @@
+package net.maku.quartz.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务分片执行
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "定时任务分片执行")
+public class ScheduleJobExecutionVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "id")
+    private Long id;
+
+    @Schema(description = "任务id")
+    private Long jobId;
+
+    @Schema(description = "分片数量")
+    private Integer shardTotal;
+
+    @Schema(description = "已结束的分片数量")
+    private Integer finished;
+
+    @Schema(description = "失败的分片数量")
+    private Integer failed;
+
+    @Schema(description = "状态  1：执行中  2：成功  3：失败")
+    private Integer status;
+
+    @Schema(description = "开始时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime startTime;
+
+    @Schema(description = "结束时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime endTime;
+
+}
@@ -0,0 +1,36 @@
+package net.maku.quartz.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 定时任务执行统计
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "定时任务执行统计")
+public class ScheduleJobStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "任务标识，格式：任务组名.TASK_NAME_任务id")
+    private String jobKey;
+
+    @Schema(description = "执行次数")
+    private Long count;
+
+    @Schema(description = "平均排队时间(单位：毫秒)")
+    private Long avgWaitTime;
+
+    @Schema(description = "最大排队时间(单位：毫秒)")
+    private Long maxWaitTime;
+
+    @Schema(description = "平均执行时间(单位：毫秒)")
+    private Long avgRunTime;
+
+    @Schema(description = "最大执行时间(单位：毫秒)")
+    private Long maxRunTime;
+}
@@ -45,6 +45,9 @@ public class ScheduleJobVO implements Serializable {
     @Schema(description = "是否并发")
     private Integer concurrent;
 
+    @Schema(description = "分片数量，大于1时由集群中的节点分片执行")
+    private Integer shardTotal;
+
     @Schema(description = "备注")
     private String remark;
 
@@ -0,0 +1,34 @@
+package net.maku.quartz.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 定时任务线程池统计
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "定时任务线程池统计")
+public class ScheduleThreadPoolStatsVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "同时执行的任务数量")
+    private Integer poolSize;
+
+    @Schema(description = "空闲数量")
+    private Integer available;
+
+    @Schema(description = "是否使用虚拟线程")
+    private Boolean virtualThreads;
+
+    @Schema(description = "分组统计")
+    private List<ScheduleGroupStatsVO> groups;
+
+    @Schema(description = "任务统计")
+    private List<ScheduleJobStatsVO> jobs;
+}
@@ -0,0 +1,98 @@
+package net.maku.quartz.config;
+
+import net.maku.quartz.entity.ScheduleJobEntity;
+import net.maku.quartz.enums.ScheduleConcurrentEnum;
+import net.maku.quartz.enums.ScheduleStatusEnum;
+import net.maku.quartz.utils.ScheduleJobReconciler;
+import net.maku.quartz.utils.ScheduleUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定时任务存储测试，使用内存数据库，同步任务在一个事务中读取和写入
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ScheduleJobStoreTest {
+    private SchedulerFactoryBean factory;
+    private Scheduler scheduler;
+
+    @BeforeEach
+    public void init() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:quartz;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("org/quartz/impl/jdbcjobstore/tables_h2.sql")).execute(dataSource);
+
+        Properties prop = new Properties();
+        prop.put("org.quartz.scheduler.instanceId", "AUTO");
+        prop.put("org.quartz.threadPool.threadCount", "1");
+        prop.put("org.quartz.jobStore.class", ScheduleJobStore.class.getName());
+        prop.put("org.quartz.jobStore.isClustered", "true");
+        prop.put("org.quartz.jobStore.tablePrefix", "QRTZ_");
+
+        factory = new SchedulerFactoryBean();
+        factory.setSchedulerName("ScheduleJobStoreTest");
+        factory.setDataSource(dataSource);
+        factory.setQuartzProperties(prop);
+        factory.setAutoStartup(false);
+        factory.afterPropertiesSet();
+        scheduler = factory.getScheduler();
+    }
+
+    @AfterEach
+    public void destroy() throws Exception {
+        scheduler.clear();
+        factory.destroy();
+    }
+
+    @Test
+    public void reconcile() throws Exception {
+        ScheduleJobEntity job1 = job(1L, ScheduleStatusEnum.NORMAL);
+        ScheduleJobEntity job2 = job(2L, ScheduleStatusEnum.PAUSE);
+
+        ScheduleJobReconciler.reconcile(scheduler, List.of(job1, job2));
+        assertEquals(2, scheduler.getJobKeys(GroupMatcher.anyJobGroup()).size());
+        assertEquals(Trigger.TriggerState.NORMAL, scheduler.getTriggerState(ScheduleUtils.getTriggerKey(job1)));
+        assertEquals(Trigger.TriggerState.PAUSED, scheduler.getTriggerState(ScheduleUtils.getTriggerKey(job2)));
+
+        // 未变化的任务保留原有的触发时间
+        Date nextFireTime = scheduler.getTrigger(ScheduleUtils.getTriggerKey(job1)).getNextFireTime();
+        ScheduleJobReconciler.reconcile(scheduler, List.of(job1, job2));
+        assertEquals(nextFireTime, scheduler.getTrigger(ScheduleUtils.getTriggerKey(job1)).getNextFireTime());
+
+        // 暂停任务1，删除任务2
+        job1.setStatus(ScheduleStatusEnum.PAUSE.getValue());
+        ScheduleJobReconciler.reconcile(scheduler, List.of(job1));
+        assertEquals(Trigger.TriggerState.PAUSED, scheduler.getTriggerState(ScheduleUtils.getTriggerKey(job1)));
+        assertEquals(1, scheduler.getTriggersOfJob(ScheduleUtils.getJobKey(job1)).size());
+        assertFalse(scheduler.checkExists(ScheduleUtils.getJobKey(job2)));
+    }
+
+    private static ScheduleJobEntity job(Long id, ScheduleStatusEnum status) {
+        ScheduleJobEntity job = new ScheduleJobEntity();
+        job.setId(id);
+        job.setJobName("job" + id);
+        job.setJobGroup("system");
+        job.setBeanName("testTask");
+        job.setMethod("run");
+        job.setCronExpression("0 0/5 * * * ?");
+        job.setStatus(status.getValue());
+        job.setConcurrent(ScheduleConcurrentEnum.NO.getValue());
+        job.setShardTotal(1);
+        return job;
+    }
+}
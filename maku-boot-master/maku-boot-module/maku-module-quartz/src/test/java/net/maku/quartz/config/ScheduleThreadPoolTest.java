@@ -0,0 +1,193 @@
+package net.maku.quartz.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.TriggerBuilder;
+import org.quartz.core.JobRunShell;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定时任务线程池测试，分组限制、排队任务的执行顺序、任务异常和停止时的排队任务
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ScheduleThreadPoolTest {
+    private static final String LIMITED_GROUP = "report";
+
+    private ScheduleThreadPool pool;
+
+    @BeforeEach
+    public void init() throws Exception {
+        pool = new ScheduleThreadPool();
+        pool.setInstanceName("test");
+        pool.setThreadCount(4);
+        pool.setVirtualThreads(false);
+        pool.setGroupLimits(LIMITED_GROUP + ":1");
+        pool.setQueueCapacity(3);
+        pool.initialize();
+    }
+
+    @AfterEach
+    public void destroy() {
+        pool.shutdown(false);
+    }
+
+    @Test
+    public void groupLimitAndPriority() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "first", 5, () -> {
+            await(blocker);
+            order.add("first");
+            done.countDown();
+        })));
+        for (int priority : new int[]{1, 10, 5}) {
+            String name = "p" + priority;
+            assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, name, priority, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(name);
+                running.decrementAndGet();
+                done.countDown();
+            })));
+        }
+
+        // 分组已满时，排队的任务不占用线程，其他分组仍可执行
+        CountDownLatch other = new CountDownLatch(1);
+        assertTrue(pool.runInThread(new TestShell("other", "other", 5, other::countDown)));
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertEquals(3, pool.getStats().getGroups().get(0).getPending());
+        assertEquals(1, pool.getStats().getGroups().get(0).getRunning());
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "p10", "p5", "p1"), order);
+        assertEquals(1, maxRunning.get());
+        waitForIdle();
+        assertEquals(0, pool.getStats().getGroups().get(0).getRunning());
+    }
+
+    @Test
+    public void failedJobReleasesGroup() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "failed", 5, () -> {
+            await(blocker);
+            throw new IllegalStateException("任务执行失败");
+        })));
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "next", 5, done::countDown)));
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitForIdle();
+        assertEquals(0, pool.getStats().getGroups().get(0).getRunning());
+        assertEquals(4, pool.getStats().getAvailable());
+    }
+
+    @Test
+    public void shutdownRunsPendingJobs() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "first", 5, () -> await(blocker))));
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "second", 5, done::countDown)));
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "third", 5, done::countDown)));
+
+        pool.shutdown(false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getStats().getGroups().get(0).getPending());
+        assertFalse(pool.runInThread(new TestShell(LIMITED_GROUP, "rejected", 5, () -> fail("停止后不应执行"))));
+        blocker.countDown();
+    }
+
+    @Test
+    public void queueCapacity() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+
+        assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "first", 5, () -> await(blocker))));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.runInThread(new TestShell(LIMITED_GROUP, "queued" + i, 5, done::countDown)));
+        }
+
+        // 排队已满，调度线程等待分组内有任务完成
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(
+                () -> pool.runInThread(new TestShell(LIMITED_GROUP, "blocked", 5, done::countDown)));
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+        assertEquals(3, pool.getStats().getGroups().get(0).getPending());
+
+        // 其他分组不受影响
+        CountDownLatch other = new CountDownLatch(1);
+        assertTrue(pool.runInThread(new TestShell("other", "other", 5, other::countDown)));
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+
+        blocker.countDown();
+        assertTrue(blocked.get(5, TimeUnit.SECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getAvailable() < pool.getPoolSize() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 调度线程先由 ScheduleJobFactory 记录触发信息，再调用 runInThread，测试时在创建时记录，只执行指定的代码
+     */
+    private static class TestShell extends JobRunShell {
+        private final Runnable body;
+
+        TestShell(String group, String name, int priority, Runnable body) {
+            this(bundle(group, name, priority), body);
+        }
+
+        private TestShell(TriggerFiredBundle bundle, Runnable body) {
+            super(null, bundle);
+            this.body = body;
+            ScheduleThreadPool.fired(bundle);
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        private static TriggerFiredBundle bundle(String group, String name, int priority) {
+            OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity(name, group)
+                    .withPriority(priority).build();
+            Date now = new Date();
+            return new TriggerFiredBundle(JobBuilder.newJob(Job.class).withIdentity(name, group).build(),
+                    trigger, null, false, now, now, null, null);
+        }
+    }
+}
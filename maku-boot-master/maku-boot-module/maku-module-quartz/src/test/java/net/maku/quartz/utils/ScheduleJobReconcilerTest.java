@@ -0,0 +1,115 @@
+package net.maku.quartz.utils;
+
+import net.maku.quartz.config.ScheduleJobStore;
+import net.maku.quartz.entity.ScheduleJobEntity;
+import net.maku.quartz.enums.ScheduleConcurrentEnum;
+import net.maku.quartz.enums.ScheduleStatusEnum;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定时任务同步测试，未变化的任务保留，有变化、暂停状态变化的任务重建，多余和过期的任务删除
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ScheduleJobReconcilerTest {
+
+    @Test
+    public void keepUnchanged() {
+        ScheduleJobEntity job = job(1L, ScheduleStatusEnum.NORMAL);
+
+        ScheduleJobStore.Changes changes = ScheduleJobReconciler.plan(List.of(job),
+                Map.of(ScheduleUtils.getJobKey(job), stored(job, Trigger.TriggerState.NORMAL)));
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void rebuildChanged() {
+        ScheduleJobEntity job = job(1L, ScheduleStatusEnum.NORMAL);
+        Map<JobKey, ScheduleJobStore.StoredJob> storedJobs = Map.of(ScheduleUtils.getJobKey(job), stored(job, Trigger.TriggerState.NORMAL));
+
+        // cron表达式变化
+        job.setCronExpression("0 0/10 * * * ?");
+        ScheduleJobStore.Changes changes = ScheduleJobReconciler.plan(List.of(job), storedJobs);
+        assertEquals(1, changes.replaced().size());
+        assertTrue(changes.removedTriggers().isEmpty());
+
+        // 触发器出错时重建
+        job.setCronExpression("0 0/5 * * * ?");
+        changes = ScheduleJobReconciler.plan(List.of(job),
+                Map.of(ScheduleUtils.getJobKey(job), stored(job, Trigger.TriggerState.ERROR)));
+        assertEquals(1, changes.replaced().size());
+
+        // 任务参数无法反序列化时重建
+        changes = ScheduleJobReconciler.plan(List.of(job), Map.of(ScheduleUtils.getJobKey(job),
+                new ScheduleJobStore.StoredJob(null, List.of(ScheduleUtils.buildTrigger(job)), Map.of())));
+        assertEquals(1, changes.replaced().size());
+    }
+
+    @Test
+    public void movePausedTrigger() {
+        ScheduleJobEntity job = job(1L, ScheduleStatusEnum.NORMAL);
+        ScheduleJobStore.StoredJob storedJob = stored(job, Trigger.TriggerState.NORMAL);
+        TriggerKey oldKey = ScheduleUtils.getTriggerKey(job);
+
+        // 暂停后触发器放在暂停分组中，删除任务分组中的触发器
+        job.setStatus(ScheduleStatusEnum.PAUSE.getValue());
+        ScheduleJobStore.Changes changes = ScheduleJobReconciler.plan(List.of(job), Map.of(ScheduleUtils.getJobKey(job), storedJob));
+
+        assertEquals(1, changes.replaced().size());
+        Trigger trigger = changes.replaced().values().iterator().next();
+        assertEquals(ScheduleUtils.PAUSED_TRIGGER_GROUP, trigger.getKey().getGroup());
+        assertEquals(List.of(oldKey), changes.removedTriggers());
+    }
+
+    @Test
+    public void removeStale() {
+        ScheduleJobEntity job = job(1L, ScheduleStatusEnum.NORMAL);
+        ScheduleJobEntity deleted = job(2L, ScheduleStatusEnum.NORMAL);
+        ScheduleJobEntity expired = job(3L, ScheduleStatusEnum.NORMAL);
+        Map<JobKey, ScheduleJobStore.StoredJob> storedJobs = new HashMap<>();
+        storedJobs.put(ScheduleUtils.getJobKey(job), stored(job, Trigger.TriggerState.NORMAL));
+        storedJobs.put(ScheduleUtils.getJobKey(deleted), stored(deleted, Trigger.TriggerState.NORMAL));
+        storedJobs.put(ScheduleUtils.getJobKey(expired), stored(expired, Trigger.TriggerState.NORMAL));
+
+        // 已过期的cron表达式不再调度
+        expired.setCronExpression("0 0 0 1 1 ? 2000");
+        ScheduleJobStore.Changes changes = ScheduleJobReconciler.plan(List.of(job, expired), storedJobs);
+
+        assertTrue(changes.replaced().isEmpty());
+        assertEquals(Set.of(ScheduleUtils.getJobKey(deleted), ScheduleUtils.getJobKey(expired)), new HashSet<>(changes.removedJobs()));
+    }
+
+    private static ScheduleJobStore.StoredJob stored(ScheduleJobEntity job, Trigger.TriggerState state) {
+        ScheduleJobEntity copy = job(job.getId(), ScheduleStatusEnum.NORMAL);
+        copy.setStatus(job.getStatus());
+        copy.setCronExpression(job.getCronExpression());
+        JobDetail jobDetail = ScheduleUtils.buildJobDetail(copy);
+        Trigger trigger = ScheduleUtils.buildTrigger(copy);
+        return new ScheduleJobStore.StoredJob(jobDetail, List.of(trigger), Map.of(trigger.getKey(), state));
+    }
+
+    private static ScheduleJobEntity job(Long id, ScheduleStatusEnum status) {
+        ScheduleJobEntity job = new ScheduleJobEntity();
+        job.setId(id);
+        job.setJobName("job" + id);
+        job.setJobGroup("system");
+        job.setBeanName("testTask");
+        job.setMethod("run");
+        job.setParams("params");
+        job.setCronExpression("0 0/5 * * * ?");
+        job.setStatus(status.getValue());
+        job.setConcurrent(ScheduleConcurrentEnum.NO.getValue());
+        job.setShardTotal(1);
+        return job;
+    }
+}
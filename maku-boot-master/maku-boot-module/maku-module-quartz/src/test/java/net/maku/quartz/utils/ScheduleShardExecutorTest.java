@@ -0,0 +1,251 @@
+package net.maku.quartz.utils;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import net.maku.quartz.config.ScheduleLogProperties;
+import net.maku.quartz.config.ScheduleShardProperties;
+import net.maku.quartz.dao.ScheduleJobDao;
+import net.maku.quartz.dao.ScheduleJobExecutionDao;
+import net.maku.quartz.dao.ScheduleJobShardDao;
+import net.maku.quartz.entity.ScheduleJobEntity;
+import net.maku.quartz.entity.ScheduleJobExecutionEntity;
+import net.maku.quartz.entity.ScheduleJobLogEntity;
+import net.maku.quartz.entity.ScheduleJobShardEntity;
+import net.maku.quartz.enums.ScheduleShardStatusEnum;
+import net.maku.quartz.enums.ScheduleStatusEnum;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.Scheduler;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 定时任务分片执行测试，使用内存数据库，两个节点领取分片、租约到期后重新领取、按分片记录汇总结果
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ScheduleShardExecutorTest {
+    private JdbcTemplate jdbcTemplate;
+    private ScheduleJobShardDao shardDao;
+    private ScheduleJobExecutionDao executionDao;
+    private ScheduleJobInvokerRegistry invokerRegistry;
+    private ScheduleJobLogWriter logWriter;
+    private ScheduleShardExecutor node1;
+    private ScheduleShardExecutor node2;
+
+    @BeforeEach
+    public void init() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE schedule_job_execution (
+                    id bigint NOT NULL AUTO_INCREMENT PRIMARY KEY, job_id bigint NOT NULL, shard_total int NOT NULL,
+                    finished int NOT NULL, failed int NOT NULL, status tinyint NOT NULL, start_time datetime, end_time datetime)""");
+        jdbcTemplate.execute("""
+                CREATE TABLE schedule_job_shard (
+                    id bigint NOT NULL AUTO_INCREMENT PRIMARY KEY, execution_id bigint NOT NULL, job_id bigint NOT NULL,
+                    shard_index int NOT NULL, shard_total int NOT NULL, status tinyint NOT NULL, owner varchar(200),
+                    attempts int NOT NULL, lease_expire_time datetime, error varchar(2000), start_time datetime,
+                    end_time datetime, create_time datetime)""");
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        GlobalConfig globalConfig = GlobalConfigUtils.defaults();
+        globalConfig.getDbConfig().setIdType(IdType.AUTO);
+        GlobalConfigUtils.setGlobalConfig(configuration, globalConfig);
+        configuration.addMapper(ScheduleJobShardDao.class);
+        configuration.addMapper(ScheduleJobExecutionDao.class);
+        SqlSessionManager sessions = SqlSessionManager.newInstance(new MybatisSqlSessionFactoryBuilder().build(configuration));
+        shardDao = sessions.getMapper(ScheduleJobShardDao.class);
+        executionDao = sessions.getMapper(ScheduleJobExecutionDao.class);
+
+        ScheduleJobEntity scheduleJob = new ScheduleJobEntity();
+        scheduleJob.setId(1L);
+        scheduleJob.setJobName("shard");
+        scheduleJob.setJobGroup("system");
+        ScheduleJobDao scheduleJobDao = mock(ScheduleJobDao.class);
+        when(scheduleJobDao.selectById(any())).thenReturn(scheduleJob);
+        invokerRegistry = mock(ScheduleJobInvokerRegistry.class);
+        logWriter = mock(ScheduleJobLogWriter.class);
+
+        node1 = newExecutor("node1", scheduleJobDao);
+        node2 = newExecutor("node2", scheduleJobDao);
+    }
+
+    @AfterEach
+    public void destroy() {
+        node1.destroy();
+        node2.destroy();
+    }
+
+    @Test
+    public void claimOnce() {
+        Long executionId = dispatch(1);
+        ScheduleJobShardEntity shard = selectShards(executionId).get(0);
+
+        // 两个节点查询到同一个待执行分片，只有一个节点领取成功
+        assertTrue(node1.claim(copy(shard)));
+        assertFalse(node2.claim(copy(shard)));
+
+        ScheduleJobShardEntity claimed = shardDao.selectById(shard.getId());
+        assertEquals(ScheduleShardStatusEnum.RUNNING.getValue(), claimed.getStatus());
+        assertEquals("node1", claimed.getOwner());
+        assertEquals(1, claimed.getAttempts());
+        assertNotNull(claimed.getLeaseExpireTime());
+    }
+
+    @Test
+    public void reclaimAfterLeaseExpired() throws Exception {
+        Long executionId = dispatch(1);
+        ScheduleJobShardEntity shard = selectShards(executionId).get(0);
+        ScheduleJobShardEntity shard1 = copy(shard);
+        assertTrue(node1.claim(shard1));
+
+        // 租约未到期，其他节点不能领取执行中的分片
+        ScheduleJobShardEntity running = shardDao.selectById(shard.getId());
+        assertFalse(node2.claim(copy(running)));
+
+        // 超过最多执行次数，租约未到期时也不能结束分片
+        ScheduleJobShardEntity exhausted = copy(running);
+        exhausted.setAttempts(3);
+        jdbcTemplate.update("update schedule_job_shard set attempts = 3 where id = ?", shard.getId());
+        assertFalse(node2.claim(exhausted));
+        assertEquals(ScheduleShardStatusEnum.RUNNING.getValue(), shardDao.selectById(shard.getId()).getStatus());
+        jdbcTemplate.update("update schedule_job_shard set attempts = 1 where id = ?", shard.getId());
+
+        // 租约到期后由其他节点重新领取
+        jdbcTemplate.update("update schedule_job_shard set lease_expire_time = ? where id = ?",
+                LocalDateTime.now().minusMinutes(1), shard.getId());
+        ScheduleJobShardEntity shard2 = copy(shardDao.selectById(shard.getId()));
+        assertTrue(node2.claim(shard2));
+        assertEquals("node2", shardDao.selectById(shard.getId()).getOwner());
+        assertEquals(2, shardDao.selectById(shard.getId()).getAttempts());
+
+        // 原节点执行结束时分片已被重新领取，不更新分片，也不汇总结果
+        node1.execute(shard1);
+        assertEquals(ScheduleShardStatusEnum.RUNNING.getValue(), shardDao.selectById(shard.getId()).getStatus());
+        assertEquals(ScheduleShardStatusEnum.RUNNING.getValue(), executionDao.selectById(executionId).getStatus());
+
+        node2.execute(shard2);
+        assertEquals(ScheduleShardStatusEnum.SUCCESS.getValue(), executionDao.selectById(executionId).getStatus());
+        verify(invokerRegistry, times(2)).invoke(any(), eq(0), eq(1));
+    }
+
+    @Test
+    public void completeFromShards() throws Exception {
+        Long executionId = dispatch(2);
+        doThrow(new IllegalStateException("分片执行失败")).when(invokerRegistry).invoke(any(), eq(1), eq(2));
+
+        for (ScheduleJobShardEntity shard : selectShards(executionId)) {
+            ScheduleJobShardEntity claimed = copy(shard);
+            assertTrue((shard.getShardIndex() == 0 ? node1 : node2).claim(claimed));
+            (shard.getShardIndex() == 0 ? node1 : node2).execute(claimed);
+        }
+
+        ScheduleJobExecutionEntity execution = executionDao.selectById(executionId);
+        assertEquals(ScheduleShardStatusEnum.FAIL.getValue(), execution.getStatus());
+        assertEquals(2, execution.getFinished());
+        assertEquals(1, execution.getFailed());
+        assertNotNull(execution.getEndTime());
+
+        // 重复汇总不会重复写入任务日志
+        node1.complete(executionId);
+        node2.sweep();
+        verify(logWriter, times(1)).write(argThat(log -> log.getStatus() == ScheduleStatusEnum.PAUSE.getValue()));
+    }
+
+    @Test
+    public void sweepStuckExecution() {
+        Long executionId = dispatch(2);
+        // 分片已全部结束，汇总前节点宕机
+        jdbcTemplate.update("update schedule_job_shard set status = ? where execution_id = ?",
+                ScheduleShardStatusEnum.SUCCESS.getValue(), executionId);
+        Long runningId = dispatch(1);
+
+        node2.sweep();
+
+        assertEquals(ScheduleShardStatusEnum.SUCCESS.getValue(), executionDao.selectById(executionId).getStatus());
+        assertEquals(2, executionDao.selectById(executionId).getFinished());
+        // 还有未结束分片的执行记录保持执行中
+        assertEquals(ScheduleShardStatusEnum.RUNNING.getValue(), executionDao.selectById(runningId).getStatus());
+        verify(logWriter, times(1)).write(any(ScheduleJobLogEntity.class));
+    }
+
+    private ScheduleShardExecutor newExecutor(String owner, ScheduleJobDao scheduleJobDao) throws Exception {
+        ScheduleShardProperties properties = new ScheduleShardProperties();
+        // 测试时手动领取和汇总，后台任务不在测试期间执行
+        properties.setPollInterval(3600000);
+        properties.setLeaseTime(3600000);
+        Scheduler scheduler = mock(Scheduler.class);
+        when(scheduler.getSchedulerInstanceId()).thenReturn(owner);
+
+        ScheduleShardExecutor executor = new ScheduleShardExecutor(properties, new ScheduleLogProperties(), scheduler,
+                scheduleJobDao, executionDao, shardDao, invokerRegistry, logWriter);
+        executor.init();
+        return executor;
+    }
+
+    private Long dispatch(int shardTotal) {
+        ScheduleJobExecutionEntity execution = new ScheduleJobExecutionEntity();
+        execution.setJobId(1L);
+        execution.setShardTotal(shardTotal);
+        execution.setFinished(0);
+        execution.setFailed(0);
+        execution.setStatus(ScheduleShardStatusEnum.RUNNING.getValue());
+        execution.setStartTime(LocalDateTime.now());
+        executionDao.insert(execution);
+
+        for (int i = 0; i < shardTotal; i++) {
+            ScheduleJobShardEntity shard = new ScheduleJobShardEntity();
+            shard.setExecutionId(execution.getId());
+            shard.setJobId(1L);
+            shard.setShardIndex(i);
+            shard.setShardTotal(shardTotal);
+            shard.setStatus(ScheduleShardStatusEnum.PENDING.getValue());
+            shard.setAttempts(0);
+            shard.setCreateTime(LocalDateTime.now());
+            shardDao.insert(shard);
+        }
+        return execution.getId();
+    }
+
+    private List<ScheduleJobShardEntity> selectShards(Long executionId) {
+        List<ScheduleJobShardEntity> shards = new ArrayList<>(shardDao.selectByMap(Map.of("execution_id", executionId)));
+        shards.sort((a, b) -> a.getShardIndex() - b.getShardIndex());
+        return shards;
+    }
+
+    /**
+     * 每个节点持有自己查询到的分片对象
+     */
+    private static ScheduleJobShardEntity copy(ScheduleJobShardEntity shard) {
+        ScheduleJobShardEntity copy = new ScheduleJobShardEntity();
+        copy.setId(shard.getId());
+        copy.setExecutionId(shard.getExecutionId());
+        copy.setJobId(shard.getJobId());
+        copy.setShardIndex(shard.getShardIndex());
+        copy.setShardTotal(shard.getShardTotal());
+        copy.setStatus(shard.getStatus());
+        copy.setOwner(shard.getOwner());
+        copy.setAttempts(shard.getAttempts());
+        return copy;
+    }
+}
@@ -1,13 +1,16 @@
 package net.maku.storage.config;
 
-import jakarta.annotation.Resource;
 import net.maku.storage.enums.StorageTypeEnum;
+import net.maku.storage.handler.LocalFileRequestHandler;
 import net.maku.storage.properties.LocalStorageProperties;
 import net.maku.storage.properties.StorageProperties;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
 
 /**
  * 本地资源映射配置
@@ -17,19 +20,19 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  */
 @Configuration
 @ConditionalOnProperty(prefix = "storage", value = "enabled")
-public class LocalResourceConfiguration implements WebMvcConfigurer {
-    @Resource
-    private StorageProperties properties;
+public class LocalResourceConfiguration {
+
+    @Bean
+    public SimpleUrlHandlerMapping localResourceHandlerMapping(StorageProperties properties) {
+        SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+        mapping.setOrder(Ordered.HIGHEST_PRECEDENCE);
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // 如果不是本地存储，则返回
-        if (properties.getConfig().getType() != StorageTypeEnum.LOCAL) {
-            return;
+        // 如果不是本地存储，则不映射
+        if (properties.getConfig().getType() == StorageTypeEnum.LOCAL) {
+            LocalStorageProperties local = properties.getLocal();
+            mapping.setUrlMap(Map.of("/" + local.getUrl() + "/**", new LocalFileRequestHandler(local)));
         }
 
-        LocalStorageProperties local = properties.getLocal();
-        registry.addResourceHandler("/" + local.getUrl() + "/**")
-                .addResourceLocations("file:" + local.getPath() + "/");
+        return mapping;
     }
-}
\ No newline at end of file
+}
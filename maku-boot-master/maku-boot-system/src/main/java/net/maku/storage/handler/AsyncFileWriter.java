@@ -0,0 +1,140 @@
+package net.maku.storage.handler;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 基于 Servlet 异步非阻塞输出的文件写出，客户端接收慢时不占用 Tomcat 工作线程
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class AsyncFileWriter implements WriteListener {
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream outputStream;
+    private final FileChannel channel;
+    private final Iterator<Segment> segments;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * 当前分段未写出的头部、文件位置和剩余字节数
+     */
+    private byte[] header;
+    private long position;
+    private long remaining;
+
+    private AsyncFileWriter(AsyncContext asyncContext, FileChannel channel, List<Segment> segments) throws IOException {
+        this.asyncContext = asyncContext;
+        this.outputStream = asyncContext.getResponse().getOutputStream();
+        this.channel = channel;
+        this.segments = segments.iterator();
+    }
+
+    /**
+     * 开启异步请求，按顺序写出各个分段
+     */
+    public static void start(HttpServletRequest request, HttpServletResponse response, Path file, List<Segment> segments) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            AsyncContext asyncContext = request.startAsync(request, response);
+            // 大文件下载时间不可预估，由写超时和客户端断开来结束请求
+            asyncContext.setTimeout(0);
+
+            AsyncFileWriter writer = new AsyncFileWriter(asyncContext, channel, segments);
+            writer.outputStream.setWriteListener(writer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (outputStream.isReady()) {
+            if (!fill()) {
+                complete();
+                return;
+            }
+            outputStream.write(buffer.array(), 0, buffer.limit());
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.debug("文件下载中断：{}", t.getMessage());
+        complete();
+    }
+
+    /**
+     * 从文件读取下一批数据到缓冲区
+     *
+     * @return 没有数据需要写出时，返回false
+     */
+    private boolean fill() throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (header != null) {
+                if (header.length > buffer.remaining()) {
+                    break;
+                }
+                buffer.put(header);
+                header = null;
+            } else if (remaining > 0) {
+                int length = (int) Math.min(buffer.remaining(), remaining);
+                buffer.limit(buffer.position() + length);
+                int n = channel.read(buffer, position);
+                buffer.limit(buffer.capacity());
+                if (n < 0) {
+                    throw new EOFException("文件已被修改");
+                }
+                position += n;
+                remaining -= n;
+            } else if (segments.hasNext()) {
+                Segment segment = segments.next();
+                header = segment.header();
+                position = segment.position();
+                remaining = segment.count();
+            } else {
+                break;
+            }
+        }
+        buffer.flip();
+
+        return buffer.hasRemaining();
+    }
+
+    private void complete() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("关闭文件失败：{}", e.getMessage());
+        }
+        asyncContext.complete();
+    }
+
+    /**
+     * 写出的分段，先写出头部，再写出文件的 [position, position + count) 区间
+     *
+     * @param header   分段头部，如 multipart/byteranges 的边界，可以为空数组
+     * @param position 文件起始位置
+     * @param count    字节数
+     */
+    public record Segment(byte[] header, long position, long count) {
+    }
+}
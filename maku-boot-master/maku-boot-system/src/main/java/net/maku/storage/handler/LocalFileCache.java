@@ -0,0 +1,54 @@
+package net.maku.storage.handler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地小文件内存缓存，按总字节数淘汰最久未访问的文件
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class LocalFileCache {
+    /**
+     * 缓存总大小
+     */
+    private final long maxSize;
+    /**
+     * 单个文件最大大小
+     */
+    private final long maxFileSize;
+    /**
+     * 按访问顺序排列，最久未访问的在最前面
+     */
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public LocalFileCache(long maxSize, long maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = Math.min(maxFileSize, maxSize);
+    }
+
+    /**
+     * 文件大小是否可以缓存
+     */
+    public boolean isCacheable(long length) {
+        return maxSize > 0 && length <= maxFileSize;
+    }
+
+    public synchronized byte[] get(String key) {
+        return cache.get(key);
+    }
+
+    public synchronized void put(String key, byte[] data) {
+        byte[] old = cache.put(key, data);
+        size += data.length - (old == null ? 0 : old.length);
+
+        Iterator<Map.Entry<String, byte[]>> iterator = cache.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package net.maku.storage.handler;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.maku.storage.properties.LocalStorageProperties;
+import net.maku.storage.service.LocalStorageService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 本地存储文件下载，支持 ETag、Last-Modified 条件请求和 Range 分段下载
+ * <p>
+ * 大文件优先使用 Tomcat 的 sendfile，由内核直接发送文件，其次使用 Servlet 异步非阻塞输出，都不会长时间占用工作线程；
+ * 小文件放入内存缓存，减少磁盘读取
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class LocalFileRequestHandler implements HttpRequestHandler {
+    private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    /**
+     * 小于该大小的文件，直接同步写出
+     */
+    private final static long ASYNC_MIN_SIZE = 48 * 1024;
+
+    private final Path root;
+    private final Path multipartRoot;
+    private final String cacheControl;
+    private final LocalFileCache cache;
+
+    public LocalFileRequestHandler(LocalStorageProperties properties) {
+        this.root = Paths.get(properties.getPath()).toAbsolutePath().normalize();
+        this.multipartRoot = root.resolve(LocalStorageService.MULTIPART_DIR);
+        this.cacheControl = properties.getMaxAge() > 0 ? "max-age=" + properties.getMaxAge() : "no-cache";
+        this.cache = new LocalFileCache(properties.getCacheSize(), properties.getCacheFileSize());
+    }
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean head = HttpMethod.HEAD.matches(request.getMethod());
+        if (!head && !HttpMethod.GET.matches(request.getMethod())) {
+            response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        Path file = getFile(request);
+        if (file == null || !Files.isRegularFile(file) || !Files.isReadable(file)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        // If-None-Match、If-Modified-Since 等条件请求，未修改时返回 304
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return;
+        }
+
+        String contentType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        List<HttpRange> ranges;
+        try {
+            ranges = getRanges(request, eTag, lastModified, length);
+        } catch (IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        List<AsyncFileWriter.Segment> segments = new ArrayList<>();
+        if (ranges.isEmpty()) {
+            response.setContentType(contentType);
+            segments.add(new AsyncFileWriter.Segment(new byte[0], 0, length));
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(length);
+            long end = ranges.get(0).getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            segments.add(new AsyncFileWriter.Segment(new byte[0], start, end - start + 1));
+        } else {
+            // 多个区间，multipart/byteranges
+            String boundary = new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+            for (HttpRange range : ranges) {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                String header = "\r\n--" + boundary + "\r\n" + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + length + "\r\n\r\n";
+                segments.add(new AsyncFileWriter.Segment(header.getBytes(StandardCharsets.US_ASCII), start, end - start + 1));
+            }
+            segments.add(new AsyncFileWriter.Segment(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII), 0, 0));
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+        }
+
+        long contentLength = segments.stream().mapToLong(segment -> segment.header().length + segment.count()).sum();
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return;
+        }
+
+        // 小文件，从内存缓存写出
+        if (cache.isCacheable(length)) {
+            String key = file + eTag;
+            byte[] data = cache.get(key);
+            if (data == null) {
+                data = Files.readAllBytes(file);
+                if (data.length != length) {
+                    response.sendError(HttpServletResponse.SC_CONFLICT);
+                    return;
+                }
+                cache.put(key, data);
+            }
+
+            OutputStream outputStream = response.getOutputStream();
+            for (AsyncFileWriter.Segment segment : segments) {
+                outputStream.write(segment.header());
+                outputStream.write(data, (int) segment.position(), (int) segment.count());
+            }
+            return;
+        }
+
+        // 单个区间，交给 Tomcat sendfile 发送
+        if (segments.size() == 1 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            AsyncFileWriter.Segment segment = segments.get(0);
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, segment.position());
+            request.setAttribute(SENDFILE_END, segment.position() + segment.count());
+            return;
+        }
+
+        if (contentLength >= ASYNC_MIN_SIZE && request.isAsyncSupported()) {
+            AsyncFileWriter.start(request, response, file, segments);
+            return;
+        }
+
+        // 同步写出，通过 FileChannel.transferTo 传输
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream outputStream = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            for (AsyncFileWriter.Segment segment : segments) {
+                outputStream.write(segment.header());
+                long position = segment.position();
+                long end = position + segment.count();
+                while (position < end) {
+                    long n = channel.transferTo(position, end - position, target);
+                    if (n <= 0) {
+                        break;
+                    }
+                    position += n;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取请求的文件，不允许访问存储目录以外的文件和分片上传的临时文件
+     */
+    private Path getFile(HttpServletRequest request) {
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        if (!StringUtils.hasText(path)) {
+            return null;
+        }
+
+        Path file = root.resolve(UriUtils.decode(path, StandardCharsets.UTF_8)).normalize();
+        if (!file.startsWith(root) || file.startsWith(multipartRoot)) {
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * 获取请求的区间，If-Range 与当前文件不匹配时，返回整个文件
+     */
+    private List<HttpRange> getRanges(HttpServletRequest request, String eTag, long lastModified, long length) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(eTag)) {
+                    return Collections.emptyList();
+                }
+            } else if (getDateHeader(request, HttpHeaders.IF_RANGE) / 1000 != lastModified / 1000) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<HttpRange> ranges = HttpRange.parseRanges(range);
+        // 区间起始位置超过文件大小时无法满足；区间总大小超过文件大小，视为恶意请求
+        long total = 0;
+        for (HttpRange httpRange : ranges) {
+            long start = httpRange.getRangeStart(length);
+            long end = httpRange.getRangeEnd(length);
+            if (start >= length || end < start) {
+                throw new IllegalArgumentException("Range 区间超过文件大小");
+            }
+            total += end - start + 1;
+        }
+        if (total > length && ranges.size() > 1) {
+            throw new IllegalArgumentException("Range 区间总大小超过文件大小");
+        }
+
+        return ranges;
+    }
+
+    private long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
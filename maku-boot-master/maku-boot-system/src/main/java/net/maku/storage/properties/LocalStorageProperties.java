@@ -18,4 +18,16 @@ public class LocalStorageProperties {
      * 资源起始路径
      */
     private String url = "upload";
+    /**
+     * 浏览器缓存时间，单位秒，0表示每次都需要通过 ETag 校验
+     */
+    private long maxAge = 0;
+    /**
+     * 小文件内存缓存的总大小，单位字节，0表示不缓存
+     */
+    private long cacheSize = 32 * 1024 * 1024;
+    /**
+     * 可以放入内存缓存的单个文件最大大小，单位字节
+     */
+    private long cacheFileSize = 256 * 1024;
 }
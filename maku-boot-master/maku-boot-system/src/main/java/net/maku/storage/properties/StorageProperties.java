@@ -5,6 +5,8 @@ import net.maku.storage.enums.StorageTypeEnum;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
+import java.util.List;
+
 /**
  * 存储配置项
  *
@@ -46,6 +48,10 @@ public class StorageProperties {
      * 腾讯云配置项
      */
     private TencentStorageProperties tencent;
+    /**
+     * 缩略图配置项
+     */
+    private ThumbnailConfig thumbnail = new ThumbnailConfig();
 
     @Data
     public static class StorageConfig {
@@ -61,6 +67,38 @@ public class StorageProperties {
          * 存储类型
          */
         private StorageTypeEnum type;
+        /**
+         * 是否开启内容寻址去重，相同内容的文件只存储一份
+         */
+        private boolean dedup;
+        /**
+         * 分片上传的最大文件大小，单位字节，默认10GB
+         */
+        private long maxFileSize = 10L * 1024 * 1024 * 1024;
+    }
+
+    @Data
+    public static class ThumbnailConfig {
+        /**
+         * 是否在上传图片后，预先生成缩略图
+         */
+        private boolean enabled = true;
+        /**
+         * 缩略图尺寸，按最长边等比缩放，只能访问配置的尺寸
+         */
+        private List<Integer> sizes = List.of(40, 100, 200);
+        /**
+         * 缩略图格式，jpg、png
+         */
+        private String format = "jpg";
+        /**
+         * 生成缩略图的线程数
+         */
+        private int threads = 2;
+        /**
+         * 等待生成的最大任务数，超过后丢弃预生成任务，访问时再生成
+         */
+        private int queueSize = 200;
     }
 
     @Bean
@@ -2,11 +2,16 @@ package net.maku.storage.service;
 
 import com.aliyun.oss.OSS;
 import com.aliyun.oss.OSSClientBuilder;
+import com.aliyun.oss.model.*;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
 
 /**
  * 阿里云存储
@@ -15,22 +20,35 @@ import java.io.InputStream;
  * <a href="https://maku.net">MAKU</a>
  */
 public class AliyunStorageService extends StorageService {
-    
+
     public AliyunStorageService(StorageProperties properties) {
         this.properties = properties;
     }
 
     @Override
     public String upload(byte[] data, String path) {
-        return upload(new ByteArrayInputStream(data), path);
+        return upload(new ByteArrayInputStream(data), data.length, path);
     }
 
     @Override
     public String upload(InputStream inputStream, String path) {
-        OSS client = new OSSClientBuilder().build(properties.getAliyun().getEndPoint(),
-                properties.getAliyun().getAccessKeyId(), properties.getAliyun().getAccessKeySecret());
+        return upload(inputStream, -1, path);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
+        OSS client = createClient();
         try {
-            client.putObject(properties.getAliyun().getBucketName(), path, inputStream);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(getContentType(path));
+
+            // 小文件直接上传，大文件或未知大小的文件，分片上传
+            if (size >= 0 && size <= PART_SIZE) {
+                metadata.setContentLength(size);
+                client.putObject(properties.getAliyun().getBucketName(), path, inputStream, metadata);
+            } else {
+                multipartUpload(client, inputStream, path, metadata);
+            }
         } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
         } finally {
@@ -39,7 +57,115 @@ public class AliyunStorageService extends StorageService {
             }
         }
 
-        return properties.getConfig().getDomain() + "/" + path;
+        return getUrl(path);
+    }
+
+    @Override
+    public void delete(String path) {
+        OSS client = createClient();
+        try {
+            client.deleteObject(properties.getAliyun().getBucketName(), path);
+        } catch (Exception e) {
+            throw new ServerException("删除文件失败：", e);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        OSS client = createClient();
+        try {
+            InputStream inputStream = client.getObject(properties.getAliyun().getBucketName(), path).getObjectContent();
+            return onClose(inputStream, client::shutdown);
+        } catch (Exception e) {
+            client.shutdown();
+            throw new ServerException("下载文件失败：", e);
+        }
+    }
+
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        OSS client = createClient();
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(getContentType(path));
+
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(properties.getAliyun().getBucketName(), path, metadata);
+            return client.initiateMultipartUpload(request).getUploadId();
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        OSS client = createClient();
+        try {
+            UploadPartRequest request = new UploadPartRequest(properties.getAliyun().getBucketName(), path, uploadId,
+                    partNumber, inputStream, size);
+            return client.uploadPart(request).getETag();
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        OSS client = createClient();
+        try {
+            List<PartETag> parts = new ArrayList<>();
+            partETags.forEach((partNumber, eTag) -> parts.add(new PartETag(partNumber, eTag)));
+
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(properties.getAliyun().getBucketName(), path, uploadId, parts));
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        } finally {
+            client.shutdown();
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        OSS client = createClient();
+        try {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(properties.getAliyun().getBucketName(), path, uploadId));
+        } catch (Exception e) {
+            throw new ServerException("取消分片上传失败：", e);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private OSS createClient() {
+        return new OSSClientBuilder().build(properties.getAliyun().getEndPoint(),
+                properties.getAliyun().getAccessKeyId(), properties.getAliyun().getAccessKeySecret());
+    }
+
+    private void multipartUpload(OSS client, InputStream inputStream, String path, ObjectMetadata metadata) throws IOException {
+        String bucketName = properties.getAliyun().getBucketName();
+        String uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, path, metadata)).getUploadId();
+        try {
+            List<PartETag> partETags = new ArrayList<>();
+            byte[] buffer = new byte[PART_SIZE];
+            int len;
+            while ((len = inputStream.readNBytes(buffer, 0, PART_SIZE)) > 0) {
+                UploadPartRequest request = new UploadPartRequest(bucketName, path, uploadId,
+                        partETags.size() + 1, new ByteArrayInputStream(buffer, 0, len), len);
+                partETags.add(client.uploadPart(request).getPartETag());
+            }
+
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, path, uploadId, partETags));
+        } catch (Exception e) {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, path, uploadId));
+            throw e;
+        }
     }
 
 }
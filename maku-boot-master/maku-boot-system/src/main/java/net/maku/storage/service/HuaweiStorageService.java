@@ -1,11 +1,16 @@
 package net.maku.storage.service;
 
 import com.obs.services.ObsClient;
+import com.obs.services.model.*;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
 
 /**
  * 华为云存储
@@ -21,21 +26,142 @@ public class HuaweiStorageService extends StorageService {
 
     @Override
     public String upload(byte[] data, String path) {
-        return upload(new ByteArrayInputStream(data), path);
+        return upload(new ByteArrayInputStream(data), data.length, path);
     }
 
     @Override
     public String upload(InputStream inputStream, String path) {
-        ObsClient client = new ObsClient(properties.getHuawei().getAccessKey(),
-                properties.getHuawei().getSecretKey(), properties.getHuawei().getEndPoint());
-        try {
-            client.putObject(properties.getHuawei().getBucketName(), path, inputStream);
-            client.close();
+        return upload(inputStream, -1, path);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
+        try (ObsClient client = createClient()) {
+            // 小文件直接上传，大文件或未知大小的文件，分片上传
+            if (size >= 0 && size <= PART_SIZE) {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentType(getContentType(path));
+                metadata.setContentLength(size);
+                client.putObject(properties.getHuawei().getBucketName(), path, inputStream, metadata);
+            } else {
+                multipartUpload(client, inputStream, path);
+            }
         } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
         }
 
-        return properties.getConfig().getDomain() + "/" + path;
+        return getUrl(path);
+    }
+
+    @Override
+    public void delete(String path) {
+        try (ObsClient client = createClient()) {
+            client.deleteObject(properties.getHuawei().getBucketName(), path);
+        } catch (Exception e) {
+            throw new ServerException("删除文件失败：", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        ObsClient client = createClient();
+        try {
+            InputStream inputStream = client.getObject(properties.getHuawei().getBucketName(), path).getObjectContent();
+            return onClose(inputStream, () -> close(client));
+        } catch (Exception e) {
+            close(client);
+            throw new ServerException("下载文件失败：", e);
+        }
+    }
+
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        try (ObsClient client = createClient()) {
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(properties.getHuawei().getBucketName(), path);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(getContentType(path));
+            request.setMetadata(metadata);
+            return client.initiateMultipartUpload(request).getUploadId();
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        try (ObsClient client = createClient()) {
+            UploadPartRequest request = new UploadPartRequest(properties.getHuawei().getBucketName(), path);
+            request.setUploadId(uploadId);
+            request.setPartNumber(partNumber);
+            request.setInput(inputStream);
+            request.setPartSize(size);
+            return client.uploadPart(request).getEtag();
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        try (ObsClient client = createClient()) {
+            List<PartEtag> parts = new ArrayList<>();
+            partETags.forEach((partNumber, eTag) -> parts.add(new PartEtag(eTag, partNumber)));
+
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(properties.getHuawei().getBucketName(), path, uploadId, parts));
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        try (ObsClient client = createClient()) {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(properties.getHuawei().getBucketName(), path, uploadId));
+        } catch (Exception e) {
+            throw new ServerException("取消分片上传失败：", e);
+        }
+    }
+
+    private void close(ObsClient client) {
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private ObsClient createClient() {
+        return new ObsClient(properties.getHuawei().getAccessKey(),
+                properties.getHuawei().getSecretKey(), properties.getHuawei().getEndPoint());
+    }
+
+    private void multipartUpload(ObsClient client, InputStream inputStream, String path) throws IOException {
+        String bucketName = properties.getHuawei().getBucketName();
+        InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(bucketName, path);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(getContentType(path));
+        initiateRequest.setMetadata(metadata);
+        String uploadId = client.initiateMultipartUpload(initiateRequest).getUploadId();
+        try {
+            List<PartEtag> partEtags = new ArrayList<>();
+            byte[] buffer = new byte[PART_SIZE];
+            int len;
+            while ((len = inputStream.readNBytes(buffer, 0, PART_SIZE)) > 0) {
+                int partNumber = partEtags.size() + 1;
+                UploadPartRequest request = new UploadPartRequest(bucketName, path);
+                request.setUploadId(uploadId);
+                request.setPartNumber(partNumber);
+                request.setInput(new ByteArrayInputStream(buffer, 0, len));
+                request.setPartSize((long) len);
+                partEtags.add(new PartEtag(client.uploadPart(request).getEtag(), partNumber));
+            }
+
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, path, uploadId, partEtags));
+        } catch (Exception e) {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, path, uploadId));
+            throw e;
+        }
     }
 
 }
@@ -1,14 +1,24 @@
 package net.maku.storage.service;
 
+import cn.hutool.core.util.IdUtil;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
-import org.springframework.util.FileCopyUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedMap;
 
 /**
  * 本地存储
@@ -17,34 +27,182 @@ import java.nio.file.Files;
  * <a href="https://maku.net">MAKU</a>
  */
 public class LocalStorageService extends StorageService {
+    /**
+     * 分片上传的临时目录
+     */
+    public final static String MULTIPART_DIR = ".multipart";
 
     public LocalStorageService(StorageProperties properties) {
         this.properties = properties;
     }
 
+    @Override
+    public String getUrl(String path) {
+        return properties.getConfig().getDomain() + "/" + properties.getLocal().getUrl() + "/" + path;
+    }
+
     @Override
     public String upload(byte[] data, String path) {
-        return upload(new ByteArrayInputStream(data), path);
+        return upload(new ByteArrayInputStream(data), data.length, path);
     }
 
 
     @Override
     public String upload(InputStream inputStream, String path) {
+        return upload(inputStream, -1, path);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
 
         try {
-            File file = new File(properties.getLocal().getPath() + File.separator + path);
+            File file = getFile(path);
 
-            // 没有目录，则自动创建目录
-            File parent = file.getParentFile();
-            if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
-                throw new IOException("目录 '" + parent + "' 创建失败");
+            // 文件流（如 multipart 临时文件），通过 FileChannel 零拷贝传输，不经过堆内存
+            if (inputStream instanceof FileInputStream fileInputStream) {
+                transfer(fileInputStream.getChannel(), file);
+            } else {
+                Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
-
-            FileCopyUtils.copy(inputStream, Files.newOutputStream(file.toPath()));
         } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
         }
 
-        return properties.getConfig().getDomain() + "/" + properties.getLocal().getUrl() + "/" + path;
+        return getUrl(path);
+    }
+
+    @Override
+    public void delete(String path) {
+        try {
+            Files.deleteIfExists(getLocalFile(path).toPath());
+        } catch (IOException e) {
+            throw new ServerException("删除文件失败：", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        try {
+            return Files.newInputStream(getLocalFile(path).toPath());
+        } catch (IOException e) {
+            throw new ServerException("下载文件失败：", e);
+        }
+    }
+
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        String uploadId = IdUtil.fastSimpleUUID();
+        try {
+            // 预先创建临时文件并分配文件大小，分片不论先后顺序都可以按位置直接写入，完成时再移动到目标路径
+            File file = getFile(MULTIPART_DIR + "/" + uploadId);
+            if (!file.createNewFile()) {
+                throw new IOException("文件 '" + file + "' 已存在");
+            }
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+            }
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        }
+
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        File file = getMultipartFile(uploadId);
+        // 多个分片并发写入同一个文件的不同位置，FileChannel 的按位置写入是线程安全的
+        try (FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = inputStream instanceof FileInputStream fileInputStream
+                    ? fileInputStream.getChannel() : Channels.newChannel(inputStream);
+            long transferred = 0;
+            while (transferred < size) {
+                long n = target.transferFrom(source, offset + transferred, size - transferred);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+            if (transferred != size) {
+                throw new IOException("分片 " + partNumber + " 数据不完整");
+            }
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        }
+
+        // 本地存储没有ETag，返回分片大小
+        return String.valueOf(size);
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        try {
+            File source = getMultipartFile(uploadId);
+            Files.move(source.toPath(), getFile(path).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        try {
+            Files.deleteIfExists(getMultipartFile(uploadId).toPath());
+        } catch (IOException e) {
+            throw new ServerException("取消分片上传失败：", e);
+        }
+    }
+
+    /**
+     * 根据文件路径，获取本地文件，没有目录则自动创建
+     */
+    private File getFile(String path) throws IOException {
+        File file = getLocalFile(path);
+
+        // 没有目录，则自动创建目录
+        File parent = file.getParentFile();
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("目录 '" + parent + "' 创建失败");
+        }
+
+        return file;
+    }
+
+    /**
+     * 根据文件路径，获取本地文件，文件必须在存储目录中，防止通过 .. 等路径访问其他文件
+     */
+    private File getLocalFile(String path) {
+        Path root = Paths.get(properties.getLocal().getPath()).toAbsolutePath().normalize();
+        Path file = root.resolve(path).normalize();
+        if (!StorageService.isSafePath(path) || !file.startsWith(root)) {
+            throw new ServerException("文件路径不合法：" + path);
+        }
+
+        return file.toFile();
+    }
+
+    private void transfer(FileChannel source, File file) throws IOException {
+        try (FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = source.position();
+            long count = source.size() - position;
+            long transferred = 0;
+            while (transferred < count) {
+                long n = target.transferFrom(source, transferred, count - transferred);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+        }
+    }
+
+    /**
+     * 根据分片上传ID，获取分片上传的临时文件
+     */
+    private File getMultipartFile(String uploadId) {
+        return new File(properties.getLocal().getPath() + File.separator + MULTIPART_DIR + File.separator + uploadId);
     }
 }
@@ -1,17 +1,15 @@
 package net.maku.storage.service;
 
-import io.minio.BucketExistsArgs;
-import io.minio.MakeBucketArgs;
-import io.minio.MinioClient;
-import io.minio.PutObjectArgs;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.*;
+import io.minio.messages.Part;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
-import org.springframework.http.MediaType;
-import org.springframework.http.MediaTypeFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.Optional;
+import java.util.SortedMap;
 
 /**
  * Minio存储
@@ -21,21 +19,35 @@ import java.util.Optional;
  */
 public class MinioStorageService extends StorageService {
     private final MinioClient minioClient;
+    private final MultipartMinioClient multipartClient;
 
     public MinioStorageService(StorageProperties properties) {
         this.properties = properties;
 
         minioClient = MinioClient.builder().endpoint(properties.getMinio().getEndPoint())
                 .credentials(properties.getMinio().getAccessKey(), properties.getMinio().getSecretKey()).build();
+
+        multipartClient = new MultipartMinioClient(MinioAsyncClient.builder().endpoint(properties.getMinio().getEndPoint())
+                .credentials(properties.getMinio().getAccessKey(), properties.getMinio().getSecretKey()).build());
+    }
+
+    @Override
+    public String getUrl(String path) {
+        return properties.getMinio().getEndPoint() + "/" + properties.getMinio().getBucketName() + "/" + path;
     }
 
     @Override
     public String upload(byte[] data, String path) {
-        return upload(new ByteArrayInputStream(data), path);
+        return upload(new ByteArrayInputStream(data), data.length, path);
     }
 
     @Override
     public String upload(InputStream inputStream, String path) {
+        return upload(inputStream, -1, path);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
         try {
             //如果BucketName不存在，则创建
             boolean found = minioClient.bucketExists(BucketExistsArgs.builder().bucket(properties.getMinio().getBucketName()).build());
@@ -43,18 +55,13 @@ public class MinioStorageService extends StorageService {
                 minioClient.makeBucket(MakeBucketArgs.builder().bucket(properties.getMinio().getBucketName()).build());
             }
 
-            String contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-            Optional<MediaType> mediaType = MediaTypeFactory.getMediaType(path);
-            if (mediaType.isPresent()) {
-                contentType = mediaType.get().toString();
-            }
-
+            // 超过分片大小，Minio会自动分片上传，每次只缓冲一个分片
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(properties.getMinio().getBucketName())
-                            .contentType(contentType)
+                            .contentType(getContentType(path))
                             .object(path)
-                            .stream(inputStream, inputStream.available(), -1)
+                            .stream(inputStream, size, PART_SIZE)
                             .build()
             );
 
@@ -62,6 +69,109 @@ public class MinioStorageService extends StorageService {
             throw new ServerException("上传文件失败：", e);
         }
 
-        return properties.getMinio().getEndPoint() + "/" + properties.getMinio().getBucketName() + "/" + path;
+        return getUrl(path);
+    }
+
+    @Override
+    public void delete(String path) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(properties.getMinio().getBucketName())
+                    .object(path)
+                    .build());
+        } catch (Exception e) {
+            throw new ServerException("删除文件失败：", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(properties.getMinio().getBucketName())
+                    .object(path)
+                    .build());
+        } catch (Exception e) {
+            throw new ServerException("下载文件失败：", e);
+        }
+    }
+
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        try {
+            return multipartClient.initMultipartUpload(properties.getMinio().getBucketName(), path, getContentType(path));
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        try {
+            // Minio 分片数据需要支持重试，按分片大小读取到内存
+            if (size <= 0 || size > MAX_PART_SIZE) {
+                throw new ServerException("分片大小不能超过 " + MAX_PART_SIZE + " 字节");
+            }
+            byte[] data = inputStream.readNBytes((int) size);
+            if (data.length != size) {
+                throw new ServerException("分片 " + partNumber + " 数据不完整");
+            }
+
+            return multipartClient.uploadPart(properties.getMinio().getBucketName(), path, uploadId, partNumber, data);
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        try {
+            Part[] parts = partETags.entrySet().stream()
+                    .map(entry -> new Part(entry.getKey(), entry.getValue())).toArray(Part[]::new);
+
+            multipartClient.completeMultipartUpload(properties.getMinio().getBucketName(), path, uploadId, parts);
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        try {
+            multipartClient.abortMultipartUpload(properties.getMinio().getBucketName(), path, uploadId);
+        } catch (Exception e) {
+            throw new ServerException("取消分片上传失败：", e);
+        }
+    }
+
+    /**
+     * Minio 分片上传客户端，开放 S3 原生的分片上传接口
+     */
+    private static class MultipartMinioClient extends MinioAsyncClient {
+
+        MultipartMinioClient(MinioAsyncClient client) {
+            super(client);
+        }
+
+        String initMultipartUpload(String bucket, String object, String contentType) throws Exception {
+            Multimap<String, String> headers = HashMultimap.create();
+            headers.put("Content-Type", contentType);
+
+            return createMultipartUploadAsync(bucket, null, object, headers, null).get().result().uploadId();
+        }
+
+        String uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data) throws Exception {
+            return uploadPartAsync(bucket, null, object, data, data.length, uploadId, partNumber, null, null).get().etag();
+        }
+
+        void completeMultipartUpload(String bucket, String object, String uploadId, Part[] parts) throws Exception {
+            completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null).get();
+        }
+
+        void abortMultipartUpload(String bucket, String object, String uploadId) throws Exception {
+            abortMultipartUploadAsync(bucket, null, object, uploadId, null, null).get();
+        }
     }
 }
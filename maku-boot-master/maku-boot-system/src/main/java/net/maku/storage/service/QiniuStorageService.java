@@ -1,16 +1,19 @@
 package net.maku.storage.service;
 
+import com.qiniu.common.QiniuException;
+import com.qiniu.http.Client;
 import com.qiniu.http.Response;
-import com.qiniu.storage.Configuration;
-import com.qiniu.storage.Region;
-import com.qiniu.storage.UploadManager;
+import com.qiniu.storage.*;
 import com.qiniu.util.Auth;
-import com.qiniu.util.IOUtils;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
+import org.springframework.http.MediaType;
+import org.springframework.web.util.UriUtils;
 
-import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 /**
  * 七牛云存储
@@ -19,27 +22,39 @@ import java.io.InputStream;
  * <a href="https://maku.net">MAKU</a>
  */
 public class QiniuStorageService extends StorageService {
+    /**
+     * 上传域名默认缓存时间（秒）
+     */
+    private final static long UP_HOST_TTL = 86400;
+
+    private final Configuration configuration;
     private final UploadManager uploadManager;
+    private final Client client;
+    /**
+     * 分片上传使用的上传域名
+     */
+    private volatile String upHost;
+    private volatile long upHostExpireTime;
 
     public QiniuStorageService(StorageProperties properties) {
         this.properties = properties;
 
-        uploadManager = new UploadManager(new Configuration(Region.autoRegion()));
-
+        configuration = new Configuration(Region.autoRegion());
+        uploadManager = new UploadManager(configuration);
+        client = new Client(configuration);
     }
 
     @Override
     public String upload(byte[] data, String path) {
         try {
-            String token = Auth.create(properties.getQiniu().getAccessKey(), properties.getQiniu().getSecretKey()).
-                    uploadToken(properties.getQiniu().getBucketName());
+            String token = getToken();
 
             Response res = uploadManager.put(data, path, token);
             if (!res.isOK()) {
                 throw new ServerException(res.toString());
             }
 
-            return properties.getConfig().getDomain() + "/" + path;
+            return getUrl(path);
         } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
         }
@@ -47,12 +62,155 @@ public class QiniuStorageService extends StorageService {
 
     @Override
     public String upload(InputStream inputStream, String path) {
+        return upload(inputStream, -1, path);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
         try {
-            byte[] data = IOUtils.toByteArray(inputStream);
-            return this.upload(data, path);
-        } catch (IOException e) {
+            String token = getToken();
+
+            // 大文件或未知大小的文件，七牛会按块分片上传，每次只缓冲一个分块
+            Response res;
+            if (size >= 0) {
+                res = uploadManager.put(inputStream, size, path, token, null, getContentType(path), false);
+            } else {
+                res = uploadManager.put(inputStream, path, token, null, getContentType(path));
+            }
+            if (!res.isOK()) {
+                throw new ServerException(res.toString());
+            }
+
+            return getUrl(path);
+        } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
         }
     }
 
+    @Override
+    public void delete(String path) {
+        try {
+            Auth auth = Auth.create(properties.getQiniu().getAccessKey(), properties.getQiniu().getSecretKey());
+            new BucketManager(auth, configuration).delete(properties.getQiniu().getBucketName(), path);
+        } catch (Exception e) {
+            throw new ServerException("删除文件失败：", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        try {
+            // 通过访问域名下载，私有空间需要带上签名
+            Auth auth = Auth.create(properties.getQiniu().getAccessKey(), properties.getQiniu().getSecretKey());
+            String url = getUrl(UriUtils.encodePath(path, StandardCharsets.UTF_8));
+            return URI.create(auth.privateDownloadUrl(url)).toURL().openStream();
+        } catch (Exception e) {
+            throw new ServerException("下载文件失败：", e);
+        }
+    }
+
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        try {
+            String token = getToken();
+            ApiUploadV2InitUpload.Request request = new ApiUploadV2InitUpload.Request(getUpHost(token), token)
+                    .setKey(path);
+            ApiUploadV2InitUpload.Response response = new ApiUploadV2InitUpload(client).request(request);
+            if (!response.isOK()) {
+                throw new ServerException(response.getResponse().toString());
+            }
+
+            return response.getUploadId();
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        try {
+            String token = getToken();
+            ApiUploadV2UploadPart.Request request = new ApiUploadV2UploadPart.Request(getUpHost(token), token, uploadId, partNumber)
+                    .setKey(path)
+                    .setUploadData(inputStream, MediaType.APPLICATION_OCTET_STREAM_VALUE, size);
+            ApiUploadV2UploadPart.Response response = new ApiUploadV2UploadPart(client).request(request);
+            if (!response.isOK()) {
+                throw new ServerException(response.getResponse().toString());
+            }
+
+            return response.getEtag();
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        try {
+            List<Map<String, Object>> parts = new ArrayList<>();
+            partETags.forEach((partNumber, eTag) -> {
+                Map<String, Object> part = new HashMap<>();
+                part.put(ApiUploadV2CompleteUpload.Request.PART_NUMBER, partNumber);
+                part.put(ApiUploadV2CompleteUpload.Request.PART_ETG, eTag);
+                parts.add(part);
+            });
+
+            String token = getToken();
+            ApiUploadV2CompleteUpload.Request request = new ApiUploadV2CompleteUpload.Request(getUpHost(token), token, uploadId, parts)
+                    .setKey(path)
+                    .setFileMimeType(getContentType(path));
+            ApiUploadV2CompleteUpload.Response response = new ApiUploadV2CompleteUpload(client).request(request);
+            if (!response.isOK()) {
+                throw new ServerException(response.getResponse().toString());
+            }
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        try {
+            String token = getToken();
+            ApiUploadV2AbortUpload.Request request = new ApiUploadV2AbortUpload.Request(getUpHost(token), token, uploadId)
+                    .setKey(path);
+            new ApiUploadV2AbortUpload(client).request(request);
+        } catch (Exception e) {
+            throw new ServerException("取消分片上传失败：", e);
+        }
+    }
+
+    /**
+     * 通过七牛的区域查询接口获取上传域名，按接口返回的有效期缓存
+     */
+    private String getUpHost(String token) throws QiniuException {
+        String host = upHost;
+        if (host != null && System.currentTimeMillis() < upHostExpireTime) {
+            return host;
+        }
+
+        ApiQueryRegion.Response response = new ApiQueryRegion(client).request(new ApiQueryRegion.Request(null, token));
+        List<String> hosts = response.getDefaultRegionUpHosts();
+        if (hosts == null || hosts.isEmpty()) {
+            throw new ServerException("获取七牛上传域名失败");
+        }
+
+        host = hosts.get(0);
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = (configuration.useHttpsDomains ? "https://" : "http://") + host;
+        }
+        Long ttl = response.getDefaultRegionTTL();
+        upHostExpireTime = System.currentTimeMillis() + (ttl == null || ttl <= 0 ? UP_HOST_TTL : ttl) * 1000;
+        upHost = host;
+
+        return host;
+    }
+
+    private String getToken() {
+        return Auth.create(properties.getQiniu().getAccessKey(), properties.getQiniu().getSecretKey()).
+                uploadToken(properties.getQiniu().getBucketName());
+    }
+
 }
@@ -3,10 +3,15 @@ package net.maku.storage.service;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.io.file.FileNameUtil;
 import net.maku.storage.properties.StorageProperties;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.util.StringUtils;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.SortedMap;
 
 /**
  * 存储服务
@@ -15,6 +20,15 @@ import java.util.Date;
  * <a href="https://maku.net">MAKU</a>
  */
 public abstract class StorageService {
+    /**
+     * 分片大小，对象存储分片上传时，单个分片的内存缓冲区大小（5MB，也是对象存储允许的最小分片）
+     */
+    public final static int PART_SIZE = 5 * 1024 * 1024;
+    /**
+     * 分片上传时，单个分片的最大大小（64MB），部分存储平台需要把分片读取到内存中上传
+     */
+    public final static int MAX_PART_SIZE = 64 * 1024 * 1024;
+
     public StorageProperties properties;
 
     /**
@@ -61,6 +75,77 @@ public abstract class StorageService {
         return getPath() + "/" + getNewFileName(fileName);
     }
 
+    /**
+     * 根据文件内容的哈希值，生成内容寻址路径，同一租户中相同内容的文件路径相同
+     *
+     * @param tenantId 租户ID，不同租户的文件分开存储
+     * @param hash     文件SHA-256
+     * @param fileName 文件名，用于获取扩展名
+     * @return 生成文件路径
+     */
+    public String getHashPath(Long tenantId, String hash, String fileName) {
+        String path = "hash/" + tenantId + "/" + hash.substring(0, 2) + "/" + hash;
+
+        // 文件扩展名
+        String suffix = FileNameUtil.getSuffix(fileName);
+        if (StringUtils.hasText(suffix)) {
+            path = path + "." + suffix;
+        }
+
+        // 如果有前缀，则也带上
+        if (StringUtils.hasText(properties.getConfig().getPrefix())) {
+            path = properties.getConfig().getPrefix() + "/" + path;
+        }
+
+        return path;
+    }
+
+    /**
+     * 根据文件路径，获取访问地址
+     *
+     * @param path 文件路径，包含文件名
+     * @return 返回http地址
+     */
+    public String getUrl(String path) {
+        return properties.getConfig().getDomain() + "/" + path;
+    }
+
+    /**
+     * 根据访问地址，获取文件路径
+     *
+     * @param url http地址
+     * @return 返回文件路径，不是当前存储的地址，或路径不合法，则返回null
+     */
+    public String getPathByUrl(String url) {
+        String prefix = getUrl("");
+        if (url == null || !url.startsWith(prefix) || url.length() == prefix.length()) {
+            return null;
+        }
+
+        String path = url.substring(prefix.length());
+        return isSafePath(path) ? path : null;
+    }
+
+    /**
+     * 判断文件路径是否合法，不能是绝对路径，也不能包含 . 、.. 等跳出存储目录的路径
+     *
+     * @param path 文件路径
+     * @return 合法返回true
+     */
+    public static boolean isSafePath(String path) {
+        if (!StringUtils.hasText(path) || path.startsWith("/") || path.contains("\\")) {
+            return false;
+        }
+
+        for (String name : path.split("/", -1)) {
+            if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * 文件上传
      *
@@ -79,4 +164,100 @@ public abstract class StorageService {
      */
     public abstract String upload(InputStream inputStream, String path);
 
+    /**
+     * 文件上传，流式写入存储，不会把整个文件读入内存
+     * 超过分片大小的文件，对象存储采用分片上传，每次只缓冲一个分片
+     *
+     * @param inputStream 字节流，由调用方负责关闭
+     * @param size        文件大小，未知则传 -1
+     * @param path        文件路径，包含文件名
+     * @return 返回http地址
+     */
+    public abstract String upload(InputStream inputStream, long size, String path);
+
+    /**
+     * 删除文件
+     *
+     * @param path 文件路径，包含文件名
+     */
+    public abstract void delete(String path);
+
+    /**
+     * 下载文件
+     *
+     * @param path 文件路径，包含文件名
+     * @return 返回文件字节流，由调用方负责关闭
+     */
+    public abstract InputStream download(String path);
+
+    /**
+     * 初始化分片上传
+     *
+     * @param path 文件路径，包含文件名
+     * @param size 文件总大小
+     * @return 返回存储平台的分片上传ID
+     */
+    public abstract String initMultipartUpload(String path, long size);
+
+    /**
+     * 上传分片，同一个分片上传ID的多个分片，可以并发上传
+     *
+     * @param path        文件路径，包含文件名
+     * @param uploadId    分片上传ID
+     * @param partNumber  分片序号，从1开始
+     * @param offset      分片在文件中的起始位置
+     * @param inputStream 分片字节流，由调用方负责关闭
+     * @param size        分片大小
+     * @return 返回分片的ETag
+     */
+    public abstract String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size);
+
+    /**
+     * 完成分片上传，合并所有分片
+     *
+     * @param path      文件路径，包含文件名
+     * @param uploadId  分片上传ID
+     * @param partETags 分片序号和ETag，按分片序号升序
+     * @return 返回http地址
+     */
+    public abstract String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags);
+
+    /**
+     * 取消分片上传，删除已上传的分片
+     *
+     * @param path     文件路径，包含文件名
+     * @param uploadId 分片上传ID
+     */
+    public abstract void abortMultipartUpload(String path, String uploadId);
+
+    /**
+     * 根据文件路径，获取文件的 Content-Type
+     *
+     * @param path 文件路径
+     * @return 返回 Content-Type
+     */
+    public String getContentType(String path) {
+        return MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    /**
+     * 包装字节流，关闭字节流时，同时释放存储客户端
+     *
+     * @param inputStream 字节流
+     * @param onClose     关闭时执行
+     * @return 返回包装后的字节流
+     */
+    protected InputStream onClose(InputStream inputStream, Runnable onClose) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    onClose.run();
+                }
+            }
+        };
+    }
+
 }
@@ -5,15 +5,17 @@ import com.qcloud.cos.ClientConfig;
 import com.qcloud.cos.auth.BasicCOSCredentials;
 import com.qcloud.cos.auth.COSCredentials;
 import com.qcloud.cos.http.HttpProtocol;
-import com.qcloud.cos.model.ObjectMetadata;
-import com.qcloud.cos.model.PutObjectRequest;
-import com.qcloud.cos.model.PutObjectResult;
+import com.qcloud.cos.model.*;
 import com.qcloud.cos.region.Region;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.storage.properties.StorageProperties;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
 
 /**
  * 腾讯云存储
@@ -36,29 +38,153 @@ public class TencentStorageService extends StorageService {
 
     @Override
     public String upload(byte[] data, String path) {
-        return upload(new ByteArrayInputStream(data), path);
+        return upload(new ByteArrayInputStream(data), data.length, path);
     }
 
     @Override
     public String upload(InputStream inputStream, String path) {
-        try {
-            COSClient cosClient = new COSClient(cred, clientConfig);
+        return upload(inputStream, -1, path);
+    }
 
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
             ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentLength(inputStream.available());
+            metadata.setContentType(getContentType(path));
 
-            PutObjectRequest request = new PutObjectRequest(properties.getTencent().getBucketName(), path, inputStream, metadata);
-            PutObjectResult result = cosClient.putObject(request);
+            // 小文件直接上传，大文件或未知大小的文件，分片上传
+            if (size >= 0 && size <= PART_SIZE) {
+                metadata.setContentLength(size);
 
-            cosClient.shutdown();
-            if (result.getETag() == null) {
-                throw new ServerException("上传文件失败，请检查配置信息");
+                PutObjectRequest request = new PutObjectRequest(properties.getTencent().getBucketName(), path, inputStream, metadata);
+                PutObjectResult result = cosClient.putObject(request);
+                if (result.getETag() == null) {
+                    throw new ServerException("上传文件失败，请检查配置信息");
+                }
+            } else {
+                multipartUpload(cosClient, inputStream, path, metadata);
             }
         } catch (Exception e) {
             throw new ServerException("上传文件失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void delete(String path) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            cosClient.deleteObject(properties.getTencent().getBucketName(), path);
+        } catch (Exception e) {
+            throw new ServerException("删除文件失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+    }
+
+    @Override
+    public InputStream download(String path) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            InputStream inputStream = cosClient.getObject(properties.getTencent().getBucketName(), path).getObjectContent();
+            return onClose(inputStream, cosClient::shutdown);
+        } catch (Exception e) {
+            cosClient.shutdown();
+            throw new ServerException("下载文件失败：", e);
         }
+    }
 
-        return properties.getConfig().getDomain() + "/" + path;
+    @Override
+    public String initMultipartUpload(String path, long size) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(getContentType(path));
+
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(properties.getTencent().getBucketName(), path, metadata);
+            return cosClient.initiateMultipartUpload(request).getUploadId();
+        } catch (Exception e) {
+            throw new ServerException("初始化分片上传失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+    }
+
+    @Override
+    public String uploadPart(String path, String uploadId, int partNumber, long offset, InputStream inputStream, long size) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            UploadPartRequest request = new UploadPartRequest();
+            request.setBucketName(properties.getTencent().getBucketName());
+            request.setKey(path);
+            request.setUploadId(uploadId);
+            request.setPartNumber(partNumber);
+            request.setInputStream(inputStream);
+            request.setPartSize(size);
+            return cosClient.uploadPart(request).getETag();
+        } catch (Exception e) {
+            throw new ServerException("上传分片失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String path, String uploadId, SortedMap<Integer, String> partETags) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            List<PartETag> parts = new ArrayList<>();
+            partETags.forEach((partNumber, eTag) -> parts.add(new PartETag(partNumber, eTag)));
+
+            cosClient.completeMultipartUpload(new CompleteMultipartUploadRequest(properties.getTencent().getBucketName(), path, uploadId, parts));
+        } catch (Exception e) {
+            throw new ServerException("合并分片失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+
+        return getUrl(path);
+    }
+
+    @Override
+    public void abortMultipartUpload(String path, String uploadId) {
+        COSClient cosClient = new COSClient(cred, clientConfig);
+        try {
+            cosClient.abortMultipartUpload(new AbortMultipartUploadRequest(properties.getTencent().getBucketName(), path, uploadId));
+        } catch (Exception e) {
+            throw new ServerException("取消分片上传失败：", e);
+        } finally {
+            cosClient.shutdown();
+        }
+    }
+
+    private void multipartUpload(COSClient cosClient, InputStream inputStream, String path, ObjectMetadata metadata) throws IOException {
+        String bucketName = properties.getTencent().getBucketName();
+        String uploadId = cosClient.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, path, metadata)).getUploadId();
+        try {
+            List<PartETag> partETags = new ArrayList<>();
+            byte[] buffer = new byte[PART_SIZE];
+            int len;
+            while ((len = inputStream.readNBytes(buffer, 0, PART_SIZE)) > 0) {
+                UploadPartRequest request = new UploadPartRequest();
+                request.setBucketName(bucketName);
+                request.setKey(path);
+                request.setUploadId(uploadId);
+                request.setPartNumber(partETags.size() + 1);
+                request.setInputStream(new ByteArrayInputStream(buffer, 0, len));
+                request.setPartSize(len);
+                partETags.add(cosClient.uploadPart(request).getPartETag());
+            }
+
+            cosClient.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, path, uploadId, partETags));
+        } catch (Exception e) {
+            cosClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, path, uploadId));
+            throw e;
+        }
     }
 
 }
@@ -42,4 +42,9 @@ public class StorageApiImpl implements StorageApi {
     public String upload(InputStream inputStream, String path) {
         return storageService.upload(inputStream, path);
     }
+
+    @Override
+    public String upload(InputStream inputStream, long size, String path) {
+        return storageService.upload(inputStream, size, path);
+    }
 }
@@ -0,0 +1,157 @@
+package net.maku.system.cache;
+
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.system.vo.SysExportTaskVO;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导出任务 Cache
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Service
+@AllArgsConstructor
+public class SysExportTaskCache {
+    private final RedisCache redisCache;
+
+    /**
+     * 用户的导出任务，field: 任务ID
+     */
+    private String getTaskKey(Long userId) {
+        return "sys:export:task:" + userId;
+    }
+
+    /**
+     * 用户执行中的导出任务数量
+     */
+    private String getRunningKey(Long userId) {
+        return "sys:export:running:" + userId;
+    }
+
+    /**
+     * 执行中的相同导出任务
+     */
+    private String getDedupKey(Long userId, String digest) {
+        return "sys:export:dedup:" + userId + ":" + digest;
+    }
+
+    /**
+     * 未完成的导出任务，field: 任务ID，value: 用户ID:任务摘要
+     */
+    private String getActiveKey() {
+        return "sys:export:active";
+    }
+
+    /**
+     * 执行节点的续期，过期时认为执行节点已停止
+     */
+    private String getHeartbeatKey(String taskId) {
+        return "sys:export:heartbeat:" + taskId;
+    }
+
+    /**
+     * 导出文件，field: 文件路径，value: 过期时间戳
+     */
+    private String getFileKey() {
+        return "sys:export:file";
+    }
+
+    public void save(Long userId, SysExportTaskVO task, long expire) {
+        redisCache.hSet(getTaskKey(userId), task.getTaskId(), task, expire);
+    }
+
+    public SysExportTaskVO get(Long userId, String taskId) {
+        return (SysExportTaskVO) redisCache.hGet(getTaskKey(userId), taskId);
+    }
+
+    public List<SysExportTaskVO> list(Long userId) {
+        List<SysExportTaskVO> list = new ArrayList<>();
+        redisCache.hGetAll(getTaskKey(userId)).values().forEach(task -> list.add((SysExportTaskVO) task));
+        return list;
+    }
+
+    public void delete(Long userId, String taskId) {
+        redisCache.hDel(getTaskKey(userId), taskId);
+    }
+
+    /**
+     * 增加执行中的任务数量，返回增加后的数量，节点宕机时由清理任务减少
+     */
+    public long incrementRunning(Long userId) {
+        String key = getRunningKey(userId);
+        Long count = redisCache.increment(key);
+        redisCache.expire(key, RedisCache.HOUR_SIX_EXPIRE);
+        return count == null ? 0 : count;
+    }
+
+    public void decrementRunning(Long userId) {
+        redisCache.decrement(getRunningKey(userId));
+    }
+
+    /**
+     * 记录执行中的相同导出任务，已存在时返回已有的任务ID
+     */
+    public String saveDedup(Long userId, String digest, String taskId) {
+        String key = getDedupKey(userId, digest);
+        if (Boolean.TRUE.equals(redisCache.setIfAbsent(key, taskId, RedisCache.HOUR_SIX_EXPIRE))) {
+            return null;
+        }
+        return (String) redisCache.get(key);
+    }
+
+    public void deleteDedup(Long userId, String digest) {
+        redisCache.delete(getDedupKey(userId, digest));
+    }
+
+    public void saveActive(String taskId, Long userId, String digest) {
+        redisCache.hSet(getActiveKey(), taskId, userId + ":" + digest, RedisCache.NOT_EXPIRE);
+    }
+
+    /**
+     * 未完成的导出任务，key: 任务ID，value: 用户ID:任务摘要
+     */
+    public Map<String, Object> listActive() {
+        return redisCache.hGetAll(getActiveKey());
+    }
+
+    /**
+     * 删除未完成的导出任务，返回是否删除成功，用于保证执行中的任务只释放一次
+     */
+    public boolean deleteActive(String taskId) {
+        Long count = redisCache.hDel(getActiveKey(), taskId);
+        return count != null && count > 0;
+    }
+
+    public void saveHeartbeat(String taskId, long expire) {
+        redisCache.set(getHeartbeatKey(taskId), 1, expire);
+    }
+
+    public boolean hasHeartbeat(String taskId) {
+        return Boolean.TRUE.equals(redisCache.hasKey(getHeartbeatKey(taskId)));
+    }
+
+    public void deleteHeartbeat(String taskId) {
+        redisCache.delete(getHeartbeatKey(taskId));
+    }
+
+    public void saveFile(String path, long expireTime) {
+        redisCache.hSet(getFileKey(), path, expireTime, RedisCache.NOT_EXPIRE);
+    }
+
+    /**
+     * 导出文件，key: 文件路径，value: 过期时间戳
+     */
+    public Map<String, Object> listFile() {
+        return redisCache.hGetAll(getFileKey());
+    }
+
+    public void deleteFile(String path) {
+        redisCache.hDel(getFileKey(), path);
+    }
+}
@@ -0,0 +1,34 @@
+package net.maku.system.cache;
+
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.cache.RedisCache;
+import org.springframework.stereotype.Service;
+
+/**
+ * 缩略图 Cache
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Service
+@AllArgsConstructor
+public class SysThumbnailCache {
+    private final RedisCache redisCache;
+
+    /**
+     * 缩略图路径和访问地址，不过期，删除原图时一起删除
+     */
+    private final static String THUMBNAIL_KEY = "sys:thumbnail";
+
+    public void save(String path, String url) {
+        redisCache.hSet(THUMBNAIL_KEY, path, url);
+    }
+
+    public String get(String path) {
+        return (String) redisCache.hGet(THUMBNAIL_KEY, path);
+    }
+
+    public void delete(String path) {
+        redisCache.hDel(THUMBNAIL_KEY, path);
+    }
+}
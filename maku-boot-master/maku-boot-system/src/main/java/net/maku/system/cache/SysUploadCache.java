@@ -0,0 +1,109 @@
+package net.maku.system.cache;
+
+import cn.hutool.core.convert.Convert;
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.cache.RedisCache;
+import net.maku.system.vo.SysMultipartUploadVO;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 分片上传 Cache
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Service
+@AllArgsConstructor
+public class SysUploadCache {
+    private final RedisCache redisCache;
+
+    private String getUploadKey(String uploadId) {
+        return "sys:upload:" + uploadId;
+    }
+
+    private String getPartKey(String uploadId) {
+        return "sys:upload:part:" + uploadId;
+    }
+
+    private String getIdentifierKey(Long userId, String identifier) {
+        return "sys:upload:identifier:" + userId + ":" + identifier;
+    }
+
+    /**
+     * 未完成的分片上传，field: 上传ID，上传记录过期后由清理任务取消存储平台的分片上传
+     */
+    private String getActiveKey() {
+        return "sys:upload:active";
+    }
+
+    public void saveUpload(SysMultipartUploadVO upload) {
+        redisCache.set(getUploadKey(upload.getUploadId()), upload, RedisCache.DEFAULT_EXPIRE);
+        redisCache.hSet(getActiveKey(), upload.getUploadId(), upload, RedisCache.NOT_EXPIRE);
+    }
+
+    /**
+     * 上传记录是否已过期
+     */
+    public boolean isExpired(String uploadId) {
+        return !Boolean.TRUE.equals(redisCache.hasKey(getUploadKey(uploadId)));
+    }
+
+    /**
+     * 未完成的分片上传，key: 上传ID
+     */
+    public Map<String, Object> listActive() {
+        return redisCache.hGetAll(getActiveKey());
+    }
+
+    /**
+     * 删除未完成的分片上传，返回是否删除成功，多个节点同时清理时只有一个节点取消
+     */
+    public boolean deleteActive(String uploadId) {
+        Long count = redisCache.hDel(getActiveKey(), uploadId);
+        return count != null && count > 0;
+    }
+
+    public SysMultipartUploadVO getUpload(String uploadId) {
+        return (SysMultipartUploadVO) redisCache.get(getUploadKey(uploadId));
+    }
+
+    /**
+     * 保存已上传的分片，同时延长上传记录的有效期
+     */
+    public void savePart(String uploadId, int partNumber, String eTag) {
+        redisCache.hSet(getPartKey(uploadId), String.valueOf(partNumber), eTag, RedisCache.DEFAULT_EXPIRE);
+        redisCache.expire(getUploadKey(uploadId), RedisCache.DEFAULT_EXPIRE);
+    }
+
+    /**
+     * 获取已上传的分片，按分片序号升序
+     */
+    public SortedMap<Integer, String> getParts(String uploadId) {
+        Map<String, Object> map = redisCache.hGetAll(getPartKey(uploadId));
+
+        SortedMap<Integer, String> parts = new TreeMap<>();
+        map.forEach((partNumber, eTag) -> parts.put(Convert.toInt(partNumber), (String) eTag));
+        return parts;
+    }
+
+    public void saveIdentifier(Long userId, String identifier, String uploadId) {
+        redisCache.set(getIdentifierKey(userId, identifier), uploadId, RedisCache.DEFAULT_EXPIRE);
+    }
+
+    public String getIdentifier(Long userId, String identifier) {
+        return (String) redisCache.get(getIdentifierKey(userId, identifier));
+    }
+
+    public void delete(SysMultipartUploadVO upload) {
+        deleteActive(upload.getUploadId());
+        redisCache.delete(getUploadKey(upload.getUploadId()));
+        redisCache.delete(getPartKey(upload.getUploadId()));
+        if (upload.getIdentifier() != null) {
+            redisCache.delete(getIdentifierKey(upload.getUserId(), upload.getIdentifier()));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.maku.system.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import net.maku.framework.common.utils.Result;
+import net.maku.system.service.SysExportTaskService;
+import net.maku.system.vo.SysExportTaskVO;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * 导出任务，只能查看和下载当前用户提交的任务
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@RestController
+@RequestMapping("sys/export")
+@Tag(name = "导出任务")
+@AllArgsConstructor
+public class SysExportTaskController {
+    private final SysExportTaskService sysExportTaskService;
+
+    @GetMapping("list")
+    @Operation(summary = "列表")
+    public Result<List<SysExportTaskVO>> list() {
+        return Result.ok(sysExportTaskService.list());
+    }
+
+    @GetMapping("{taskId}")
+    @Operation(summary = "进度")
+    public Result<SysExportTaskVO> get(@PathVariable("taskId") String taskId) {
+        return Result.ok(sysExportTaskService.get(taskId));
+    }
+
+    @GetMapping("download/{taskId}")
+    @Operation(summary = "下载")
+    public void download(@PathVariable("taskId") String taskId, HttpServletResponse response) {
+        sysExportTaskService.download(taskId, response);
+    }
+
+    @DeleteMapping("{taskId}")
+    @Operation(summary = "删除")
+    public Result<String> delete(@PathVariable("taskId") String taskId) {
+        sysExportTaskService.delete(taskId);
+
+        return Result.ok();
+    }
+}
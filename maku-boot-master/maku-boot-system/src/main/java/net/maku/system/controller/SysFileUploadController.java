@@ -2,19 +2,22 @@ package net.maku.system.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
-import net.maku.framework.common.exception.ServerException;
 import net.maku.framework.common.utils.Result;
 import net.maku.framework.operatelog.annotations.OperateLog;
 import net.maku.framework.operatelog.enums.OperateTypeEnum;
-import net.maku.storage.service.StorageService;
+import net.maku.system.service.SysFileUploadService;
+import net.maku.system.service.SysThumbnailService;
 import net.maku.system.vo.SysFileUploadVO;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import net.maku.system.vo.SysMultipartUploadVO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 /**
  * 文件上传
  *
@@ -26,26 +29,14 @@ import org.springframework.web.multipart.MultipartFile;
 @Tag(name = "文件上传")
 @AllArgsConstructor
 public class SysFileUploadController {
-    private final StorageService storageService;
+    private final SysFileUploadService sysFileUploadService;
+    private final SysThumbnailService sysThumbnailService;
 
     @PostMapping("upload")
     @Operation(summary = "上传")
     @OperateLog(type = OperateTypeEnum.INSERT)
-    public Result<SysFileUploadVO> upload(@RequestParam("file") MultipartFile file) throws Exception {
-        if (file.isEmpty()) {
-            return Result.error("请选择需要上传的文件");
-        }
-
-        // 上传路径
-        String path = storageService.getPath(file.getOriginalFilename());
-        // 上传文件
-        String url = storageService.upload(file.getBytes(), path);
-
-        SysFileUploadVO vo = new SysFileUploadVO();
-        vo.setUrl(url);
-        vo.setSize(file.getSize());
-        vo.setName(file.getOriginalFilename());
-        vo.setPlatform(storageService.properties.getConfig().getType().name());
+    public Result<SysFileUploadVO> upload(@RequestParam("file") MultipartFile file) {
+        SysFileUploadVO vo = sysFileUploadService.upload(file);
 
         return Result.ok(vo);
     }
@@ -53,20 +44,67 @@ public class SysFileUploadController {
     @PostMapping("uploads")
     @Operation(summary = "上传")
     @OperateLog(type = OperateTypeEnum.INSERT)
-    public SysFileUploadVO uploads(@RequestParam("file") MultipartFile file) throws Exception {
-        if (file.isEmpty()) {
-            throw new ServerException("请选择需要上传的文件");
+    public SysFileUploadVO uploads(@RequestParam("file") MultipartFile file) {
+        SysFileUploadVO vo = sysFileUploadService.upload(file);
+
+        SysFileUploadVO result = new SysFileUploadVO();
+        result.setUrl(vo.getUrl());
+        result.setName(vo.getName());
+
+        return result;
+    }
+
+    @GetMapping("thumbnail")
+    @Operation(summary = "缩略图，重定向到缩略图地址，不存在时异步生成，先重定向到原图")
+    public void thumbnail(@RequestParam("url") String url, @RequestParam("size") Integer size, HttpServletResponse response) throws Exception {
+        String thumbnailUrl = sysThumbnailService.getThumbnailUrl(url, size);
+
+        // 缩略图地址不会变化，浏览器可以缓存重定向；还没生成时重定向到原图，不缓存
+        response.setHeader(HttpHeaders.CACHE_CONTROL, thumbnailUrl.equals(url) ? "no-store" : "private, max-age=86400");
+        response.sendRedirect(thumbnailUrl);
+    }
+
+    @PostMapping("multipart/init")
+    @Operation(summary = "初始化分片上传")
+    public Result<SysMultipartUploadVO> initMultipartUpload(@RequestBody SysMultipartUploadVO vo) {
+        SysMultipartUploadVO upload = sysFileUploadService.initMultipartUpload(vo);
+
+        return Result.ok(upload);
+    }
+
+    @GetMapping("multipart/{uploadId}")
+    @Operation(summary = "分片上传进度")
+    public Result<SysMultipartUploadVO> getMultipartUpload(@PathVariable("uploadId") String uploadId) {
+        SysMultipartUploadVO upload = sysFileUploadService.getMultipartUpload(uploadId);
+
+        return Result.ok(upload);
+    }
+
+    @PutMapping("multipart/{uploadId}/{partNumber}")
+    @Operation(summary = "上传分片，请求体为分片数据")
+    public Result<String> uploadPart(@PathVariable("uploadId") String uploadId, @PathVariable("partNumber") Integer partNumber,
+                                     HttpServletRequest request) throws Exception {
+        try (InputStream inputStream = request.getInputStream()) {
+            sysFileUploadService.uploadPart(uploadId, partNumber, inputStream, request.getContentLengthLong());
         }
 
-        // 上传路径
-        String path = storageService.getPath(file.getOriginalFilename());
-        // 上传文件
-        String url = storageService.upload(file.getBytes(), path);
+        return Result.ok();
+    }
+
+    @PostMapping("multipart/{uploadId}/complete")
+    @Operation(summary = "完成分片上传")
+    @OperateLog(type = OperateTypeEnum.INSERT)
+    public Result<SysFileUploadVO> completeMultipartUpload(@PathVariable("uploadId") String uploadId) {
+        SysFileUploadVO vo = sysFileUploadService.completeMultipartUpload(uploadId);
+
+        return Result.ok(vo);
+    }
 
-        SysFileUploadVO vo = new SysFileUploadVO();
-        vo.setUrl(url);
-        vo.setName(file.getOriginalFilename());
+    @DeleteMapping("multipart/{uploadId}")
+    @Operation(summary = "取消分片上传")
+    public Result<String> abortMultipartUpload(@PathVariable("uploadId") String uploadId) {
+        sysFileUploadService.abortMultipartUpload(uploadId);
 
-        return vo;
+        return Result.ok();
     }
 }
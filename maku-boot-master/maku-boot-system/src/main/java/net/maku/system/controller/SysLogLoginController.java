@@ -14,6 +14,7 @@ import net.maku.system.vo.SysLogLoginVO;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -47,4 +48,12 @@ public class SysLogLoginController {
         sysLogLoginService.export();
     }
 
+    @PostMapping("export/async")
+    @Operation(summary = "后台导出excel")
+    @OperateLog(type = OperateTypeEnum.EXPORT)
+    @PreAuthorize("hasAuthority('sys:log:login')")
+    public Result<String> exportAsync() {
+        return Result.ok(sysLogLoginService.exportAsync());
+    }
+
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ import net.maku.system.service.SysPostService;
 import net.maku.system.service.SysUserPostService;
 import net.maku.system.service.SysUserRoleService;
 import net.maku.system.service.SysUserService;
+import net.maku.system.vo.SysImportResultVO;
 import net.maku.system.vo.SysUserAvatarVO;
 import net.maku.system.vo.SysUserBaseVO;
 import net.maku.system.vo.SysUserPasswordVO;
@@ -216,13 +217,13 @@ public class SysUserController {
     @Operation(summary = "导入用户")
     @OperateLog(type = OperateTypeEnum.IMPORT)
     @PreAuthorize("hasAuthority('sys:user:import')")
-    public Result<String> importExcel(@RequestParam("file") MultipartFile file) {
+    public Result<SysImportResultVO> importExcel(@RequestParam("file") MultipartFile file) {
         if (file.isEmpty()) {
             return Result.error("请选择需要上传的文件");
         }
-        sysUserService.importByExcel(file, passwordEncoder.encode("123456"));
+        SysImportResultVO result = sysUserService.importByExcel(file, passwordEncoder.encode("123456"));
 
-        return Result.ok();
+        return Result.ok(result);
     }
 
     @GetMapping("/export")
@@ -232,4 +233,12 @@ public class SysUserController {
     public void export() {
         sysUserService.export();
     }
+
+    @PostMapping("/export/async")
+    @Operation(summary = "后台导出用户")
+    @OperateLog(type = OperateTypeEnum.EXPORT)
+    @PreAuthorize("hasAuthority('sys:user:export')")
+    public Result<String> exportAsync() {
+        return Result.ok(sysUserService.exportAsync());
+    }
 }
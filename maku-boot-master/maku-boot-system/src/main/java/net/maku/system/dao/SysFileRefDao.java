@@ -0,0 +1,47 @@
+package net.maku.system.dao;
+
+import net.maku.framework.mybatis.dao.BaseDao;
+import net.maku.system.entity.SysFileRefEntity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 文件引用计数，按租户去重，不同租户相同内容的文件分开存储和计数
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Mapper
+public interface SysFileRefDao extends BaseDao<SysFileRefEntity> {
+
+    @Select("select * from sys_file_ref where tenant_id = #{tenantId} and hash = #{hash}")
+    SysFileRefEntity getByHash(@Param("tenantId") Long tenantId, @Param("hash") String hash);
+
+    /**
+     * 引用次数加1，返回0表示文件不存在或正在删除
+     */
+    @Update("update sys_file_ref set ref_count = ref_count + 1 where tenant_id = #{tenantId} and hash = #{hash}")
+    int increment(@Param("tenantId") Long tenantId, @Param("hash") String hash);
+
+    /**
+     * 引用次数减1
+     */
+    @Update("update sys_file_ref set ref_count = ref_count - 1 where tenant_id = #{tenantId} and hash = #{hash} and ref_count > 0")
+    int decrement(@Param("tenantId") Long tenantId, @Param("hash") String hash);
+
+    /**
+     * 引用次数小于附件数量时加1，同一次上传被保存为多个附件时，保证每个附件都有引用
+     */
+    @Update("update sys_file_ref set ref_count = ref_count + 1 where tenant_id = #{tenantId} and hash = #{hash}" +
+            " and ref_count < (select count(*) from sys_attachment where coalesce(tenant_id, 0) = #{tenantId} and hash = #{hash} and path = sys_file_ref.path and deleted = 0)")
+    int incrementIfLess(@Param("tenantId") Long tenantId, @Param("hash") String hash);
+
+    /**
+     * 删除没有引用的记录，返回1时，由调用方在同一事务中删除文件
+     */
+    @Delete("delete from sys_file_ref where tenant_id = #{tenantId} and hash = #{hash} and ref_count = 0")
+    int deleteUnreferenced(@Param("tenantId") Long tenantId, @Param("hash") String hash);
+}
@@ -34,6 +34,17 @@ public class SysAttachmentEntity extends BaseEntity {
      * 存储平台
      */
     private String platform;
+
+    /**
+     * 存储路径，删除文件时使用，不随存储前缀的配置变化
+     */
+    private String path;
+
+    /**
+     * 文件SHA-256，内容寻址去重时使用
+     */
+    private String hash;
+
     /**
      * 租户ID
      */
@@ -0,0 +1,57 @@
+package net.maku.system.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文件引用计数，内容寻址去重时使用，按租户去重
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@TableName("sys_file_ref")
+public class SysFileRefEntity {
+    /**
+     * id
+     */
+    @TableId
+    private Long id;
+
+    /**
+     * 租户ID，没有租户时为0
+     */
+    private Long tenantId;
+
+    /**
+     * 文件SHA-256
+     */
+    private String hash;
+
+    /**
+     * 存储路径
+     */
+    private String path;
+
+    /**
+     * 文件地址
+     */
+    private String url;
+
+    /**
+     * 引用次数
+     */
+    private Integer refCount;
+
+    /**
+     * 创建时间
+     */
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+}
@@ -0,0 +1,35 @@
+package net.maku.system.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 导出任务状态
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Getter
+@AllArgsConstructor
+public enum ExportTaskStatusEnum {
+    /**
+     * 等待
+     */
+    WAITING(0, "等待"),
+    /**
+     * 导出中
+     */
+    RUNNING(1, "导出中"),
+    /**
+     * 成功
+     */
+    SUCCESS(2, "成功"),
+    /**
+     * 失败
+     */
+    FAIL(3, "失败");
+
+    private final int value;
+    private final String name;
+
+}
@@ -0,0 +1,41 @@
+package net.maku.system.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 导出任务配置项
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "maku.export")
+public class ExportTaskProperties {
+    /**
+     * 当前节点同时执行的导出任务数量，每个任务占用一个数据库连接
+     */
+    private int threads = 2;
+    /**
+     * 当前节点等待执行的导出任务数量
+     */
+    private int queueSize = 100;
+    /**
+     * 每个用户同时执行（含等待）的导出任务数量
+     */
+    private int userLimit = 2;
+    /**
+     * 导出文件保留时间，超过后删除文件和导出任务，单位秒，默认24小时
+     */
+    private long retention = 86400;
+    /**
+     * 执行节点超过该时间未续期时，认为节点已停止，导出任务置为失败，单位秒
+     */
+    private long staleTimeout = 300;
+    /**
+     * 续期和清理的间隔，需小于 staleTimeout，单位秒
+     */
+    private long cleanupInterval = 60;
+}
@@ -23,4 +23,30 @@ public interface SysAttachmentService extends BaseService<SysAttachmentEntity> {
     void update(SysAttachmentVO vo);
 
     void delete(List<Long> idList);
+
+    /**
+     * 根据文件SHA-256，引用当前租户已存储的文件，引用次数加1
+     *
+     * @param hash 文件SHA-256
+     * @return 文件地址，不存在则返回null
+     */
+    String acquireByHash(String hash);
+
+    /**
+     * 当前租户的内容寻址路径
+     *
+     * @param hash     文件SHA-256
+     * @param fileName 文件名，用于获取扩展名
+     * @return 文件路径
+     */
+    String getHashPath(String hash, String fileName);
+
+    /**
+     * 保存当前租户新上传文件的引用，引用次数为1
+     *
+     * @param hash 文件SHA-256
+     * @param path 文件路径
+     * @param url  文件地址
+     */
+    void saveFileRef(String hash, String path, String url);
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package net.maku.system.service;
+
+import jakarta.servlet.http.HttpServletResponse;
+import net.maku.framework.common.excel.ExcelBatchWriter;
+import net.maku.framework.common.excel.ExcelImportResult;
+import net.maku.system.vo.SysExportTaskVO;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * 导出任务
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public interface SysExportTaskService {
+
+    /**
+     * 提交导出任务，在后台线程导出到文件并上传到存储，完成后由用户下载
+     * <p>
+     * 后台线程没有登录信息，导出条件需要在提交前确定。同一用户相同名称、相同条件的任务执行中时，返回已有的任务ID
+     *
+     * @param name     导出名称，也是下载的文件名
+     * @param params   导出条件，用于判断是否相同的任务，没有时传 null
+     * @param head     excel 类
+     * @param counter  统计总行数，用于计算进度
+     * @param exporter 分批写入数据
+     * @return 任务ID
+     */
+    <T> String submit(String name, Object params, Class<T> head, LongSupplier counter, Exporter<T> exporter);
+
+    /**
+     * 保存导入失败的数据，生成已完成的导出任务，由用户下载后修改并重新导入
+     *
+     * @param name   导出名称，也是下载的文件名
+     * @param head   excel 类
+     * @param result 导入结果
+     * @return 任务ID，没有失败数据时返回 null
+     */
+    <T> String saveImportErrors(String name, Class<T> head, ExcelImportResult<T> result);
+
+    /**
+     * 当前用户的导出任务，按创建时间倒序
+     */
+    List<SysExportTaskVO> list();
+
+    /**
+     * 当前用户的导出任务
+     */
+    SysExportTaskVO get(String taskId);
+
+    /**
+     * 下载导出文件
+     */
+    void download(String taskId, HttpServletResponse response);
+
+    /**
+     * 删除导出任务和文件
+     */
+    void delete(String taskId);
+
+    /**
+     * 导出数据
+     */
+    @FunctionalInterface
+    interface Exporter<T> {
+
+        void export(ExcelBatchWriter<T> writer);
+    }
+}
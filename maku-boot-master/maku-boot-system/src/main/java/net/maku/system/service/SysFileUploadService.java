@@ -0,0 +1,66 @@
+package net.maku.system.service;
+
+import net.maku.system.vo.SysFileUploadVO;
+import net.maku.system.vo.SysMultipartUploadVO;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+
+/**
+ * 文件上传
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public interface SysFileUploadService {
+
+    /**
+     * 上传文件，开启内容寻址去重时，相同内容的文件只存储一份
+     *
+     * @param file 上传的文件
+     * @return 文件信息
+     */
+    SysFileUploadVO upload(MultipartFile file);
+
+    /**
+     * 初始化分片上传，相同文件标识的未完成上传，返回已上传的分片，用于断点续传
+     *
+     * @param vo 文件名称、大小、分片大小
+     * @return 分片上传信息
+     */
+    SysMultipartUploadVO initMultipartUpload(SysMultipartUploadVO vo);
+
+    /**
+     * 获取分片上传进度
+     *
+     * @param uploadId 上传ID
+     * @return 分片上传信息
+     */
+    SysMultipartUploadVO getMultipartUpload(String uploadId);
+
+    /**
+     * 上传分片，多个分片可以并发上传
+     *
+     * @param uploadId    上传ID
+     * @param partNumber  分片序号，从1开始
+     * @param inputStream 分片字节流
+     * @param size        分片大小
+     */
+    void uploadPart(String uploadId, int partNumber, InputStream inputStream, long size);
+
+    /**
+     * 完成分片上传
+     *
+     * @param uploadId 上传ID
+     * @return 文件信息
+     */
+    SysFileUploadVO completeMultipartUpload(String uploadId);
+
+    /**
+     * 取消分片上传
+     *
+     * @param uploadId 上传ID
+     */
+    void abortMultipartUpload(String uploadId);
+}
@@ -35,4 +35,9 @@ public interface SysLogLoginService extends BaseService<SysLogLoginEntity> {
      * 导出登录日志
      */
     void export();
-}
\ No newline at end of file
+
+    /**
+     * 后台导出登录日志，返回导出任务ID
+     */
+    String exportAsync();
+}
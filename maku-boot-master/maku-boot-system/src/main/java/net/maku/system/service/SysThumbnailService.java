@@ -0,0 +1,33 @@
+package net.maku.system.service;
+
+/**
+ * 缩略图
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public interface SysThumbnailService {
+
+    /**
+     * 上传图片后，异步生成配置的所有尺寸的缩略图，任务过多时丢弃，访问时再生成
+     *
+     * @param path 原图路径
+     */
+    void generateAsync(String path);
+
+    /**
+     * 获取缩略图地址，缩略图不存在时异步生成，不等待生成完成，相同缩略图同时只生成一次
+     *
+     * @param url  原图地址
+     * @param size 缩略图尺寸
+     * @return 缩略图地址，缩略图还没生成时，返回原图地址
+     */
+    String getThumbnailUrl(String url, int size);
+
+    /**
+     * 删除原图的所有缩略图
+     *
+     * @param path 原图路径
+     */
+    void delete(String path);
+}
@@ -5,6 +5,7 @@ import net.maku.framework.mybatis.service.BaseService;
 import net.maku.system.entity.SysUserEntity;
 import net.maku.system.query.SysRoleUserQuery;
 import net.maku.system.query.SysUserQuery;
+import net.maku.system.vo.SysImportResultVO;
 import net.maku.system.vo.SysUserAvatarVO;
 import net.maku.system.vo.SysUserBaseVO;
 import net.maku.system.vo.SysUserVO;
@@ -61,10 +62,15 @@ public interface SysUserService extends BaseService<SysUserEntity> {
      * @param file     excel文件
      * @param password 密码
      */
-    void  importByExcel(MultipartFile file, String password);
+    SysImportResultVO importByExcel(MultipartFile file, String password);
 
     /**
      * 导出用户信息表格
      */
     void export();
+
+    /**
+     * 后台导出用户信息表格，返回导出任务ID
+     */
+    String exportAsync();
 }
@@ -5,18 +5,33 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.maku.framework.common.utils.PageResult;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.framework.security.user.UserDetail;
 import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
+import net.maku.storage.service.StorageService;
 import net.maku.system.convert.SysAttachmentConvert;
 import net.maku.system.dao.SysAttachmentDao;
+import net.maku.system.dao.SysFileRefDao;
 import net.maku.system.entity.SysAttachmentEntity;
+import net.maku.system.entity.SysFileRefEntity;
 import net.maku.system.query.SysAttachmentQuery;
 import net.maku.system.service.SysAttachmentService;
+import net.maku.system.service.SysThumbnailService;
 import net.maku.system.vo.SysAttachmentVO;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 附件管理
@@ -24,9 +39,14 @@ import java.util.List;
  * @author 阿沐 babamu@126.com
  * <a href="https://maku.net">MAKU</a>
  */
+@Slf4j
 @Service
 @AllArgsConstructor
 public class SysAttachmentServiceImpl extends BaseServiceImpl<SysAttachmentDao, SysAttachmentEntity> implements SysAttachmentService {
+    private final StorageService storageService;
+    private final SysThumbnailService sysThumbnailService;
+    private final SysFileRefDao sysFileRefDao;
+    private final PlatformTransactionManager transactionManager;
 
     @Override
     public PageResult<SysAttachmentVO> page(SysAttachmentQuery query) {
@@ -44,16 +64,37 @@ public class SysAttachmentServiceImpl extends BaseServiceImpl<SysAttachmentDao,
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public void save(SysAttachmentVO vo) {
         SysAttachmentEntity entity = SysAttachmentConvert.INSTANCE.convert(vo);
+        Long tenantId = getTenantId();
+        UserDetail user = SecurityUser.getUser();
+        entity.setTenantId(user == null ? null : user.getTenantId());
+
+        // 只有当前租户已上传的内容寻址文件，才记录哈希值和存储路径，避免误删其他文件
+        SysFileRefEntity fileRef = StrUtil.isBlank(entity.getHash()) ? null : sysFileRefDao.getByHash(tenantId, entity.getHash());
+        if (fileRef != null && StrUtil.equals(fileRef.getUrl(), entity.getUrl())) {
+            entity.setPath(fileRef.getPath());
+        } else {
+            entity.setHash(null);
+            entity.setPath(null);
+        }
 
         baseMapper.insert(entity);
 
+        // 上传时已增加引用次数，同一次上传被保存为多个附件时，补上缺少的引用
+        if (entity.getHash() != null) {
+            sysFileRefDao.incrementIfLess(tenantId, entity.getHash());
+        }
     }
 
     @Override
     public void update(SysAttachmentVO vo) {
         SysAttachmentEntity entity = SysAttachmentConvert.INSTANCE.convert(vo);
+        // 哈希值、存储路径与文件地址绑定，不允许修改
+        entity.setHash(null);
+        entity.setPath(null);
+        entity.setTenantId(null);
 
         updateById(entity);
     }
@@ -61,7 +102,104 @@ public class SysAttachmentServiceImpl extends BaseServiceImpl<SysAttachmentDao,
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void delete(List<Long> idList) {
+        // 内容寻址的文件，可能被同一租户的多个附件引用，每个附件减少一次引用
+        Set<SysFileRefEntity> fileRefSet = new LinkedHashSet<>();
+        listByIds(idList).stream().filter(entity -> StrUtil.isNotBlank(entity.getHash()) && StrUtil.isNotBlank(entity.getPath())).forEach(entity -> {
+            SysFileRefEntity fileRef = new SysFileRefEntity();
+            fileRef.setTenantId(entity.getTenantId() == null ? 0L : entity.getTenantId());
+            fileRef.setHash(entity.getHash());
+            sysFileRefDao.decrement(fileRef.getTenantId(), fileRef.getHash());
+            fileRefSet.add(fileRef);
+        });
+
         removeByIds(idList);
+
+        if (fileRefSet.isEmpty()) {
+            return;
+        }
+
+        // 事务提交后，再删除没有引用的文件，避免回滚后文件丢失
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                fileRefSet.forEach(fileRef -> deleteFile(fileRef.getTenantId(), fileRef.getHash()));
+            }
+        });
+    }
+
+    @Override
+    public String acquireByHash(String hash) {
+        // 只在当前租户内去重，不能通过哈希值判断其他租户是否存在相同文件
+        Long tenantId = getTenantId();
+        // 引用次数加1成功，文件就不会被删除；正在删除的文件，等待删除完成后返回0，按新文件重新上传
+        if (sysFileRefDao.increment(tenantId, hash) == 0) {
+            return null;
+        }
+
+        return sysFileRefDao.getByHash(tenantId, hash).getUrl();
+    }
+
+    @Override
+    public String getHashPath(String hash, String fileName) {
+        return storageService.getHashPath(getTenantId(), hash, fileName);
+    }
+
+    @Override
+    public void saveFileRef(String hash, String path, String url) {
+        Long tenantId = getTenantId();
+        SysFileRefEntity entity = new SysFileRefEntity();
+        entity.setTenantId(tenantId);
+        entity.setHash(hash);
+        entity.setPath(path);
+        entity.setUrl(url);
+        entity.setRefCount(1);
+
+        try {
+            sysFileRefDao.insert(entity);
+        } catch (DuplicateKeyException e) {
+            // 相同文件同时上传，已由其他请求保存
+            if (sysFileRefDao.increment(tenantId, hash) == 0) {
+                entity.setId(null);
+                sysFileRefDao.insert(entity);
+            }
+        }
+    }
+
+    /**
+     * 当前用户的租户ID，没有租户时为0
+     */
+    private Long getTenantId() {
+        UserDetail user = SecurityUser.getUser();
+        if (user == null || user.getTenantId() == null) {
+            return 0L;
+        }
+
+        return user.getTenantId();
+    }
+
+    /**
+     * 引用次数为0时，删除引用记录和存储中的文件
+     * <p>
+     * 删除记录后，在同一事务中删除文件，事务提交前其他请求的引用次数加1会等待行锁，提交后按新文件重新上传
+     */
+    private void deleteFile(Long tenantId, String hash) {
+        // afterCommit 中仍绑定着原事务的资源，需要新开事务
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // 使用保存时的存储路径，不受存储前缀等配置变化影响
+                SysFileRefEntity fileRef = sysFileRefDao.getByHash(tenantId, hash);
+                if (fileRef == null || sysFileRefDao.deleteUnreferenced(tenantId, hash) == 0) {
+                    return;
+                }
+
+                storageService.delete(fileRef.getPath());
+                sysThumbnailService.delete(fileRef.getPath());
+            });
+        } catch (Exception e) {
+            log.error("删除文件失败：{}", hash, e);
+        }
     }
 
 }
\ No newline at end of file
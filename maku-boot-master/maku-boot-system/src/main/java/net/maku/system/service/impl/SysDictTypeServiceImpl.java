@@ -9,6 +9,7 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.fhs.trans.service.impl.DictionaryTransService;
 import lombok.AllArgsConstructor;
+import net.maku.framework.common.excel.ExcelDictTranslator;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.framework.common.utils.PageResult;
 import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
@@ -27,6 +28,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -190,16 +192,21 @@ public class SysDictTypeServiceImpl extends BaseServiceImpl<SysDictTypeDao, SysD
             Map<Long, List<SysDictDataEntity>> dictTypeDataMap = dataList.stream().collect(Collectors
                     .groupingBy(SysDictDataEntity::getDictTypeId));
             List<SysDictTypeEntity> dictTypeEntities = super.list();
+            // excel字典翻译使用的字典数据
+            Map<String, Map<String, String>> excelDictMap = new HashMap<>();
             for (SysDictTypeEntity dictTypeEntity : dictTypeEntities) {
                 if (dictTypeDataMap.containsKey(dictTypeEntity.getId())) {
                     try {
-                        dictionaryTransService.refreshCache(dictTypeEntity.getDictType(), dictTypeDataMap.get(dictTypeEntity.getId())
-                                .stream().collect(Collectors.toMap(SysDictDataEntity::getDictValue, SysDictDataEntity::getDictLabel)));
+                        Map<String, String> dictMap = dictTypeDataMap.get(dictTypeEntity.getId())
+                                .stream().collect(Collectors.toMap(SysDictDataEntity::getDictValue, SysDictDataEntity::getDictLabel));
+                        dictionaryTransService.refreshCache(dictTypeEntity.getDictType(), dictMap);
+                        excelDictMap.put(dictTypeEntity.getDictType(), dictMap);
                     } catch (Exception e) {
                         log.error("刷新字典缓存异常: type=" + dictTypeEntity, e);
                     }
                 }
             }
+            ExcelDictTranslator.refresh(excelDictMap);
             return null;
         });
     }
@@ -0,0 +1,326 @@
+package net.maku.system.service.impl;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.URLUtil;
+import cn.hutool.crypto.SecureUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.excel.ExcelBatchWriter;
+import net.maku.framework.common.excel.ExcelImportResult;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.common.utils.ExcelUtils;
+import net.maku.framework.common.utils.ExceptionUtils;
+import net.maku.framework.common.utils.JsonUtils;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.storage.service.StorageService;
+import net.maku.system.cache.SysExportTaskCache;
+import net.maku.system.enums.ExportTaskStatusEnum;
+import net.maku.system.properties.ExportTaskProperties;
+import net.maku.system.service.SysExportTaskService;
+import net.maku.system.vo.SysExportTaskVO;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+
+/**
+ * 导出任务
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SysExportTaskServiceImpl implements SysExportTaskService {
+    private final ExportTaskProperties properties;
+    private final StorageService storageService;
+    private final SysExportTaskCache sysExportTaskCache;
+
+    /**
+     * 当前节点未完成的导出任务ID，定时续期
+     */
+    private final Set<String> localTasks = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executor;
+    private ScheduledExecutorService cleanupExecutor;
+
+    @PostConstruct
+    public void init() {
+        executor = ExecutorBuilder.create()
+                .setCorePoolSize(properties.getThreads())
+                .setMaxPoolSize(properties.getThreads())
+                .setWorkQueue(new ArrayBlockingQueue<>(properties.getQueueSize()))
+                .setThreadFactory(ThreadUtil.newNamedThreadFactory("export-", false))
+                .build();
+
+        cleanupExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("export-cleanup-", true));
+        cleanupExecutor.scheduleWithFixedDelay(this::cleanup, properties.getCleanupInterval(), properties.getCleanupInterval(), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cleanupExecutor.shutdownNow();
+        executor.shutdown();
+    }
+
+    @Override
+    public <T> String submit(String name, Object params, Class<T> head, LongSupplier counter, Exporter<T> exporter) {
+        Long userId = SecurityUser.getUserId();
+        String digest = SecureUtil.md5(name + ":" + JsonUtils.toJsonString(params));
+        String taskId = IdUtil.fastSimpleUUID();
+
+        // 相同的任务执行中，直接返回
+        String existing = sysExportTaskCache.saveDedup(userId, digest, taskId);
+        if (existing != null) {
+            SysExportTaskVO task = sysExportTaskCache.get(userId, existing);
+            if (task != null && !isFinished(task)) {
+                return existing;
+            }
+            sysExportTaskCache.deleteDedup(userId, digest);
+            if (sysExportTaskCache.saveDedup(userId, digest, taskId) != null) {
+                throw new ServerException("导出任务已提交，请稍后查看");
+            }
+        }
+
+        sysExportTaskCache.saveActive(taskId, userId, digest);
+        sysExportTaskCache.saveHeartbeat(taskId, properties.getStaleTimeout());
+        localTasks.add(taskId);
+        if (sysExportTaskCache.incrementRunning(userId) > properties.getUserLimit()) {
+            release(userId, taskId, digest);
+            throw new ServerException("导出任务过多，请等待其他导出任务完成");
+        }
+
+        SysExportTaskVO task = new SysExportTaskVO();
+        task.setTaskId(taskId);
+        task.setName(name);
+        task.setStatus(ExportTaskStatusEnum.WAITING.getValue());
+        task.setRows(0L);
+        task.setCreateTime(LocalDateTime.now());
+        save(userId, task);
+
+        try {
+            executor.execute(() -> run(userId, digest, task, head, counter, exporter));
+        } catch (RejectedExecutionException e) {
+            sysExportTaskCache.delete(userId, taskId);
+            release(userId, taskId, digest);
+            throw new ServerException("导出任务过多，请稍后再试");
+        }
+
+        return taskId;
+    }
+
+    @Override
+    public <T> String saveImportErrors(String name, Class<T> head, ExcelImportResult<T> result) {
+        if (result.getErrors().isEmpty()) {
+            return null;
+        }
+
+        SysExportTaskVO task = new SysExportTaskVO();
+        task.setTaskId(IdUtil.fastSimpleUUID());
+        task.setName(name);
+        task.setTotal(result.getFailed());
+        task.setRows(result.getFailed());
+        task.setCreateTime(LocalDateTime.now());
+
+        File file = FileUtil.createTempFile("import_error_", ".xlsx", true);
+        try {
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                ExcelUtils.writeImportErrors(head, result, outputStream);
+            }
+            upload(task, file);
+        } catch (IOException e) {
+            throw new ServerException("保存导入失败数据失败");
+        } finally {
+            FileUtil.del(file);
+        }
+
+        task.setFinishTime(LocalDateTime.now());
+        save(SecurityUser.getUserId(), task);
+        return task.getTaskId();
+    }
+
+    @Override
+    public List<SysExportTaskVO> list() {
+        Long userId = SecurityUser.getUserId();
+        List<SysExportTaskVO> list = sysExportTaskCache.list(userId);
+        list.removeIf(task -> {
+            if (isExpired(task)) {
+                sysExportTaskCache.delete(userId, task.getTaskId());
+                return true;
+            }
+            return false;
+        });
+        list.sort(Comparator.comparing(SysExportTaskVO::getCreateTime).reversed());
+        return list;
+    }
+
+    @Override
+    public SysExportTaskVO get(String taskId) {
+        SysExportTaskVO task = sysExportTaskCache.get(SecurityUser.getUserId(), taskId);
+        if (task == null || isExpired(task)) {
+            throw new ServerException("导出任务不存在");
+        }
+        return task;
+    }
+
+    @Override
+    public void download(String taskId, HttpServletResponse response) {
+        SysExportTaskVO task = get(taskId);
+        if (task.getStatus() != ExportTaskStatusEnum.SUCCESS.getValue()) {
+            throw new ServerException("导出文件未生成");
+        }
+
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        response.setHeader("Access-Control-Expose-Headers", "Content-Disposition");
+        response.setHeader("Content-disposition", "attachment;filename=" + URLUtil.encode(task.getFileName(), StandardCharsets.UTF_8));
+        response.setContentLengthLong(task.getSize());
+        try (InputStream inputStream = storageService.download(task.getPath())) {
+            IoUtil.copy(inputStream, response.getOutputStream());
+        } catch (IOException e) {
+            throw new ServerException("下载导出文件失败");
+        }
+    }
+
+    @Override
+    public void delete(String taskId) {
+        SysExportTaskVO task = get(taskId);
+        if (!isFinished(task)) {
+            throw new ServerException("导出中的任务不能删除");
+        }
+
+        if (task.getPath() != null) {
+            storageService.delete(task.getPath());
+            sysExportTaskCache.deleteFile(task.getPath());
+        }
+        sysExportTaskCache.delete(SecurityUser.getUserId(), taskId);
+    }
+
+    /**
+     * 导出到临时文件，再上传到存储，每批数据写入后更新进度
+     */
+    private <T> void run(Long userId, String digest, SysExportTaskVO task, Class<T> head, LongSupplier counter, Exporter<T> exporter) {
+        File file = FileUtil.createTempFile("export_", ".xlsx", true);
+        try {
+            task.setStatus(ExportTaskStatusEnum.RUNNING.getValue());
+            task.setTotal(counter.getAsLong());
+            save(userId, task);
+
+            ExcelBatchWriter<T> writer = ExcelUtils.excelBatchWriter(head, file, null);
+            writer.setListener(rows -> {
+                task.setRows(rows);
+                save(userId, task);
+            });
+            writer.export(exporter::export);
+
+            upload(task, file);
+        } catch (Exception e) {
+            log.error("导出失败，任务ID：{}", task.getTaskId(), e);
+            task.setStatus(ExportTaskStatusEnum.FAIL.getValue());
+            task.setError(StringUtils.substring(ExceptionUtils.getExceptionMessage(e), 0, 500));
+        } finally {
+            FileUtil.del(file);
+            task.setFinishTime(LocalDateTime.now());
+            save(userId, task);
+            release(userId, task.getTaskId(), digest);
+        }
+    }
+
+    /**
+     * 上传导出文件，以任务ID作为存储路径，避免同名导出相互覆盖
+     */
+    private void upload(SysExportTaskVO task, File file) throws IOException {
+        String path = storageService.getPath() + "/export/" + task.getTaskId() + ".xlsx";
+        try (InputStream inputStream = new FileInputStream(file)) {
+            storageService.upload(inputStream, file.length(), path);
+        }
+        sysExportTaskCache.saveFile(path, System.currentTimeMillis() + properties.getRetention() * 1000);
+
+        task.setPath(path);
+        task.setSize(file.length());
+        task.setFileName(task.getName() + DateUtil.format(new Date(), "yyyyMMddHHmmss") + ".xlsx");
+        task.setStatus(ExportTaskStatusEnum.SUCCESS.getValue());
+    }
+
+    /**
+     * 续期当前节点的导出任务，其他节点停止后未完成的任务置为失败，并删除过期的导出文件
+     */
+    private void cleanup() {
+        try {
+            localTasks.forEach(taskId -> sysExportTaskCache.saveHeartbeat(taskId, properties.getStaleTimeout()));
+
+            sysExportTaskCache.listActive().forEach((taskId, value) -> {
+                if (localTasks.contains(taskId) || sysExportTaskCache.hasHeartbeat(taskId)) {
+                    return;
+                }
+                String[] values = value.toString().split(":", 2);
+                Long userId = Long.valueOf(values[0]);
+                SysExportTaskVO task = sysExportTaskCache.get(userId, taskId);
+                if (task != null && !isFinished(task)) {
+                    log.warn("导出任务执行节点已停止，任务ID：{}", taskId);
+                    task.setStatus(ExportTaskStatusEnum.FAIL.getValue());
+                    task.setError("导出节点已停止，请重新导出");
+                    task.setFinishTime(LocalDateTime.now());
+                    save(userId, task);
+                }
+                release(userId, taskId, values[1]);
+            });
+
+            long now = System.currentTimeMillis();
+            sysExportTaskCache.listFile().forEach((path, expireTime) -> {
+                if (((Number) expireTime).longValue() > now) {
+                    return;
+                }
+                storageService.delete(path);
+                sysExportTaskCache.deleteFile(path);
+            });
+        } catch (Exception e) {
+            log.error("清理导出任务失败", e);
+        }
+    }
+
+    private void save(Long userId, SysExportTaskVO task) {
+        sysExportTaskCache.save(userId, task, properties.getRetention());
+    }
+
+    /**
+     * 释放执行中的任务，只有删除未完成任务成功的节点才释放，避免执行节点和清理任务重复释放
+     */
+    private void release(Long userId, String taskId, String digest) {
+        localTasks.remove(taskId);
+        if (!sysExportTaskCache.deleteActive(taskId)) {
+            return;
+        }
+        sysExportTaskCache.deleteHeartbeat(taskId);
+        sysExportTaskCache.decrementRunning(userId);
+        sysExportTaskCache.deleteDedup(userId, digest);
+    }
+
+    /**
+     * 完成时间超过保留时间的任务，导出文件已删除或即将删除
+     */
+    private boolean isExpired(SysExportTaskVO task) {
+        return task.getFinishTime() != null && task.getFinishTime().plusSeconds(properties.getRetention()).isBefore(LocalDateTime.now());
+    }
+
+    private boolean isFinished(SysExportTaskVO task) {
+        return task.getStatus() == ExportTaskStatusEnum.SUCCESS.getValue() || task.getStatus() == ExportTaskStatusEnum.FAIL.getValue();
+    }
+}
@@ -0,0 +1,255 @@
+package net.maku.system.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.framework.security.user.SecurityUser;
+import net.maku.storage.service.StorageService;
+import net.maku.system.cache.SysUploadCache;
+import net.maku.system.service.SysAttachmentService;
+import net.maku.system.service.SysFileUploadService;
+import net.maku.system.service.SysThumbnailService;
+import net.maku.system.vo.SysFileUploadVO;
+import net.maku.system.vo.SysMultipartUploadVO;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件上传
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SysFileUploadServiceImpl implements SysFileUploadService {
+    /**
+     * 最大分片数量
+     */
+    private final static int MAX_CHUNK_COUNT = 10000;
+
+    private final StorageService storageService;
+    private final SysUploadCache sysUploadCache;
+    private final SysAttachmentService sysAttachmentService;
+    private final SysThumbnailService sysThumbnailService;
+
+    private ScheduledExecutorService sweepExecutor;
+
+    @PostConstruct
+    public void init() {
+        sweepExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("upload-sweep-", true));
+        sweepExecutor.scheduleWithFixedDelay(this::sweep, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweepExecutor.shutdownNow();
+    }
+
+    @Override
+    public SysFileUploadVO upload(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new ServerException("请选择需要上传的文件");
+        }
+
+        SysFileUploadVO vo = new SysFileUploadVO();
+        vo.setSize(file.getSize());
+        vo.setName(file.getOriginalFilename());
+        vo.setPlatform(storageService.properties.getConfig().getType().name());
+
+        try {
+            if (storageService.properties.getConfig().isDedup()) {
+                // 内容寻址去重，上传的文件已落地为临时文件，先流式计算SHA-256，已存在则不再上传
+                String hash;
+                try (InputStream inputStream = file.getInputStream()) {
+                    hash = DigestUtil.sha256Hex(inputStream);
+                }
+                vo.setHash(hash);
+                vo.setUrl(sysAttachmentService.acquireByHash(hash));
+                if (vo.getUrl() != null) {
+                    return vo;
+                }
+
+                String path = sysAttachmentService.getHashPath(hash, file.getOriginalFilename());
+                try (InputStream inputStream = file.getInputStream()) {
+                    vo.setUrl(storageService.upload(inputStream, file.getSize(), path));
+                }
+                sysAttachmentService.saveFileRef(hash, path, vo.getUrl());
+                sysThumbnailService.generateAsync(path);
+            } else {
+                // 流式上传，避免把整个文件读入内存
+                String path = storageService.getPath(file.getOriginalFilename());
+                try (InputStream inputStream = file.getInputStream()) {
+                    vo.setUrl(storageService.upload(inputStream, file.getSize(), path));
+                }
+                sysThumbnailService.generateAsync(path);
+            }
+        } catch (IOException e) {
+            throw new ServerException("上传文件失败：", e);
+        }
+
+        return vo;
+    }
+
+    @Override
+    public SysMultipartUploadVO initMultipartUpload(SysMultipartUploadVO vo) {
+        if (StrUtil.isBlank(vo.getName()) || vo.getSize() == null || vo.getSize() <= 0) {
+            throw new ServerException("请选择需要上传的文件");
+        }
+        long maxFileSize = storageService.properties.getConfig().getMaxFileSize();
+        if (vo.getSize() > maxFileSize) {
+            throw new ServerException("文件大小不能超过" + FileUtil.readableFileSize(maxFileSize));
+        }
+
+        Long userId = SecurityUser.getUserId();
+
+        // 相同文件标识的未完成上传，断点续传
+        if (StrUtil.isNotBlank(vo.getIdentifier())) {
+            String uploadId = sysUploadCache.getIdentifier(userId, vo.getIdentifier());
+            if (uploadId != null) {
+                SysMultipartUploadVO upload = sysUploadCache.getUpload(uploadId);
+                if (upload != null && upload.getSize().equals(vo.getSize())) {
+                    return getMultipartUpload(uploadId);
+                }
+            }
+        }
+
+        // 分片大小，除最后一个分片外，对象存储要求不小于5MB，同时不能超过单个分片的最大大小
+        long chunkSize = vo.getChunkSize() == null ? StorageService.PART_SIZE : Math.max(vo.getChunkSize(), StorageService.PART_SIZE);
+        chunkSize = Math.min(chunkSize, StorageService.MAX_PART_SIZE);
+        long chunkCount = (vo.getSize() + chunkSize - 1) / chunkSize;
+        if (chunkCount > MAX_CHUNK_COUNT) {
+            throw new ServerException("分片数量不能超过" + MAX_CHUNK_COUNT + "，请增大分片大小");
+        }
+
+        String path = storageService.getPath(vo.getName());
+
+        SysMultipartUploadVO upload = new SysMultipartUploadVO();
+        upload.setUploadId(IdUtil.fastSimpleUUID());
+        upload.setName(vo.getName());
+        upload.setSize(vo.getSize());
+        upload.setIdentifier(StrUtil.emptyToNull(vo.getIdentifier()));
+        upload.setChunkSize(chunkSize);
+        upload.setChunkCount((int) chunkCount);
+        upload.setUploadedParts(new ArrayList<>());
+        upload.setPath(path);
+        upload.setPlatform(storageService.properties.getConfig().getType().name());
+        upload.setStorageUploadId(storageService.initMultipartUpload(path, vo.getSize()));
+        upload.setUserId(userId);
+        sysUploadCache.saveUpload(upload);
+
+        if (upload.getIdentifier() != null) {
+            sysUploadCache.saveIdentifier(userId, upload.getIdentifier(), upload.getUploadId());
+        }
+
+        return upload;
+    }
+
+    @Override
+    public SysMultipartUploadVO getMultipartUpload(String uploadId) {
+        SysMultipartUploadVO upload = getUpload(uploadId);
+        upload.setUploadedParts(new ArrayList<>(sysUploadCache.getParts(uploadId).keySet()));
+
+        return upload;
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream, long size) {
+        SysMultipartUploadVO upload = getUpload(uploadId);
+        if (partNumber < 1 || partNumber > upload.getChunkCount()) {
+            throw new ServerException("分片序号不正确");
+        }
+
+        // 除最后一个分片外，分片大小必须等于初始化时的分片大小
+        long offset = (partNumber - 1) * upload.getChunkSize();
+        long partSize = Math.min(upload.getChunkSize(), upload.getSize() - offset);
+        if (size != partSize) {
+            throw new ServerException("分片大小不正确，应为 " + partSize + " 字节");
+        }
+
+        String eTag = storageService.uploadPart(upload.getPath(), upload.getStorageUploadId(), partNumber, offset, inputStream, size);
+        sysUploadCache.savePart(uploadId, partNumber, eTag);
+    }
+
+    @Override
+    public SysFileUploadVO completeMultipartUpload(String uploadId) {
+        SysMultipartUploadVO upload = getUpload(uploadId);
+
+        SortedMap<Integer, String> parts = sysUploadCache.getParts(uploadId);
+        if (parts.size() != upload.getChunkCount()) {
+            throw new ServerException("分片未上传完成，已上传 " + parts.size() + "/" + upload.getChunkCount());
+        }
+
+        String url = storageService.completeMultipartUpload(upload.getPath(), upload.getStorageUploadId(), parts);
+        sysUploadCache.delete(upload);
+        sysThumbnailService.generateAsync(upload.getPath());
+
+        SysFileUploadVO vo = new SysFileUploadVO();
+        vo.setUrl(url);
+        vo.setSize(upload.getSize());
+        vo.setName(upload.getName());
+        vo.setPlatform(upload.getPlatform());
+
+        return vo;
+    }
+
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        SysMultipartUploadVO upload = getUpload(uploadId);
+
+        storageService.abortMultipartUpload(upload.getPath(), upload.getStorageUploadId());
+        sysUploadCache.delete(upload);
+    }
+
+    /**
+     * 取消过期的分片上传，客户端放弃上传时，释放本地预分配的临时文件和对象存储中未完成的分片
+     */
+    private void sweep() {
+        try {
+            sysUploadCache.listActive().forEach((uploadId, value) -> {
+                if (!sysUploadCache.isExpired(uploadId) || !sysUploadCache.deleteActive(uploadId)) {
+                    return;
+                }
+
+                SysMultipartUploadVO upload = (SysMultipartUploadVO) value;
+                try {
+                    storageService.abortMultipartUpload(upload.getPath(), upload.getStorageUploadId());
+                    sysUploadCache.delete(upload);
+                } catch (Exception e) {
+                    log.error("取消过期的分片上传失败，上传ID：{}", uploadId, e);
+                }
+            });
+        } catch (Exception e) {
+            log.error("清理过期的分片上传失败", e);
+        }
+    }
+
+    /**
+     * 获取分片上传信息，只能操作自己的上传
+     */
+    private SysMultipartUploadVO getUpload(String uploadId) {
+        SysMultipartUploadVO upload = sysUploadCache.getUpload(uploadId);
+        if (upload == null || !Objects.equals(upload.getUserId(), SecurityUser.getUserId())) {
+            throw new ServerException("上传记录不存在或已过期");
+        }
+
+        return upload;
+    }
+}
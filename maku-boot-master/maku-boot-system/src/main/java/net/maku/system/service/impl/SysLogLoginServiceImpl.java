@@ -4,16 +4,18 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import com.fhs.trans.service.impl.TransService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
+import net.maku.framework.common.excel.ExcelBatchWriter;
+import net.maku.framework.common.excel.ExcelDictTranslator;
 import net.maku.framework.common.utils.*;
 import net.maku.framework.mybatis.service.impl.BaseServiceImpl;
 import net.maku.system.convert.SysLogLoginConvert;
 import net.maku.system.dao.SysLogLoginDao;
 import net.maku.system.entity.SysLogLoginEntity;
 import net.maku.system.query.SysLogLoginQuery;
+import net.maku.system.service.SysExportTaskService;
 import net.maku.system.service.SysLogLoginService;
 import net.maku.system.vo.SysLogLoginVO;
 import org.springframework.http.HttpHeaders;
@@ -31,7 +33,7 @@ import java.util.List;
 @Service
 @AllArgsConstructor
 public class SysLogLoginServiceImpl extends BaseServiceImpl<SysLogLoginDao, SysLogLoginEntity> implements SysLogLoginService {
-    private final TransService transService;
+    private final SysExportTaskService sysExportTaskService;
 
     @Override
     public PageResult<SysLogLoginVO> page(SysLogLoginQuery query) {
@@ -72,11 +74,21 @@ public class SysLogLoginServiceImpl extends BaseServiceImpl<SysLogLoginDao, SysL
     @Override
     @SneakyThrows
     public void export() {
-        List<SysLogLoginEntity> list = list();
-        List<SysLogLoginVO> sysLogLoginVOS = SysLogLoginConvert.INSTANCE.convertList(list);
-        transService.transBatch(sysLogLoginVOS);
-        // 写到浏览器打开
-        ExcelUtils.excelExport(SysLogLoginVO.class, "system_login_log_excel" + DateUtils.format(new Date()), null, sysLogLoginVOS);
+        // 分批查询、翻译后写到浏览器，内存占用不随数据量增长
+        ExcelUtils.excelBatchWriter(SysLogLoginVO.class, "system_login_log_excel" + DateUtils.format(new Date()), null).export(this::export);
     }
 
-}
\ No newline at end of file
+    @Override
+    public String exportAsync() {
+        return sysExportTaskService.submit("system_login_log_excel", null, SysLogLoginVO.class, this::count, this::export);
+    }
+
+    private void export(ExcelBatchWriter<SysLogLoginVO> writer) {
+        forEachBatch(Wrappers::lambdaQuery, SysLogLoginEntity::getId, ExcelBatchWriter.BATCH_SIZE, list -> {
+            List<SysLogLoginVO> sysLogLoginVOS = SysLogLoginConvert.INSTANCE.convertList(list);
+            ExcelDictTranslator.translate(sysLogLoginVOS);
+            writer.write(sysLogLoginVOS);
+        });
+    }
+
+}
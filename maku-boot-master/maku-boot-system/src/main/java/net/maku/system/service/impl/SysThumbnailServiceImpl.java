@@ -0,0 +1,225 @@
+package net.maku.system.service.impl;
+
+import cn.hutool.core.io.file.FileNameUtil;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import net.maku.storage.properties.StorageProperties;
+import net.maku.storage.service.StorageService;
+import net.maku.system.cache.SysThumbnailCache;
+import net.maku.system.service.SysThumbnailService;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 缩略图
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SysThumbnailServiceImpl implements SysThumbnailService {
+    /**
+     * 支持生成缩略图的图片格式
+     */
+    private final static Set<String> IMAGE_TYPES = Set.of("jpg", "jpeg", "png", "gif", "bmp");
+
+    private final StorageService storageService;
+    private final SysThumbnailCache sysThumbnailCache;
+
+    /**
+     * 正在生成的缩略图，相同缩略图只生成一次
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<String>> generating = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        StorageProperties.ThumbnailConfig config = getConfig();
+        executor = ExecutorBuilder.create()
+                .setCorePoolSize(config.getThreads())
+                .setMaxPoolSize(config.getThreads())
+                .setWorkQueue(new ArrayBlockingQueue<>(config.getQueueSize()))
+                .setThreadFactory(ThreadUtil.newNamedThreadFactory("thumbnail-", true))
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void generateAsync(String path) {
+        if (!getConfig().isEnabled() || !isImage(path)) {
+            return;
+        }
+
+        for (Integer size : getConfig().getSizes()) {
+            getThumbnail(path, size);
+        }
+    }
+
+    @Override
+    public String getThumbnailUrl(String url, int size) {
+        String path = storageService.getPathByUrl(url);
+        if (path == null || !isImage(path) || !getConfig().getSizes().contains(size)) {
+            throw new ServerException("不支持的缩略图");
+        }
+
+        // 不在请求线程中等待生成，缩略图还没生成、生成失败或线程池已满时，先返回原图
+        CompletableFuture<String> future = getThumbnail(path, size);
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            return future.join();
+        }
+
+        return url;
+    }
+
+    @Override
+    public void delete(String path) {
+        for (Integer size : getConfig().getSizes()) {
+            String thumbnailPath = getThumbnailPath(path, size);
+            if (sysThumbnailCache.get(thumbnailPath) != null) {
+                storageService.delete(thumbnailPath);
+                sysThumbnailCache.delete(thumbnailPath);
+            }
+        }
+    }
+
+    /**
+     * 获取缩略图，已生成的从缓存获取，正在生成的返回同一个任务，线程池已满时返回失败
+     */
+    private CompletableFuture<String> getThumbnail(String path, int size) {
+        String thumbnailPath = getThumbnailPath(path, size);
+        String url = sysThumbnailCache.get(thumbnailPath);
+        if (url != null) {
+            return CompletableFuture.completedFuture(url);
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = generating.putIfAbsent(thumbnailPath, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        Runnable task = () -> {
+            try {
+                future.complete(generate(path, thumbnailPath, size));
+            } catch (Throwable e) {
+                log.error("生成缩略图失败：{}", thumbnailPath, e);
+                future.completeExceptionally(e);
+            } finally {
+                generating.remove(thumbnailPath, future);
+            }
+        };
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            generating.remove(thumbnailPath, future);
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * 生成缩略图，按最长边等比缩放，不放大
+     */
+    private String generate(String path, String thumbnailPath, int size) throws IOException {
+        BufferedImage image = read(path, size);
+        double scale = Math.min(1d, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        // jpg 不支持透明，使用白色背景
+        boolean alpha = "png".equalsIgnoreCase(getConfig().getFormat());
+        BufferedImage thumbnail = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!alpha) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(thumbnail, getConfig().getFormat(), outputStream)) {
+            throw new IOException("不支持的缩略图格式：" + getConfig().getFormat());
+        }
+
+        String url = storageService.upload(outputStream.toByteArray(), thumbnailPath);
+        sysThumbnailCache.save(thumbnailPath, url);
+
+        return url;
+    }
+
+    /**
+     * 读取原图，大图按比例抽样解码，避免把整张原图解码到内存
+     */
+    private BufferedImage read(String path, int size) throws IOException {
+        try (InputStream inputStream = storageService.download(path);
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图片格式：" + path);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / (size * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 缩略图路径，与原图放在一起，如 20240101/a_123.png_100.jpg
+     */
+    private String getThumbnailPath(String path, int size) {
+        return path + "_" + size + "." + getConfig().getFormat();
+    }
+
+    private boolean isImage(String path) {
+        String suffix = FileNameUtil.getSuffix(path);
+        return suffix != null && IMAGE_TYPES.contains(suffix.toLowerCase());
+    }
+
+    private StorageProperties.ThumbnailConfig getConfig() {
+        return storageService.properties.getThumbnail();
+    }
+}
@@ -1,13 +1,20 @@
 package net.maku.system.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.BeanUtils;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import com.fhs.trans.service.impl.TransService;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import net.maku.framework.common.constant.Constant;
-import net.maku.framework.common.excel.ExcelFinishCallBack;
+import net.maku.framework.common.excel.ExcelBatchWriter;
+import net.maku.framework.common.excel.ExcelDictTranslator;
+import net.maku.framework.common.excel.ExcelImportHandler;
+import net.maku.framework.common.excel.ExcelImportPipeline;
+import net.maku.framework.common.excel.ExcelImportResult;
+import net.maku.framework.common.excel.ExcelImportRow;
 import net.maku.framework.common.exception.ServerException;
 import net.maku.framework.common.utils.DateUtils;
 import net.maku.framework.common.utils.ExcelUtils;
@@ -25,16 +32,16 @@ import net.maku.system.query.SysUserQuery;
 import net.maku.system.service.*;
 import net.maku.system.vo.SysUserAvatarVO;
 import net.maku.system.vo.SysUserBaseVO;
+import net.maku.system.vo.SysImportResultVO;
 import net.maku.system.vo.SysUserExcelVO;
 import net.maku.system.vo.SysUserVO;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 用户管理
@@ -47,12 +54,17 @@ import java.util.Map;
 @Service
 @AllArgsConstructor
 public class SysUserServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntity> implements SysUserService {
+    /**
+     * 手机号唯一索引，未删除用户的手机号不能重复
+     */
+    private static final String MOBILE_UNIQUE_INDEX = "uk_sys_user_mobile";
+
     private final SysUserRoleService sysUserRoleService;
     private final SysUserPostService sysUserPostService;
     private final SysUserTokenService sysUserTokenService;
     private final SysOrgService sysOrgService;
     private final TokenStoreCache tokenStoreCache;
-    private final TransService transService;
+    private final SysExportTaskService sysExportTaskService;
 
     /*
      * user分页查询
@@ -251,39 +263,103 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntit
         return new PageResult<>(SysUserConvert.INSTANCE.convertList(list), page.getTotal());
     }
 
+    /**
+     * 导入用户，解析、校验、保存并行执行，每批在单独的事务中保存，失败的数据生成导出任务由用户下载
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void importByExcel(MultipartFile file, String password) {
+    public SysImportResultVO importByExcel(MultipartFile file, String password) {
+        // 文件中已出现的用户名、手机号，多个线程共享
+        Set<String> usernames = ConcurrentHashMap.newKeySet();
+        Set<String> mobiles = ConcurrentHashMap.newKeySet();
 
-        ExcelUtils.readAnalysis(file, SysUserExcelVO.class, new ExcelFinishCallBack<SysUserExcelVO>() {
+        ExcelImportResult<SysUserExcelVO> result = ExcelUtils.importExcel(file, SysUserExcelVO.class, new ExcelImportHandler<>() {
             @Override
-            public void doAfterAllAnalysed(List<SysUserExcelVO> result) {
-                saveUser(result);
+            public void validate(List<ExcelImportRow<SysUserExcelVO>> rows) {
+                List<ExcelImportRow<SysUserExcelVO>> valid = new ArrayList<>(rows.size());
+                for (ExcelImportRow<SysUserExcelVO> row : rows) {
+                    SysUserExcelVO user = row.getData();
+                    if (StrUtil.isBlank(user.getUsername())) {
+                        row.setError("用户名不能为空");
+                    } else if (!usernames.add(user.getUsername())) {
+                        row.setError("用户名在文件中重复");
+                    } else if (StrUtil.isNotBlank(user.getMobile()) && !mobiles.add(user.getMobile())) {
+                        row.setError("手机号在文件中重复");
+                    } else {
+                        valid.add(row);
+                    }
+                }
+                if (valid.isEmpty()) {
+                    return;
+                }
+
+                // 按批查询已存在的用户名、手机号，查询后其他请求写入的由唯一索引保证
+                Set<Object> existUsernames = selectExists(SysUserEntity::getUsername, valid.stream().map(row -> row.getData().getUsername()).toList());
+                Set<Object> existMobiles = selectExists(SysUserEntity::getMobile, valid.stream().map(row -> row.getData().getMobile()).filter(StrUtil::isNotBlank).toList());
+                for (ExcelImportRow<SysUserExcelVO> row : valid) {
+                    if (existUsernames.contains(row.getData().getUsername())) {
+                        row.setError("用户名已经存在");
+                    } else if (existMobiles.contains(row.getData().getMobile())) {
+                        row.setError("手机号已经存在");
+                    }
+                }
+
+                ExcelUtils.parseDict(valid.stream().filter(row -> row.getError() == null).map(ExcelImportRow::getData).toList());
             }
 
             @Override
-            public void doSaveBatch(List<SysUserExcelVO> result) {
-                saveUser(result);
+            public void save(List<SysUserExcelVO> list) {
+                List<SysUserEntity> sysUserEntities = SysUserConvert.INSTANCE.convertListEntity(list);
+                sysUserEntities.forEach(user -> {
+                    user.setPassword(password);
+                    user.setSuperAdmin(SuperAdminEnum.NO.getValue());
+                });
+                saveBatch(sysUserEntities, ExcelImportPipeline.BATCH_SIZE);
             }
 
-            private void saveUser(List<SysUserExcelVO> result) {
-                ExcelUtils.parseDict(result);
-                List<SysUserEntity> sysUserEntities = SysUserConvert.INSTANCE.convertListEntity(result);
-                sysUserEntities.forEach(user -> user.setPassword(password));
-                saveBatch(sysUserEntities);
+            @Override
+            public String getDuplicateError(SysUserExcelVO data, DuplicateKeyException e) {
+                return StrUtil.containsIgnoreCase(e.getMessage(), MOBILE_UNIQUE_INDEX) ? "手机号已经存在" : "用户名已经存在";
             }
         });
 
+        SysImportResultVO vo = new SysImportResultVO();
+        vo.setTotal(result.getTotal());
+        vo.setSuccess(result.getSuccess());
+        vo.setFailed(result.getFailed());
+        vo.setErrorTaskId(sysExportTaskService.saveImportErrors("system_user_import_error", SysUserExcelVO.class, result));
+        return vo;
+    }
+
+    private Set<Object> selectExists(SFunction<SysUserEntity, String> column, List<String> values) {
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(baseMapper.selectObjs(Wrappers.lambdaQuery(SysUserEntity.class).select(column).in(column, values)));
     }
 
     @Override
     @SneakyThrows
     public void export() {
-        List<SysUserEntity> list = list(Wrappers.lambdaQuery(SysUserEntity.class).eq(SysUserEntity::getSuperAdmin, SuperAdminEnum.NO.getValue()));
-        List<SysUserExcelVO> userExcelVOS = SysUserConvert.INSTANCE.convert2List(list);
-        transService.transBatch(userExcelVOS);
-        // 写到浏览器打开
-        ExcelUtils.excelExport(SysUserExcelVO.class, "system_user_excel" + DateUtils.format(new Date()), null, userExcelVOS);
+        // 分批查询、翻译后写到浏览器，内存占用不随数据量增长
+        ExcelUtils.excelBatchWriter(SysUserExcelVO.class, "system_user_excel" + DateUtils.format(new Date()), null).export(this::export);
+    }
+
+    @Override
+    public String exportAsync() {
+        return sysExportTaskService.submit("system_user_excel", null, SysUserExcelVO.class,
+                () -> count(getExportWrapper()), this::export);
+    }
+
+    private void export(ExcelBatchWriter<SysUserExcelVO> writer) {
+        forEachBatch(this::getExportWrapper, SysUserEntity::getId, ExcelBatchWriter.BATCH_SIZE, list -> {
+            List<SysUserExcelVO> userExcelVOS = SysUserConvert.INSTANCE.convert2List(list);
+            ExcelDictTranslator.translate(userExcelVOS);
+            writer.write(userExcelVOS);
+        });
+    }
+
+    private LambdaQueryWrapper<SysUserEntity> getExportWrapper() {
+        return Wrappers.lambdaQuery(SysUserEntity.class).eq(SysUserEntity::getSuperAdmin, SuperAdminEnum.NO.getValue());
     }
 
 }
@@ -34,6 +34,9 @@ public class SysAttachmentVO implements Serializable {
     @Schema(description = "存储平台")
     private String platform;
 
+    @Schema(description = "文件SHA-256")
+    private String hash;
+
     @Schema(description = "创建时间")
     @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
     private LocalDateTime createTime;
@@ -0,0 +1,57 @@
+package net.maku.system.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import net.maku.framework.common.utils.DateUtils;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 导出任务
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "导出任务")
+public class SysExportTaskVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "任务ID")
+    private String taskId;
+
+    @Schema(description = "导出名称")
+    private String name;
+
+    @Schema(description = "状态  0：等待  1：导出中  2：成功  3：失败")
+    private Integer status;
+
+    @Schema(description = "总行数，未统计时为空")
+    private Long total;
+
+    @Schema(description = "已导出行数")
+    private Long rows;
+
+    @Schema(description = "文件名称")
+    private String fileName;
+
+    @Schema(description = "文件大小")
+    private Long size;
+
+    @Schema(description = "文件路径", hidden = true)
+    private String path;
+
+    @Schema(description = "失败原因")
+    private String error;
+
+    @Schema(description = "创建时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime createTime;
+
+    @Schema(description = "完成时间")
+    @JsonFormat(pattern = DateUtils.DATE_TIME_PATTERN)
+    private LocalDateTime finishTime;
+
+}
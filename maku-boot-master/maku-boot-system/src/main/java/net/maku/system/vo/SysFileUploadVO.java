@@ -27,4 +27,7 @@ public class SysFileUploadVO implements Serializable {
 
     @Schema(description = "存储平台")
     private String platform;
+
+    @Schema(description = "文件SHA-256，开启内容寻址去重时返回")
+    private String hash;
 }
@@ -0,0 +1,31 @@
+package net.maku.system.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 导入结果
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "导入结果")
+public class SysImportResultVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "总行数")
+    private Long total;
+
+    @Schema(description = "成功行数")
+    private Long success;
+
+    @Schema(description = "失败行数")
+    private Long failed;
+
+    @Schema(description = "失败数据的导出任务ID，通过导出任务下载，没有失败数据时为空")
+    private String errorTaskId;
+
+}
@@ -0,0 +1,52 @@
+package net.maku.system.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 分片上传
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+@Schema(description = "分片上传")
+public class SysMultipartUploadVO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "上传ID")
+    private String uploadId;
+
+    @Schema(description = "文件名称", requiredMode = Schema.RequiredMode.REQUIRED)
+    private String name;
+
+    @Schema(description = "文件大小", requiredMode = Schema.RequiredMode.REQUIRED)
+    private Long size;
+
+    @Schema(description = "文件标识，如文件MD5，相同标识的未完成上传可以断点续传")
+    private String identifier;
+
+    @Schema(description = "分片大小，最小5MB")
+    private Long chunkSize;
+
+    @Schema(description = "分片数量")
+    private Integer chunkCount;
+
+    @Schema(description = "已上传的分片序号")
+    private List<Integer> uploadedParts;
+
+    @Schema(description = "文件路径")
+    private String path;
+
+    @Schema(description = "存储平台")
+    private String platform;
+
+    @Schema(description = "存储平台的分片上传ID", hidden = true)
+    private String storageUploadId;
+
+    @Schema(description = "上传用户ID", hidden = true)
+    private Long userId;
+}
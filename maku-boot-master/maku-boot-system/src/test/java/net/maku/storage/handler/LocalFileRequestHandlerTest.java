@@ -0,0 +1,142 @@
+package net.maku.storage.handler;
+
+import jakarta.servlet.http.HttpServletResponse;
+import net.maku.storage.properties.LocalStorageProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地存储下载测试，Range 解析、If-Range 和存储目录以外的路径
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class LocalFileRequestHandlerTest {
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path root;
+
+    private LocalStorageProperties properties;
+
+    @BeforeEach
+    public void init() throws Exception {
+        Files.createDirectories(root.resolve("20240101"));
+        Files.writeString(root.resolve("20240101/test.txt"), CONTENT);
+        Files.createDirectories(root.resolve(".multipart"));
+        Files.writeString(root.resolve(".multipart/upload"), CONTENT);
+
+        properties = new LocalStorageProperties();
+        properties.setPath(root.toString());
+    }
+
+    @Test
+    public void fullFile() throws Exception {
+        MockHttpServletResponse response = handle("20240101/test.txt", null, null);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    public void singleRange() throws Exception {
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=2-5", null);
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 2-5/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("2345", response.getContentAsString());
+
+        // 后缀区间，最后 3 个字节
+        response = handle("20240101/test.txt", "bytes=-3", null);
+        assertEquals("bytes 33-35/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("xyz", response.getContentAsString());
+    }
+
+    @Test
+    public void multipleRanges() throws Exception {
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=0-1,10-11", null);
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-1/36\r\n\r\n01\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 10-11/36\r\n\r\nab\r\n"));
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, response.getContentLengthLong());
+    }
+
+    @Test
+    public void unsatisfiableRange() throws Exception {
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=100-200", null);
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        assertEquals("bytes */36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+
+        // 多个区间的总大小超过文件大小
+        response = handle("20240101/test.txt", "bytes=0-35,0-35", null);
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+
+        response = handle("20240101/test.txt", "items=0-1", null);
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+    }
+
+    @Test
+    public void ifRangeMismatch() throws Exception {
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=2-5", "\"other\"");
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    public void ifRangeMatch() throws Exception {
+        String eTag = handle("20240101/test.txt", null, null).getHeader(HttpHeaders.ETAG);
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=2-5", eTag);
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    public void withoutCache() throws Exception {
+        // 不使用内存缓存时，通过 FileChannel 写出
+        properties.setCacheSize(0);
+        MockHttpServletResponse response = handle("20240101/test.txt", "bytes=30-", null);
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("uvwxyz", response.getContentAsString());
+    }
+
+    @Test
+    public void rejectOutsideRoot() throws Exception {
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, handle("../test.txt", null, null).getStatus());
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, handle("20240101/%2e%2e/%2e%2e/test.txt", null, null).getStatus());
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, handle(".multipart/upload", null, null).getStatus());
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, handle("20240101/none.txt", null, null).getStatus());
+    }
+
+    private MockHttpServletResponse handle(String path, String range, String ifRange) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/upload/" + path);
+        request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new LocalFileRequestHandler(properties).handleRequest(request, response);
+        return response;
+    }
+}
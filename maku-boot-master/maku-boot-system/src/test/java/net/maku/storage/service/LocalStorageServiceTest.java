@@ -0,0 +1,96 @@
+package net.maku.storage.service;
+
+import net.maku.framework.common.exception.ServerException;
+import net.maku.storage.properties.LocalStorageProperties;
+import net.maku.storage.properties.StorageProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地存储测试，分片乱序写入、分片不完整、完成和取消，以及跳出存储目录的路径
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class LocalStorageServiceTest {
+    @TempDir
+    Path root;
+
+    private LocalStorageService storageService;
+
+    @BeforeEach
+    public void init() {
+        StorageProperties properties = new StorageProperties();
+        properties.setConfig(new StorageProperties.StorageConfig());
+        properties.getConfig().setDomain("http://localhost");
+        properties.setLocal(new LocalStorageProperties());
+        properties.getLocal().setPath(root.toString());
+        storageService = new LocalStorageService(properties);
+    }
+
+    @Test
+    public void completeMultipartUpload() throws Exception {
+        String uploadId = storageService.initMultipartUpload("20240101/test.txt", 10);
+        Path multipartFile = root.resolve(LocalStorageService.MULTIPART_DIR).resolve(uploadId);
+        assertEquals(10, Files.size(multipartFile));
+
+        // 分片不论先后顺序，按位置写入
+        SortedMap<Integer, String> parts = new TreeMap<>();
+        parts.put(3, storageService.uploadPart("20240101/test.txt", uploadId, 3, 8, stream("89"), 2));
+        parts.put(1, storageService.uploadPart("20240101/test.txt", uploadId, 1, 0, stream("0123"), 4));
+        parts.put(2, storageService.uploadPart("20240101/test.txt", uploadId, 2, 4, stream("4567"), 4));
+
+        String url = storageService.completeMultipartUpload("20240101/test.txt", uploadId, parts);
+
+        assertEquals("http://localhost/upload/20240101/test.txt", url);
+        assertEquals("0123456789", Files.readString(root.resolve("20240101/test.txt")));
+        assertFalse(Files.exists(multipartFile));
+    }
+
+    @Test
+    public void incompletePart() {
+        String uploadId = storageService.initMultipartUpload("20240101/test.txt", 10);
+
+        assertThrows(ServerException.class, () -> storageService.uploadPart("20240101/test.txt", uploadId, 1, 0, stream("01"), 4));
+    }
+
+    @Test
+    public void abortMultipartUpload() {
+        String uploadId = storageService.initMultipartUpload("20240101/test.txt", 10);
+        Path multipartFile = root.resolve(LocalStorageService.MULTIPART_DIR).resolve(uploadId);
+        assertTrue(Files.exists(multipartFile));
+
+        storageService.abortMultipartUpload("20240101/test.txt", uploadId);
+
+        assertFalse(Files.exists(multipartFile));
+        assertFalse(Files.exists(root.resolve("20240101/test.txt")));
+    }
+
+    @Test
+    public void rejectPathTraversal() throws Exception {
+        Files.writeString(root.resolveSibling("secret.txt"), "secret");
+
+        assertThrows(ServerException.class, () -> storageService.download("../secret.txt"));
+        assertThrows(ServerException.class, () -> storageService.delete("20240101/../../secret.txt"));
+        assertThrows(ServerException.class, () -> storageService.upload(new byte[1], "/tmp/test.txt"));
+        assertTrue(Files.exists(root.resolveSibling("secret.txt")));
+
+        assertNull(storageService.getPathByUrl("http://localhost/upload/../secret.txt"));
+        assertNull(storageService.getPathByUrl("http://localhost/upload//etc/passwd"));
+        assertEquals("20240101/test.png", storageService.getPathByUrl("http://localhost/upload/20240101/test.png"));
+    }
+
+    private static ByteArrayInputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
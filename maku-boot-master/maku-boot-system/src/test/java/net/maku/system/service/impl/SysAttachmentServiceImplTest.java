@@ -0,0 +1,151 @@
+package net.maku.system.service.impl;
+
+import net.maku.framework.security.user.UserDetail;
+import net.maku.storage.service.StorageService;
+import net.maku.system.dao.SysAttachmentDao;
+import net.maku.system.dao.SysFileRefDao;
+import net.maku.system.entity.SysAttachmentEntity;
+import net.maku.system.entity.SysFileRefEntity;
+import net.maku.system.service.SysThumbnailService;
+import net.maku.system.vo.SysAttachmentVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 附件去重测试，引用计数按租户隔离，删除时使用保存的存储路径
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class SysAttachmentServiceImplTest {
+    private static final String HASH = "ab" + "0".repeat(62);
+
+    private StorageService storageService;
+    private SysThumbnailService sysThumbnailService;
+    private SysAttachmentDao sysAttachmentDao;
+    private SysFileRefDao sysFileRefDao;
+    private SysAttachmentServiceImpl sysAttachmentService;
+
+    @BeforeEach
+    public void init() {
+        storageService = mock(StorageService.class);
+        sysThumbnailService = mock(SysThumbnailService.class);
+        sysAttachmentDao = mock(SysAttachmentDao.class);
+        sysFileRefDao = mock(SysFileRefDao.class);
+        sysAttachmentService = new SysAttachmentServiceImpl(storageService, sysThumbnailService, sysFileRefDao,
+                mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(sysAttachmentService, "baseMapper", sysAttachmentDao);
+
+        login(2L);
+    }
+
+    @AfterEach
+    public void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void acquireInCurrentTenant() {
+        when(sysFileRefDao.increment(2L, HASH)).thenReturn(1);
+        when(sysFileRefDao.getByHash(2L, HASH)).thenReturn(fileRef(2L, "hash/2/ab/" + HASH + ".png"));
+
+        assertEquals("http://localhost/hash/2/ab/" + HASH + ".png", sysAttachmentService.acquireByHash(HASH));
+
+        // 其他租户上传过相同文件，也不能引用
+        login(3L);
+        assertNull(sysAttachmentService.acquireByHash(HASH));
+        verify(sysFileRefDao).increment(3L, HASH);
+    }
+
+    @Test
+    public void saveWithStoredPath() {
+        String path = "hash/2/ab/" + HASH + ".png";
+        when(sysFileRefDao.getByHash(2L, HASH)).thenReturn(fileRef(2L, path));
+
+        sysAttachmentService.save(attachment("http://localhost/" + path));
+
+        SysAttachmentEntity entity = captureInsert();
+        assertEquals(HASH, entity.getHash());
+        assertEquals(path, entity.getPath());
+        assertEquals(2L, entity.getTenantId());
+        verify(sysFileRefDao).incrementIfLess(2L, HASH);
+    }
+
+    @Test
+    public void saveWithoutOtherTenantHash() {
+        // 其他租户的哈希值，当前租户没有引用记录，不参与去重
+        sysAttachmentService.save(attachment("http://localhost/hash/3/ab/" + HASH + ".png"));
+
+        SysAttachmentEntity entity = captureInsert();
+        assertNull(entity.getHash());
+        assertNull(entity.getPath());
+        verify(sysFileRefDao, never()).incrementIfLess(anyLong(), anyString());
+    }
+
+    @Test
+    public void deleteStoredPath() {
+        // 存储前缀修改后，仍删除保存时的路径
+        String path = "old/hash/2/ab/" + HASH + ".png";
+        when(sysFileRefDao.getByHash(2L, HASH)).thenReturn(fileRef(2L, path));
+        when(sysFileRefDao.deleteUnreferenced(2L, HASH)).thenReturn(1);
+
+        ReflectionTestUtils.invokeMethod(sysAttachmentService, "deleteFile", 2L, HASH);
+
+        verify(storageService).delete(path);
+        verify(sysThumbnailService).delete(path);
+        verify(storageService, never()).getHashPath(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void keepReferencedFile() {
+        when(sysFileRefDao.getByHash(2L, HASH)).thenReturn(fileRef(2L, "hash/2/ab/" + HASH + ".png"));
+        when(sysFileRefDao.deleteUnreferenced(2L, HASH)).thenReturn(0);
+
+        ReflectionTestUtils.invokeMethod(sysAttachmentService, "deleteFile", 2L, HASH);
+
+        verify(storageService, never()).delete(anyString());
+    }
+
+    private SysAttachmentEntity captureInsert() {
+        ArgumentCaptor<SysAttachmentEntity> captor = ArgumentCaptor.forClass(SysAttachmentEntity.class);
+        verify(sysAttachmentDao).insert(captor.capture());
+        return captor.getValue();
+    }
+
+    private static SysAttachmentVO attachment(String url) {
+        SysAttachmentVO vo = new SysAttachmentVO();
+        vo.setName("a.png");
+        vo.setUrl(url);
+        vo.setHash(HASH);
+        return vo;
+    }
+
+    private static SysFileRefEntity fileRef(Long tenantId, String path) {
+        SysFileRefEntity entity = new SysFileRefEntity();
+        entity.setTenantId(tenantId);
+        entity.setHash(HASH);
+        entity.setPath(path);
+        entity.setUrl("http://localhost/" + path);
+        entity.setRefCount(1);
+        return entity;
+    }
+
+    private static void login(Long tenantId) {
+        UserDetail user = new UserDetail();
+        user.setId(1L);
+        user.setTenantId(tenantId);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+    }
+}
@@ -0,0 +1,132 @@
+package net.maku.system.service.impl;
+
+import net.maku.framework.common.exception.ServerException;
+import net.maku.storage.enums.StorageTypeEnum;
+import net.maku.storage.properties.StorageProperties;
+import net.maku.storage.service.StorageService;
+import net.maku.system.cache.SysUploadCache;
+import net.maku.system.service.SysAttachmentService;
+import net.maku.system.service.SysThumbnailService;
+import net.maku.system.vo.SysMultipartUploadVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分片上传测试，文件大小限制、分片划分、分片校验和过期上传的清理
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class SysFileUploadServiceImplTest {
+    private static final long MB = 1024 * 1024;
+
+    private StorageService storageService;
+    private SysUploadCache sysUploadCache;
+    private SysFileUploadServiceImpl sysFileUploadService;
+
+    @BeforeEach
+    public void init() {
+        StorageProperties properties = new StorageProperties();
+        properties.setConfig(new StorageProperties.StorageConfig());
+        properties.getConfig().setType(StorageTypeEnum.LOCAL);
+        properties.getConfig().setMaxFileSize(100 * MB);
+
+        storageService = mock(StorageService.class);
+        storageService.properties = properties;
+        when(storageService.getPath(anyString())).thenAnswer(invocation -> "20240101/" + invocation.getArgument(0));
+        when(storageService.initMultipartUpload(anyString(), anyLong())).thenReturn("storage-upload-id");
+
+        sysUploadCache = mock(SysUploadCache.class);
+        sysFileUploadService = new SysFileUploadServiceImpl(storageService, sysUploadCache,
+                mock(SysAttachmentService.class), mock(SysThumbnailService.class));
+    }
+
+    @Test
+    public void rejectOversizeFile() {
+        assertThrows(ServerException.class, () -> sysFileUploadService.initMultipartUpload(request(100 * MB + 1, null)));
+        verify(storageService, never()).initMultipartUpload(anyString(), anyLong());
+    }
+
+    @Test
+    public void splitChunks() {
+        SysMultipartUploadVO upload = sysFileUploadService.initMultipartUpload(request(12 * MB, null));
+        assertEquals(StorageService.PART_SIZE, upload.getChunkSize());
+        assertEquals(3, upload.getChunkCount());
+        assertEquals("storage-upload-id", upload.getStorageUploadId());
+        verify(sysUploadCache).saveUpload(upload);
+
+        // 分片大小不能小于5MB，也不能超过单个分片的最大大小
+        assertEquals(StorageService.PART_SIZE, sysFileUploadService.initMultipartUpload(request(12 * MB, MB)).getChunkSize());
+        assertEquals(StorageService.MAX_PART_SIZE, sysFileUploadService.initMultipartUpload(request(100 * MB, 100 * MB)).getChunkSize());
+    }
+
+    @Test
+    public void validatePart() {
+        SysMultipartUploadVO upload = sysFileUploadService.initMultipartUpload(request(12 * MB, null));
+        when(sysUploadCache.getUpload(upload.getUploadId())).thenReturn(upload);
+        InputStream inputStream = new ByteArrayInputStream(new byte[0]);
+
+        assertThrows(ServerException.class, () -> sysFileUploadService.uploadPart(upload.getUploadId(), 0, inputStream, StorageService.PART_SIZE));
+        assertThrows(ServerException.class, () -> sysFileUploadService.uploadPart(upload.getUploadId(), 4, inputStream, StorageService.PART_SIZE));
+        // 最后一个分片为剩余的 2MB
+        assertThrows(ServerException.class, () -> sysFileUploadService.uploadPart(upload.getUploadId(), 3, inputStream, StorageService.PART_SIZE));
+
+        when(storageService.uploadPart(anyString(), anyString(), anyInt(), anyLong(), any(), anyLong())).thenReturn("etag");
+        sysFileUploadService.uploadPart(upload.getUploadId(), 3, inputStream, 2 * MB);
+        verify(storageService).uploadPart(upload.getPath(), "storage-upload-id", 3, 2L * StorageService.PART_SIZE, inputStream, 2 * MB);
+        verify(sysUploadCache).savePart(upload.getUploadId(), 3, "etag");
+    }
+
+    @Test
+    public void sweepExpiredUploads() {
+        SysMultipartUploadVO expired = upload("expired");
+        SysMultipartUploadVO active = upload("active");
+        when(sysUploadCache.listActive()).thenReturn(Map.of("expired", expired, "active", active));
+        when(sysUploadCache.isExpired("expired")).thenReturn(true);
+        when(sysUploadCache.isExpired("active")).thenReturn(false);
+        when(sysUploadCache.deleteActive("expired")).thenReturn(true);
+
+        ReflectionTestUtils.invokeMethod(sysFileUploadService, "sweep");
+
+        verify(storageService).abortMultipartUpload(expired.getPath(), expired.getStorageUploadId());
+        verify(storageService, never()).abortMultipartUpload(eq(active.getPath()), anyString());
+        verify(sysUploadCache).delete(expired);
+    }
+
+    @Test
+    public void sweepSkipsUploadClaimedByOtherNode() {
+        SysMultipartUploadVO expired = upload("expired");
+        when(sysUploadCache.listActive()).thenReturn(Map.of("expired", expired));
+        when(sysUploadCache.isExpired("expired")).thenReturn(true);
+        when(sysUploadCache.deleteActive("expired")).thenReturn(false);
+
+        ReflectionTestUtils.invokeMethod(sysFileUploadService, "sweep");
+
+        verify(storageService, never()).abortMultipartUpload(anyString(), anyString());
+    }
+
+    private static SysMultipartUploadVO request(long size, Long chunkSize) {
+        SysMultipartUploadVO vo = new SysMultipartUploadVO();
+        vo.setName("test.zip");
+        vo.setSize(size);
+        vo.setChunkSize(chunkSize);
+        return vo;
+    }
+
+    private static SysMultipartUploadVO upload(String uploadId) {
+        SysMultipartUploadVO upload = new SysMultipartUploadVO();
+        upload.setUploadId(uploadId);
+        upload.setPath("20240101/" + uploadId + ".zip");
+        upload.setStorageUploadId("storage-" + uploadId);
+        return upload;
+    }
+}
@@ -0,0 +1,76 @@
+package net.maku.system.service.impl;
+
+import net.maku.framework.common.exception.ServerException;
+import net.maku.storage.properties.LocalStorageProperties;
+import net.maku.storage.properties.StorageProperties;
+import net.maku.storage.service.LocalStorageService;
+import net.maku.system.cache.SysThumbnailCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 缩略图测试，访问时不等待生成，不能访问存储目录以外的文件
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class SysThumbnailServiceImplTest {
+    private static final String URL = "http://localhost/upload/20240101/test.png";
+
+    @TempDir
+    Path root;
+
+    private SysThumbnailCache sysThumbnailCache;
+    private SysThumbnailServiceImpl sysThumbnailService;
+
+    @BeforeEach
+    public void init() throws Exception {
+        StorageProperties properties = new StorageProperties();
+        properties.setConfig(new StorageProperties.StorageConfig());
+        properties.getConfig().setDomain("http://localhost");
+        properties.setLocal(new LocalStorageProperties());
+        properties.getLocal().setPath(root.toString());
+
+        Files.createDirectories(root.resolve("20240101"));
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", root.resolve("20240101/test.png").toFile());
+
+        sysThumbnailCache = mock(SysThumbnailCache.class);
+        sysThumbnailService = new SysThumbnailServiceImpl(new LocalStorageService(properties), sysThumbnailCache);
+        sysThumbnailService.init();
+    }
+
+    @AfterEach
+    public void destroy() {
+        sysThumbnailService.destroy();
+    }
+
+    @Test
+    public void returnOriginalWhileGenerating() {
+        // 缩略图还没生成，直接返回原图，后台生成
+        assertEquals(URL, sysThumbnailService.getThumbnailUrl(URL, 100));
+        verify(sysThumbnailCache, timeout(5000)).save(eq("20240101/test.png_100.jpg"), anyString());
+        assertTrue(Files.exists(root.resolve("20240101/test.png_100.jpg")));
+
+        // 已生成的缩略图，从缓存获取
+        when(sysThumbnailCache.get("20240101/test.png_100.jpg")).thenReturn(URL + "_100.jpg");
+        assertEquals(URL + "_100.jpg", sysThumbnailService.getThumbnailUrl(URL, 100));
+    }
+
+    @Test
+    public void rejectPathTraversal() {
+        assertThrows(ServerException.class, () -> sysThumbnailService.getThumbnailUrl("http://localhost/upload/../secret.png", 100));
+        assertThrows(ServerException.class, () -> sysThumbnailService.getThumbnailUrl("http://localhost/upload/20240101/../../secret.png", 100));
+        verify(sysThumbnailCache, never()).get(anyString());
+    }
+}
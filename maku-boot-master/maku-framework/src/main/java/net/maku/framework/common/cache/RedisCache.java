@@ -67,10 +67,21 @@ public class RedisCache {
         return get(key, NOT_EXPIRE);
     }
 
+    /**
+     * key不存在时设置，返回是否设置成功
+     */
+    public Boolean setIfAbsent(String key, Object value, long expire) {
+        return redisTemplate.opsForValue().setIfAbsent(key, value, expire, TimeUnit.SECONDS);
+    }
+
     public Long increment(String key) {
         return redisTemplate.opsForValue().increment(key);
     }
 
+    public Long decrement(String key) {
+        return redisTemplate.opsForValue().decrement(key);
+    }
+
     public Boolean hasKey(String key) {
         return redisTemplate.hasKey(key);
     }
@@ -132,8 +143,8 @@ public class RedisCache {
         return redisTemplate.getExpire(key, TimeUnit.SECONDS);
     }
 
-    public void hDel(String key, Object... fields) {
-        redisTemplate.opsForHash().delete(key, fields);
+    public Long hDel(String key, Object... fields) {
+        return redisTemplate.opsForHash().delete(key, fields);
     }
 
     public void leftPush(String key, Object value) {
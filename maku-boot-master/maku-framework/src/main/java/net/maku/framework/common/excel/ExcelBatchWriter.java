@@ -0,0 +1,153 @@
+package net.maku.framework.common.excel;
+
+import cn.hutool.core.io.IoUtil;
+import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.ExcelWriter;
+import com.alibaba.excel.converters.longconverter.LongStringConverter;
+import com.alibaba.excel.write.metadata.WriteSheet;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * excel分批写入，数据按批次写入后即可释放，内存占用不随总行数增长
+ * <p>
+ * 单个sheet超过最大行数时，自动写入下一个sheet
+ * <p>
+ * 数据在关闭时才输出，写入失败时丢弃已写入的数据，不输出不完整的文件；
+ * 使用 try-with-resources 时无法得知是否失败，需通过 {@link #export(Consumer)} 写入，或失败时调用 {@link #fail()}
+ *
+ * @param <T> 数据类型
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class ExcelBatchWriter<T> implements AutoCloseable {
+    /**
+     * 每批次查询、翻译、写入的行数
+     */
+    public static final int BATCH_SIZE = 2000;
+    /**
+     * 单个sheet最大行数，xlsx最多1048576行（含表头）
+     */
+    private static final int MAX_SHEET_ROWS = 1000000;
+
+    private final OutputStream outputStream;
+    private final ExcelWriter excelWriter;
+    private final String sheetName;
+    private WriteSheet writeSheet;
+    private int sheetNo;
+    private int sheetRows;
+    private long total;
+    private LongConsumer listener;
+    private Runnable failureHandler;
+    private boolean failed;
+
+    public ExcelBatchWriter(OutputStream outputStream, Class<T> head, String sheetName) {
+        this.outputStream = outputStream;
+        this.excelWriter = EasyExcel.write(outputStream, head).registerConverter(new LongStringConverter())
+                .autoCloseStream(false).build();
+        this.sheetName = StringUtils.isBlank(sheetName) ? "sheet1" : sheetName;
+    }
+
+    /**
+     * 写入一批数据
+     *
+     * @param data 数据列表
+     */
+    public void write(List<T> data) {
+        int from = 0;
+        try {
+            while (from < data.size()) {
+                if (writeSheet == null || sheetRows >= MAX_SHEET_ROWS) {
+                    writeSheet = EasyExcel.writerSheet(sheetNo, sheetNo == 0 ? sheetName : sheetName + "_" + (sheetNo + 1)).build();
+                    sheetNo++;
+                    sheetRows = 0;
+                }
+
+                int to = Math.min(data.size(), from + MAX_SHEET_ROWS - sheetRows);
+                excelWriter.write(from == 0 && to == data.size() ? data : data.subList(from, to), writeSheet);
+                sheetRows += to - from;
+                total += to - from;
+                from = to;
+            }
+        } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+        }
+
+        if (listener != null) {
+            listener.accept(total);
+        }
+    }
+
+    /**
+     * 每批数据写入后回调，参数为已写入的总行数，用于记录导出进度
+     */
+    public void setListener(LongConsumer listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 写入失败时的处理，如重置浏览器响应，由全局异常处理返回错误信息；设置后写入失败时不关闭输出流
+     */
+    public void setFailureHandler(Runnable failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * 写入数据后关闭，写入过程中抛出异常时不输出文件，并继续抛出异常
+     *
+     * @param exporter 分批查询数据，调用 {@link #write(List)} 写入
+     */
+    public void export(Consumer<ExcelBatchWriter<T>> exporter) {
+        try {
+            exporter.accept(this);
+        } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 标记写入失败，关闭时不输出文件
+     */
+    public void fail() {
+        failed = true;
+    }
+
+    /**
+     * 已写入的总行数
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (failed) {
+            // 丢弃已写入的临时数据，不输出文件
+            excelWriter.writeContext().finish(true);
+            if (failureHandler != null) {
+                failureHandler.run();
+            } else {
+                IoUtil.close(outputStream);
+            }
+            return;
+        }
+
+        try {
+            // 没有数据时，也输出只有表头的sheet
+            if (writeSheet == null) {
+                excelWriter.write(List.of(), EasyExcel.writerSheet(0, sheetName).build());
+            }
+            excelWriter.finish();
+        } finally {
+            IoUtil.close(outputStream);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package net.maku.framework.common.excel;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.core.util.StrUtil;
+import com.fhs.core.trans.anno.Trans;
+import com.fhs.core.trans.constant.TransType;
+import com.fhs.core.trans.util.ReflectUtils;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * excel行数据字典翻译
+ * <p>
+ * 每个类只扫描一次 {@link Trans} 字典字段，生成字段的 getter、setter 调用，翻译时不再反射；
+ * 字典数据刷新时生成不可变的双向字典，导出时 值 -> 标签，导入时 标签 -> 值
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public final class ExcelDictTranslator {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * 字典数据，key: 字典类型
+     */
+    private static volatile Map<String, Dict> dicts = Map.of();
+
+    /**
+     * 每个类的字典字段
+     */
+    private static final ClassValue<List<DictField>> FIELDS = new ClassValue<>() {
+        @Override
+        protected List<DictField> computeValue(Class<?> clazz) {
+            return compile(clazz);
+        }
+    };
+
+    private ExcelDictTranslator() {
+    }
+
+    /**
+     * 刷新字典数据，替换全部字典
+     *
+     * @param dictMap key: 字典类型，value: 字典值 -> 字典标签
+     */
+    public static void refresh(Map<String, Map<String, String>> dictMap) {
+        Map<String, Dict> map = new HashMap<>(dictMap.size() * 2);
+        dictMap.forEach((type, labels) -> {
+            Map<String, String> values = new HashMap<>(labels.size() * 2);
+            // 标签重复时，取第一个字典值
+            labels.forEach((value, label) -> values.putIfAbsent(label, value));
+            map.put(type, new Dict(Map.copyOf(labels), Map.copyOf(values)));
+        });
+        dicts = Map.copyOf(map);
+    }
+
+    /**
+     * 导出翻译，把字典值翻译成标签，写入 {@link Trans#ref()} 字段
+     *
+     * @param dataList 数据列表
+     */
+    public static <T> void translate(List<T> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+
+        List<DictField> fields = FIELDS.get(dataList.get(0).getClass());
+        Map<String, Dict> dicts = ExcelDictTranslator.dicts;
+        for (DictField field : fields) {
+            Dict dict = dicts.get(field.type());
+            if (dict == null) {
+                continue;
+            }
+            for (T data : dataList) {
+                Object value = field.getter().apply(data);
+                if (value == null) {
+                    continue;
+                }
+                String label = dict.labels().get(value.toString());
+                if (label != null) {
+                    field.refSetter().accept(data, label);
+                }
+            }
+        }
+    }
+
+    /**
+     * 导入翻译，把 {@link Trans#ref()} 字段中的标签翻译成字典值，写入字典字段
+     *
+     * @param dataList 数据列表
+     */
+    public static <T> void parse(List<T> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+
+        List<DictField> fields = FIELDS.get(dataList.get(0).getClass());
+        Map<String, Dict> dicts = ExcelDictTranslator.dicts;
+        for (DictField field : fields) {
+            Dict dict = dicts.get(field.type());
+            if (dict == null) {
+                continue;
+            }
+            for (T data : dataList) {
+                Object label = field.refGetter().apply(data);
+                if (label == null) {
+                    continue;
+                }
+                String value = dict.values().get(label.toString());
+                if (StrUtil.isNotBlank(value)) {
+                    field.setter().accept(data, field.converter().apply(value));
+                }
+            }
+        }
+    }
+
+    /**
+     * 扫描类的字典字段，key、ref 都不为空的才处理
+     */
+    private static List<DictField> compile(Class<?> clazz) {
+        List<DictField> list = new ArrayList<>();
+        for (Field field : ReflectUtils.getAnnotationField(clazz, Trans.class)) {
+            Trans trans = field.getAnnotation(Trans.class);
+            if (!TransType.DICTIONARY.equals(trans.type()) || !StrUtil.isAllNotBlank(trans.key(), trans.ref())) {
+                continue;
+            }
+
+            Field ref = ReflectUtils.getDeclaredField(clazz, trans.ref());
+            if (ref == null) {
+                throw new ServerException(StrUtil.format("字典翻译字段不存在：{}.{}", clazz.getName(), trans.ref()));
+            }
+
+            list.add(new DictField(trans.key(), getter(clazz, field), setter(clazz, field), getter(clazz, ref), setter(clazz, ref),
+                    converter(field.getType())));
+        }
+        return List.copyOf(list);
+    }
+
+    /**
+     * 优先通过 public getter 生成 Function，没有 getter 时直接读取字段
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(Class<?> clazz, Field field) {
+        MethodHandles.Lookup lookup = lookup(clazz);
+        Method method = ReflectUtil.getPublicMethod(clazz, "get" + StrUtil.upperFirst(field.getName()));
+        try {
+            if (method != null && method.getParameterCount() == 0) {
+                MethodHandle handle = lookup.unreflect(method);
+                try {
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                            GETTER_TYPE, handle, MethodType.methodType(wrap(method.getReturnType()), clazz));
+                    return (Function<Object, Object>) site.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    log.debug("生成 getter 失败，使用 MethodHandle 调用：{}.{}", clazz.getName(), method.getName(), e);
+                }
+                return invoker(handle.asType(GETTER_TYPE));
+            }
+            return invoker(lookup.unreflectGetter(field).asType(GETTER_TYPE));
+        } catch (IllegalAccessException e) {
+            throw new ServerException(StrUtil.format("字典翻译字段不能访问：{}.{}", clazz.getName(), field.getName()));
+        }
+    }
+
+    /**
+     * 优先通过 public setter 生成 BiConsumer，没有 setter 时直接写入字段
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setter(Class<?> clazz, Field field) {
+        MethodHandles.Lookup lookup = lookup(clazz);
+        Method method = ReflectUtil.getPublicMethod(clazz, "set" + StrUtil.upperFirst(field.getName()), field.getType());
+        try {
+            if (method != null) {
+                MethodHandle handle = lookup.unreflect(method);
+                try {
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                            SETTER_TYPE, handle, MethodType.methodType(void.class, clazz, wrap(field.getType())));
+                    return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    log.debug("生成 setter 失败，使用 MethodHandle 调用：{}.{}", clazz.getName(), method.getName(), e);
+                }
+                return invoker(handle.asType(SETTER_TYPE), field);
+            }
+            return invoker(lookup.unreflectSetter(field).asType(SETTER_TYPE), field);
+        } catch (IllegalAccessException e) {
+            throw new ServerException(StrUtil.format("字典翻译字段不能访问：{}.{}", clazz.getName(), field.getName()));
+        }
+    }
+
+    /**
+     * 字典字段一般是 Integer、String，其他类型通过 Convert 转换
+     */
+    private static Function<String, Object> converter(Class<?> type) {
+        if (type == String.class) {
+            return value -> value;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer::valueOf;
+        }
+        if (type == Long.class || type == long.class) {
+            return Long::valueOf;
+        }
+        return value -> Convert.convert(type, value);
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> clazz) {
+        try {
+            return MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new ServerException(StrUtil.format("字典翻译类不能访问：{}", clazz.getName()));
+        }
+    }
+
+    private static Function<Object, Object> invoker(MethodHandle handle) {
+        return data -> {
+            try {
+                return handle.invokeExact(data);
+            } catch (Throwable e) {
+                throw new ServerException("字典翻译失败：" + e.getMessage());
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> invoker(MethodHandle handle, Field field) {
+        return (data, value) -> {
+            try {
+                handle.invokeExact(data, value);
+            } catch (Throwable e) {
+                throw new ServerException(StrUtil.format("字典翻译失败：{} - {}", field.getName(), e.getMessage()));
+            }
+        };
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    /**
+     * 字典
+     *
+     * @param labels 字典值 -> 字典标签
+     * @param values 字典标签 -> 字典值
+     */
+    private record Dict(Map<String, String> labels, Map<String, String> values) {
+    }
+
+    /**
+     * 字典字段
+     *
+     * @param type      字典类型
+     * @param getter    字典字段 getter
+     * @param setter    字典字段 setter
+     * @param refGetter 标签字段 getter
+     * @param refSetter 标签字段 setter
+     * @param converter 字典值转换为字典字段类型
+     */
+    private record DictField(String type, Function<Object, Object> getter, BiConsumer<Object, Object> setter,
+                             Function<Object, Object> refGetter, BiConsumer<Object, Object> refSetter,
+                             Function<String, Object> converter) {
+    }
+}
@@ -0,0 +1,40 @@
+package net.maku.framework.common.excel;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.List;
+
+/**
+ * excel导入处理，由导入流水线的多个线程并行调用，实现需要线程安全
+ *
+ * @param <T> 数据类型
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public interface ExcelImportHandler<T> {
+
+    /**
+     * 校验一批数据，不通过的行设置错误信息，可以在这里按批查询数据库判断是否重复、反向解析字典
+     *
+     * @param rows 一批数据，已排除无法解析的行
+     */
+    void validate(List<ExcelImportRow<T>> rows);
+
+    /**
+     * 保存一批校验通过的数据，每批在单独的事务中执行，失败时这一批数据都记为失败
+     *
+     * @param list 校验通过的数据
+     */
+    void save(List<T> list);
+
+    /**
+     * 保存时违反唯一索引的错误信息，一批数据违反唯一索引时逐行重新保存，违反的行记录此错误
+     *
+     * @param data 违反唯一索引的数据
+     * @param e    唯一索引异常
+     * @return 错误信息
+     */
+    default String getDuplicateError(T data, DuplicateKeyException e) {
+        return "数据已经存在";
+    }
+}
@@ -0,0 +1,250 @@
+package net.maku.framework.common.excel;
+
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.extra.spring.SpringUtil;
+import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.context.AnalysisContext;
+import com.alibaba.excel.event.AnalysisEventListener;
+import com.alibaba.excel.exception.ExcelDataConvertException;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.exception.ServerException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * excel导入流水线
+ * <p>
+ * 解析线程按批放入有界队列，队列满时解析等待；多个工作线程并行校验、保存，每批在单独的事务中保存。
+ * 校验不通过或保存失败的行记录到导入结果，不影响其他数据导入。
+ * <p>
+ * 工作线程来自所有导入共享的线程池，同时保存的批次不超过 {@link #MAX_THREADS}，避免并发导入占满数据库连接
+ *
+ * @param <T> 数据类型
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class ExcelImportPipeline<T> {
+    /**
+     * 每批行数
+     */
+    public static final int BATCH_SIZE = 500;
+    /**
+     * 每个导入的工作线程数量
+     */
+    public static final int WORKERS = 4;
+    /**
+     * 所有导入共享的最大线程数量，每个线程保存时占用一个数据库连接
+     */
+    public static final int MAX_THREADS = 8;
+    /**
+     * 队列中等待处理的批次数量
+     */
+    private static final int QUEUE_SIZE = WORKERS * 2;
+    /**
+     * 错误信息最大长度
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    /**
+     * 所有导入共享的线程池，线程都在使用时，后提交的导入在队列中等待
+     */
+    private static final ExecutorService EXECUTOR = ExecutorBuilder.create()
+            .setCorePoolSize(MAX_THREADS)
+            .setMaxPoolSize(MAX_THREADS)
+            .setKeepAliveTime(60, TimeUnit.SECONDS)
+            .setAllowCoreThreadTimeOut(true)
+            .setWorkQueue(new LinkedBlockingQueue<>())
+            .setThreadFactory(ThreadUtil.newNamedThreadFactory("excel-import-", true))
+            .build();
+
+    private final Class<T> head;
+    private final ExcelImportHandler<T> handler;
+    private final BlockingQueue<List<ExcelImportRow<T>>> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Queue<ExcelImportRow<T>> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicLong success = new AtomicLong();
+    private final List<Future<?>> workers = new ArrayList<>(WORKERS);
+    private final TransactionTemplate transactionTemplate;
+
+    public ExcelImportPipeline(Class<T> head, ExcelImportHandler<T> handler) {
+        this.head = head;
+        this.handler = handler;
+        this.transactionTemplate = SpringUtil.getBean(TransactionTemplate.class);
+    }
+
+    /**
+     * 导入excel第一个sheet
+     *
+     * @param inputStream excel文件流，由调用方负责关闭
+     * @return 导入结果
+     */
+    public ExcelImportResult<T> run(InputStream inputStream) {
+        // 工作线程中保存数据时，需要当前用户填充创建者等字段
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(EXECUTOR.submit(() -> {
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    work();
+                    return null;
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+
+        ReadListener listener = new ReadListener();
+        try {
+            EasyExcel.read(inputStream, head, listener).sheet().doRead();
+        } finally {
+            // 解析出错时也要结束工作线程
+            for (int i = 0; i < WORKERS; i++) {
+                put(Collections.emptyList());
+            }
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServerException("导入已中断");
+            } catch (ExecutionException e) {
+                throw new ServerException("导入失败：" + e.getCause().getMessage());
+            }
+        }
+
+        ExcelImportResult<T> result = new ExcelImportResult<>();
+        result.setTotal(listener.total);
+        result.setSuccess(success.get());
+        result.getErrors().addAll(errors);
+        result.getErrors().sort(Comparator.comparingInt(ExcelImportRow::getRowIndex));
+        return result;
+    }
+
+    /**
+     * 放入队列，队列满时等待工作线程处理，工作线程在共享线程池中排队时继续等待，都已退出时不再等待
+     */
+    private void put(List<ExcelImportRow<T>> batch) {
+        try {
+            while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                if (workers.stream().allMatch(Future::isDone)) {
+                    throw new ServerException("导入失败，处理线程已退出");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerException("导入已中断");
+        }
+    }
+
+    private void work() throws InterruptedException {
+        while (true) {
+            List<ExcelImportRow<T>> batch = queue.take();
+            // 空批次表示解析结束
+            if (batch.isEmpty()) {
+                return;
+            }
+            process(batch);
+        }
+    }
+
+    private void process(List<ExcelImportRow<T>> batch) {
+        try {
+            handler.validate(batch);
+        } catch (Exception e) {
+            log.error("excel导入校验失败", e);
+            batch.forEach(row -> row.setError(StringUtils.defaultIfBlank(row.getError(), "校验失败：" + e.getMessage())));
+        }
+
+        List<ExcelImportRow<T>> valid = new ArrayList<>(batch.size());
+        for (ExcelImportRow<T> row : batch) {
+            if (row.getError() == null) {
+                valid.add(row);
+            } else {
+                addError(row, row.getError());
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<T> list = valid.stream().map(ExcelImportRow::getData).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> handler.save(list));
+            success.addAndGet(list.size());
+        } catch (DuplicateKeyException e) {
+            // 校验后其他线程或请求写入了相同的数据，逐行保存，找出违反唯一索引的行
+            valid.forEach(this::saveRow);
+        } catch (Exception e) {
+            log.error("excel导入保存失败，行号：{} - {}", valid.get(0).getRowIndex(), valid.get(valid.size() - 1).getRowIndex(), e);
+            valid.forEach(row -> addError(row, "保存失败：" + e.getMessage()));
+        }
+    }
+
+    private void saveRow(ExcelImportRow<T> row) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> handler.save(List.of(row.getData())));
+            success.incrementAndGet();
+        } catch (DuplicateKeyException e) {
+            addError(row, handler.getDuplicateError(row.getData(), e));
+        } catch (Exception e) {
+            log.error("excel导入保存失败，行号：{}", row.getRowIndex(), e);
+            addError(row, "保存失败：" + e.getMessage());
+        }
+    }
+
+    private void addError(ExcelImportRow<T> row, String error) {
+        row.setError(StringUtils.abbreviate(error, MAX_ERROR_LENGTH));
+        errors.add(row);
+    }
+
+    /**
+     * 解析excel，按批放入队列
+     */
+    private class ReadListener extends AnalysisEventListener<T> {
+        private List<ExcelImportRow<T>> batch = new ArrayList<>(BATCH_SIZE);
+        private long total;
+
+        @Override
+        public void invoke(T data, AnalysisContext context) {
+            total++;
+            batch.add(new ExcelImportRow<>(context.readRowHolder().getRowIndex() + 1, data));
+            if (batch.size() >= BATCH_SIZE) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        /**
+         * 单元格格式错误的行记录为失败，继续解析后面的行
+         */
+        @Override
+        public void onException(Exception exception, AnalysisContext context) throws Exception {
+            if (!(exception instanceof ExcelDataConvertException)) {
+                throw exception;
+            }
+
+            total++;
+            ExcelImportRow<T> row = new ExcelImportRow<>(context.readRowHolder().getRowIndex() + 1, null);
+            addError(row, "数据格式错误：" + exception.getMessage());
+        }
+
+        @Override
+        public void doAfterAllAnalysed(AnalysisContext context) {
+            if (!batch.isEmpty()) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+}
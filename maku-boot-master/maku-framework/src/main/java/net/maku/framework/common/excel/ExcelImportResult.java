@@ -0,0 +1,33 @@
+package net.maku.framework.common.excel;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * excel导入结果
+ *
+ * @param <T> 数据类型
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+public class ExcelImportResult<T> {
+    /**
+     * 总行数
+     */
+    private long total;
+    /**
+     * 导入成功行数
+     */
+    private long success;
+    /**
+     * 导入失败的行，按行号升序
+     */
+    private List<ExcelImportRow<T>> errors = new ArrayList<>();
+
+    public long getFailed() {
+        return errors.size();
+    }
+}
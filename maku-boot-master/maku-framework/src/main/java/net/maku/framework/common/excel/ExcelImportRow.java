@@ -0,0 +1,31 @@
+package net.maku.framework.common.excel;
+
+import lombok.Data;
+
+/**
+ * excel导入的一行数据
+ *
+ * @param <T> 数据类型
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Data
+public class ExcelImportRow<T> {
+    /**
+     * excel中的行号，从1开始，包含表头
+     */
+    private int rowIndex;
+    /**
+     * 行数据，单元格格式错误无法解析时为空
+     */
+    private T data;
+    /**
+     * 错误信息，为空表示校验通过
+     */
+    private String error;
+
+    public ExcelImportRow(int rowIndex, T data) {
+        this.rowIndex = rowIndex;
+        this.data = data;
+    }
+}
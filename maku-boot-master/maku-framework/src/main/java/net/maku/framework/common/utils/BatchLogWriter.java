@@ -0,0 +1,222 @@
+package net.maku.framework.common.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 日志批量写入，日志先放入有界队列，由单独的写入线程按数量或时间批量写入数据库
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class BatchLogWriter<T> {
+    @Getter
+    private final String name;
+    private final int batchSize;
+    private final long flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<List<T>> sink;
+    private final BlockingQueue<T> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param name           日志名称，用于线程名称和统计
+     * @param batchSize      每批写入的最大数量
+     * @param flushInterval  最长写入间隔，单位毫秒
+     * @param queueCapacity  队列容量
+     * @param overflowPolicy 队列满时的处理策略
+     * @param sink           批量写入数据库
+     */
+    public BatchLogWriter(String name, int batchSize, long flushInterval, int queueCapacity,
+                          OverflowPolicy overflowPolicy, Consumer<List<T>> sink) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::run, "log-writer-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加日志，已停止时直接写入
+     */
+    public void add(T item) {
+        if (!running) {
+            write(Collections.singletonList(item));
+            return;
+        }
+        if (queue.offer(item)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP -> {
+                dropped.incrementAndGet();
+                log.warn("日志 {} 写入队列已满，丢弃日志", name);
+            }
+            case CALLER_RUNS -> write(Collections.singletonList(item));
+            default -> {
+                try {
+                    queue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    write(Collections.singletonList(item));
+                }
+            }
+        }
+    }
+
+    public void addAll(List<T> items) {
+        items.forEach(this::add);
+    }
+
+    /**
+     * 停止写入线程，并写入队列中的所有日志；不中断写入线程，避免中断正在执行的 JDBC 写入
+     *
+     * @param timeout 等待写入线程结束的时间，单位毫秒
+     */
+    public void close(long timeout) {
+        running = false;
+        try {
+            worker.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 写入线程未能及时结束时，由当前线程写入剩余日志
+        drainAll();
+    }
+
+    /**
+     * 队列中等待写入的日志数
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * 已写入的日志数
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * 写入的批次数
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * 写入失败的日志数
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * 队列满时丢弃的日志数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                T item = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                }
+
+                // 凑满一批或到达写入间隔后写入
+                batch.add(item);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0) {
+                        break;
+                    }
+                    item = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        break;
+                    }
+                    batch.add(item);
+                }
+
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // 被外部中断时，不保留中断状态，继续写入剩余日志
+        }
+
+        write(batch);
+        drainAll();
+    }
+
+    private void drainAll() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<T> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            sink.accept(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("日志 {} 批量写入失败，日志数量：{}", name, batch.size(), e);
+        }
+    }
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 阻塞调用线程，直到队列有空位
+         */
+        BLOCK,
+
+        /**
+         * 丢弃新日志
+         */
+        DROP,
+
+        /**
+         * 在调用线程直接写入数据库
+         */
+        CALLER_RUNS
+    }
+}
@@ -1,34 +1,35 @@
 package net.maku.framework.common.utils;
 
-import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.date.DateUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.core.util.URLUtil;
-import cn.hutool.extra.spring.SpringUtil;
 import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.ExcelWriter;
 import com.alibaba.excel.converters.longconverter.LongStringConverter;
 import com.alibaba.excel.support.ExcelTypeEnum;
-import com.fhs.common.utils.ConverterUtils;
-import com.fhs.core.trans.anno.Trans;
-import com.fhs.core.trans.constant.TransType;
-import com.fhs.core.trans.util.ReflectUtils;
 import com.fhs.core.trans.vo.TransPojo;
-import com.fhs.trans.service.impl.DictionaryTransService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.SneakyThrows;
+import net.maku.framework.common.excel.ExcelBatchWriter;
 import net.maku.framework.common.excel.ExcelDataListener;
+import net.maku.framework.common.excel.ExcelDictTranslator;
 import net.maku.framework.common.excel.ExcelFinishCallBack;
+import net.maku.framework.common.excel.ExcelImportHandler;
+import net.maku.framework.common.excel.ExcelImportPipeline;
+import net.maku.framework.common.excel.ExcelImportResult;
+import net.maku.framework.common.excel.ExcelImportRow;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * The type Excel utils.
@@ -48,8 +49,8 @@ public class ExcelUtils {
      *                 这样调用工具类时可以通过回调函数获取导入的数据，如果数据量过大可根据实际情况进行分配入库
      */
     public static <T> void readAnalysis(MultipartFile file, Class<T> head, ExcelFinishCallBack<T> callBack) {
-        try {
-            EasyExcel.read(file.getInputStream(), head, new ExcelDataListener<>(callBack)).sheet().doRead();
+        try (InputStream inputStream = file.getInputStream()) {
+            EasyExcel.read(inputStream, head, new ExcelDataListener<>(callBack)).sheet().doRead();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -65,13 +66,55 @@ public class ExcelUtils {
      *                 这样调用工具类时可以通过回调函数获取导入的数据，如果数据量过大可根据实际情况进行分配入库
      */
     public static <T> void readAnalysis(File file, Class<T> head, ExcelFinishCallBack<T> callBack) {
-        try {
-            EasyExcel.read(new FileInputStream(file), head, new ExcelDataListener<>(callBack)).sheet().doRead();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            EasyExcel.read(inputStream, head, new ExcelDataListener<>(callBack)).sheet().doRead();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 导入excel文件，并行校验、分批保存，出错的行记录到导入结果，不影响其他数据导入
+     *
+     * @param <T>     数据类型
+     * @param file    excel文件
+     * @param head    列名
+     * @param handler 校验和保存
+     * @return 导入结果
+     */
+    public static <T> ExcelImportResult<T> importExcel(MultipartFile file, Class<T> head, ExcelImportHandler<T> handler) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return new ExcelImportPipeline<>(head, handler).run(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 导入失败的数据写入excel，第一个sheet是失败的原始数据，修改后可以重新导入，第二个sheet是行号和错误信息
+     *
+     * @param <T>          数据类型
+     * @param head         类名
+     * @param result       导入结果
+     * @param outputStream 写入的流
+     */
+    @SneakyThrows
+    public static <T> void writeImportErrors(Class<T> head, ExcelImportResult<T> result, OutputStream outputStream) {
+        List<T> data = new ArrayList<>(result.getErrors().size());
+        List<List<Object>> messages = new ArrayList<>(result.getErrors().size());
+        for (ExcelImportRow<T> row : result.getErrors()) {
+            // 无法解析的行写入空行，保持与错误信息一一对应
+            data.add(row.getData() != null ? row.getData() : head.getDeclaredConstructor().newInstance());
+            messages.add(List.of(row.getRowIndex(), row.getError()));
+        }
+
+        try (ExcelWriter excelWriter = EasyExcel.write(outputStream).registerConverter(new LongStringConverter()).build()) {
+            excelWriter.write(data, EasyExcel.writerSheet(0, "错误数据").head(head).build());
+            excelWriter.write(messages, EasyExcel.writerSheet(1, "错误信息")
+                    .head(List.of(List.of("行号"), List.of("错误信息"))).build());
+        }
+    }
+
     /**
      * 读取excel文件 同步
      *
@@ -169,6 +212,49 @@ public class ExcelUtils {
         }
     }
 
+    /**
+     * 分批导出数据到web，数据分批查询、翻译后写入，适用于大数据量导出；
+     * 导出失败时重置响应，不输出不完整的文件，由全局异常处理返回错误信息
+     * <pre>
+     * ExcelUtils.excelBatchWriter(T.class, excelName, null).export(writer -&gt;
+     *     forEachBatch(wrapper, T::getId, ExcelBatchWriter.BATCH_SIZE, list -&gt; writer.write(list)));
+     * </pre>
+     *
+     * @param head      类名
+     * @param excelName excel名字
+     * @param sheetName sheet名称
+     */
+    public static <T> ExcelBatchWriter<T> excelBatchWriter(Class<T> head, String excelName, String sheetName) {
+        try {
+            HttpServletResponse response = getExportResponse(excelName);
+
+            ExcelBatchWriter<T> writer = new ExcelBatchWriter<>(response.getOutputStream(), head, sheetName);
+            writer.setFailureHandler(() -> {
+                if (!response.isCommitted()) {
+                    response.reset();
+                }
+            });
+            return writer;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 分批导出数据到文件
+     *
+     * @param head      类名
+     * @param file      写入到文件
+     * @param sheetName sheet名称
+     */
+    public static <T> ExcelBatchWriter<T> excelBatchWriter(Class<T> head, File file, String sheetName) {
+        try {
+            return new ExcelBatchWriter<>(new FileOutputStream(file), head, sheetName);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static HttpServletResponse getExportResponse(String excelName) {
         HttpServletResponse response = HttpContextUtils.getHttpServletResponse();
         response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
@@ -188,42 +274,8 @@ public class ExcelUtils {
      *
      * @param dataList 需要被反向解析的数据
      */
-    @SneakyThrows
     public static <T extends TransPojo> void parseDict(List<T> dataList) {
-        //没有数据就不需要初始化
-        if (CollectionUtil.isEmpty(dataList)) {
-            return;
-        }
-        Class<? extends TransPojo> clazz = dataList.get(0).getClass();
-        //拿到所有需要反向翻译的字段
-        List<Field> fields = ReflectUtils.getAnnotationField(clazz, Trans.class);
-        //过滤出字典翻译
-        fields = fields.stream().filter(field -> TransType.DICTIONARY.equals(field.getAnnotation(Trans.class).type())).collect(Collectors.toList());
-        DictionaryTransService dictionaryTransService = SpringUtil.getBean(DictionaryTransService.class);
-        for (T data : dataList) {
-            for (Field field : fields) {
-                Trans trans = field.getAnnotation(Trans.class);
-                // key不能为空并且ref不为空的才自动处理
-                if (StrUtil.isAllNotBlank(trans.key(), trans.ref())) {
-                    Field ref = ReflectUtils.getDeclaredField(clazz, trans.ref());
-                    ref.setAccessible(true);
-                    // 获取字典反向值
-                    String value = dictionaryTransService.getDictionaryTransMap().get(trans.key() + "_" + ref.get(data));
-                    if (StringUtils.isBlank(value)) {
-                        continue;
-                    }
-                    // 一般目标字段是int或者string字段 后面有添加单独抽离方法
-                    if (Integer.class.equals(field.getType())) {
-                        field.setAccessible(true);
-                        field.set(data, ConverterUtils.toInteger(value));
-                    } else {
-                        field.setAccessible(true);
-                        field.set(data, ConverterUtils.toString(value));
-                    }
-                }
-            }
-        }
-
+        ExcelDictTranslator.parse(dataList);
     }
 
 }
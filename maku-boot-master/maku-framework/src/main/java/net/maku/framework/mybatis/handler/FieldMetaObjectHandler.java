@@ -1,9 +1,11 @@
 package net.maku.framework.mybatis.handler;
 
 import com.baomidou.mybatisplus.core.handlers.MetaObjectHandler;
+import net.maku.framework.mybatis.entity.BaseEntity;
 import net.maku.framework.security.user.SecurityUser;
 import net.maku.framework.security.user.UserDetail;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
 
 import java.time.LocalDateTime;
 
@@ -22,6 +24,11 @@ public class FieldMetaObjectHandler implements MetaObjectHandler {
     private final static String VERSION = "version";
     private final static String DELETED = "deleted";
 
+    /**
+     * 当前线程写入的是预先填充过的实体，如日志批量写入线程
+     */
+    private final static ThreadLocal<Boolean> PREFILLED = new ThreadLocal<>();
+
     @Override
     public void insertFill(MetaObject metaObject) {
         UserDetail user = SecurityUser.getUser();
@@ -74,16 +81,63 @@ public class FieldMetaObjectHandler implements MetaObjectHandler {
             setFieldValByName(ORG_ID, user.getOrgId(), metaObject);
         }
 
-        // 创建时间
-        setFieldValByName(CREATE_TIME, now, metaObject);
-        // 更新时间
-        setFieldValByName(UPDATE_TIME, now, metaObject);
+        if (Boolean.TRUE.equals(PREFILLED.get())) {
+            // 日志批量写入线程，保留请求线程中已填充的时间
+            fillIfAbsent(CREATE_TIME, now, metaObject);
+            fillIfAbsent(UPDATE_TIME, now, metaObject);
+        } else {
+            // 创建时间
+            setFieldValByName(CREATE_TIME, now, metaObject);
+            // 更新时间
+            setFieldValByName(UPDATE_TIME, now, metaObject);
+        }
+
         // 版本号
         setFieldValByName(VERSION, 0, metaObject);
         // 删除标识
         setFieldValByName(DELETED, 0, metaObject);
     }
 
+    /**
+     * 在请求线程中预先填充创建者、创建时间等字段，由其他线程写入数据库时使用
+     *
+     * @param entity 实体
+     */
+    public static void prefill(BaseEntity entity) {
+        UserDetail user = SecurityUser.getUser();
+        LocalDateTime now = LocalDateTime.now();
+        if (user != null) {
+            entity.setCreator(user.getId());
+            entity.setUpdater(user.getId());
+            MetaObject metaObject = SystemMetaObject.forObject(entity);
+            if (metaObject.hasSetter(ORG_ID)) {
+                metaObject.setValue(ORG_ID, user.getOrgId());
+            }
+        }
+        entity.setCreateTime(now);
+        entity.setUpdateTime(now);
+    }
+
+    /**
+     * 插入由 prefill 预先填充过的实体，插入时保留已填充的创建时间、更新时间，只在当前线程的本次调用中生效
+     *
+     * @param runnable 插入操作
+     */
+    public static void insertPrefilled(Runnable runnable) {
+        PREFILLED.set(Boolean.TRUE);
+        try {
+            runnable.run();
+        } finally {
+            PREFILLED.remove();
+        }
+    }
+
+    private void fillIfAbsent(String fieldName, Object fieldVal, MetaObject metaObject) {
+        if (getFieldValByName(fieldName, metaObject) == null) {
+            setFieldValByName(fieldName, fieldVal, metaObject);
+        }
+    }
+
     @Override
     public void updateFill(MetaObject metaObject) {
         // 更新者
@@ -6,6 +6,7 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import net.maku.framework.common.constant.Constant;
@@ -16,6 +17,8 @@ import net.maku.framework.security.user.SecurityUser;
 import net.maku.framework.security.user.UserDetail;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 
 /**
@@ -46,6 +49,34 @@ public class BaseServiceImpl<M extends BaseMapper<T>, T> extends ServiceImpl<M,
         return page;
     }
 
+    /**
+     * 按主键分批查询，每批查询主键大于上一批最大主键的数据，不使用 offset，深度分页不变慢
+     * <p>
+     * 每批数据处理完即可释放，适用于导出等需要遍历大量数据的场景
+     *
+     * @param wrapper   查询条件，每批查询都会重新获取，不需要设置排序
+     * @param idColumn  主键字段，需要是自增的 Long 类型
+     * @param batchSize 每批数量
+     * @param consumer  每批数据的处理
+     */
+    protected void forEachBatch(Supplier<LambdaQueryWrapper<T>> wrapper, SFunction<T, Long> idColumn, int batchSize, Consumer<List<T>> consumer) {
+        Long lastId = null;
+        while (true) {
+            LambdaQueryWrapper<T> queryWrapper = wrapper.get();
+            queryWrapper.gt(lastId != null, idColumn, lastId).orderByAsc(idColumn);
+            List<T> list = baseMapper.selectPage(new Page<>(1, batchSize, false), queryWrapper).getRecords();
+            if (list.isEmpty()) {
+                return;
+            }
+
+            consumer.accept(list);
+            if (list.size() < batchSize) {
+                return;
+            }
+            lastId = idColumn.apply(list.get(list.size() - 1));
+        }
+    }
+
     /**
      * MyBatis-Plus 数据权限
      */
@@ -0,0 +1,87 @@
+package net.maku.framework.mybatis.handler;
+
+import net.maku.framework.mybatis.entity.BaseEntity;
+import net.maku.framework.security.user.UserDetail;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自动填充测试，没有登录用户时也填充创建时间，只有预先填充的日志保留入队时的时间
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+public class FieldMetaObjectHandlerTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private final FieldMetaObjectHandler handler = new FieldMetaObjectHandler();
+
+    @AfterEach
+    public void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void anonymousInsert() {
+        // 没有登录用户时，实体中的时间被覆盖，与登录时一致
+        TestEntity entity = entity();
+        handler.insertFill(metaObject(entity));
+
+        assertNull(entity.getCreator());
+        assertTrue(entity.getCreateTime().isAfter(TIME));
+        assertTrue(entity.getUpdateTime().isAfter(TIME));
+        assertEquals(0, entity.getVersion());
+        assertEquals(0, entity.getDeleted());
+    }
+
+    @Test
+    public void loginInsert() {
+        UserDetail user = new UserDetail();
+        user.setId(1L);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+
+        TestEntity entity = entity();
+        handler.insertFill(metaObject(entity));
+
+        assertEquals(1L, entity.getCreator());
+        assertEquals(1L, entity.getUpdater());
+        assertTrue(entity.getCreateTime().isAfter(TIME));
+    }
+
+    @Test
+    public void prefilledInsert() {
+        // 日志批量写入线程中，保留入队时填充的时间
+        TestEntity entity = entity();
+        FieldMetaObjectHandler.insertPrefilled(() -> handler.insertFill(metaObject(entity)));
+
+        assertEquals(TIME, entity.getCreateTime());
+        assertEquals(TIME, entity.getUpdateTime());
+
+        // 只在本次调用中生效
+        handler.insertFill(metaObject(entity));
+        assertTrue(entity.getCreateTime().isAfter(TIME));
+    }
+
+    private static TestEntity entity() {
+        TestEntity entity = new TestEntity();
+        entity.setCreateTime(TIME);
+        entity.setUpdateTime(TIME);
+        return entity;
+    }
+
+    private static MetaObject metaObject(Object entity) {
+        return SystemMetaObject.forObject(entity);
+    }
+
+    static class TestEntity extends BaseEntity {
+    }
+}
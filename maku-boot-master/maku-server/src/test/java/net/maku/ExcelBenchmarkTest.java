@@ -0,0 +1,304 @@
+package net.maku;
+
+import cn.hutool.core.io.FileUtil;
+import com.alibaba.excel.annotation.ExcelIgnore;
+import com.alibaba.excel.annotation.ExcelProperty;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fhs.core.trans.anno.Trans;
+import com.fhs.core.trans.constant.TransType;
+import com.fhs.core.trans.vo.TransPojo;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import lombok.Data;
+import net.maku.framework.common.excel.ExcelBatchWriter;
+import net.maku.framework.common.excel.ExcelDictTranslator;
+import net.maku.framework.common.excel.ExcelFinishCallBack;
+import net.maku.framework.common.excel.LocalDateTimeConverter;
+import net.maku.framework.common.utils.ExcelUtils;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.SqlSessionTemplate;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * excel导入、导出性能测试，输出吞吐量、堆内存峰值和GC停顿，用于本地对比excel处理的性能变化
+ * <p>
+ * 默认不执行，执行方式：mvn test -pl maku-server -Dtest=ExcelBenchmarkTest -Dexcel.benchmark=true
+ * <p>
+ * 行数通过 -Dexcel.benchmark.rows=10000,100000 指定，默认 1万、10万、100万行；
+ * 导入时通过 saveBatch 分批保存到 H2 内存数据库，导入后校验行数和数据
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@EnabledIfSystemProperty(named = "excel.benchmark", matches = "true")
+public class ExcelBenchmarkTest {
+    /**
+     * 一次性写入全部数据时，超过此行数不再测试，避免内存溢出
+     */
+    private static final int LIST_EXPORT_MAX_ROWS = 100000;
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static final List<String> REPORT = new ArrayList<>();
+
+    private static JdbcDataSource dataSource;
+    private static BenchmarkService benchmarkService;
+
+    @BeforeAll
+    public static void init() throws SQLException {
+        ExcelDictTranslator.refresh(Map.of("user_gender", Map.of("0", "男", "1", "女", "2", "未知")));
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:excel_benchmark;DB_CLOSE_DELAY=-1");
+        execute("CREATE TABLE excel_benchmark (id bigint NOT NULL, username varchar(50), real_name varchar(50), " +
+                "mobile varchar(20), gender int, amount double, create_time timestamp, primary key (id))");
+
+        MybatisConfiguration configuration = new MybatisConfiguration(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.addMapper(BenchmarkDao.class);
+        SqlSessionFactory sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+        benchmarkService = new BenchmarkService(new SqlSessionTemplate(sqlSessionFactory).getMapper(BenchmarkDao.class));
+    }
+
+    @AfterAll
+    public static void report() {
+        System.out.printf("%-14s %10s %10s %12s %12s %8s %10s %10s%n",
+                "场景", "行数", "耗时(ms)", "行/秒", "堆峰值(MB)", "GC次数", "GC停顿(ms)", "最大停顿(ms)");
+        REPORT.forEach(System.out::println);
+    }
+
+    @Test
+    public void benchmark() {
+        String rows = System.getProperty("excel.benchmark.rows", "10000,100000,1000000");
+        for (String row : rows.split(",")) {
+            benchmark(Integer.parseInt(row.trim()));
+        }
+    }
+
+    private void benchmark(int rows) {
+        File file = FileUtil.createTempFile("excel_benchmark_", ".xlsx", true);
+        try {
+            if (rows <= LIST_EXPORT_MAX_ROWS) {
+                measure("导出(全部)", rows, () -> {
+                    List<BenchmarkRow> list = new ArrayList<>(rows);
+                    for (int i = 0; i < rows; i++) {
+                        list.add(row(i));
+                    }
+                    ExcelDictTranslator.translate(list);
+                    ExcelUtils.excelExport(BenchmarkRow.class, file, list);
+                });
+            }
+
+            measure("导出(分批)", rows, () -> {
+                try (ExcelBatchWriter<BenchmarkRow> writer = ExcelUtils.excelBatchWriter(BenchmarkRow.class, file, null)) {
+                    for (int from = 0; from < rows; from += ExcelBatchWriter.BATCH_SIZE) {
+                        int to = Math.min(rows, from + ExcelBatchWriter.BATCH_SIZE);
+                        List<BenchmarkRow> list = new ArrayList<>(to - from);
+                        for (int i = from; i < to; i++) {
+                            list.add(row(i));
+                        }
+                        ExcelDictTranslator.translate(list);
+                        writer.write(list);
+                    }
+                }
+            });
+
+            execute("TRUNCATE TABLE excel_benchmark");
+            measure("导入", rows, () -> ExcelUtils.readAnalysis(file, BenchmarkRow.class, new BenchmarkStore()));
+            assertEquals(rows, benchmarkService.count());
+            Object checksum = benchmarkService.getBaseMapper().selectObjs(Wrappers.<BenchmarkEntity>query().select("sum(id * 3 + gender)")).get(0);
+            assertEquals(checksum(rows), ((Number) checksum).longValue());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            FileUtil.del(file);
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * 执行并统计耗时、堆内存峰值、GC次数和停顿时间
+     */
+    private void measure(String name, int rows, Runnable task) {
+        System.gc();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        AtomicLong gcCount = new AtomicLong();
+        AtomicLong gcTime = new AtomicLong();
+        AtomicLong gcMaxTime = new AtomicLong();
+        NotificationListener listener = (notification, handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long duration = info.getGcInfo().getDuration();
+            gcCount.incrementAndGet();
+            gcTime.addAndGet(duration);
+            gcMaxTime.accumulateAndGet(duration, Math::max);
+        };
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        collectors.forEach(gc -> ((NotificationEmitter) gc).addNotificationListener(listener, null, null));
+
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+            long peak = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+            for (GarbageCollectorMXBean gc : collectors) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(listener);
+                } catch (Exception ignored) {
+                }
+            }
+
+            String line = String.format("%-14s %10d %10d %12d %12d %8d %10d %10d",
+                    name, rows, elapsed, rows * 1000L / elapsed, peak / 1024 / 1024, gcCount.get(), gcTime.get(), gcMaxTime.get());
+            System.out.println(line);
+            REPORT.add(line);
+        }
+    }
+
+    private static BenchmarkRow row(int i) {
+        BenchmarkRow row = new BenchmarkRow();
+        row.setId((long) i);
+        row.setUsername("user" + i);
+        row.setRealName("用户" + i);
+        row.setMobile(String.valueOf(13800000000L + i));
+        row.setGender(i % 3);
+        row.setAmount(i / 100.0);
+        row.setCreateTime(BASE_TIME.plusSeconds(i));
+        return row;
+    }
+
+    private static long checksum(int rows) {
+        long checksum = 0;
+        for (int i = 0; i < rows; i++) {
+            checksum += (long) i * 3 + i % 3;
+        }
+        return checksum;
+    }
+
+    /**
+     * 分批入库，与业务导入一样翻译字典后通过 saveBatch 保存
+     */
+    private static class BenchmarkStore implements ExcelFinishCallBack<BenchmarkRow> {
+
+        @Override
+        public void doSaveBatch(List<BenchmarkRow> result) {
+            ExcelUtils.parseDict(result);
+            List<BenchmarkEntity> list = new ArrayList<>(result.size());
+            for (BenchmarkRow row : result) {
+                BenchmarkEntity entity = new BenchmarkEntity();
+                entity.setId(row.getId());
+                entity.setUsername(row.getUsername());
+                entity.setRealName(row.getRealName());
+                entity.setMobile(row.getMobile());
+                entity.setGender(row.getGender());
+                entity.setAmount(row.getAmount());
+                entity.setCreateTime(row.getCreateTime());
+                list.add(entity);
+            }
+            benchmarkService.saveBatch(list);
+        }
+
+        @Override
+        public void doAfterAllAnalysed(List<BenchmarkRow> result) {
+            doSaveBatch(result);
+        }
+    }
+
+    public interface BenchmarkDao extends BaseMapper<BenchmarkEntity> {
+    }
+
+    private static class BenchmarkService extends ServiceImpl<BenchmarkDao, BenchmarkEntity> {
+        BenchmarkService(BenchmarkDao benchmarkDao) {
+            this.baseMapper = benchmarkDao;
+        }
+    }
+
+    @Data
+    @TableName("excel_benchmark")
+    public static class BenchmarkEntity {
+        @TableId(type = IdType.INPUT)
+        private Long id;
+
+        private String username;
+
+        private String realName;
+
+        private String mobile;
+
+        private Integer gender;
+
+        private Double amount;
+
+        private LocalDateTime createTime;
+    }
+
+    @Data
+    public static class BenchmarkRow implements TransPojo {
+        @ExcelProperty("ID")
+        private Long id;
+
+        @ExcelProperty("用户名")
+        private String username;
+
+        @ExcelProperty("姓名")
+        private String realName;
+
+        @ExcelProperty("手机号")
+        private String mobile;
+
+        @ExcelIgnore
+        @Trans(type = TransType.DICTIONARY, key = "user_gender", ref = "genderLabel")
+        private Integer gender;
+
+        @ExcelProperty("性别")
+        private String genderLabel;
+
+        @ExcelProperty("金额")
+        private Double amount;
+
+        @ExcelProperty(value = "创建时间", converter = LocalDateTimeConverter.class)
+        private LocalDateTime createTime;
+    }
+}
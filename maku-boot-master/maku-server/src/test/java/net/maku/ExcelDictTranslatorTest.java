@@ -0,0 +1,192 @@
+package net.maku;
+
+import cn.hutool.core.util.StrUtil;
+import com.fhs.common.utils.ConverterUtils;
+import com.fhs.core.trans.anno.Trans;
+import com.fhs.core.trans.constant.TransType;
+import com.fhs.core.trans.util.ReflectUtils;
+import com.fhs.core.trans.vo.TransPojo;
+import lombok.Data;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import net.maku.framework.common.excel.ExcelDictTranslator;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * excel字典翻译测试，并与原来的反射实现对比耗时
+ * <p>
+ * 耗时对比默认不执行，执行方式：mvn test -pl maku-server -Dtest=ExcelDictTranslatorTest -Dexcel.benchmark=true
+ *
+ * @author 阿沐 babamu@126.com
+ * <a href="https://maku.net">MAKU</a>
+ */
+@Slf4j
+public class ExcelDictTranslatorTest {
+    private static final int ROWS = 100000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * 原来的实现从 easy-trans 的字典缓存中查找，key: un_trans:字典类型_字典标签
+     */
+    private static final Map<String, String> TRANS_MAP = new HashMap<>();
+
+    @BeforeAll
+    public static void init() {
+        Map<String, Map<String, String>> dictMap = new HashMap<>();
+        dictMap.put("user_gender", Map.of("0", "男", "1", "女", "2", "未知"));
+        dictMap.put("user_status", Map.of("0", "停用", "1", "正常"));
+        ExcelDictTranslator.refresh(dictMap);
+
+        dictMap.forEach((type, labels) -> labels.forEach((value, label) -> {
+            TRANS_MAP.put(type + "_" + value, label);
+            TRANS_MAP.put("un_trans:" + type + "_" + label, value);
+        }));
+    }
+
+    @Test
+    public void translate() {
+        List<ExcelRow> list = new ArrayList<>();
+        list.add(row(0, 1));
+        list.add(row(2, null));
+        list.add(row(9, 0));
+
+        ExcelDictTranslator.translate(list);
+
+        assertEquals("男", list.get(0).getGenderLabel());
+        assertEquals("正常", list.get(0).getStatusLabel());
+        assertEquals("未知", list.get(1).getGenderLabel());
+        assertNull(list.get(1).getStatusLabel());
+        assertNull(list.get(2).getGenderLabel());
+        assertEquals("停用", list.get(2).getStatusLabel());
+    }
+
+    @Test
+    public void parse() {
+        List<ExcelRow> list = new ArrayList<>();
+        list.add(label("女", "停用"));
+        list.add(label("其他", null));
+
+        ExcelDictTranslator.parse(list);
+
+        assertEquals(1, list.get(0).getGender());
+        assertEquals("0", list.get(0).getStatus());
+        assertNull(list.get(1).getGender());
+        assertNull(list.get(1).getStatus());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "excel.benchmark", matches = "true")
+    public void benchmark() {
+        String[] genders = {"男", "女", "未知"};
+        String[] statuses = {"停用", "正常"};
+        List<ExcelRow> source = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            source.add(label(genders[i % genders.length], statuses[i % statuses.length]));
+        }
+
+        // 预热
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyParseDict(copy(source));
+            ExcelDictTranslator.parse(copy(source));
+        }
+
+        long legacy = 0;
+        long translator = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            List<ExcelRow> list = copy(source);
+            long start = System.nanoTime();
+            legacyParseDict(list);
+            legacy += System.nanoTime() - start;
+
+            List<ExcelRow> list2 = copy(source);
+            start = System.nanoTime();
+            ExcelDictTranslator.parse(list2);
+            translator += System.nanoTime() - start;
+
+            for (int j = 0; j < ROWS; j++) {
+                assertEquals(list.get(j).getGender(), list2.get(j).getGender());
+                assertEquals(list.get(j).getStatus(), list2.get(j).getStatus());
+            }
+        }
+
+        log.info("字典翻译 {} 行 x {} 次，反射：{} ms，预编译：{} ms", ROWS, ROUNDS, legacy / 1000000, translator / 1000000);
+    }
+
+    /**
+     * 原来 ExcelUtils.parseDict 的实现，每行都反射查找字段、注解，只修正了反向翻译的 key
+     */
+    @SneakyThrows
+    private static <T extends TransPojo> void legacyParseDict(List<T> dataList) {
+        Class<? extends TransPojo> clazz = dataList.get(0).getClass();
+        List<Field> fields = ReflectUtils.getAnnotationField(clazz, Trans.class);
+        fields = fields.stream().filter(field -> TransType.DICTIONARY.equals(field.getAnnotation(Trans.class).type())).collect(Collectors.toList());
+        for (T data : dataList) {
+            for (Field field : fields) {
+                Trans trans = field.getAnnotation(Trans.class);
+                if (StrUtil.isAllNotBlank(trans.key(), trans.ref())) {
+                    Field ref = ReflectUtils.getDeclaredField(clazz, trans.ref());
+                    ref.setAccessible(true);
+                    String value = TRANS_MAP.get("un_trans:" + trans.key() + "_" + ref.get(data));
+                    if (StringUtils.isBlank(value)) {
+                        continue;
+                    }
+                    if (Integer.class.equals(field.getType())) {
+                        field.setAccessible(true);
+                        field.set(data, ConverterUtils.toInteger(value));
+                    } else {
+                        field.setAccessible(true);
+                        field.set(data, ConverterUtils.toString(value));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<ExcelRow> copy(List<ExcelRow> source) {
+        List<ExcelRow> list = new ArrayList<>(source.size());
+        for (ExcelRow row : source) {
+            list.add(label(row.getGenderLabel(), row.getStatusLabel()));
+        }
+        return list;
+    }
+
+    private static ExcelRow row(Integer gender, Integer status) {
+        ExcelRow row = new ExcelRow();
+        row.setGender(gender);
+        row.setStatus(status == null ? null : status.toString());
+        return row;
+    }
+
+    private static ExcelRow label(String genderLabel, String statusLabel) {
+        ExcelRow row = new ExcelRow();
+        row.setGenderLabel(genderLabel);
+        row.setStatusLabel(statusLabel);
+        return row;
+    }
+
+    @Data
+    public static class ExcelRow implements TransPojo {
+        @Trans(type = TransType.DICTIONARY, key = "user_gender", ref = "genderLabel")
+        private Integer gender;
+
+        private String genderLabel;
+
+        @Trans(type = TransType.DICTIONARY, key = "user_status", ref = "statusLabel")
+        private String status;
+
+        private String statusLabel;
+    }
+}